@@ -1,69 +1,81 @@
 package com.fedmag.verysimplecaptcha;
 
-import com.fedmag.verysimplecaptcha.generators.ImageGenerator;
+import com.fedmag.verysimplecaptcha.encoding.CaptchaEncoder;
+import com.fedmag.verysimplecaptcha.encoding.CaptchaEncoders;
 import com.fedmag.verysimplecaptcha.generators.RandomStringGenerator;
+import com.fedmag.verysimplecaptcha.generators.RenderBackend;
 import com.fedmag.verysimplecaptcha.generators.filters.ImageFilter;
+import com.fedmag.verysimplecaptcha.metrics.CaptchaMetrics;
+import com.fedmag.verysimplecaptcha.metrics.CaptchaStage;
+import com.fedmag.verysimplecaptcha.metrics.StageTimer;
 import java.awt.Color;
 import java.awt.Point;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Base64;
-import javax.imageio.ImageIO;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * The {@code Captcha} class represents a CAPTCHA generator that produces an image and its
  * corresponding value. It allows various customizations such as character set, image dimensions,
  * colors, and image filters.
  *
- * <p>This class is designed using the Builder pattern to facilitate customization.
+ * <p>This class is designed using the Builder pattern to facilitate customization. Token
+ * generation, rendering, every filter and every encoding are reported to the {@link
+ * CaptchaMetrics} set on the builder.
+ *
+ * <p>A CAPTCHA is rendered only when its image or its encoded bytes are first requested, so one
+ * that is only issued by token costs no rendering. Every encoding is kept, per encoder, as a
+ * compact byte array and reused by later calls. Once the image has been encoded the raster is
+ * released, so a retained CAPTCHA holds kilobytes rather than a full frame; should the image be
+ * requested again it is rendered again from its {@link CaptchaSeed}. The new render matches the
+ * encoded image only if every filter draws its random choices from {@link
+ * com.fedmag.verysimplecaptcha.generators.filters.PixelRaster#random()}, as the built-in filters
+ * do; a custom filter with its own source of randomness makes {@link #getImage()} after an
+ * encoding return a different image, so with such filters request the image before encoding it
+ * and keep the reference.
+ *
+ * <p>Instances are thread-safe.
  */
 public class Captcha {
 
+  // Large enough for most encoded CAPTCHAs, so that the buffer rarely grows
+  private static final int ENCODE_BUFFER_SIZE = 8192;
+
   private final String trueValue;
-  private final BufferedImage image;
+  private final CaptchaProfile profile;
+  private final AffineTransform rotation;
+  private final CaptchaSeed seed;
+  private final CaptchaMetrics metrics;
+  // Encodings by encoder name; one or two entries in practice
+  private final Map<String, byte[]> encodings = new HashMap<>(4);
+  private BufferedImage image;
 
   /**
-   * Constructs a {@code Captcha} object based on the specified {@code Builder}.
+   * Constructs a {@code Captcha} object that is rendered on first use.
    *
-   * @param builder the builder containing the customization options
+   * @param trueValue the token drawn on the image
+   * @param profile the profile rendering the image
+   * @param rotation the rotation of the text, or {@code null} for none
+   * @param seed the seed the CAPTCHA derives from
    */
-  private Captcha(Builder builder) {
-    this.trueValue =
-        builder.charsToUse == null
-            ? RandomStringGenerator.generate(builder.numbOfChars)
-            : RandomStringGenerator.generate(builder.numbOfChars, builder.charsToUse);
-
-    if (builder.rotateString) {
-      generateRotation();
-    }
-    if (builder.statrtingPoint != null) {
-      ImageGenerator.setStartingPoint(builder.statrtingPoint);
-    }
-    if (builder.backgroundColor != null) {
-      ImageGenerator.setBackgroundColor(builder.backgroundColor);
-    }
-    if (builder.fontColor != null) {
-      ImageGenerator.setFontColor(builder.fontColor);
-    }
-
-    for (ImageFilter filter : builder.filters) {
-      ImageGenerator.addImageFilter(filter);
-    }
-    this.image = ImageGenerator.fromString(this.trueValue, builder.imageWidth, builder.imageHeight);
-  }
-
-  /** Generates a random rotation for the CAPTCHA text. */
-  private void generateRotation() {
-    double randomRotation = Math.random();
-    if (randomRotation < 0.5d) {
-      randomRotation *= -1;
-    }
-    randomRotation = randomRotation * 30;
-    ImageGenerator.addFontTransformation(
-        AffineTransform.getRotateInstance(Math.toRadians(randomRotation)));
+  Captcha(String trueValue, CaptchaProfile profile, AffineTransform rotation, CaptchaSeed seed) {
+    this.trueValue = trueValue;
+    this.profile = profile;
+    this.rotation = rotation;
+    this.seed = seed;
+    this.metrics = profile.getRenderConfig().getMetrics();
   }
 
   /**
@@ -76,11 +88,41 @@ public class Captcha {
   }
 
   /**
-   * Returns the CAPTCHA image.
+   * Returns the seed this CAPTCHA derives from. {@link CaptchaProfile#next(CaptchaSeed)} on the
+   * profile that generated it rebuilds the same CAPTCHA from the seed.
+   *
+   * @return the seed
+   */
+  public CaptchaSeed getSeed() {
+    return seed;
+  }
+
+  /**
+   * Returns a key under which the bytes written by the given encoder can be cached: a one-way
+   * digest of the seed followed by the encoder name. The key does not reveal the seed, and so the
+   * token, so it can appear in a public URL, provided the seed was drawn by {@link
+   * CaptchaSeed#random}; seeds chosen from a small set can be found by trying them. The key is
+   * stable across runs and processes, but only tells apart CAPTCHAs of one profile; caches shared
+   * by several profiles should prefix it with a name of the profile.
+   *
+   * @param encoder the image encoder
+   * @return the cache key, such as {@code 5d1c0f6a7e2b48399c04e1b7a3f8d226.png}
+   */
+  public String getCacheKey(CaptchaEncoder encoder) {
+    return seed.digest() + "." + encoder.getName();
+  }
+
+  /**
+   * Returns the CAPTCHA image, rendering it if needed. The image is kept until it is next encoded;
+   * after that it is rendered again from the seed, into the same pixels as long as the filters are
+   * deterministic for a given seed.
    *
    * @return the CAPTCHA image
    */
-  public BufferedImage getImage() {
+  public synchronized BufferedImage getImage() {
+    if (image == null) {
+      image = profile.render(trueValue, rotation, seed);
+    }
     return image;
   }
 
@@ -91,9 +133,131 @@ public class Captcha {
    * @throws IOException if an error occurs during encoding
    */
   public String getImageAsBase64EncododedString() throws IOException {
-    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-    ImageIO.write(this.getImage(), "jpeg", baos);
-    return Base64.getEncoder().encodeToString(baos.toByteArray());
+    return Base64.getEncoder().encodeToString(encode(CaptchaEncoders.jpeg()));
+  }
+
+  /**
+   * Returns the CAPTCHA image encoded as JPEG.
+   *
+   * @return a copy of the encoded CAPTCHA image
+   * @throws IOException if an error occurs during encoding
+   */
+  public byte[] getImageAsBytes() throws IOException {
+    return encode(CaptchaEncoders.jpeg()).clone();
+  }
+
+  /**
+   * Returns the CAPTCHA image encoded with the given encoder.
+   *
+   * @param encoder the encoder
+   * @return a copy of the encoded CAPTCHA image
+   * @throws IOException if an error occurs during encoding
+   */
+  public byte[] getImageAsBytes(CaptchaEncoder encoder) throws IOException {
+    return encode(encoder).clone();
+  }
+
+  /**
+   * Writes the encoded CAPTCHA image into the given stream. The stream is not closed.
+   *
+   * @param out the stream to write to
+   * @param format the image format
+   * @throws IOException if an error occurs during encoding or writing
+   */
+  public void writeTo(OutputStream out, ImageFormat format) throws IOException {
+    writeTo(out, CaptchaEncoders.forFormat(format));
+  }
+
+  /**
+   * Writes the CAPTCHA image encoded with the given encoder into the given stream. The stream is
+   * not closed.
+   *
+   * @param out the stream to write to
+   * @param encoder the encoder
+   * @throws IOException if an error occurs during encoding or writing
+   */
+  public void writeTo(OutputStream out, CaptchaEncoder encoder) throws IOException {
+    out.write(encode(encoder));
+  }
+
+  /**
+   * Writes the CAPTCHA image encoded as JPEG and Base64 encoded into the given stream. The stream
+   * is not closed.
+   *
+   * @param out the stream to write to
+   * @throws IOException if an error occurs during encoding or writing
+   */
+  public void writeBase64To(OutputStream out) throws IOException {
+    writeBase64To(out, ImageFormat.JPEG);
+  }
+
+  /**
+   * Writes the encoded CAPTCHA image Base64 encoded into the given stream. The stream is not
+   * closed.
+   *
+   * @param out the stream to write to
+   * @param format the image format
+   * @throws IOException if an error occurs during encoding or writing
+   */
+  public void writeBase64To(OutputStream out, ImageFormat format) throws IOException {
+    writeBase64To(out, CaptchaEncoders.forFormat(format));
+  }
+
+  /**
+   * Writes the CAPTCHA image encoded with the given encoder and Base64 encoded into the given
+   * stream. The stream is not closed.
+   *
+   * @param out the stream to write to
+   * @param encoder the encoder
+   * @throws IOException if an error occurs during encoding or writing
+   */
+  public void writeBase64To(OutputStream out, CaptchaEncoder encoder) throws IOException {
+    try (OutputStream base64 = Base64.getEncoder().wrap(Streams.nonClosing(out))) {
+      writeTo(base64, encoder);
+    }
+  }
+
+  /**
+   * Writes the CAPTCHA image encoded as JPEG and Base64 encoded into the given writer. The writer
+   * is not closed.
+   *
+   * @param writer the writer to write to
+   * @throws IOException if an error occurs during encoding or writing
+   */
+  public void writeBase64To(Writer writer) throws IOException {
+    writeBase64To(Streams.asciiTo(writer), ImageFormat.JPEG);
+  }
+
+  /**
+   * Renders the image if it has not been rendered yet.
+   *
+   * @return this CAPTCHA
+   */
+  Captcha render() {
+    getImage();
+    return this;
+  }
+
+  /**
+   * Returns the image encoded with the given encoder, encoding it on first use and releasing the
+   * raster afterwards. The returned array is shared and must not be modified.
+   */
+  synchronized byte[] encode(CaptchaEncoder encoder) throws IOException {
+    byte[] bytes = encodings.get(encoder.getName());
+    if (bytes == null) {
+      BufferedImage rendered = getImage();
+      StageTimer timer = StageTimer.start();
+      ByteArrayOutputStream out = new ByteArrayOutputStream(ENCODE_BUFFER_SIZE);
+      encoder.encode(rendered, out);
+      bytes = out.toByteArray();
+      metrics.onEncode(
+          encoder.getName(),
+          bytes.length,
+          timer.stop(CaptchaStage.ENCODE, encoder.getName(), bytes.length));
+      encodings.put(encoder.getName(), bytes);
+      image = null;
+    }
+    return bytes;
   }
 
   /**
@@ -102,15 +266,22 @@ public class Captcha {
    */
   public static class Builder {
 
-    private final ArrayList<ImageFilter> filters = new ArrayList<>();
-    private int numbOfChars = 5;
-    private int imageWidth = 200;
-    private int imageHeight = 100;
-    private String charsToUse;
-    private boolean rotateString = false;
-    private Point statrtingPoint;
-    private Color backgroundColor;
-    private Color fontColor;
+    // Package-private so that CaptchaProfile can take its snapshot
+    final ArrayList<ImageFilter> filters = new ArrayList<>();
+    int numbOfChars = 5;
+    int imageWidth = 200;
+    int imageHeight = 100;
+    String charsToUse;
+    boolean rotateString = false;
+    Point statrtingPoint;
+    Color backgroundColor;
+    Color fontColor;
+    boolean useGlyphAtlas = false;
+    boolean parallelFilters = false;
+    CaptchaMetrics metrics = CaptchaMetrics.NOOP;
+    RandomStringGenerator.Source randomSource = RandomStringGenerator.Source.SECURE;
+    RenderBackend renderBackend = RenderBackend.JAVA2D;
+    boolean compactColor;
 
     /**
      * Builds and returns a {@code Captcha} instance.
@@ -118,8 +289,68 @@ public class Captcha {
      * @return a new {@code Captcha} instance
      */
     public Captcha build() {
-      assert !charsToUse.isBlank();
-      return new Captcha(this);
+      return compile().next();
+    }
+
+    /**
+     * Builds and renders a {@code Captcha} on the shared bounded executor, without blocking the
+     * caller.
+     *
+     * @return a future completed with a rendered {@code Captcha}
+     * @see CaptchaProfile#nextAsync()
+     */
+    public CompletableFuture<Captcha> buildAsync() {
+      return compile().nextAsync();
+    }
+
+    /**
+     * Builds and renders a {@code Captcha} on the given executor, without blocking the caller.
+     *
+     * @param executor the executor generating the CAPTCHA
+     * @param deadline how long the CAPTCHA may take, or {@code null} for no deadline
+     * @return a future completed with a rendered {@code Captcha}
+     * @see CaptchaProfile#nextAsync(Executor, Duration)
+     */
+    public CompletableFuture<Captcha> buildAsync(Executor executor, Duration deadline) {
+      return compile().nextAsync(executor, deadline);
+    }
+
+    /**
+     * Builds {@code n} CAPTCHAs on the calling thread, sharing one {@link #compile() compiled}
+     * profile.
+     *
+     * @param n the number of CAPTCHAs
+     * @return a list of {@code n} new {@code Captcha} instances
+     * @throws IllegalArgumentException if {@code n} is negative
+     * @see CaptchaProfile#nextBatch(int)
+     */
+    public List<Captcha> buildBatch(int n) {
+      return compile().nextBatch(n);
+    }
+
+    /**
+     * Builds {@code n} CAPTCHAs on the given executor, sharing one {@link #compile() compiled}
+     * profile, and waits for them.
+     *
+     * @param n the number of CAPTCHAs
+     * @param executor the executor running the chunks
+     * @return a list of {@code n} new {@code Captcha} instances
+     * @throws IllegalArgumentException if {@code n} is negative
+     * @see CaptchaProfile#nextBatch(int, Executor)
+     */
+    public List<Captcha> buildBatch(int n, Executor executor) {
+      return compile().nextBatch(n, executor);
+    }
+
+    /**
+     * Compiles the current settings into an immutable, thread-safe {@code CaptchaProfile}. Later
+     * changes to this builder do not affect the profile.
+     *
+     * @return a new {@code CaptchaProfile}
+     */
+    public CaptchaProfile compile() {
+      assert charsToUse == null || !charsToUse.isBlank();
+      return new CaptchaProfile(this);
     }
 
     /**
@@ -234,5 +465,80 @@ public class Captcha {
       this.fontColor = color;
       return this;
     }
+
+    /**
+     * Enables or disables drawing the CAPTCHA text from the shared glyph atlas instead of
+     * rasterizing it with Java2D for every CAPTCHA.
+     *
+     * @param useGlyphAtlas whether to use the glyph atlas
+     * @return the builder instance
+     */
+    public Builder useGlyphAtlas(boolean useGlyphAtlas) {
+      this.useGlyphAtlas = useGlyphAtlas;
+      return this;
+    }
+
+    /**
+     * Enables or disables running the image filters of large CAPTCHAs in parallel on the common
+     * fork-join pool. Small CAPTCHAs are always filtered on the calling thread.
+     *
+     * @param parallelFilters whether to filter large CAPTCHAs in parallel
+     * @return the builder instance
+     */
+    public Builder parallelFilters(boolean parallelFilters) {
+      this.parallelFilters = parallelFilters;
+      return this;
+    }
+
+    /**
+     * Sets the listener receiving the time of every stage of the CAPTCHA: token, render, filters
+     * and encoding.
+     *
+     * @param metrics the metrics listener
+     * @return the builder instance
+     */
+    public Builder metrics(CaptchaMetrics metrics) {
+      this.metrics = Objects.requireNonNull(metrics, "metrics");
+      return this;
+    }
+
+    /**
+     * Sets the source of randomness of the token. Defaults to {@link
+     * RandomStringGenerator.Source#SECURE}, so tokens cannot be predicted from earlier ones.
+     *
+     * @param randomSource the source of randomness
+     * @return the builder instance
+     */
+    public Builder randomSource(RandomStringGenerator.Source randomSource) {
+      this.randomSource = Objects.requireNonNull(randomSource, "randomSource");
+      return this;
+    }
+
+    /**
+     * Sets the backend drawing the CAPTCHA text. {@link RenderBackend#BITMAP} draws from the font
+     * bundled with the library, so it needs no system font.
+     *
+     * @param renderBackend the render backend
+     * @return the builder instance
+     */
+    public Builder renderBackend(RenderBackend renderBackend) {
+      this.renderBackend = Objects.requireNonNull(renderBackend, "renderBackend");
+      return this;
+    }
+
+    /**
+     * Renders the CAPTCHA with one byte per pixel, a shade between the background and the font
+     * color, instead of a packed RGB pixel. Frames take a quarter of the memory and the palette
+     * encoders write them without quantizing; filters that need full color still work, on an RGB
+     * copy.
+     *
+     * @param compactColor whether to render in compact color
+     * @return the builder instance
+     * @see com.fedmag.verysimplecaptcha.generators.RenderConfig.Builder#compactColor(boolean)
+     */
+    public Builder compactColor(boolean compactColor) {
+      this.compactColor = compactColor;
+      return this;
+    }
   }
 }
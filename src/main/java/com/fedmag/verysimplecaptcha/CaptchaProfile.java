@@ -0,0 +1,283 @@
+package com.fedmag.verysimplecaptcha;
+
+import com.fedmag.verysimplecaptcha.concurrent.BoundedExecutors;
+import com.fedmag.verysimplecaptcha.generators.GlyphAtlas;
+import com.fedmag.verysimplecaptcha.generators.ImageRenderer;
+import com.fedmag.verysimplecaptcha.generators.RandomStringGenerator;
+import com.fedmag.verysimplecaptcha.generators.RenderConfig;
+import com.fedmag.verysimplecaptcha.generators.filters.ImageFilter;
+import com.fedmag.verysimplecaptcha.metrics.CaptchaMetrics;
+import com.fedmag.verysimplecaptcha.metrics.CaptchaStage;
+import com.fedmag.verysimplecaptcha.metrics.StageTimer;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.random.RandomGenerator;
+
+/**
+ * The {@code CaptchaProfile} class is a compiled {@link Captcha.Builder} configuration. It holds
+ * everything that is the same for every CAPTCHA of that configuration: the render configuration,
+ * the derived font, the filter pipeline with its kernels and the token settings.
+ *
+ * <p>{@link #next()} only does the per-CAPTCHA work: drawing a token and picking a rotation. The
+ * image is rendered and filtered when it is first requested from the {@link Captcha}, so tokens
+ * that are never shown cost no rendering. Profiles are immutable and thread-safe, so one profile
+ * per form can be kept in a static field and used from any thread, provided the image filters it
+ * was compiled with are themselves thread-safe, as the built-in filters are.
+ *
+ * <p>Every CAPTCHA derives from a {@link CaptchaSeed}: {@link #next(CaptchaSeed)} always produces
+ * the same token and the same image for the same seed, as long as the filters draw their random
+ * choices from {@link com.fedmag.verysimplecaptcha.generators.filters.PixelRaster#random()}, as
+ * the built-in filters do.
+ *
+ * <pre>{@code
+ * private static final CaptchaProfile PROFILE =
+ *     new Captcha.Builder().rotate(true).addImageFilter(new SimpleGaussianFilter()).compile();
+ *
+ * Captcha captcha = PROFILE.next();
+ * }</pre>
+ */
+public final class CaptchaProfile {
+
+  private final int numbOfChars;
+  private final String charsToUse;
+  private final RandomStringGenerator.Source randomSource;
+  private final boolean rotate;
+  private final int imageWidth;
+  private final int imageHeight;
+  private final CaptchaMetrics metrics;
+  private final ImageRenderer renderer;
+
+  /**
+   * Constructs a {@code CaptchaProfile} from a snapshot of the given builder. Use {@link
+   * Captcha.Builder#compile()}.
+   *
+   * @param builder the builder holding the configuration
+   */
+  CaptchaProfile(Captcha.Builder builder) {
+    this.numbOfChars = builder.numbOfChars;
+    this.charsToUse = builder.charsToUse;
+    this.randomSource = builder.randomSource;
+    this.rotate = builder.rotateString;
+    this.imageWidth = builder.imageWidth;
+    this.imageHeight = builder.imageHeight;
+    this.metrics = builder.metrics;
+
+    RenderConfig.Builder config =
+        new RenderConfig.Builder()
+            .metrics(metrics)
+            .renderBackend(builder.renderBackend)
+            .compactColor(builder.compactColor);
+    if (builder.statrtingPoint != null) {
+      config.startingPoint(builder.statrtingPoint);
+    }
+    if (builder.backgroundColor != null) {
+      config.backgroundColor(builder.backgroundColor);
+    }
+    if (builder.fontColor != null) {
+      config.fontColor(builder.fontColor);
+    }
+    if (builder.useGlyphAtlas) {
+      config.glyphAtlas(GlyphAtlas.shared());
+    }
+    if (builder.parallelFilters) {
+      config.parallelFilters(ForkJoinPool.commonPool());
+    }
+    for (ImageFilter filter : builder.filters) {
+      config.addImageFilter(filter);
+    }
+    this.renderer = new ImageRenderer(config.build());
+  }
+
+  /**
+   * Generates a new CAPTCHA from a new random seed, drawn from the configured source of
+   * randomness.
+   *
+   * @return a new {@code Captcha}
+   */
+  public Captcha next() {
+    StageTimer timer = StageTimer.start();
+    return next(CaptchaSeed.random(randomSource), timer);
+  }
+
+  /**
+   * Generates the CAPTCHA of the given seed. The token, the rotation and the image only depend on
+   * this profile and the seed, so a CAPTCHA can be rebuilt from its {@linkplain
+   * Captcha#getSeed() seed} at any time.
+   *
+   * @param seed the seed
+   * @return the {@code Captcha} of the seed
+   */
+  public Captcha next(CaptchaSeed seed) {
+    Objects.requireNonNull(seed, "seed");
+    return next(seed, StageTimer.start());
+  }
+
+  private Captcha next(CaptchaSeed seed, StageTimer timer) {
+    RandomGenerator random = seed.generator(CaptchaSeed.TOKEN_STREAM);
+    String token =
+        charsToUse == null
+            ? RandomStringGenerator.generate(numbOfChars, random)
+            : RandomStringGenerator.generate(numbOfChars, charsToUse, random);
+    AffineTransform rotation = rotate ? generateRotation(random) : null;
+    metrics.onToken(token.length(), timer.stop(CaptchaStage.TOKEN, null, 0));
+    return new Captcha(token, this, rotation, seed);
+  }
+
+  /**
+   * Generates and renders a CAPTCHA on the {@linkplain BoundedExecutors#shared() shared bounded
+   * executor}.
+   *
+   * @return a future completed with a rendered {@code Captcha}, or failed with a {@link
+   *     RejectedExecutionException} if the executor is full
+   * @see #nextAsync(Executor, Duration)
+   */
+  public CompletableFuture<Captcha> nextAsync() {
+    return nextAsync(BoundedExecutors.shared(), null);
+  }
+
+  /**
+   * Generates and renders a CAPTCHA on the given executor.
+   *
+   * <p>The returned future fails with a {@link TimeoutException} if the CAPTCHA is not ready
+   * within the deadline. Cancelling the future, or letting it time out, before the executor starts
+   * the task skips the generation altogether; a generation already running completes and its
+   * result is dropped. If the executor rejects the task, the future is returned already failed, so
+   * that callers never block.
+   *
+   * @param executor the executor generating the CAPTCHA
+   * @param deadline how long the CAPTCHA may take, or {@code null} for no deadline
+   * @return a future completed with a rendered {@code Captcha}
+   */
+  public CompletableFuture<Captcha> nextAsync(Executor executor, Duration deadline) {
+    Objects.requireNonNull(executor, "executor");
+    CompletableFuture<Captcha> future;
+    try {
+      future = CompletableFuture.supplyAsync(() -> next().render(), executor);
+    } catch (RejectedExecutionException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    return deadline == null ? future : future.orTimeout(deadline.toNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Generates {@code n} CAPTCHAs on the calling thread.
+   *
+   * @param n the number of CAPTCHAs
+   * @return a list of {@code n} new {@code Captcha} instances
+   * @throws IllegalArgumentException if {@code n} is negative
+   */
+  public List<Captcha> nextBatch(int n) {
+    requireBatchSize(n);
+    List<Captcha> batch = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      batch.add(next());
+    }
+    return batch;
+  }
+
+  /**
+   * Generates {@code n} CAPTCHAs on the given executor and waits for them. The batch is split into
+   * one chunk per available processor, and the CAPTCHAs are returned in chunk order. Unlike {@link
+   * #next()}, the images are rendered right away, on the executor.
+   *
+   * @param n the number of CAPTCHAs
+   * @param executor the executor running the chunks
+   * @return a list of {@code n} new {@code Captcha} instances
+   * @throws IllegalArgumentException if {@code n} is negative
+   */
+  public List<Captcha> nextBatch(int n, Executor executor) {
+    requireBatchSize(n);
+    Objects.requireNonNull(executor, "executor");
+    int chunks = Math.max(1, Math.min(n, Runtime.getRuntime().availableProcessors()));
+    List<CompletableFuture<List<Captcha>>> futures = new ArrayList<>(chunks);
+    for (int chunk = 0; chunk < chunks; chunk++) {
+      int size = n / chunks + (chunk < n % chunks ? 1 : 0);
+      futures.add(CompletableFuture.supplyAsync(() -> renderBatch(size), executor));
+    }
+    List<Captcha> batch = new ArrayList<>(n);
+    try {
+      for (CompletableFuture<List<Captcha>> future : futures) {
+        batch.addAll(future.join());
+      }
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+    return batch;
+  }
+
+  /**
+   * Returns the width of the generated images.
+   *
+   * @return the image width
+   */
+  public int getWidth() {
+    return imageWidth;
+  }
+
+  /**
+   * Returns the height of the generated images.
+   *
+   * @return the image height
+   */
+  public int getHeight() {
+    return imageHeight;
+  }
+
+  /**
+   * Returns the configuration the images are rendered with.
+   *
+   * @return the render configuration
+   */
+  public RenderConfig getRenderConfig() {
+    return renderer.getConfig();
+  }
+
+  /** Renders an image of this profile, with the filter draws of the given seed. */
+  BufferedImage render(String token, AffineTransform rotation, CaptchaSeed seed) {
+    return renderer.render(
+        token, imageWidth, imageHeight, rotation, seed.generator(CaptchaSeed.FILTER_STREAM));
+  }
+
+  private List<Captcha> renderBatch(int n) {
+    List<Captcha> batch = nextBatch(n);
+    for (Captcha captcha : batch) {
+      captcha.render();
+    }
+    return batch;
+  }
+
+  private static void requireBatchSize(int n) {
+    if (n < 0) {
+      throw new IllegalArgumentException("The batch size cannot be negative.");
+    }
+  }
+
+  /**
+   * Generates a random rotation for the CAPTCHA text.
+   *
+   * @param random the generator of the rotation
+   * @return the rotation to apply to the font
+   */
+  private static AffineTransform generateRotation(RandomGenerator random) {
+    double randomRotation = random.nextDouble();
+    if (randomRotation < 0.5d) {
+      randomRotation *= -1;
+    }
+    randomRotation = randomRotation * 30;
+    return AffineTransform.getRotateInstance(Math.toRadians(randomRotation));
+  }
+}
@@ -0,0 +1,274 @@
+package com.fedmag.verysimplecaptcha;
+
+import com.fedmag.verysimplecaptcha.concurrent.BoundedExecutors;
+import com.fedmag.verysimplecaptcha.encoding.CaptchaEncoder;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code CaptchaPublisher} class streams CAPTCHAs of one {@link CaptchaProfile} to {@link
+ * Flow.Subscriber}s, for reactive and event-loop servers that must not block their threads.
+ *
+ * <p>CAPTCHAs are only generated for outstanding demand: a subscriber that requests {@code n}
+ * items gets at most {@code n} generations, of which at most the configured parallelism run at
+ * once on the executor. Every item is rendered, and encoded if an encoder is set, before it is
+ * delivered, so the subscriber only copies bytes.
+ *
+ * <p>Every generation has its own deadline. A generation that misses it, fails, or is rejected by
+ * the executor ends the subscription with {@code onError}. Cancelling the subscription skips the
+ * generations the executor has not started yet and drops the results of the running ones. The
+ * stream never completes on its own.
+ *
+ * <p>A publisher supports any number of subscribers, each with its own independent stream. This
+ * class is thread-safe.
+ */
+public final class CaptchaPublisher implements Flow.Publisher<Captcha> {
+
+  private final CaptchaProfile profile;
+  private final Executor executor;
+  private final int parallelism;
+  private final Duration deadline;
+  private final CaptchaEncoder encoder;
+
+  private CaptchaPublisher(Builder builder) {
+    this.profile = builder.profile;
+    this.executor = builder.executor;
+    this.parallelism = builder.parallelism;
+    this.deadline = builder.deadline;
+    this.encoder = builder.encoder;
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super Captcha> subscriber) {
+    Objects.requireNonNull(subscriber, "subscriber");
+    subscriber.onSubscribe(new Subscription(subscriber));
+  }
+
+  private Captcha generate() {
+    Captcha captcha = profile.next().render();
+    if (encoder != null) {
+      try {
+        captcha.encode(encoder);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return captcha;
+  }
+
+  /** Adds two demands, capping the sum at {@code Long.MAX_VALUE}, which means unbounded. */
+  private static long addCapped(long current, long added) {
+    long sum = current + added;
+    return sum < 0 ? Long.MAX_VALUE : sum;
+  }
+
+  /**
+   * Delivers the CAPTCHAs of one subscriber. Every signal to the subscriber is made from {@link
+   * #drain()}, which only one thread runs at a time.
+   */
+  private final class Subscription implements Flow.Subscription {
+
+    private final Flow.Subscriber<? super Captcha> subscriber;
+    private final ConcurrentLinkedQueue<Captcha> ready = new ConcurrentLinkedQueue<>();
+    private final Set<CompletableFuture<Captcha>> running = ConcurrentHashMap.newKeySet();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger work = new AtomicInteger();
+    private volatile Throwable error;
+    private volatile boolean cancelled;
+    private boolean done;
+
+    private Subscription(Flow.Subscriber<? super Captcha> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        error = new IllegalArgumentException("The requested number must be positive.");
+      } else {
+        demand.accumulateAndGet(n, CaptchaPublisher::addCapped);
+      }
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      drain();
+    }
+
+    private void drain() {
+      if (work.getAndIncrement() != 0) {
+        return;
+      }
+      int missed = 1;
+      do {
+        if (done) {
+          return;
+        }
+        Captcha captcha;
+        while (!cancelled && demand.get() > 0 && (captcha = ready.poll()) != null) {
+          demand.decrementAndGet();
+          subscriber.onNext(captcha);
+        }
+        if (cancelled) {
+          terminate();
+          return;
+        }
+        if (error != null) {
+          terminate();
+          subscriber.onError(error);
+          return;
+        }
+        while (error == null
+            && inFlight.get() < parallelism
+            && inFlight.get() + ready.size() < demand.get()) {
+          launch();
+        }
+        missed = work.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    private void launch() {
+      inFlight.incrementAndGet();
+      CompletableFuture<Captcha> future;
+      try {
+        future = CompletableFuture.supplyAsync(CaptchaPublisher.this::generate, executor);
+      } catch (RejectedExecutionException e) {
+        future = CompletableFuture.failedFuture(e);
+      }
+      if (deadline != null) {
+        future = future.orTimeout(deadline.toNanos(), TimeUnit.NANOSECONDS);
+      }
+      CompletableFuture<Captcha> tracked = future;
+      running.add(tracked);
+      tracked.whenComplete(
+          (captcha, failure) -> {
+            running.remove(tracked);
+            if (failure != null) {
+              error = failure instanceof CompletionException ? failure.getCause() : failure;
+            } else {
+              ready.offer(captcha);
+            }
+            inFlight.decrementAndGet();
+            drain();
+          });
+    }
+
+    private void terminate() {
+      done = true;
+      cancelled = true;
+      for (CompletableFuture<Captcha> future : running) {
+        future.cancel(false);
+      }
+      ready.clear();
+    }
+  }
+
+  /** The {@code Builder} class is used to build {@code CaptchaPublisher} instances. */
+  public static final class Builder {
+
+    private final CaptchaProfile profile;
+    private Executor executor = BoundedExecutors.shared();
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private Duration deadline;
+    private CaptchaEncoder encoder;
+
+    /**
+     * Constructs a publisher builder for the given CAPTCHA builder, compiled right away.
+     *
+     * @param profile the builder used to generate the published CAPTCHAs
+     */
+    public Builder(Captcha.Builder profile) {
+      this(profile.compile());
+    }
+
+    /**
+     * Constructs a publisher builder for the given CAPTCHA profile.
+     *
+     * @param profile the profile used to generate the published CAPTCHAs
+     */
+    public Builder(CaptchaProfile profile) {
+      this.profile = Objects.requireNonNull(profile, "profile");
+    }
+
+    /**
+     * Builds and returns a {@code CaptchaPublisher}.
+     *
+     * @return a new {@code CaptchaPublisher}
+     */
+    public CaptchaPublisher build() {
+      return new CaptchaPublisher(this);
+    }
+
+    /**
+     * Sets the executor generating the CAPTCHAs. Defaults to the {@linkplain
+     * BoundedExecutors#shared() shared bounded executor}. The publisher never shuts it down.
+     *
+     * @param executor the generating executor
+     * @return the builder instance
+     */
+    public Builder executor(Executor executor) {
+      this.executor = Objects.requireNonNull(executor, "executor");
+      return this;
+    }
+
+    /**
+     * Sets the number of CAPTCHAs generated at once for each subscriber. Defaults to the number of
+     * processors.
+     *
+     * @param parallelism the number of concurrent generations
+     * @return the builder instance
+     * @throws IllegalArgumentException if the parallelism is smaller than 1
+     */
+    public Builder parallelism(int parallelism) {
+      if (parallelism < 1) {
+        throw new IllegalArgumentException("The parallelism cannot be smaller than 1.");
+      }
+      this.parallelism = parallelism;
+      return this;
+    }
+
+    /**
+     * Sets how long each generation may take, from its submission to the executor. Defaults to no
+     * deadline.
+     *
+     * @param deadline the deadline of every generation
+     * @return the builder instance
+     * @throws IllegalArgumentException if the deadline is not positive
+     */
+    public Builder deadline(Duration deadline) {
+      if (deadline.isZero() || deadline.isNegative()) {
+        throw new IllegalArgumentException("The deadline must be positive.");
+      }
+      this.deadline = deadline;
+      return this;
+    }
+
+    /**
+     * Encodes every CAPTCHA with the given encoder before delivering it, so that writing it out on
+     * the subscriber's thread only copies the cached bytes. Defaults to no encoding.
+     *
+     * @param encoder the image encoder
+     * @return the builder instance
+     */
+    public Builder encoder(CaptchaEncoder encoder) {
+      this.encoder = Objects.requireNonNull(encoder, "encoder");
+      return this;
+    }
+  }
+}
@@ -0,0 +1,212 @@
+package com.fedmag.verysimplecaptcha;
+
+import com.fedmag.verysimplecaptcha.generators.RandomStringGenerator;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * The {@code CaptchaSeed} class is the 128-bit seed every random choice of a CAPTCHA derives from:
+ * the token, the rotation of the text and the noise of the image filters.
+ *
+ * <p>{@link CaptchaProfile#next(CaptchaSeed)} is a pure function of the profile and the seed, so a
+ * server can keep the 16 bytes of the seed instead of the image and render the same CAPTCHA again
+ * whenever it is needed, and a benchmark can run on a fixed sequence of seeds. The token can be
+ * computed from the seed, so seeds must be kept as secret as the tokens themselves.
+ *
+ * <p>Every random choice draws from a {@code SplittableRandom} seeded with a hash of the 128 bits
+ * and of the purpose of the draws, so adding a filter does not change the token or the rotation.
+ * That generator has a 64-bit state: the 128 bits keep seeds from colliding when they are drawn
+ * at random, but the draws themselves have 64 bits of effective state.
+ *
+ * <p>Instances are immutable.
+ */
+public final class CaptchaSeed {
+
+  /** The length of a seed, in bytes. */
+  public static final int BYTES = 16;
+
+  /** The purpose of the draws choosing the token and the rotation. */
+  static final int TOKEN_STREAM = 0;
+
+  /** The purpose of the draws of the image filters. */
+  static final int FILTER_STREAM = 1;
+
+  private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+  // Secure seeds are read from a per-thread buffer refilled in bulk, 32 seeds at a time
+  private static final int SECURE_BUFFER_SIZE = 32 * BYTES;
+  private static final ThreadLocal<ByteBuffer> SECURE_BUFFER =
+      ThreadLocal.withInitial(
+          () -> ByteBuffer.allocate(SECURE_BUFFER_SIZE).position(SECURE_BUFFER_SIZE));
+  private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+  // Keeps the digests of seeds apart from SHA-256 hashes of the same bytes made for other purposes
+  private static final byte[] DIGEST_PREFIX =
+      "verysimplecaptcha.seed".getBytes(StandardCharsets.US_ASCII);
+
+  private final long high;
+  private final long low;
+
+  private CaptchaSeed(long high, long low) {
+    this.high = high;
+    this.low = low;
+  }
+
+  /**
+   * Returns the seed made of the given bits.
+   *
+   * @param high the 64 most significant bits
+   * @param low the 64 least significant bits
+   * @return the seed
+   */
+  public static CaptchaSeed of(long high, long low) {
+    return new CaptchaSeed(high, low);
+  }
+
+  /**
+   * Returns a new random seed.
+   *
+   * @param source the source of randomness; {@link RandomStringGenerator.Source#SECURE} makes
+   *     seeds, and so tokens, that cannot be predicted from earlier ones
+   * @return a new seed
+   */
+  public static CaptchaSeed random(RandomStringGenerator.Source source) {
+    if (source != RandomStringGenerator.Source.SECURE) {
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      return new CaptchaSeed(random.nextLong(), random.nextLong());
+    }
+    ByteBuffer buffer = SECURE_BUFFER.get();
+    if (!buffer.hasRemaining()) {
+      SECURE_RANDOM.nextBytes(buffer.array());
+      buffer.clear();
+    }
+    return new CaptchaSeed(buffer.getLong(), buffer.getLong());
+  }
+
+  /**
+   * Returns the seed stored in the given bytes, most significant first.
+   *
+   * @param bytes the {@value #BYTES} bytes of the seed
+   * @return the seed
+   * @throws IllegalArgumentException if the array does not hold exactly {@value #BYTES} bytes
+   */
+  public static CaptchaSeed fromBytes(byte[] bytes) {
+    if (bytes.length != BYTES) {
+      throw new IllegalArgumentException("A seed is exactly " + BYTES + " bytes long.");
+    }
+    return new CaptchaSeed(toLong(bytes, 0), toLong(bytes, Long.BYTES));
+  }
+
+  /**
+   * Parses a seed written by {@link #toString()}.
+   *
+   * @param hex the seed as 32 hexadecimal digits
+   * @return the seed
+   * @throws IllegalArgumentException if the string is not 32 hexadecimal digits
+   */
+  public static CaptchaSeed parse(String hex) {
+    if (hex.length() != 2 * BYTES) {
+      throw new IllegalArgumentException("A seed is written as " + 2 * BYTES + " hex digits.");
+    }
+    try {
+      return new CaptchaSeed(
+          Long.parseUnsignedLong(hex, 0, BYTES, 16),
+          Long.parseUnsignedLong(hex, BYTES, 2 * BYTES, 16));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("A seed is written as " + 2 * BYTES + " hex digits.", e);
+    }
+  }
+
+  /**
+   * Returns the bytes of this seed, most significant first.
+   *
+   * @return a new array of {@value #BYTES} bytes
+   */
+  public byte[] toBytes() {
+    byte[] bytes = new byte[BYTES];
+    for (int i = 0; i < Long.BYTES; i++) {
+      bytes[i] = (byte) (high >>> (Long.SIZE - Byte.SIZE * (i + 1)));
+      bytes[Long.BYTES + i] = (byte) (low >>> (Long.SIZE - Byte.SIZE * (i + 1)));
+    }
+    return bytes;
+  }
+
+  /**
+   * Returns a new generator of the draws with the given purpose. Two calls with the same purpose
+   * return generators producing the same values. The 128 bits of the seed are hashed into the
+   * 64-bit state of the generator.
+   *
+   * @param stream the purpose of the draws
+   * @return a new generator
+   */
+  RandomGenerator generator(int stream) {
+    return new SplittableRandom(mix(mix(high ^ (stream + 1) * GOLDEN_GAMMA) ^ low));
+  }
+
+  /**
+   * Returns a one-way digest of this seed: the first 128 bits of a SHA-256 hash, in hexadecimal.
+   * The digest identifies the seed without revealing it, so it can be published where the seed
+   * cannot.
+   *
+   * @return the digest as 32 hexadecimal digits
+   */
+  String digest() {
+    MessageDigest sha256;
+    try {
+      sha256 = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+    sha256.update(DIGEST_PREFIX);
+    byte[] hash = sha256.digest(toBytes());
+    return HexFormat.of().formatHex(hash, 0, BYTES);
+  }
+
+  private static long toLong(byte[] bytes, int offset) {
+    long value = 0;
+    for (int i = offset; i < offset + Long.BYTES; i++) {
+      value = (value << Byte.SIZE) | (bytes[i] & 0xff);
+    }
+    return value;
+  }
+
+  /** The finalizer of MurmurHash3, which spreads every input bit over the whole output. */
+  private static long mix(long z) {
+    z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+    z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    return z ^ (z >>> 33);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof CaptchaSeed)) {
+      return false;
+    }
+    CaptchaSeed other = (CaptchaSeed) o;
+    return high == other.high && low == other.low;
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(high) * 31 + Long.hashCode(low);
+  }
+
+  /**
+   * Returns the seed as 32 hexadecimal digits, which {@link #parse(String)} reads back.
+   *
+   * @return the seed in hexadecimal
+   */
+  @Override
+  public String toString() {
+    return String.format("%016x%016x", high, low);
+  }
+}
@@ -0,0 +1,35 @@
+package com.fedmag.verysimplecaptcha;
+
+/**
+ * The {@code ImageFormat} enum lists the formats a CAPTCHA image can be encoded to.
+ */
+public enum ImageFormat {
+  JPEG("jpeg", "image/jpeg"),
+  PNG("png", "image/png");
+
+  private final String formatName;
+  private final String mimeType;
+
+  ImageFormat(String formatName, String mimeType) {
+    this.formatName = formatName;
+    this.mimeType = mimeType;
+  }
+
+  /**
+   * Returns the informal format name understood by {@code javax.imageio.ImageIO}.
+   *
+   * @return the ImageIO format name
+   */
+  public String getFormatName() {
+    return formatName;
+  }
+
+  /**
+   * Returns the MIME type of the encoded image.
+   *
+   * @return the MIME type
+   */
+  public String getMimeType() {
+    return mimeType;
+  }
+}
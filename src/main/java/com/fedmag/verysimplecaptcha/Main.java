@@ -1,14 +1,73 @@
 package com.fedmag.verysimplecaptcha;
 
+import com.fedmag.verysimplecaptcha.adaptive.LoadSheddingController;
+import com.fedmag.verysimplecaptcha.corpus.CorpusWriter;
+import com.fedmag.verysimplecaptcha.encoding.CaptchaEncoder;
+import com.fedmag.verysimplecaptcha.encoding.CaptchaEncoders;
 import com.fedmag.verysimplecaptcha.generators.filters.SimpleGaussianFilter;
+import com.fedmag.verysimplecaptcha.server.CaptchaServer;
+import com.fedmag.verysimplecaptcha.verification.CaptchaSigner;
+import com.fedmag.verysimplecaptcha.verification.KeyRing;
 import java.awt.Point;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 import javax.imageio.ImageIO;
 
 public class Main {
 
+  private static final String USAGE =
+      "Usage: java -jar verysimplecaptcha.jar [serve|corpus [options]]\n"
+          + "Without arguments, writes one CAPTCHA to test.jpg.\n"
+          + "Options of both modes:\n"
+          + "  --width <pixels>        image width (200)\n"
+          + "  --height <pixels>       image height (80)\n"
+          + "  --chars <count>         number of characters (6)\n"
+          + "  --profile <name>        plain, standard or hard (standard)\n"
+          + "  --format <encoder>      jpeg, png or png-palette (jpeg)\n"
+          + "serve options:\n"
+          + "  --host <address>        address to listen on (all interfaces)\n"
+          + "  --port <port>           port to listen on (8080)\n"
+          + "  --concurrency <count>   requests handled at once (1024)\n"
+          + "  --pool <count>          ready-made CAPTCHAs kept in memory (256)\n"
+          + "  --signed                sign answers into the IDs instead of storing them\n"
+          + "  --adaptive              under load, step down from hard to standard, plain and\n"
+          + "                          pool-only serving, and back when load drops\n"
+          + "  --budget-ms <millis>    generation time that counts as load with --adaptive (20)\n"
+          + "corpus options:\n"
+          + "  --out <path>            base path of the .data and .idx files (corpus)\n"
+          + "  --count <count>         number of CAPTCHAs to append (1000000)\n"
+          + "  --threads <count>       generating threads (number of processors)\n"
+          + "--help prints this message.";
+  private static final Set<String> FLAGS = Set.of("signed", "adaptive");
+  private static final Set<String> VALUE_OPTIONS =
+      Set.of(
+          "width", "height", "chars", "profile", "format", "host", "port", "concurrency", "pool",
+          "budget-ms", "out", "count", "threads");
+
   public static void main(String[] args) throws IOException {
+    if (args.length > 0) {
+      if (Arrays.asList(args).contains("--help")) {
+        System.out.println(USAGE);
+        return;
+      }
+      Map<String, String> options = parseOptions(args);
+      if ("serve".equals(args[0])) {
+        serve(options);
+      } else if ("corpus".equals(args[0])) {
+        corpus(options);
+      } else {
+        System.err.println(USAGE);
+        System.exit(2);
+      }
+      return;
+    }
     Captcha captcha = new Captcha.Builder()
         .width(220)
         .height(220)
@@ -25,4 +84,104 @@ public class Main {
     }
     System.out.println("Encoded string: " + captcha.getImageAsBase64EncododedString());
   }
+
+  private static Map<String, String> parseOptions(String[] args) {
+    Map<String, String> options = new HashMap<>();
+    for (int i = 1; i < args.length; i++) {
+      String name = args[i].startsWith("--") ? args[i].substring(2) : "";
+      if (FLAGS.contains(name)) {
+        options.put(name, "true");
+      } else if (VALUE_OPTIONS.contains(name) && i + 1 < args.length) {
+        options.put(name, args[++i]);
+      } else {
+        System.err.println("Unknown option: " + args[i] + "\n" + USAGE);
+        System.exit(2);
+      }
+    }
+    return options;
+  }
+
+  private static Captcha.Builder captchaBuilder(Map<String, String> options) {
+    return captchaBuilder(options, options.getOrDefault("profile", "standard"));
+  }
+
+  private static Captcha.Builder captchaBuilder(Map<String, String> options, String profile) {
+    int width = Integer.parseInt(options.getOrDefault("width", "200"));
+    int height = Integer.parseInt(options.getOrDefault("height", "80"));
+    Captcha.Builder captcha = new Captcha.Builder()
+        .width(width)
+        .height(height)
+        .numberOfChars(Integer.parseInt(options.getOrDefault("chars", "6")))
+        .startingPoint(new Point(width / 20, height * 2 / 3));
+    switch (profile) {
+      case "plain":
+        break;
+      case "standard":
+        captcha.rotate(true).addImageFilter(new SimpleGaussianFilter());
+        break;
+      case "hard":
+        captcha.rotate(true).addImageFilter(new SimpleGaussianFilter(5, 2));
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown profile: " + profile);
+    }
+    return captcha;
+  }
+
+  private static CaptchaEncoder encoder(Map<String, String> options) {
+    return CaptchaEncoders.byName(options.getOrDefault("format", "jpeg"));
+  }
+
+  private static void serve(Map<String, String> options) throws IOException {
+    CaptchaServer.Builder server = options.containsKey("adaptive")
+        ? new CaptchaServer.Builder(loadSheddingController(options))
+        : new CaptchaServer.Builder(captchaBuilder(options));
+    server
+        .port(Integer.parseInt(options.getOrDefault("port", "8080")))
+        .maxConcurrentRequests(Integer.parseInt(options.getOrDefault("concurrency", "1024")))
+        .poolSize(Integer.parseInt(options.getOrDefault("pool", "256")))
+        .encoder(encoder(options));
+    if (options.containsKey("host")) {
+      server.host(options.get("host"));
+    }
+    if (options.containsKey("signed")) {
+      server.signer(new CaptchaSigner.Builder(KeyRing.random()).replayFilter(1 << 20).build());
+    }
+    CaptchaServer running = server.build().start();
+    Runtime.getRuntime().addShutdownHook(new Thread(running::close));
+    System.out.println("Serving CAPTCHAs on port " + running.getPort());
+  }
+
+  private static LoadSheddingController loadSheddingController(Map<String, String> options) {
+    int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "1024"));
+    return new LoadSheddingController.Builder()
+        .tier(captchaBuilder(options, "hard"))
+        .tier(captchaBuilder(options, "standard"))
+        .tier(captchaBuilder(options, "plain"))
+        .poolOnly(true)
+        .latencyBudget(
+            Duration.ofMillis(Long.parseLong(options.getOrDefault("budget-ms", "20"))))
+        .queueDepthBudget(Math.max(1, concurrency / 4))
+        .listener(
+            (previous, tier, meanNanos, depth) ->
+                System.out.printf(
+                    "Tier %d -> %d (mean generation %.2f ms, queue depth %d)%n",
+                    previous, tier, meanNanos / 1e6, depth))
+        .build();
+  }
+
+  private static void corpus(Map<String, String> options) throws IOException {
+    CorpusWriter.Builder writer = new CorpusWriter.Builder(captchaBuilder(options))
+        .encoder(encoder(options));
+    if (options.containsKey("threads")) {
+      writer.threads(Integer.parseInt(options.get("threads")));
+    }
+    Path base = Paths.get(options.getOrDefault("out", "corpus"));
+    int count = Integer.parseInt(options.getOrDefault("count", "1000000"));
+    long start = System.nanoTime();
+    long entries = writer.build().write(base, count);
+    System.out.printf(
+        "Appended %d CAPTCHAs in %.1f s; %s now holds %d.%n",
+        count, (System.nanoTime() - start) / 1e9, base, entries);
+  }
 }
@@ -0,0 +1,79 @@
+package com.fedmag.verysimplecaptcha;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * The {@code Streams} class adapts caller-owned streams so that encoders can be closed to flush
+ * their final bytes without closing the stream underneath.
+ *
+ * <p>This class cannot be instantiated.
+ */
+final class Streams {
+
+  /** Private constructor to prevent instantiation. */
+  private Streams() {}
+
+  /**
+   * Returns a stream writing to the given stream whose {@code close()} only flushes.
+   *
+   * @param out the caller-owned stream
+   * @return a stream that leaves {@code out} open when closed
+   */
+  static OutputStream nonClosing(OutputStream out) {
+    return new FilterOutputStream(out) {
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+      }
+
+      @Override
+      public void close() throws IOException {
+        flush();
+      }
+    };
+  }
+
+  /**
+   * Returns a stream writing each byte to the given writer as the ASCII character of the same
+   * value. It is meant for ASCII-only output such as Base64.
+   *
+   * @param writer the caller-owned writer
+   * @return a stream that leaves {@code writer} open when closed
+   */
+  static OutputStream asciiTo(Writer writer) {
+    return new OutputStream() {
+      private final char[] buffer = new char[1024];
+
+      @Override
+      public void write(int b) throws IOException {
+        writer.write(b & 0x7f);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+          int chunk = Math.min(len, buffer.length);
+          for (int i = 0; i < chunk; i++) {
+            buffer[i] = (char) (b[off + i] & 0x7f);
+          }
+          writer.write(buffer, 0, chunk);
+          off += chunk;
+          len -= chunk;
+        }
+      }
+
+      @Override
+      public void flush() throws IOException {
+        writer.flush();
+      }
+
+      @Override
+      public void close() throws IOException {
+        flush();
+      }
+    };
+  }
+}
@@ -0,0 +1,429 @@
+package com.fedmag.verysimplecaptcha.adaptive;
+
+import com.fedmag.verysimplecaptcha.Captcha;
+import com.fedmag.verysimplecaptcha.CaptchaProfile;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The {@code LoadSheddingController} class lowers the cost of CAPTCHA generation under pressure by
+ * switching between profile tiers, from the most expensive to the cheapest.
+ *
+ * <p>Callers report how long every CAPTCHA took to generate and how many requests are queued. At
+ * the end of every window the controller compares the mean generation time and the deepest queue
+ * of the window with their budgets: if either is over budget it moves one tier down, to a cheaper
+ * profile. Once both have stayed under their budgets times the recovery ratio for the configured
+ * number of windows it moves one tier back up. Since cheaper tiers generate faster, the margin and
+ * the number of calm windows keep the controller from bouncing between two tiers.
+ *
+ * <p>With {@link Builder#poolOnly(boolean)} the last tier is pool-only: {@link #isPoolOnly()}
+ * tells servers to stop generating CAPTCHAs on request threads and to serve only what their pool
+ * holds, while the pool keeps refilling with the cheapest profile.
+ *
+ * <p>Every tier change is passed to the listeners, counted, and recorded as a JFR event.
+ *
+ * <pre>{@code
+ * LoadSheddingController controller = new LoadSheddingController.Builder()
+ *     .tier(new Captcha.Builder().rotate(true).addImageFilter(new SimpleGaussianFilter(5, 2)))
+ *     .tier(new Captcha.Builder().rotate(true).addImageFilter(new SimpleGaussianFilter()))
+ *     .tier(new Captcha.Builder())
+ *     .poolOnly(true)
+ *     .latencyBudget(Duration.ofMillis(5))
+ *     .build();
+ * }</pre>
+ *
+ * <p>This class is thread-safe. Recording costs a few atomic operations; evaluating a window takes
+ * a lock, once per window.
+ */
+public final class LoadSheddingController {
+
+  /** The {@code TierListener} interface is notified of every tier change. */
+  @FunctionalInterface
+  public interface TierListener {
+
+    /**
+     * Called after the controller moved to another tier, on the thread that closed the window.
+     * Listeners should return quickly.
+     *
+     * @param previousTier the tier before the change
+     * @param tier the tier after the change; higher tiers are cheaper
+     * @param meanGenerationNanos the mean generation time over the window
+     * @param queueDepth the deepest queue seen over the window
+     */
+    void onTierChange(int previousTier, int tier, long meanGenerationNanos, int queueDepth);
+  }
+
+  private final CaptchaProfile[] profiles;
+  private final int tierCount;
+  private final long latencyBudgetNanos;
+  private final int queueDepthBudget;
+  private final double recoveryRatio;
+  private final int recoveryWindows;
+  private final long windowNanos;
+  private final LongSupplier clock;
+  private final List<TierListener> listeners;
+
+  private volatile int tier;
+  private volatile long windowEnd;
+  private int calmWindows;
+
+  private final LongAdder samples = new LongAdder();
+  private final LongAdder generationNanos = new LongAdder();
+  private final AtomicInteger maxQueueDepth = new AtomicInteger();
+  private final AtomicLong lastMeanGenerationNanos = new AtomicLong();
+  private final LongAdder tierChanges = new LongAdder();
+  private final AtomicLongArray tierEntries;
+
+  private LoadSheddingController(Builder builder) {
+    this.profiles = builder.profiles.toArray(new CaptchaProfile[0]);
+    this.tierCount = profiles.length + (builder.poolOnly ? 1 : 0);
+    this.latencyBudgetNanos = builder.latencyBudget.toNanos();
+    this.queueDepthBudget = builder.queueDepthBudget;
+    this.recoveryRatio = builder.recoveryRatio;
+    this.recoveryWindows = builder.recoveryWindows;
+    this.windowNanos = builder.window.toNanos();
+    this.clock = builder.clock;
+    this.listeners = new CopyOnWriteArrayList<>(builder.listeners);
+    this.tierEntries = new AtomicLongArray(tierCount);
+    this.windowEnd = clock.getAsLong() + windowNanos;
+  }
+
+  /**
+   * Returns the profile of the current tier. In the pool-only tier this is the cheapest profile,
+   * which pools keep refilling with.
+   *
+   * @return the current profile
+   */
+  public CaptchaProfile getProfile() {
+    return profiles[Math.min(tier, profiles.length - 1)];
+  }
+
+  /**
+   * Generates a CAPTCHA with the profile of the current tier, renders it right away and records
+   * the time it took.
+   *
+   * @return a new, rendered {@code Captcha}
+   */
+  public Captcha next() {
+    long start = clock.getAsLong();
+    Captcha captcha = getProfile().next();
+    captcha.getImage();
+    recordGeneration(clock.getAsLong() - start);
+    return captcha;
+  }
+
+  /**
+   * Records how long one CAPTCHA took to generate, including encoding if it was encoded.
+   *
+   * @param nanos the generation time in nanoseconds
+   */
+  public void recordGeneration(long nanos) {
+    samples.increment();
+    generationNanos.add(nanos);
+    maybeEvaluate();
+  }
+
+  /**
+   * Records the number of requests waiting for or holding a CAPTCHA.
+   *
+   * @param depth the queue depth
+   */
+  public void recordQueueDepth(int depth) {
+    if (depth > maxQueueDepth.get()) {
+      maxQueueDepth.accumulateAndGet(depth, Math::max);
+    }
+    maybeEvaluate();
+  }
+
+  /**
+   * Closes the current window now and changes tier if it calls for it. Windows are otherwise
+   * closed by the first recording after their end.
+   */
+  public synchronized void evaluate() {
+    windowEnd = clock.getAsLong() + windowNanos;
+    long count = samples.sumThenReset();
+    long total = generationNanos.sumThenReset();
+    int depth = maxQueueDepth.getAndSet(0);
+    long mean = count == 0 ? 0 : total / count;
+    lastMeanGenerationNanos.set(mean);
+
+    int current = tier;
+    if (mean > latencyBudgetNanos || depth > queueDepthBudget) {
+      calmWindows = 0;
+      if (current < tierCount - 1) {
+        changeTier(current, current + 1, mean, depth);
+      }
+    } else if (mean <= latencyBudgetNanos * recoveryRatio
+        && depth <= queueDepthBudget * recoveryRatio) {
+      if (++calmWindows >= recoveryWindows && current > 0) {
+        calmWindows = 0;
+        changeTier(current, current - 1, mean, depth);
+      }
+    } else {
+      calmWindows = 0;
+    }
+  }
+
+  /**
+   * Returns the current tier, from 0 for the most expensive profile.
+   *
+   * @return the current tier
+   */
+  public int getTier() {
+    return tier;
+  }
+
+  /**
+   * Returns the number of tiers, including the pool-only tier if there is one.
+   *
+   * @return the number of tiers
+   */
+  public int getTierCount() {
+    return tierCount;
+  }
+
+  /**
+   * Returns whether the controller is in the pool-only tier, in which CAPTCHAs should only be
+   * served from a pool.
+   *
+   * @return {@code true} in the pool-only tier
+   */
+  public boolean isPoolOnly() {
+    return tier >= profiles.length;
+  }
+
+  /**
+   * Returns the number of tier changes so far.
+   *
+   * @return the number of tier changes
+   */
+  public long getTierChangeCount() {
+    return tierChanges.sum();
+  }
+
+  /**
+   * Returns how many times the controller moved into the given tier.
+   *
+   * @param tier the tier
+   * @return the number of times the tier was entered
+   * @throws IndexOutOfBoundsException if there is no such tier
+   */
+  public long getTierEntryCount(int tier) {
+    return tierEntries.get(Objects.checkIndex(tier, tierCount));
+  }
+
+  /**
+   * Returns the mean generation time of the last closed window.
+   *
+   * @return the mean generation time in nanoseconds, or 0 if nothing was generated
+   */
+  public long getLastMeanGenerationNanos() {
+    return lastMeanGenerationNanos.get();
+  }
+
+  /**
+   * Adds a listener notified of every later tier change.
+   *
+   * @param listener the listener
+   */
+  public void addListener(TierListener listener) {
+    listeners.add(Objects.requireNonNull(listener, "listener"));
+  }
+
+  private void maybeEvaluate() {
+    if (clock.getAsLong() - windowEnd >= 0) {
+      synchronized (this) {
+        // another thread may have closed the window meanwhile
+        if (clock.getAsLong() - windowEnd >= 0) {
+          evaluate();
+        }
+      }
+    }
+  }
+
+  private void changeTier(int previous, int next, long mean, int depth) {
+    tier = next;
+    tierChanges.increment();
+    tierEntries.incrementAndGet(next);
+    TierChangeEvent event = new TierChangeEvent();
+    if (event.shouldCommit()) {
+      event.previousTier = previous;
+      event.tier = next;
+      event.meanGenerationNanos = mean;
+      event.queueDepth = depth;
+      event.commit();
+    }
+    for (TierListener listener : listeners) {
+      listener.onTierChange(previous, next, mean, depth);
+    }
+  }
+
+  /** The {@code Builder} class is used to build {@code LoadSheddingController} instances. */
+  public static final class Builder {
+
+    private final List<CaptchaProfile> profiles = new ArrayList<>();
+    private final List<TierListener> listeners = new ArrayList<>();
+    private boolean poolOnly = false;
+    private Duration latencyBudget = Duration.ofMillis(20);
+    private int queueDepthBudget = 64;
+    private double recoveryRatio = 0.5d;
+    private int recoveryWindows = 5;
+    private Duration window = Duration.ofSeconds(1);
+    private LongSupplier clock = System::nanoTime;
+
+    /**
+     * Builds and returns a {@code LoadSheddingController}, starting in tier 0.
+     *
+     * @return a new {@code LoadSheddingController}
+     * @throws IllegalArgumentException if no tier was added
+     */
+    public LoadSheddingController build() {
+      if (profiles.isEmpty()) {
+        throw new IllegalArgumentException("At least one tier is required.");
+      }
+      return new LoadSheddingController(this);
+    }
+
+    /**
+     * Adds a tier, compiling the given builder right away. Tiers are added from the most expensive
+     * to the cheapest.
+     *
+     * @param profile the builder of the tier
+     * @return the builder instance
+     */
+    public Builder tier(Captcha.Builder profile) {
+      return tier(profile.compile());
+    }
+
+    /**
+     * Adds a tier. Tiers are added from the most expensive to the cheapest.
+     *
+     * @param profile the profile of the tier
+     * @return the builder instance
+     */
+    public Builder tier(CaptchaProfile profile) {
+      profiles.add(Objects.requireNonNull(profile, "profile"));
+      return this;
+    }
+
+    /**
+     * Adds a last, pool-only tier below the cheapest profile. Defaults to {@code false}.
+     *
+     * @param poolOnly whether to add a pool-only tier
+     * @return the builder instance
+     */
+    public Builder poolOnly(boolean poolOnly) {
+      this.poolOnly = poolOnly;
+      return this;
+    }
+
+    /**
+     * Sets the mean generation time above which the controller moves to a cheaper tier. Defaults
+     * to 20 ms.
+     *
+     * @param latencyBudget the generation time budget
+     * @return the builder instance
+     */
+    public Builder latencyBudget(Duration latencyBudget) {
+      this.latencyBudget = requirePositive(latencyBudget, "latency budget");
+      return this;
+    }
+
+    /**
+     * Sets the queue depth above which the controller moves to a cheaper tier. Defaults to 64.
+     *
+     * @param queueDepthBudget the queue depth budget
+     * @return the builder instance
+     * @throws IllegalArgumentException if the budget is smaller than 1
+     */
+    public Builder queueDepthBudget(int queueDepthBudget) {
+      if (queueDepthBudget < 1) {
+        throw new IllegalArgumentException("The queue depth budget cannot be smaller than 1.");
+      }
+      this.queueDepthBudget = queueDepthBudget;
+      return this;
+    }
+
+    /**
+     * Sets the fraction of the budgets that both measurements must stay under before the
+     * controller moves back to a more expensive tier. Defaults to 0.5.
+     *
+     * @param recoveryRatio the recovery ratio
+     * @return the builder instance
+     * @throws IllegalArgumentException if the ratio is not greater than 0 and at most 1
+     */
+    public Builder recoveryRatio(double recoveryRatio) {
+      if (!(recoveryRatio > 0d && recoveryRatio <= 1d)) {
+        throw new IllegalArgumentException("The recovery ratio must be in (0, 1].");
+      }
+      this.recoveryRatio = recoveryRatio;
+      return this;
+    }
+
+    /**
+     * Sets the number of consecutive calm windows after which the controller moves back to a more
+     * expensive tier. Defaults to 5.
+     *
+     * @param recoveryWindows the number of calm windows
+     * @return the builder instance
+     * @throws IllegalArgumentException if the number is smaller than 1
+     */
+    public Builder recoveryWindows(int recoveryWindows) {
+      if (recoveryWindows < 1) {
+        throw new IllegalArgumentException(
+            "The number of recovery windows cannot be smaller than 1.");
+      }
+      this.recoveryWindows = recoveryWindows;
+      return this;
+    }
+
+    /**
+     * Sets the length of the windows measurements are averaged over. Defaults to one second.
+     *
+     * @param window the window length
+     * @return the builder instance
+     */
+    public Builder window(Duration window) {
+      this.window = requirePositive(window, "window");
+      return this;
+    }
+
+    /**
+     * Adds a listener notified of every tier change.
+     *
+     * @param listener the listener
+     * @return the builder instance
+     */
+    public Builder listener(TierListener listener) {
+      listeners.add(Objects.requireNonNull(listener, "listener"));
+      return this;
+    }
+
+    /**
+     * Sets the clock, in nanoseconds, used to close windows and time {@link
+     * LoadSheddingController#next()}. Meant for tests.
+     *
+     * @param clock the clock
+     * @return the builder instance
+     */
+    public Builder clock(LongSupplier clock) {
+      this.clock = Objects.requireNonNull(clock, "clock");
+      return this;
+    }
+
+    private static Duration requirePositive(Duration duration, String name) {
+      if (duration.isZero() || duration.isNegative()) {
+        throw new IllegalArgumentException("The " + name + " must be positive.");
+      }
+      return duration;
+    }
+  }
+}
@@ -0,0 +1,33 @@
+package com.fedmag.verysimplecaptcha.adaptive;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/** JFR event recording a tier change of a {@link LoadSheddingController}. */
+@Name("com.fedmag.verysimplecaptcha.TierChange")
+@Label("Captcha Tier Change")
+@Category("VerySimpleCaptcha")
+@Description("The load-shedding controller moved to a cheaper or a more expensive tier")
+@StackTrace(false)
+final class TierChangeEvent extends Event {
+
+  @Label("Previous Tier")
+  int previousTier;
+
+  @Label("Tier")
+  int tier;
+
+  @Label("Mean Generation Time")
+  @Description("The mean generation time over the window that caused the change")
+  @Timespan
+  long meanGenerationNanos;
+
+  @Label("Queue Depth")
+  @Description("The deepest queue seen over the window that caused the change")
+  int queueDepth;
+}
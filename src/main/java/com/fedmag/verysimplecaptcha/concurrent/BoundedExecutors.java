@@ -0,0 +1,73 @@
+package com.fedmag.verysimplecaptcha.concurrent;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code BoundedExecutors} class creates executors for CPU-bound CAPTCHA generation that bound
+ * both the number of threads and the number of waiting tasks.
+ *
+ * <p>A task submitted to a full executor is rejected with a {@link
+ * java.util.concurrent.RejectedExecutionException} instead of queueing without limit, so callers on
+ * event-loop threads learn right away that generation cannot keep up. Idle threads stop after a
+ * while, so an unused executor holds no threads.
+ *
+ * <p>This class cannot be instantiated.
+ */
+public final class BoundedExecutors {
+
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  /** Private constructor to prevent instantiation. */
+  private BoundedExecutors() {}
+
+  /**
+   * Returns the executor shared by the asynchronous methods of the library: one daemon thread per
+   * processor and 1024 waiting tasks per thread.
+   *
+   * @return the shared executor
+   */
+  public static ExecutorService shared() {
+    return Shared.EXECUTOR;
+  }
+
+  /**
+   * Creates an executor with a fixed number of daemon threads and a bounded queue.
+   *
+   * @param namePrefix the thread name prefix
+   * @param threads the number of threads
+   * @param queueCapacity the number of tasks that can wait for a thread
+   * @return a new executor
+   * @throws IllegalArgumentException if the number of threads or the capacity is smaller than 1
+   */
+  public static ExecutorService newBoundedExecutor(
+      String namePrefix, int threads, int queueCapacity) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("The number of threads cannot be smaller than 1.");
+    }
+    if (queueCapacity < 1) {
+      throw new IllegalArgumentException("The queue capacity cannot be smaller than 1.");
+    }
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            VirtualThreads.daemonThreadFactory(namePrefix),
+            new ThreadPoolExecutor.AbortPolicy());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /** Holds the shared executor, created on first use. */
+  private static final class Shared {
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    private static final ExecutorService EXECUTOR =
+        newBoundedExecutor("captcha-async", THREADS, THREADS * 1024);
+  }
+}
@@ -0,0 +1,74 @@
+package com.fedmag.verysimplecaptcha.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code VirtualThreads} class creates executors backed by virtual threads when the running
+ * JVM provides them (Java 21 and later).
+ *
+ * <p>The library is compiled for Java 17, so virtual threads are looked up reflectively. On older
+ * runtimes the methods fall back to platform daemon threads.
+ *
+ * <p>This class cannot be instantiated.
+ */
+public final class VirtualThreads {
+
+  private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findFactoryMethod();
+
+  /** Private constructor to prevent instantiation. */
+  private VirtualThreads() {}
+
+  private static Method findFactoryMethod() {
+    try {
+      return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns whether the running JVM supports virtual threads.
+   *
+   * @return {@code true} if virtual threads are available
+   */
+  public static boolean isAvailable() {
+    return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+  }
+
+  /**
+   * Creates an executor that starts a new virtual thread for each task. When virtual threads are
+   * not available, a cached pool of daemon threads is returned instead.
+   *
+   * @param namePrefix the name prefix of the fallback platform threads
+   * @return a new executor
+   */
+  public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+    if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null) {
+      try {
+        return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+      } catch (ReflectiveOperationException e) {
+        // fall through to platform threads
+      }
+    }
+    return Executors.newCachedThreadPool(daemonThreadFactory(namePrefix));
+  }
+
+  /**
+   * Creates a thread factory producing named daemon threads.
+   *
+   * @param namePrefix the thread name prefix
+   * @return a new thread factory
+   */
+  public static ThreadFactory daemonThreadFactory(String namePrefix) {
+    AtomicInteger counter = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, namePrefix + "-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
@@ -0,0 +1,148 @@
+package com.fedmag.verysimplecaptcha.corpus;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * The {@code CorpusFormat} class defines the two files of a CAPTCHA corpus.
+ *
+ * <p>The data file, {@code <base>.data}, starts with the 4-byte magic number {@code VSCD} and a
+ * version byte padded to 8 bytes, followed by the encoded images back to back. It is only ever
+ * appended to.
+ *
+ * <p>The index file, {@code <base>.idx}, starts with a 64-byte header: the magic number {@code
+ * VSCI}, a version byte, the length of the MIME type, two bytes of padding, the 16-byte salt of the
+ * answer hashes and the ASCII MIME type of the images. Every entry is then 32 bytes: the offset of
+ * the image in the data file (8 bytes), its length (4 bytes), 4 reserved bytes and the first 16
+ * bytes of the SHA-256 hash of the salt followed by the UTF-8 answer. An entry is written only
+ * after its image, so the index never points past the data.
+ *
+ * <p>This class cannot be instantiated.
+ */
+final class CorpusFormat {
+
+  static final int VERSION = 1;
+  static final int DATA_HEADER_LENGTH = 8;
+  static final int INDEX_HEADER_LENGTH = 64;
+  static final int ENTRY_LENGTH = 32;
+  static final int SALT_LENGTH = 16;
+  static final int HASH_LENGTH = 16;
+
+  private static final byte[] DATA_MAGIC = "VSCD".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] INDEX_MAGIC = "VSCI".getBytes(StandardCharsets.US_ASCII);
+  private static final int MIME_OFFSET = 8 + SALT_LENGTH;
+  private static final int MAX_MIME_LENGTH = INDEX_HEADER_LENGTH - MIME_OFFSET;
+
+  /** Private constructor to prevent instantiation. */
+  private CorpusFormat() {}
+
+  static Path dataFile(Path base) {
+    return base.resolveSibling(base.getFileName() + ".data");
+  }
+
+  static Path indexFile(Path base) {
+    return base.resolveSibling(base.getFileName() + ".idx");
+  }
+
+  static ByteBuffer dataHeader() {
+    ByteBuffer header = ByteBuffer.allocate(DATA_HEADER_LENGTH);
+    header.put(DATA_MAGIC).put((byte) VERSION).clear();
+    return header;
+  }
+
+  static ByteBuffer indexHeader(byte[] salt, String mimeType) {
+    byte[] mime = mimeType.getBytes(StandardCharsets.US_ASCII);
+    if (mime.length > MAX_MIME_LENGTH) {
+      throw new IllegalArgumentException("The MIME type is longer than " + MAX_MIME_LENGTH + ".");
+    }
+    ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_LENGTH);
+    header.put(INDEX_MAGIC).put((byte) VERSION).put((byte) mime.length);
+    header.position(8);
+    header.put(salt).put(mime).clear();
+    return header;
+  }
+
+  /**
+   * Reads and checks the header of a data file.
+   *
+   * @throws IOException if the file does not start with a data header
+   */
+  static void checkDataHeader(FileChannel data) throws IOException {
+    ByteBuffer header = readFully(data, 0, DATA_HEADER_LENGTH);
+    checkMagic(header, DATA_MAGIC, "data");
+  }
+
+  /**
+   * Reads and checks the header of an index file.
+   *
+   * @return the header, positioned after the version
+   * @throws IOException if the file does not start with an index header
+   */
+  static ByteBuffer readIndexHeader(FileChannel index) throws IOException {
+    ByteBuffer header = readFully(index, 0, INDEX_HEADER_LENGTH);
+    checkMagic(header, INDEX_MAGIC, "index");
+    return header;
+  }
+
+  static byte[] salt(ByteBuffer indexHeader) {
+    byte[] salt = new byte[SALT_LENGTH];
+    indexHeader.get(8, salt);
+    return salt;
+  }
+
+  static String mimeType(ByteBuffer indexHeader) throws IOException {
+    int length = indexHeader.get(5) & 0xff;
+    if (length > MAX_MIME_LENGTH) {
+      throw new IOException("Corrupt corpus index header.");
+    }
+    byte[] mime = new byte[length];
+    indexHeader.get(MIME_OFFSET, mime);
+    return new String(mime, StandardCharsets.US_ASCII);
+  }
+
+  static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Hashes an answer with the salt of a corpus. */
+  static byte[] hash(MessageDigest digest, byte[] salt, String answer) {
+    digest.update(salt);
+    byte[] hash = digest.digest(answer.getBytes(StandardCharsets.UTF_8));
+    return Arrays.copyOf(hash, HASH_LENGTH);
+  }
+
+  private static void checkMagic(ByteBuffer header, byte[] magic, String kind)
+      throws IOException {
+    byte[] actual = new byte[magic.length];
+    header.get(0, actual);
+    if (!Arrays.equals(actual, magic)) {
+      throw new IOException("Not a corpus " + kind + " file.");
+    }
+    int version = header.get(magic.length) & 0xff;
+    if (version != VERSION) {
+      throw new IOException("Unsupported corpus version " + version + ".");
+    }
+  }
+
+  private static ByteBuffer readFully(FileChannel channel, long position, int length)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Truncated corpus file.");
+      }
+    }
+    return buffer;
+  }
+}
@@ -0,0 +1,290 @@
+package com.fedmag.verysimplecaptcha.corpus;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code CorpusReader} class serves the CAPTCHAs of a corpus written by a {@link CorpusWriter}
+ * without rendering or encoding anything.
+ *
+ * <p>Both files are memory-mapped. {@link #next()} hands out every entry once, in the order of a
+ * permutation of the corpus keyed with random keys drawn when the reader is opened (see {@link
+ * EntryPermutation}), and returns -1 once the corpus is exhausted. The image of an
+ * entry can be read as a slice of the mapping, or sent with {@link #transferTo(int,
+ * WritableByteChannel)}, which lets the operating system copy it from the page cache to a socket
+ * without passing it through the heap.
+ *
+ * <p>The reader tracks which entries were served and which were used. An entry is used by its first
+ * {@link #verify(int, String)}, whatever the outcome, so each answer can be tried only once.
+ * Entry numbers are sequential: hand them to clients only together with a proof that they were
+ * served, or check {@link #isServed(int)} before verifying.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class CorpusReader implements AutoCloseable {
+
+  // Data segments are mapped 1 GiB apart and overlap by the longest image, so every image lies
+  // entirely within the segment its offset falls in
+  private static final int SEGMENT_SHIFT = 30;
+  private static final ThreadLocal<MessageDigest> DIGEST =
+      ThreadLocal.withInitial(CorpusFormat::newDigest);
+
+  private final FileChannel data;
+  private final MappedByteBuffer index;
+  private final MappedByteBuffer[] segments;
+  private final byte[] salt;
+  private final String mimeType;
+  private final int size;
+
+  private final EntryPermutation order;
+  private final AtomicLong cursor = new AtomicLong();
+  private final AtomicLongArray served;
+  private final AtomicLongArray used;
+  private final LongAdder servedCount = new LongAdder();
+  private final LongAdder usedCount = new LongAdder();
+
+  private CorpusReader(FileChannel data, FileChannel indexChannel) throws IOException {
+    this.data = data;
+    ByteBuffer header = CorpusFormat.readIndexHeader(indexChannel);
+    CorpusFormat.checkDataHeader(data);
+    this.salt = CorpusFormat.salt(header);
+    this.mimeType = CorpusFormat.mimeType(header);
+    long entries =
+        (indexChannel.size() - CorpusFormat.INDEX_HEADER_LENGTH) / CorpusFormat.ENTRY_LENGTH;
+    if (entries * CorpusFormat.ENTRY_LENGTH > Integer.MAX_VALUE - CorpusFormat.ENTRY_LENGTH) {
+      throw new IOException("The corpus has too many entries to be mapped.");
+    }
+    this.size = (int) entries;
+    this.index =
+        indexChannel.map(
+            FileChannel.MapMode.READ_ONLY,
+            CorpusFormat.INDEX_HEADER_LENGTH,
+            (long) size * CorpusFormat.ENTRY_LENGTH);
+    this.segments = mapSegments();
+
+    this.order = new EntryPermutation(size, new SecureRandom());
+    this.served = new AtomicLongArray((size + 63) / 64);
+    this.used = new AtomicLongArray((size + 63) / 64);
+  }
+
+  /**
+   * Opens the corpus with the given base path.
+   *
+   * @param base the base path of the {@code .data} and {@code .idx} files
+   * @return a reader over the corpus
+   * @throws IOException if the files cannot be read or are not a corpus
+   */
+  public static CorpusReader open(Path base) throws IOException {
+    FileChannel data = FileChannel.open(CorpusFormat.dataFile(base), StandardOpenOption.READ);
+    try (FileChannel index =
+        FileChannel.open(CorpusFormat.indexFile(base), StandardOpenOption.READ)) {
+      return new CorpusReader(data, index);
+    } catch (IOException | RuntimeException e) {
+      data.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Returns an entry that has not been served yet, and marks it served.
+   *
+   * @return the entry number, or -1 if every entry has been served
+   */
+  public int next() {
+    long i = cursor.getAndIncrement();
+    if (i >= size) {
+      cursor.set(size);
+      return -1;
+    }
+    int entry = order.apply((int) i);
+    if (setBit(served, entry)) {
+      servedCount.increment();
+    }
+    return entry;
+  }
+
+  /**
+   * Returns the encoded image of an entry as a read-only slice of the mapped data file.
+   *
+   * @param entry the entry number
+   * @return the image bytes, from position 0 to the limit
+   * @throws IndexOutOfBoundsException if there is no such entry
+   */
+  public ByteBuffer image(int entry) {
+    long offset = offset(entry);
+    int segment = (int) (offset >>> SEGMENT_SHIFT);
+    int position = (int) (offset - ((long) segment << SEGMENT_SHIFT));
+    ByteBuffer image = segments[segment].duplicate();
+    image.position(position).limit(position + length(entry));
+    return image.slice().asReadOnlyBuffer();
+  }
+
+  /**
+   * Sends the encoded image of an entry to a channel. With a file or a socket channel the bytes go
+   * from the page cache to the target without being copied into the heap.
+   *
+   * @param entry the entry number
+   * @param target the channel to write to
+   * @return the number of bytes written, which is the image length
+   * @throws IOException if the image cannot be sent
+   * @throws IndexOutOfBoundsException if there is no such entry
+   */
+  public long transferTo(int entry, WritableByteChannel target) throws IOException {
+    long offset = offset(entry);
+    int length = length(entry);
+    long sent = 0;
+    while (sent < length) {
+      sent += data.transferTo(offset + sent, length - sent, target);
+    }
+    return length;
+  }
+
+  /**
+   * Returns the length of the encoded image of an entry.
+   *
+   * @param entry the entry number
+   * @return the image length in bytes
+   * @throws IndexOutOfBoundsException if there is no such entry
+   */
+  public int length(int entry) {
+    Objects.checkIndex(entry, size);
+    return index.getInt(entry * CorpusFormat.ENTRY_LENGTH + Long.BYTES);
+  }
+
+  /**
+   * Verifies a response against the answer of an entry, comparing hashes in constant time. The
+   * entry is marked used whatever the outcome, so every entry can be verified only once.
+   *
+   * @param entry the entry number
+   * @param response the response to check
+   * @return {@code true} if the entry was served, not used before and the response matches
+   */
+  public boolean verify(int entry, String response) {
+    if (entry < 0 || entry >= size || response == null || !isServed(entry)) {
+      return false;
+    }
+    if (!setBit(used, entry)) {
+      return false;
+    }
+    usedCount.increment();
+    return matches(entry, response);
+  }
+
+  /** Checks a response against the answer of an entry without marking the entry used. */
+  boolean matches(int entry, String response) {
+    byte[] expected = new byte[CorpusFormat.HASH_LENGTH];
+    index.get(entry * CorpusFormat.ENTRY_LENGTH + 16, expected);
+    return MessageDigest.isEqual(expected, CorpusFormat.hash(DIGEST.get(), salt, response));
+  }
+
+  /**
+   * Returns whether an entry has been served by {@link #next()}.
+   *
+   * @param entry the entry number
+   * @return {@code true} if the entry was served
+   * @throws IndexOutOfBoundsException if there is no such entry
+   */
+  public boolean isServed(int entry) {
+    return getBit(served, Objects.checkIndex(entry, size));
+  }
+
+  /**
+   * Returns whether an entry has been verified.
+   *
+   * @param entry the entry number
+   * @return {@code true} if the entry was used
+   * @throws IndexOutOfBoundsException if there is no such entry
+   */
+  public boolean isUsed(int entry) {
+    return getBit(used, Objects.checkIndex(entry, size));
+  }
+
+  /**
+   * Returns the number of entries in the corpus.
+   *
+   * @return the number of entries
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the number of entries served so far.
+   *
+   * @return the number of served entries
+   */
+  public long getServedCount() {
+    return servedCount.sum();
+  }
+
+  /**
+   * Returns the number of entries verified so far.
+   *
+   * @return the number of used entries
+   */
+  public long getUsedCount() {
+    return usedCount.sum();
+  }
+
+  /**
+   * Returns the MIME type of the images.
+   *
+   * @return the MIME type
+   */
+  public String getMimeType() {
+    return mimeType;
+  }
+
+  /** Closes the data file. Mapped images already handed out stay readable. */
+  @Override
+  public void close() throws IOException {
+    data.close();
+  }
+
+  private long offset(int entry) {
+    Objects.checkIndex(entry, size);
+    return index.getLong(entry * CorpusFormat.ENTRY_LENGTH);
+  }
+
+  private MappedByteBuffer[] mapSegments() throws IOException {
+    long dataSize = data.size();
+    int longest = 0;
+    for (int entry = 0; entry < size; entry++) {
+      long end = offset(entry) + length(entry);
+      if (end > dataSize || offset(entry) < CorpusFormat.DATA_HEADER_LENGTH) {
+        throw new IOException("The corpus index points outside the data file.");
+      }
+      longest = Math.max(longest, length(entry));
+    }
+    int count = (int) ((dataSize >>> SEGMENT_SHIFT) + 1);
+    MappedByteBuffer[] mapped = new MappedByteBuffer[count];
+    for (int i = 0; i < count; i++) {
+      long start = (long) i << SEGMENT_SHIFT;
+      long end = Math.min(dataSize, start + (1L << SEGMENT_SHIFT) + longest);
+      mapped[i] = data.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+    }
+    return mapped;
+  }
+
+  /** Sets a bit, returning {@code false} if it was already set. */
+  private static boolean setBit(AtomicLongArray bits, int bit) {
+    long mask = 1L << bit;
+    long previous = bits.getAndAccumulate(bit >>> 6, mask, (word, m) -> word | m);
+    return (previous & mask) == 0;
+  }
+
+  private static boolean getBit(AtomicLongArray bits, int bit) {
+    return (bits.get(bit >>> 6) & (1L << bit)) != 0;
+  }
+}
@@ -0,0 +1,278 @@
+package com.fedmag.verysimplecaptcha.corpus;
+
+import com.fedmag.verysimplecaptcha.Captcha;
+import com.fedmag.verysimplecaptcha.CaptchaProfile;
+import com.fedmag.verysimplecaptcha.concurrent.VirtualThreads;
+import com.fedmag.verysimplecaptcha.encoding.CaptchaEncoder;
+import com.fedmag.verysimplecaptcha.encoding.CaptchaEncoders;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code CorpusWriter} class generates CAPTCHAs ahead of time into a corpus that a {@link
+ * CorpusReader} serves without rendering anything at request time.
+ *
+ * <p>Worker threads generate and encode CAPTCHAs in chunks, and each chunk is appended to the data
+ * file and the index with one positional write each. Only the hash of every answer is stored. A
+ * corpus that already exists is appended to, so it can be grown over several runs; the images must
+ * keep the MIME type the corpus was created with.
+ */
+public final class CorpusWriter {
+
+  private static final int CHUNK_SIZE = 64;
+
+  private final CaptchaProfile profile;
+  private final CaptchaEncoder encoder;
+  private final int threads;
+
+  private CorpusWriter(Builder builder) {
+    this.profile = builder.profile;
+    this.encoder = builder.encoder;
+    this.threads = builder.threads;
+  }
+
+  /**
+   * Generates CAPTCHAs and appends them to the corpus with the given base path, creating the
+   * {@code .data} and {@code .idx} files if needed.
+   *
+   * @param base the base path of the corpus files
+   * @param count the number of CAPTCHAs to generate
+   * @return the number of entries in the corpus afterwards
+   * @throws IOException if the files cannot be written, are not a corpus, or hold images of
+   *     another MIME type
+   * @throws IllegalArgumentException if the count is negative
+   */
+  public long write(Path base, int count) throws IOException {
+    if (count < 0) {
+      throw new IllegalArgumentException("The count cannot be negative.");
+    }
+    try (FileChannel data =
+            FileChannel.open(
+                CorpusFormat.dataFile(base),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        FileChannel index =
+            FileChannel.open(
+                CorpusFormat.indexFile(base),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+      Appender appender = open(data, index);
+      run(appender, count);
+      data.force(false);
+      index.force(false);
+      return appender.entries;
+    }
+  }
+
+  /** Writes the headers of a new corpus, or checks those of an existing one. */
+  private Appender open(FileChannel data, FileChannel index) throws IOException {
+    byte[] salt;
+    if (index.size() == 0) {
+      salt = new byte[CorpusFormat.SALT_LENGTH];
+      new SecureRandom().nextBytes(salt);
+      writeFully(index, CorpusFormat.indexHeader(salt, encoder.getMimeType()), 0);
+    } else {
+      ByteBuffer header = CorpusFormat.readIndexHeader(index);
+      if (!encoder.getMimeType().equals(CorpusFormat.mimeType(header))) {
+        throw new IOException(
+            "The corpus holds " + CorpusFormat.mimeType(header) + " images, not "
+                + encoder.getMimeType() + ".");
+      }
+      salt = CorpusFormat.salt(header);
+    }
+    if (data.size() == 0) {
+      writeFully(data, CorpusFormat.dataHeader(), 0);
+    } else {
+      CorpusFormat.checkDataHeader(data);
+    }
+    // An interrupted run may have left half an entry at the end of the index, or images no entry
+    // points to at the end of the data file; the former is cut, the latter is left unused
+    long entries = (index.size() - CorpusFormat.INDEX_HEADER_LENGTH) / CorpusFormat.ENTRY_LENGTH;
+    index.truncate(CorpusFormat.INDEX_HEADER_LENGTH + entries * CorpusFormat.ENTRY_LENGTH);
+    return new Appender(data, index, salt, data.size(), entries);
+  }
+
+  private void run(Appender appender, int count) throws IOException {
+    AtomicInteger remaining = new AtomicInteger(count);
+    int workers = Math.max(1, Math.min(threads, (count + CHUNK_SIZE - 1) / CHUNK_SIZE));
+    ExecutorService executor =
+        Executors.newFixedThreadPool(workers, VirtualThreads.daemonThreadFactory("captcha-corpus"));
+    try {
+      List<Future<?>> futures = new ArrayList<>(workers);
+      for (int i = 0; i < workers; i++) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  generate(appender, remaining);
+                  return null;
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while writing the corpus.", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      if (e.getCause() instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) e.getCause()).getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void generate(Appender appender, AtomicInteger remaining) throws IOException {
+    MessageDigest digest = CorpusFormat.newDigest();
+    ByteArrayOutputStream images = new ByteArrayOutputStream();
+    int[] lengths = new int[CHUNK_SIZE];
+    byte[][] hashes = new byte[CHUNK_SIZE][];
+    int size;
+    while ((size = claim(remaining)) > 0) {
+      images.reset();
+      for (int i = 0; i < size; i++) {
+        Captcha captcha = profile.next();
+        int before = images.size();
+        captcha.writeTo(images, encoder);
+        lengths[i] = images.size() - before;
+        hashes[i] = CorpusFormat.hash(digest, appender.salt, captcha.getToken());
+      }
+      appender.append(images.toByteArray(), lengths, hashes, size);
+    }
+  }
+
+  private static int claim(AtomicInteger remaining) {
+    while (true) {
+      int left = remaining.get();
+      int size = Math.min(left, CHUNK_SIZE);
+      if (size == 0 || remaining.compareAndSet(left, left - size)) {
+        return size;
+      }
+    }
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+
+  /** Appends chunks to the data file and the index, one chunk at a time. */
+  private static final class Appender {
+
+    private final FileChannel data;
+    private final FileChannel index;
+    private final byte[] salt;
+    private long dataEnd;
+    private long entries;
+
+    private Appender(FileChannel data, FileChannel index, byte[] salt, long dataEnd, long entries) {
+      this.data = data;
+      this.index = index;
+      this.salt = salt;
+      this.dataEnd = dataEnd;
+      this.entries = entries;
+    }
+
+    private synchronized void append(byte[] images, int[] lengths, byte[][] hashes, int size)
+        throws IOException {
+      long offset = dataEnd;
+      writeFully(data, ByteBuffer.wrap(images), offset);
+      ByteBuffer entryBuffer = ByteBuffer.allocate(size * CorpusFormat.ENTRY_LENGTH);
+      for (int i = 0; i < size; i++) {
+        entryBuffer.putLong(offset).putInt(lengths[i]).putInt(0).put(hashes[i]);
+        offset += lengths[i];
+      }
+      entryBuffer.flip();
+      writeFully(
+          index,
+          entryBuffer,
+          CorpusFormat.INDEX_HEADER_LENGTH + entries * CorpusFormat.ENTRY_LENGTH);
+      dataEnd = offset;
+      entries += size;
+    }
+  }
+
+  /** The {@code Builder} class is used to build {@code CorpusWriter} instances. */
+  public static final class Builder {
+
+    private final CaptchaProfile profile;
+    private CaptchaEncoder encoder = CaptchaEncoders.jpeg();
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Constructs a corpus writer builder for the given CAPTCHA builder, compiled right away.
+     *
+     * @param profile the builder used to generate the CAPTCHAs
+     */
+    public Builder(Captcha.Builder profile) {
+      this(profile.compile());
+    }
+
+    /**
+     * Constructs a corpus writer builder for the given CAPTCHA profile.
+     *
+     * @param profile the profile used to generate the CAPTCHAs
+     */
+    public Builder(CaptchaProfile profile) {
+      this.profile = Objects.requireNonNull(profile, "profile");
+    }
+
+    /**
+     * Builds and returns a {@code CorpusWriter}.
+     *
+     * @return a new {@code CorpusWriter}
+     */
+    public CorpusWriter build() {
+      return new CorpusWriter(this);
+    }
+
+    /**
+     * Sets the encoder of the images. Defaults to JPEG.
+     *
+     * @param encoder the image encoder
+     * @return the builder instance
+     */
+    public Builder encoder(CaptchaEncoder encoder) {
+      this.encoder = Objects.requireNonNull(encoder, "encoder");
+      return this;
+    }
+
+    /**
+     * Sets the number of threads generating CAPTCHAs. Defaults to the number of processors.
+     *
+     * @param threads the number of threads
+     * @return the builder instance
+     * @throws IllegalArgumentException if the number of threads is smaller than 1
+     */
+    public Builder threads(int threads) {
+      if (threads < 1) {
+        throw new IllegalArgumentException("The number of threads cannot be smaller than 1.");
+      }
+      this.threads = threads;
+      return this;
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package com.fedmag.verysimplecaptcha.corpus;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * The {@code EntryPermutation} class is a keyed permutation of the entry numbers {@code [0, size)},
+ * which gives the order a {@link CorpusReader} serves its entries in.
+ *
+ * <p>It is a balanced Feistel network over the smallest even number of bits covering the size,
+ * with six rounds whose round function hashes the right half with a random 64-bit round key.
+ * Results beyond the size are fed back into the network (cycle-walking) until they fall inside it,
+ * which takes fewer than four passes on average. Without the keys, the entries served so far do
+ * not tell which ones come next, unlike an affine order {@code a * i + b} that any two consecutive
+ * entries give away. The round function is a fast mixing function rather than a cipher, so the
+ * order resists observation, not cryptanalysis.
+ *
+ * <p>Instances are immutable.
+ */
+final class EntryPermutation {
+
+  private static final int ROUNDS = 6;
+
+  private final int size;
+  private final int halfBits;
+  private final long halfMask;
+  private final long[] keys = new long[ROUNDS];
+
+  /**
+   * Constructs a permutation of {@code [0, size)} keyed by the given generator.
+   *
+   * @param size the number of entries
+   * @param random the generator of the round keys
+   */
+  EntryPermutation(int size, RandomGenerator random) {
+    this.size = size;
+    int bits = Math.max(2, Integer.SIZE - Integer.numberOfLeadingZeros(Math.max(0, size - 1)));
+    this.halfBits = (bits + 1) / 2;
+    this.halfMask = (1L << halfBits) - 1;
+    for (int round = 0; round < ROUNDS; round++) {
+      keys[round] = random.nextLong();
+    }
+  }
+
+  /**
+   * Returns the entry at the given position of the permutation.
+   *
+   * @param position the position, in {@code [0, size)}
+   * @return the entry number, in {@code [0, size)}
+   */
+  int apply(int position) {
+    long value = position;
+    do {
+      value = encrypt(value);
+    } while (value >= size);
+    return (int) value;
+  }
+
+  private long encrypt(long value) {
+    long left = value >>> halfBits;
+    long right = value & halfMask;
+    for (long key : keys) {
+      long next = left ^ (mix(right ^ key) & halfMask);
+      left = right;
+      right = next;
+    }
+    return (left << halfBits) | right;
+  }
+
+  /** The finalizer of MurmurHash3, which spreads every input bit over the whole output. */
+  private static long mix(long z) {
+    z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+    z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    return z ^ (z >>> 33);
+  }
+}
@@ -0,0 +1,40 @@
+package com.fedmag.verysimplecaptcha.encoding;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The {@code CaptchaEncoder} interface is implemented by encoders turning a CAPTCHA image into
+ * bytes.
+ *
+ * <p>Implementations must be thread-safe. Additional encoders can be registered through {@code
+ * java.util.ServiceLoader} and looked up by name with {@link CaptchaEncoders#byName(String)}.
+ */
+public interface CaptchaEncoder {
+
+  /**
+   * Returns the unique name of the encoder, such as {@code "jpeg"}. Encoders writing different
+   * bytes for the same image must have different names, so parameters other than the defaults are
+   * part of the name, as in {@code "jpeg-q95"}: encoded images are cached by encoder name.
+   *
+   * @return the encoder name
+   */
+  String getName();
+
+  /**
+   * Returns the MIME type of the encoded images.
+   *
+   * @return the MIME type
+   */
+  String getMimeType();
+
+  /**
+   * Encodes the image into the given stream. The stream is not closed.
+   *
+   * @param image the image to encode
+   * @param out the stream to write to
+   * @throws IOException if an error occurs during encoding or writing
+   */
+  void encode(BufferedImage image, OutputStream out) throws IOException;
+}
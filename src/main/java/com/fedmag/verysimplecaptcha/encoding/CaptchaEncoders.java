@@ -0,0 +1,103 @@
+package com.fedmag.verysimplecaptcha.encoding;
+
+import com.fedmag.verysimplecaptcha.ImageFormat;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * The {@code CaptchaEncoders} class gives access to the built-in encoders and to the encoders
+ * registered through {@code java.util.ServiceLoader} under {@link CaptchaEncoder}.
+ *
+ * <p>This class cannot be instantiated.
+ */
+public final class CaptchaEncoders {
+
+  private static final CaptchaEncoder JPEG = new JpegEncoder();
+  private static final CaptchaEncoder PNG = new PngEncoder(false);
+  private static final CaptchaEncoder PNG_PALETTE = new PngEncoder(true);
+  private static final Map<String, CaptchaEncoder> BY_NAME = loadEncoders();
+
+  /** Private constructor to prevent instantiation. */
+  private CaptchaEncoders() {}
+
+  private static Map<String, CaptchaEncoder> loadEncoders() {
+    Map<String, CaptchaEncoder> encoders = new LinkedHashMap<>();
+    for (CaptchaEncoder encoder : new CaptchaEncoder[] {JPEG, PNG, PNG_PALETTE}) {
+      encoders.put(encoder.getName(), encoder);
+    }
+    for (CaptchaEncoder encoder : ServiceLoader.load(CaptchaEncoder.class)) {
+      encoders.putIfAbsent(encoder.getName(), encoder);
+    }
+    return Collections.unmodifiableMap(encoders);
+  }
+
+  /**
+   * Returns the default encoder of the given format.
+   *
+   * @param format the image format
+   * @return the encoder
+   */
+  public static CaptchaEncoder forFormat(ImageFormat format) {
+    switch (format) {
+      case PNG:
+        return PNG;
+      case JPEG:
+      default:
+        return JPEG;
+    }
+  }
+
+  /**
+   * Returns the JPEG encoder with the default quality.
+   *
+   * @return the JPEG encoder
+   */
+  public static CaptchaEncoder jpeg() {
+    return JPEG;
+  }
+
+  /**
+   * Returns the true-color PNG encoder.
+   *
+   * @return the PNG encoder
+   */
+  public static CaptchaEncoder png() {
+    return PNG;
+  }
+
+  /**
+   * Returns the indexed (palette) PNG encoder.
+   *
+   * @return the palette PNG encoder
+   */
+  public static CaptchaEncoder palettePng() {
+    return PNG_PALETTE;
+  }
+
+  /**
+   * Returns the encoder with the given name. Built-in encoders take precedence over service
+   * providers with the same name.
+   *
+   * @param name the encoder name
+   * @return the encoder
+   * @throws IllegalArgumentException if no encoder has that name
+   */
+  public static CaptchaEncoder byName(String name) {
+    CaptchaEncoder encoder = BY_NAME.get(name);
+    if (encoder == null) {
+      throw new IllegalArgumentException("Unknown captcha encoder: " + name);
+    }
+    return encoder;
+  }
+
+  /**
+   * Returns all known encoders by name.
+   *
+   * @return an unmodifiable map of encoders
+   */
+  public static Map<String, CaptchaEncoder> all() {
+    return BY_NAME;
+  }
+}
@@ -0,0 +1,103 @@
+package com.fedmag.verysimplecaptcha.encoding;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * The {@code ImageWriterEncoder} class is the base of encoders backed by an ImageIO writer.
+ *
+ * <p>Writers are borrowed from a small pool owned by the encoder and returned after each image, so
+ * they are reused whether encoding runs on pooled threads or on a new virtual thread per request,
+ * and an encoder that is no longer used leaves nothing behind on the threads that used it. The pool
+ * keeps at most two idle writers per processor and disposes of any writer beyond that.
+ *
+ * <p>Output goes through a {@code MemoryCacheImageOutputStream}, so ImageIO never creates a disk
+ * cache file whatever {@code ImageIO.getUseCache()} returns.
+ */
+abstract class ImageWriterEncoder implements CaptchaEncoder {
+
+  // Enough idle writers for every processor to encode, with some slack for blocked threads
+  private static final int MAX_IDLE_WRITERS = 2 * Runtime.getRuntime().availableProcessors();
+
+  private final String formatName;
+  private final ConcurrentLinkedQueue<ImageWriter> idleWriters = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger idleCount = new AtomicInteger();
+
+  /**
+   * Constructs an encoder for the given ImageIO format.
+   *
+   * @param formatName the ImageIO format name
+   * @throws IllegalStateException if no writer is available for the format
+   */
+  ImageWriterEncoder(String formatName) {
+    this.formatName = formatName;
+    release(newWriter());
+  }
+
+  private ImageWriter newWriter() {
+    Iterator<ImageWriter> iterator = ImageIO.getImageWritersByFormatName(formatName);
+    if (!iterator.hasNext()) {
+      throw new IllegalStateException("No ImageIO writer available for " + formatName);
+    }
+    return iterator.next();
+  }
+
+  @Override
+  public void encode(BufferedImage image, OutputStream out) throws IOException {
+    ImageWriter writer = borrow();
+    ImageWriteParam param = writeParam(writer);
+    try (ImageOutputStream output = new MemoryCacheImageOutputStream(out)) {
+      writer.setOutput(output);
+      writer.write(null, new IIOImage(prepare(image), null, null), param);
+    } finally {
+      writer.reset();
+      release(writer);
+    }
+  }
+
+  private ImageWriter borrow() {
+    ImageWriter writer = idleWriters.poll();
+    if (writer == null) {
+      return newWriter();
+    }
+    idleCount.decrementAndGet();
+    return writer;
+  }
+
+  private void release(ImageWriter writer) {
+    if (idleCount.incrementAndGet() > MAX_IDLE_WRITERS) {
+      idleCount.decrementAndGet();
+      writer.dispose();
+      return;
+    }
+    idleWriters.offer(writer);
+  }
+
+  /**
+   * Returns the parameters to write with, or {@code null} for the writer defaults.
+   *
+   * @param writer the writer about to write the image
+   * @return the write parameters
+   */
+  abstract ImageWriteParam writeParam(ImageWriter writer);
+
+  /**
+   * Converts the image before it is written. The default returns the image unchanged.
+   *
+   * @param image the image to encode
+   * @return the image to write
+   */
+  BufferedImage prepare(BufferedImage image) {
+    return image;
+  }
+}
@@ -0,0 +1,88 @@
+package com.fedmag.verysimplecaptcha.encoding;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.math.BigDecimal;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+
+/**
+ * The {@code JpegEncoder} class encodes CAPTCHA images as JPEG with an explicit quality, reusing
+ * pooled ImageIO writers.
+ *
+ * <p>The JPEG writer would encode the indices of an indexed image as gray levels, so compact
+ * CAPTCHAs are expanded to RGB before they are written.
+ */
+public final class JpegEncoder extends ImageWriterEncoder {
+
+  /** Quality used by ImageIO when none is set. */
+  public static final float DEFAULT_QUALITY = 0.75f;
+
+  private final float quality;
+  private final String name;
+
+  /** Constructs a {@code JpegEncoder} with the default quality of 0.75. */
+  public JpegEncoder() {
+    this(DEFAULT_QUALITY);
+  }
+
+  /**
+   * Constructs a {@code JpegEncoder} with the given quality.
+   *
+   * @param quality the compression quality, from 0 (smallest) to 1 (best)
+   * @throws IllegalArgumentException if the quality is outside [0, 1]
+   */
+  public JpegEncoder(float quality) {
+    super("jpeg");
+    if (quality < 0f || quality > 1f) {
+      throw new IllegalArgumentException("The JPEG quality must be between 0 and 1.");
+    }
+    this.quality = quality;
+    this.name = quality == DEFAULT_QUALITY ? "jpeg" : "jpeg-q" + percent(quality);
+  }
+
+  /**
+   * Returns {@code "jpeg"} for the default quality, and otherwise a name carrying the quality in
+   * percent, such as {@code "jpeg-q95"}.
+   *
+   * @return the encoder name
+   */
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  private static String percent(float quality) {
+    return new BigDecimal(Float.toString(quality))
+        .movePointRight(2)
+        .stripTrailingZeros()
+        .toPlainString();
+  }
+
+  @Override
+  public String getMimeType() {
+    return "image/jpeg";
+  }
+
+  @Override
+  ImageWriteParam writeParam(ImageWriter writer) {
+    ImageWriteParam param = writer.getDefaultWriteParam();
+    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+    param.setCompressionQuality(quality);
+    return param;
+  }
+
+  @Override
+  BufferedImage prepare(BufferedImage image) {
+    if (!(image.getColorModel() instanceof IndexColorModel)) {
+      return image;
+    }
+    int width = image.getWidth();
+    int height = image.getHeight();
+    BufferedImage rgb = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    int[] pixels = ((DataBufferInt) rgb.getRaster().getDataBuffer()).getData();
+    image.getRGB(0, 0, width, height, pixels, 0, width);
+    return rgb;
+  }
+}
@@ -0,0 +1,190 @@
+package com.fedmag.verysimplecaptcha.encoding;
+
+import com.fedmag.verysimplecaptcha.generators.filters.PixelRaster;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * The {@code PaletteQuantizer} class reduces an image to an indexed image for palette encoders.
+ *
+ * <p>Images with at most 256 distinct colors keep their exact colors, packed into 1, 2, 4 or 8 bits
+ * per pixel. Other images are mapped onto a 256-step ramp between the most frequent color (the
+ * background) and the color farthest from it (the text). That is exact for the two-color text of
+ * a CAPTCHA and for the shades blur or anti-aliasing create between them, and approximate for any
+ * other color.
+ *
+ * <p>This class cannot be instantiated.
+ */
+final class PaletteQuantizer {
+
+  private static final int MAX_COLORS = 256;
+  private static final int TABLE_SIZE = 1024;
+
+  /** Private constructor to prevent instantiation. */
+  private PaletteQuantizer() {}
+
+  /**
+   * Returns an indexed version of the image, or the image itself if it already is indexed.
+   *
+   * @param image the image to reduce
+   * @return an image with an {@code IndexColorModel}
+   */
+  static BufferedImage toIndexed(BufferedImage image) {
+    if (image.getColorModel() instanceof IndexColorModel) {
+      return image;
+    }
+    int width = image.getWidth();
+    int height = image.getHeight();
+    boolean hasAlpha = image.getColorModel().hasAlpha();
+    int[] pixels =
+        PixelRaster.isWrappable(image)
+            ? PixelRaster.wrap(image).getPixels()
+            : image.getRGB(0, 0, width, height, null, 0, width);
+    int opaque = hasAlpha ? 0 : 0xff000000;
+
+    int[] palette = new int[MAX_COLORS];
+    byte[] indices = new byte[width * height];
+    int colors = exactPalette(pixels, width * height, opaque, palette, indices);
+    if (colors < 0) {
+      colors = MAX_COLORS;
+      rampPalette(pixels, width * height, opaque, palette, indices);
+    }
+    return indexedImage(width, height, palette, colors, hasAlpha, indices);
+  }
+
+  /**
+   * Builds a palette of the exact colors of the image.
+   *
+   * @return the number of colors, or -1 if there are more than 256
+   */
+  private static int exactPalette(
+      int[] pixels, int length, int opaque, int[] palette, byte[] indices) {
+    int[] keys = new int[TABLE_SIZE];
+    int[] values = new int[TABLE_SIZE];
+    Arrays.fill(values, -1);
+    int colors = 0;
+    int previous = 0;
+    int previousIndex = -1;
+    for (int i = 0; i < length; i++) {
+      int color = pixels[i] | opaque;
+      if (color != previous || previousIndex < 0) {
+        int slot = (color * 0x9E3779B9) >>> 22;
+        while (values[slot] >= 0 && keys[slot] != color) {
+          slot = (slot + 1) & (TABLE_SIZE - 1);
+        }
+        if (values[slot] < 0) {
+          if (colors == MAX_COLORS) {
+            return -1;
+          }
+          keys[slot] = color;
+          values[slot] = colors;
+          palette[colors++] = color;
+        }
+        previous = color;
+        previousIndex = values[slot];
+      }
+      indices[i] = (byte) previousIndex;
+    }
+    return colors;
+  }
+
+  /** Builds a 256-step ramp from the background color to the text color. */
+  private static void rampPalette(
+      int[] pixels, int length, int opaque, int[] palette, byte[] indices) {
+    // The most frequent 12-bit color bucket gives the background
+    int[] counts = new int[4096];
+    int[] representatives = new int[4096];
+    int background = pixels[0] | opaque;
+    int best = 0;
+    for (int i = 0; i < length; i++) {
+      int color = pixels[i] | opaque;
+      int bucket = ((color >> 12) & 0xf00) | ((color >> 8) & 0xf0) | ((color >> 4) & 0xf);
+      if (counts[bucket]++ == 0) {
+        representatives[bucket] = color;
+      }
+      if (counts[bucket] > best) {
+        best = counts[bucket];
+        background = representatives[bucket];
+      }
+    }
+    int foreground = background;
+    long farthest = -1;
+    for (int i = 0; i < length; i++) {
+      int color = pixels[i] | opaque;
+      long distance = distance(color, background);
+      if (distance > farthest) {
+        farthest = distance;
+        foreground = color;
+      }
+    }
+
+    for (int i = 0; i < MAX_COLORS; i++) {
+      palette[i] = interpolate(background, foreground, i);
+    }
+    int da = channel(foreground, 24) - channel(background, 24);
+    int dr = channel(foreground, 16) - channel(background, 16);
+    int dg = channel(foreground, 8) - channel(background, 8);
+    int db = channel(foreground, 0) - channel(background, 0);
+    long lengthSquared = Math.max(1L, (long) da * da + dr * dr + dg * dg + db * db);
+    for (int i = 0; i < length; i++) {
+      int color = pixels[i] | opaque;
+      long dot =
+          (long) (channel(color, 24) - channel(background, 24)) * da
+              + (long) (channel(color, 16) - channel(background, 16)) * dr
+              + (long) (channel(color, 8) - channel(background, 8)) * dg
+              + (long) (channel(color, 0) - channel(background, 0)) * db;
+      long index = (dot * 255 + lengthSquared / 2) / lengthSquared;
+      indices[i] = (byte) Math.max(0, Math.min(255, index));
+    }
+  }
+
+  private static long distance(int a, int b) {
+    long distance = 0;
+    for (int shift = 0; shift < 32; shift += 8) {
+      long d = channel(a, shift) - channel(b, shift);
+      distance += d * d;
+    }
+    return distance;
+  }
+
+  private static int interpolate(int from, int to, int step) {
+    int color = 0;
+    for (int shift = 0; shift < 32; shift += 8) {
+      int value = channel(from, shift) + (channel(to, shift) - channel(from, shift)) * step / 255;
+      color |= value << shift;
+    }
+    return color;
+  }
+
+  private static int channel(int color, int shift) {
+    return (color >>> shift) & 0xff;
+  }
+
+  private static BufferedImage indexedImage(
+      int width, int height, int[] palette, int colors, boolean hasAlpha, byte[] indices) {
+    int bits = colors <= 2 ? 1 : colors <= 4 ? 2 : colors <= 16 ? 4 : 8;
+    IndexColorModel model =
+        new IndexColorModel(bits, colors, palette, 0, hasAlpha, -1, DataBuffer.TYPE_BYTE);
+    if (bits == 8) {
+      BufferedImage image =
+          new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, model);
+      byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+      System.arraycopy(indices, 0, data, 0, indices.length);
+      return image;
+    }
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY, model);
+    WritableRaster raster = image.getRaster();
+    int[] row = new int[width];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        row[x] = indices[y * width + x];
+      }
+      raster.setSamples(0, y, width, 1, 0, row);
+    }
+    return image;
+  }
+}
@@ -0,0 +1,52 @@
+package com.fedmag.verysimplecaptcha.encoding;
+
+import java.awt.image.BufferedImage;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+
+/**
+ * The {@code PngEncoder} class encodes CAPTCHA images as PNG, reusing pooled ImageIO writers.
+ *
+ * <p>In palette mode the image is first reduced to an indexed image of at most 256 colors (see
+ * {@link PaletteQuantizer}), which suits the few colors of a CAPTCHA and shrinks the output well
+ * below a true-color PNG or a JPEG.
+ */
+public final class PngEncoder extends ImageWriterEncoder {
+
+  private final boolean palette;
+
+  /** Constructs a true-color {@code PngEncoder}. */
+  public PngEncoder() {
+    this(false);
+  }
+
+  /**
+   * Constructs a {@code PngEncoder}.
+   *
+   * @param palette whether to write an indexed (palette) PNG
+   */
+  public PngEncoder(boolean palette) {
+    super("png");
+    this.palette = palette;
+  }
+
+  @Override
+  public String getName() {
+    return palette ? "png-palette" : "png";
+  }
+
+  @Override
+  public String getMimeType() {
+    return "image/png";
+  }
+
+  @Override
+  ImageWriteParam writeParam(ImageWriter writer) {
+    return null;
+  }
+
+  @Override
+  BufferedImage prepare(BufferedImage image) {
+    return palette ? PaletteQuantizer.toIndexed(image) : image;
+  }
+}
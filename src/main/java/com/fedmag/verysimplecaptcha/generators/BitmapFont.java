@@ -0,0 +1,438 @@
+package com.fedmag.verysimplecaptcha.generators;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The {@code BitmapFont} class draws text from prerasterized glyphs, in plain Java, without the
+ * Java2D font subsystem.
+ *
+ * <p>Each glyph is stored once as an 8-bit coverage bitmap at the font's pixel size. Text is drawn
+ * through an {@code AffineTransform} from text space, whose origin is the start of the baseline and
+ * whose unit is one pixel of the font, to the image: every destination pixel is mapped back into
+ * the glyph and sampled bilinearly. Scaling, rotation and shearing are therefore exact, and since
+ * only {@code double} arithmetic is involved the output is the same on every JVM and platform.
+ *
+ * <p>The {@linkplain #defaultFont() default font} is rasterized from DejaVu Sans Bold and covers
+ * printable ASCII. It is distributed under the DejaVu fonts license, found next to it at {@code
+ * /com/fedmag/verysimplecaptcha/fonts/LICENSE-DejaVu.txt}. Characters a font lacks are drawn as
+ * {@code '?'}.
+ *
+ * <p>Instances are immutable and thread-safe.
+ */
+public final class BitmapFont {
+
+  /** Class path location of the default font. */
+  public static final String DEFAULT_RESOURCE =
+      "/com/fedmag/verysimplecaptcha/fonts/dejavu-sans-bold.vscf";
+
+  private static final byte[] MAGIC = "VSCF".getBytes(StandardCharsets.US_ASCII);
+  private static final int VERSION = 1;
+  private static final char FALLBACK = '?';
+
+  private final int pixelSize;
+  private final int ascent;
+  private final int descent;
+  private final Glyph[] glyphs;
+
+  /**
+   * Constructs a {@code BitmapFont}.
+   *
+   * @param pixelSize the size, in pixels, the glyphs were rasterized at
+   * @param ascent the ascent, in pixels
+   * @param descent the descent, in pixels
+   * @param glyphs the glyphs, indexed by character
+   */
+  BitmapFont(int pixelSize, int ascent, int descent, Glyph[] glyphs) {
+    if (pixelSize < 1) {
+      throw new IllegalArgumentException("The pixel size must be positive.");
+    }
+    this.pixelSize = pixelSize;
+    this.ascent = ascent;
+    this.descent = descent;
+    this.glyphs = glyphs.clone();
+  }
+
+  /**
+   * Returns the font bundled with the library, loading it on first use.
+   *
+   * @return the default font
+   * @throws UncheckedIOException if the bundled resource cannot be read
+   */
+  public static BitmapFont defaultFont() {
+    return DefaultFontHolder.FONT;
+  }
+
+  /**
+   * Reads a font in the binary format written by the font generator. The stream is not closed.
+   *
+   * @param in the stream to read from
+   * @return the font
+   * @throws IOException if the stream cannot be read or does not hold a font
+   */
+  public static BitmapFont read(InputStream in) throws IOException {
+    DataInputStream header = new DataInputStream(in);
+    byte[] magic = new byte[MAGIC.length];
+    header.readFully(magic);
+    if (!Arrays.equals(magic, MAGIC)) {
+      throw new IOException("Not a bitmap font.");
+    }
+    int version = header.readUnsignedByte();
+    if (version != VERSION) {
+      throw new IOException("Unsupported bitmap font version " + version + ".");
+    }
+    DataInputStream data = new DataInputStream(new InflaterInputStream(in));
+    int pixelSize = data.readUnsignedShort();
+    int ascent = data.readUnsignedShort();
+    int descent = data.readUnsignedShort();
+    int count = data.readUnsignedShort();
+    Glyph[] glyphs = new Glyph[0];
+    for (int i = 0; i < count; i++) {
+      char c = data.readChar();
+      int advance = data.readShort();
+      int left = data.readShort();
+      int top = data.readShort();
+      int width = data.readUnsignedShort();
+      int height = data.readUnsignedShort();
+      byte[] coverage = new byte[width * height];
+      data.readFully(coverage);
+      if (c >= glyphs.length) {
+        glyphs = Arrays.copyOf(glyphs, c + 1);
+      }
+      glyphs[c] = new Glyph(advance, left, top, width, height, coverage);
+    }
+    return new BitmapFont(pixelSize, ascent, descent, glyphs);
+  }
+
+  /**
+   * Writes this font in its binary format: a {@code VSCF} magic number and a version byte,
+   * followed by the deflated metrics and glyphs.
+   *
+   * @param out the stream to write to
+   * @throws IOException if the stream cannot be written
+   */
+  void write(OutputStream out) throws IOException {
+    out.write(MAGIC);
+    out.write(VERSION);
+    DeflaterOutputStream deflater =
+        new DeflaterOutputStream(out, new Deflater(Deflater.BEST_COMPRESSION));
+    DataOutputStream data = new DataOutputStream(deflater);
+    int count = 0;
+    for (Glyph glyph : glyphs) {
+      count += glyph == null ? 0 : 1;
+    }
+    data.writeShort(pixelSize);
+    data.writeShort(ascent);
+    data.writeShort(descent);
+    data.writeShort(count);
+    for (char c = 0; c < glyphs.length; c++) {
+      Glyph glyph = glyphs[c];
+      if (glyph != null) {
+        data.writeChar(c);
+        data.writeShort(glyph.advance);
+        data.writeShort(glyph.left);
+        data.writeShort(glyph.top);
+        data.writeShort(glyph.width);
+        data.writeShort(glyph.height);
+        data.write(glyph.coverage);
+      }
+    }
+    data.flush();
+    deflater.finish();
+  }
+
+  /**
+   * Returns the size, in pixels, the glyphs were rasterized at. Text drawn with a scale of 1 has
+   * this size.
+   *
+   * @return the pixel size
+   */
+  public int getPixelSize() {
+    return pixelSize;
+  }
+
+  /**
+   * Returns the distance from the baseline to the top of the tallest glyphs.
+   *
+   * @return the ascent, in pixels of the font
+   */
+  public int getAscent() {
+    return ascent;
+  }
+
+  /**
+   * Returns the distance from the baseline to the bottom of the lowest glyphs.
+   *
+   * @return the descent, in pixels of the font
+   */
+  public int getDescent() {
+    return descent;
+  }
+
+  /**
+   * Returns whether the font has a glyph for the given character.
+   *
+   * @param c the character
+   * @return {@code true} if the character is not replaced by {@code '?'}
+   */
+  public boolean canDisplay(char c) {
+    return c < glyphs.length && glyphs[c] != null;
+  }
+
+  /**
+   * Returns the advance of the given string, that is the distance from the start of its baseline
+   * to the start of the next character.
+   *
+   * @param string the string
+   * @return the advance, in pixels of the font
+   */
+  public int advance(String string) {
+    int advance = 0;
+    for (int i = 0; i < string.length(); i++) {
+      advance += glyph(string.charAt(i)).advance;
+    }
+    return advance;
+  }
+
+  /**
+   * Draws a string into packed ARGB pixels, blending the given color over them according to the
+   * glyph coverage.
+   *
+   * @param pixels the pixels, row by row without padding
+   * @param width the image width
+   * @param height the image height
+   * @param string the string to draw
+   * @param transform the transformation from text space to image coordinates
+   * @param argb the text color; its alpha scales the coverage
+   * @throws IllegalArgumentException if the transformation is not invertible
+   */
+  public void drawString(
+      int[] pixels, int width, int height, String string, AffineTransform transform, int argb) {
+    requireRaster(pixels.length, width, height);
+    int alpha = argb >>> 24;
+    int red = (argb >> 16) & 0xff;
+    int green = (argb >> 8) & 0xff;
+    int blue = argb & 0xff;
+    draw(
+        width,
+        height,
+        string,
+        transform,
+        (index, coverage) -> {
+          int a = coverage * alpha / 255;
+          int inverse = 255 - a;
+          int pixel = pixels[index];
+          int r = (((pixel >> 16) & 0xff) * inverse + red * a + 127) / 255;
+          int g = (((pixel >> 8) & 0xff) * inverse + green * a + 127) / 255;
+          int b = ((pixel & 0xff) * inverse + blue * a + 127) / 255;
+          pixels[index] = (pixel & 0xff000000) | (r << 16) | (g << 8) | b;
+        });
+  }
+
+  /**
+   * Draws a string into an 8-bit coverage raster, keeping the larger of the existing and the new
+   * coverage in every pixel.
+   *
+   * @param coverage the coverage values, row by row without padding
+   * @param width the image width
+   * @param height the image height
+   * @param string the string to draw
+   * @param transform the transformation from text space to image coordinates
+   * @throws IllegalArgumentException if the transformation is not invertible
+   */
+  public void drawCoverage(
+      byte[] coverage, int width, int height, String string, AffineTransform transform) {
+    requireRaster(coverage.length, width, height);
+    draw(
+        width,
+        height,
+        string,
+        transform,
+        (index, value) -> {
+          if (value > (coverage[index] & 0xff)) {
+            coverage[index] = (byte) value;
+          }
+        });
+  }
+
+  private static void requireRaster(int length, int width, int height) {
+    if (width < 0 || height < 0 || length < width * height) {
+      throw new IllegalArgumentException("The raster is smaller than width * height.");
+    }
+  }
+
+  private void draw(
+      int width, int height, String string, AffineTransform transform, PixelSink sink) {
+    Objects.requireNonNull(string, "string");
+    AffineTransform inverse;
+    try {
+      inverse = transform.createInverse();
+    } catch (NoninvertibleTransformException e) {
+      throw new IllegalArgumentException("The text transformation must be invertible.", e);
+    }
+    double[] matrix = new double[6];
+    inverse.getMatrix(matrix);
+    double[] corners = new double[8];
+    int pen = 0;
+    for (int i = 0; i < string.length(); i++) {
+      Glyph glyph = glyph(string.charAt(i));
+      if (glyph.width > 0 && glyph.height > 0) {
+        double left = pen + glyph.left;
+        double top = -glyph.top;
+        corners[0] = left;
+        corners[1] = top;
+        corners[2] = left + glyph.width;
+        corners[3] = top;
+        corners[4] = left;
+        corners[5] = top + glyph.height;
+        corners[6] = left + glyph.width;
+        corners[7] = top + glyph.height;
+        transform.transform(corners, 0, corners, 0, 4);
+        drawGlyph(glyph, left, top, corners, matrix, width, height, sink);
+      }
+      pen += glyph.advance;
+    }
+  }
+
+  private static void drawGlyph(
+      Glyph glyph,
+      double left,
+      double top,
+      double[] corners,
+      double[] inverse,
+      int width,
+      int height,
+      PixelSink sink) {
+    double minX = Math.min(Math.min(corners[0], corners[2]), Math.min(corners[4], corners[6]));
+    double maxX = Math.max(Math.max(corners[0], corners[2]), Math.max(corners[4], corners[6]));
+    double minY = Math.min(Math.min(corners[1], corners[3]), Math.min(corners[5], corners[7]));
+    double maxY = Math.max(Math.max(corners[1], corners[3]), Math.max(corners[5], corners[7]));
+    // One extra pixel on every side covers the bilinear footprint of the glyph border
+    int x0 = Math.max(0, (int) Math.floor(minX) - 1);
+    int x1 = Math.min(width, (int) Math.ceil(maxX) + 1);
+    int y0 = Math.max(0, (int) Math.floor(minY) - 1);
+    int y1 = Math.min(height, (int) Math.ceil(maxY) + 1);
+    // Glyph coordinates of a destination pixel center, minus half a pixel to sample glyph centers
+    double m00 = inverse[0];
+    double m10 = inverse[1];
+    double m01 = inverse[2];
+    double m11 = inverse[3];
+    double m02 = inverse[4] - left - 0.5;
+    double m12 = inverse[5] - top - 0.5;
+    for (int y = y0; y < y1; y++) {
+      double py = y + 0.5;
+      double gx = m00 * (x0 + 0.5) + m01 * py + m02;
+      double gy = m10 * (x0 + 0.5) + m11 * py + m12;
+      int row = y * width;
+      for (int x = x0; x < x1; x++, gx += m00, gy += m10) {
+        int value = glyph.sample(gx, gy);
+        if (value > 0) {
+          sink.accept(row + x, value);
+        }
+      }
+    }
+  }
+
+  private Glyph glyph(char c) {
+    if (c < glyphs.length && glyphs[c] != null) {
+      return glyphs[c];
+    }
+    Glyph fallback = FALLBACK < glyphs.length ? glyphs[FALLBACK] : null;
+    return fallback != null ? fallback : Glyph.EMPTY;
+  }
+
+  /** Receives the coverage of one destination pixel. */
+  @FunctionalInterface
+  private interface PixelSink {
+
+    void accept(int index, int coverage);
+  }
+
+  /** One rasterized character. */
+  static final class Glyph {
+
+    private static final Glyph EMPTY = new Glyph(0, 0, 0, 0, 0, new byte[0]);
+
+    private final int advance;
+    private final int left;
+    private final int top;
+    private final int width;
+    private final int height;
+    private final byte[] coverage;
+    private final int stride;
+    private final byte[] padded;
+
+    /**
+     * Constructs a {@code Glyph}.
+     *
+     * @param advance the distance to the next character, in pixels
+     * @param left the distance from the pen position to the left edge of the bitmap
+     * @param top the distance from the baseline up to the top edge of the bitmap
+     * @param width the bitmap width
+     * @param height the bitmap height
+     * @param coverage the coverage values, row by row
+     */
+    Glyph(int advance, int left, int top, int width, int height, byte[] coverage) {
+      if (coverage.length != width * height) {
+        throw new IllegalArgumentException("The coverage array must hold width * height values.");
+      }
+      this.advance = advance;
+      this.left = left;
+      this.top = top;
+      this.width = width;
+      this.height = height;
+      this.coverage = coverage;
+      // A zero border lets sample() read the four neighbours without bounds checks
+      this.stride = width + 2;
+      this.padded = new byte[stride * (height + 2)];
+      for (int y = 0; y < height; y++) {
+        System.arraycopy(coverage, y * width, padded, (y + 1) * stride + 1, width);
+      }
+    }
+
+    /** Samples the coverage bilinearly at the given bitmap coordinates. */
+    private int sample(double x, double y) {
+      if (x <= -1 || y <= -1 || x >= width || y >= height) {
+        return 0;
+      }
+      int ix = (int) Math.floor(x);
+      int iy = (int) Math.floor(y);
+      double fx = x - ix;
+      double fy = y - iy;
+      int index = (iy + 1) * stride + ix + 1;
+      double top = (1 - fx) * (padded[index] & 0xff) + fx * (padded[index + 1] & 0xff);
+      index += stride;
+      double bottom = (1 - fx) * (padded[index] & 0xff) + fx * (padded[index + 1] & 0xff);
+      return (int) ((1 - fy) * top + fy * bottom + 0.5);
+    }
+  }
+
+  /** Loads the default font on first use. */
+  private static final class DefaultFontHolder {
+
+    private static final BitmapFont FONT = load();
+
+    private static BitmapFont load() {
+      try (InputStream in = BitmapFont.class.getResourceAsStream(DEFAULT_RESOURCE)) {
+        if (in == null) {
+          throw new UncheckedIOException(new IOException(DEFAULT_RESOURCE + " is missing."));
+        }
+        return read(in);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+}
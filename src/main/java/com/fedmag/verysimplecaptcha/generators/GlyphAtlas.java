@@ -0,0 +1,370 @@
+package com.fedmag.verysimplecaptcha.generators;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The {@code GlyphAtlas} class caches rasterized glyphs and draws text by copying their pixels
+ * straight into an image raster, instead of running Java2D text rendering for every image.
+ *
+ * <p>Each glyph is rasterized once per font, color and rotation. Rotations are quantized to a
+ * configurable step, so randomly rotated text reuses a bounded number of glyph variants. The atlas
+ * holds at most a configured number of bytes of pixel data and evicts the least recently used
+ * glyphs beyond that.
+ *
+ * <p>Glyphs are rasterized with the same rendering hints as a default {@code Graphics2D} on a
+ * {@code BufferedImage}, so the output matches {@code drawString} up to sub-pixel placement and the
+ * rotation quantization.
+ */
+public final class GlyphAtlas {
+
+  /** Default memory bound of an atlas, in bytes of cached pixel data. */
+  public static final long DEFAULT_MAX_BYTES = 4L * 1024 * 1024;
+
+  /** Default rotation quantization step, in degrees. */
+  public static final double DEFAULT_ROTATION_STEP = 1d;
+
+  private static final GlyphAtlas SHARED =
+      new GlyphAtlas(DEFAULT_MAX_BYTES, DEFAULT_ROTATION_STEP);
+  private static final FontRenderContext FONT_RENDER_CONTEXT =
+      new FontRenderContext(null, false, false);
+  // Rough per-entry overhead of the key, the glyph and the map node
+  private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+  private final long maxBytes;
+  private final double rotationStepRadians;
+  private final LinkedHashMap<GlyphKey, Glyph> glyphs = new LinkedHashMap<>(256, 0.75f, true);
+  private long usedBytes;
+
+  /**
+   * Constructs a {@code GlyphAtlas}.
+   *
+   * @param maxBytes the maximum number of bytes of cached pixel data
+   * @param rotationStepDegrees the step rotations are quantized to, in degrees
+   * @throws IllegalArgumentException if either argument is not positive
+   */
+  public GlyphAtlas(long maxBytes, double rotationStepDegrees) {
+    if (maxBytes <= 0 || rotationStepDegrees <= 0) {
+      throw new IllegalArgumentException(
+          "The memory bound and the rotation step of the atlas must be positive.");
+    }
+    this.maxBytes = maxBytes;
+    this.rotationStepRadians = Math.toRadians(rotationStepDegrees);
+  }
+
+  /**
+   * Returns the atlas shared by all renderers that do not supply their own.
+   *
+   * @return the shared atlas
+   */
+  public static GlyphAtlas shared() {
+    return SHARED;
+  }
+
+  /**
+   * Returns whether text in the given font can be drawn from the atlas. Only fonts whose transform
+   * is a pure rotation (or the identity) are supported.
+   *
+   * @param font the font
+   * @return {@code true} if the atlas can draw the font
+   */
+  public static boolean supports(Font font) {
+    int type = font.getTransform().getType();
+    int rotations = AffineTransform.TYPE_GENERAL_ROTATION | AffineTransform.TYPE_QUADRANT_ROTATION;
+    return (type & ~rotations) == 0;
+  }
+
+  /**
+   * Draws the given string into the image with its baseline starting at the given point.
+   *
+   * @param image the target image, of type {@code TYPE_INT_RGB} or {@code TYPE_INT_ARGB}
+   * @param string the string to draw
+   * @param font the font, possibly rotated
+   * @param color the text color
+   * @param x the x coordinate of the baseline start
+   * @param y the y coordinate of the baseline start
+   * @throws IllegalArgumentException if the image type or the font transform is not supported
+   */
+  public void drawString(BufferedImage image, String string, Font font, Color color, int x, int y) {
+    if (image.getType() != BufferedImage.TYPE_INT_RGB
+        && image.getType() != BufferedImage.TYPE_INT_ARGB) {
+      throw new IllegalArgumentException(
+          "Only TYPE_INT_RGB and TYPE_INT_ARGB images are supported.");
+    }
+    int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    int width = image.getWidth();
+    int height = image.getHeight();
+    draw(
+        string,
+        font,
+        color.getRGB(),
+        x,
+        y,
+        (glyph, penX, penY) -> blit(glyph, pixels, width, height, penX, penY));
+  }
+
+  /**
+   * Draws the given string into an 8-bit coverage raster with its baseline starting at the given
+   * point, keeping the larger of the existing and the new coverage in every pixel. The coverage of
+   * a glyph is its alpha channel when drawn in opaque white.
+   *
+   * @param coverage the coverage values, row by row without padding
+   * @param width the image width
+   * @param height the image height
+   * @param string the string to draw
+   * @param font the font, possibly rotated
+   * @param x the x coordinate of the baseline start
+   * @param y the y coordinate of the baseline start
+   * @throws IllegalArgumentException if the raster is too small or the font transform is not
+   *     supported
+   */
+  public void drawCoverage(
+      byte[] coverage, int width, int height, String string, Font font, int x, int y) {
+    if (width < 0 || height < 0 || coverage.length < width * height) {
+      throw new IllegalArgumentException("The raster is smaller than width * height.");
+    }
+    draw(
+        string,
+        font,
+        0xffffffff,
+        x,
+        y,
+        (glyph, penX, penY) -> blitCoverage(glyph, coverage, width, height, penX, penY));
+  }
+
+  private void draw(String string, Font font, int rgb, int x, int y, GlyphSink sink) {
+    if (!supports(font)) {
+      throw new IllegalArgumentException("Only rotated fonts can be drawn from the atlas.");
+    }
+    AffineTransform transform = font.getTransform();
+    double angle = Math.atan2(transform.getShearY(), transform.getScaleX());
+    int rotationStep = (int) Math.round(angle / rotationStepRadians);
+    Font baseFont = transform.isIdentity() ? font : font.deriveFont(new AffineTransform());
+
+    double penX = x;
+    double penY = y;
+    for (int i = 0; i < string.length(); i++) {
+      Glyph glyph = glyph(new GlyphKey(baseFont, rgb, rotationStep, string.charAt(i)));
+      sink.accept(glyph, (int) Math.round(penX), (int) Math.round(penY));
+      penX += glyph.advanceX;
+      penY += glyph.advanceY;
+    }
+  }
+
+  /**
+   * Returns the number of glyphs currently cached.
+   *
+   * @return the number of cached glyphs
+   */
+  public synchronized int size() {
+    return glyphs.size();
+  }
+
+  /**
+   * Returns the number of bytes currently accounted to cached glyphs.
+   *
+   * @return the used bytes
+   */
+  public synchronized long usedBytes() {
+    return usedBytes;
+  }
+
+  /** Removes all cached glyphs. */
+  public synchronized void clear() {
+    glyphs.clear();
+    usedBytes = 0;
+  }
+
+  private Glyph glyph(GlyphKey key) {
+    synchronized (this) {
+      Glyph glyph = glyphs.get(key);
+      if (glyph != null) {
+        return glyph;
+      }
+    }
+    // Rasterize outside the lock; a concurrent duplicate is harmless
+    Glyph glyph = rasterize(key);
+    synchronized (this) {
+      Glyph previous = glyphs.put(key, glyph);
+      if (previous != null) {
+        usedBytes -= previous.sizeInBytes();
+      }
+      usedBytes += glyph.sizeInBytes();
+      evict();
+    }
+    return glyph;
+  }
+
+  private void evict() {
+    Iterator<Map.Entry<GlyphKey, Glyph>> iterator = glyphs.entrySet().iterator();
+    while (usedBytes > maxBytes && iterator.hasNext()) {
+      usedBytes -= iterator.next().getValue().sizeInBytes();
+      iterator.remove();
+    }
+  }
+
+  private Glyph rasterize(GlyphKey key) {
+    Font font =
+        key.rotationStep == 0
+            ? key.font
+            : key.font.deriveFont(
+                AffineTransform.getRotateInstance(key.rotationStep * rotationStepRadians));
+    GlyphVector vector = font.createGlyphVector(FONT_RENDER_CONTEXT, new char[] {key.character});
+    Point2D advance = vector.getGlyphPosition(1);
+    Rectangle bounds = vector.getPixelBounds(FONT_RENDER_CONTEXT, 0, 0);
+    if (bounds.isEmpty()) {
+      return new Glyph(new int[0], 0, 0, 0, 0, advance.getX(), advance.getY());
+    }
+    BufferedImage glyphImage =
+        new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g2 = glyphImage.createGraphics();
+    try {
+      g2.setColor(new Color(key.rgb, true));
+      g2.drawGlyphVector(vector, -bounds.x, -bounds.y);
+    } finally {
+      g2.dispose();
+    }
+    int[] argb = ((DataBufferInt) glyphImage.getRaster().getDataBuffer()).getData();
+    return new Glyph(
+        argb, bounds.x, bounds.y, bounds.width, bounds.height, advance.getX(), advance.getY());
+  }
+
+  private static void blit(Glyph glyph, int[] pixels, int width, int height, int x, int y) {
+    int left = x + glyph.offsetX;
+    int top = y + glyph.offsetY;
+    int startX = Math.max(0, -left);
+    int startY = Math.max(0, -top);
+    int endX = Math.min(glyph.width, width - left);
+    int endY = Math.min(glyph.height, height - top);
+    for (int gy = startY; gy < endY; gy++) {
+      int src = gy * glyph.width;
+      int dst = (top + gy) * width + left;
+      for (int gx = startX; gx < endX; gx++) {
+        int argb = glyph.argb[src + gx];
+        int alpha = argb >>> 24;
+        if (alpha == 0) {
+          continue;
+        }
+        pixels[dst + gx] = alpha == 255 ? argb : blend(pixels[dst + gx], argb, alpha);
+      }
+    }
+  }
+
+  private static void blitCoverage(
+      Glyph glyph, byte[] coverage, int width, int height, int x, int y) {
+    int left = x + glyph.offsetX;
+    int top = y + glyph.offsetY;
+    int startX = Math.max(0, -left);
+    int startY = Math.max(0, -top);
+    int endX = Math.min(glyph.width, width - left);
+    int endY = Math.min(glyph.height, height - top);
+    for (int gy = startY; gy < endY; gy++) {
+      int src = gy * glyph.width;
+      int dst = (top + gy) * width + left;
+      for (int gx = startX; gx < endX; gx++) {
+        int alpha = glyph.argb[src + gx] >>> 24;
+        if (alpha > (coverage[dst + gx] & 0xff)) {
+          coverage[dst + gx] = (byte) alpha;
+        }
+      }
+    }
+  }
+
+  private static int blend(int background, int foreground, int alpha) {
+    int inverse = 255 - alpha;
+    int r = (((foreground >> 16) & 0xff) * alpha + ((background >> 16) & 0xff) * inverse) / 255;
+    int g = (((foreground >> 8) & 0xff) * alpha + ((background >> 8) & 0xff) * inverse) / 255;
+    int b = ((foreground & 0xff) * alpha + (background & 0xff) * inverse) / 255;
+    return 0xff000000 | (r << 16) | (g << 8) | b;
+  }
+
+  /** Receives the glyphs of a string with the pen position they are drawn at. */
+  @FunctionalInterface
+  private interface GlyphSink {
+
+    void accept(Glyph glyph, int x, int y);
+  }
+
+  /** Identifies one rasterized glyph. */
+  private static final class GlyphKey {
+
+    private final Font font;
+    private final int rgb;
+    private final int rotationStep;
+    private final char character;
+    private final int hash;
+
+    private GlyphKey(Font font, int rgb, int rotationStep, char character) {
+      this.font = font;
+      this.rgb = rgb;
+      this.rotationStep = rotationStep;
+      this.character = character;
+      this.hash = Objects.hash(font, rgb, rotationStep, character);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof GlyphKey)) {
+        return false;
+      }
+      GlyphKey other = (GlyphKey) o;
+      return rgb == other.rgb
+          && rotationStep == other.rotationStep
+          && character == other.character
+          && font.equals(other.font);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  /** The pixels of a rasterized glyph and the pen advance that follows it. */
+  private static final class Glyph {
+
+    private final int[] argb;
+    private final int offsetX;
+    private final int offsetY;
+    private final int width;
+    private final int height;
+    private final double advanceX;
+    private final double advanceY;
+
+    private Glyph(
+        int[] argb,
+        int offsetX,
+        int offsetY,
+        int width,
+        int height,
+        double advanceX,
+        double advanceY) {
+      this.argb = argb;
+      this.offsetX = offsetX;
+      this.offsetY = offsetY;
+      this.width = width;
+      this.height = height;
+      this.advanceX = advanceX;
+      this.advanceY = advanceY;
+    }
+
+    private long sizeInBytes() {
+      return (long) argb.length * Integer.BYTES + ENTRY_OVERHEAD_BYTES;
+    }
+  }
+}
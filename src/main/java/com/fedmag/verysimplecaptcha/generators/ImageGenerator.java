@@ -1,30 +1,38 @@
 package com.fedmag.verysimplecaptcha.generators;
 
 import com.fedmag.verysimplecaptcha.generators.filters.ImageFilter;
+import com.fedmag.verysimplecaptcha.metrics.CaptchaMetrics;
 import java.awt.Color;
 import java.awt.Font;
-import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
-import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * The {@code ImageGenerator} class provides methods to generate images with text and various
  * customizations. The class supports setting font styles, colors, transformations, and applying
  * image filters.
  *
+ * <p>The settings held here are global to the JVM. Code that renders from several threads should
+ * build a {@link RenderConfig} and use an {@link ImageRenderer} directly; this class is a thin
+ * facade over them.
+ *
  * <p>This class cannot be instantiated.
  */
 public final class ImageGenerator {
 
-  private static final ArrayList<ImageFilter> filters = new ArrayList<>();
-  private static final ArrayList<AffineTransform> listOfStringTransformations = new ArrayList<>();
+  private static final List<ImageFilter> filters = new CopyOnWriteArrayList<>();
+  private static final List<AffineTransform> listOfStringTransformations =
+      new CopyOnWriteArrayList<>();
   // Default settings
-  private static Font font = new Font("Verdana", Font.BOLD, 28);
-  private static Point startingPoint = new Point(10, 100);
-  private static Color backgroundColor = new Color(29, 28, 26);
-  private static Color fontColor = new Color(236, 239, 244);
+  private static volatile Font font = RenderConfig.DEFAULT.getFont();
+  private static volatile Point startingPoint = RenderConfig.DEFAULT.getStartingPoint();
+  private static volatile Color backgroundColor = RenderConfig.DEFAULT.getBackgroundColor();
+  private static volatile Color fontColor = RenderConfig.DEFAULT.getFontColor();
+  private static volatile CaptchaMetrics metrics = CaptchaMetrics.NOOP;
+  private static volatile RenderBackend renderBackend = RenderBackend.JAVA2D;
 
   /** Private constructor to prevent instantiation. */
   private ImageGenerator() {}
@@ -112,72 +120,57 @@ public final class ImageGenerator {
   }
 
   /**
-   * Generates an image from the given string with specified width and height.
+   * Sets the listener receiving the render and filter times.
    *
-   * @param string the string to be drawn on the image
-   * @param width the width of the image
-   * @param height the height of the image
-   * @return the generated image as a {@code BufferedImage}
+   * @param metrics the metrics listener, or {@link CaptchaMetrics#NOOP}
    */
-  public static BufferedImage fromString(String string, int width, int height) {
-    BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-    Graphics2D g2 = prepareGraphics(bufferedImage.createGraphics(), width, height);
-
-    // Draw the string and apply filters
-    applyStringTransformations(g2, string);
-    bufferedImage = applyImageFilters(bufferedImage);
-    removeAllImageFilters();
-    g2.dispose();
-    return bufferedImage;
+  public static void setMetrics(CaptchaMetrics metrics) {
+    ImageGenerator.metrics = metrics;
   }
 
   /**
-   * Prepares the graphics context with the specified dimensions.
+   * Sets the backend drawing the text.
    *
-   * @param g2 the graphics context
-   * @param width the width of the image
-   * @param height the height of the image
-   * @return the prepared graphics context
+   * @param backend the render backend
+   * @see RenderBackend
    */
-  private static Graphics2D prepareGraphics(Graphics2D g2, int width, int height) {
-    g2.setColor(backgroundColor);
-    g2.fillRect(0, 0, width, height);
-    g2.setColor(fontColor);
-    g2.setFont(ImageGenerator.font);
-    return g2;
+  public static void setRenderBackend(RenderBackend backend) {
+    renderBackend = backend;
   }
 
   /**
-   * Applies the string transformations and draws the string on the graphics context.
+   * Generates an image from the given string with specified width and height.
+   *
+   * <p>The current static settings are copied into a {@link RenderConfig} and rendered by an
+   * {@link ImageRenderer}. Image filters are cleared once the image has been generated.
    *
-   * @param g2 the graphics context
-   * @param string the string to be drawn
+   * @param string the string to be drawn on the image
+   * @param width the width of the image
+   * @param height the height of the image
+   * @return the generated image as a {@code BufferedImage}
    */
-  private static void applyStringTransformations(Graphics2D g2, String string) {
-    if (listOfStringTransformations.isEmpty()) {
-      // Draw the string as it is if no transformations are specified
-      g2.drawString(string, startingPoint.x, startingPoint.y);
-      return;
-    }
-    // Apply all transformations and draw the string
-    Font derived = font.deriveFont(font.getAttributes());
-    for (AffineTransform transform : listOfStringTransformations) {
-      derived = derived.deriveFont(transform);
-    }
-    g2.setFont(derived);
-    g2.drawString(string, startingPoint.x, startingPoint.y);
+  public static BufferedImage fromString(String string, int width, int height) {
+    RenderConfig config = currentConfig();
+    removeAllImageFilters();
+    return new ImageRenderer(config).render(string, width, height);
   }
 
   /**
-   * Applies all image filters to the given image.
+   * Returns a snapshot of the current static settings.
    *
-   * @param bufferedImage the image to which filters will be applied
-   * @return the filtered image
+   * @return an immutable configuration holding the current settings
    */
-  private static BufferedImage applyImageFilters(BufferedImage bufferedImage) {
-    for (ImageFilter filter : filters) {
-      bufferedImage = filter.apply(bufferedImage);
-    }
-    return bufferedImage;
+  public static RenderConfig currentConfig() {
+    RenderConfig.Builder builder =
+        new RenderConfig.Builder()
+            .font(font)
+            .startingPoint(startingPoint)
+            .backgroundColor(backgroundColor)
+            .fontColor(fontColor)
+            .metrics(metrics)
+            .renderBackend(renderBackend);
+    listOfStringTransformations.forEach(builder::addFontTransformation);
+    filters.forEach(builder::addImageFilter);
+    return builder.build();
   }
 }
@@ -0,0 +1,264 @@
+package com.fedmag.verysimplecaptcha.generators;
+
+import com.fedmag.verysimplecaptcha.generators.filters.FilterPipeline;
+import com.fedmag.verysimplecaptcha.generators.filters.PixelRaster;
+import com.fedmag.verysimplecaptcha.metrics.CaptchaStage;
+import com.fedmag.verysimplecaptcha.metrics.StageTimer;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.random.RandomGenerator;
+
+/**
+ * The {@code ImageRenderer} class draws text on an image according to a {@link RenderConfig}.
+ *
+ * <p>A renderer holds no mutable state, so a single instance can be used concurrently from any
+ * number of threads without locking. The font derived from the configured transformations is
+ * computed once, when the renderer is created.
+ *
+ * <p>When the configuration holds a {@link GlyphAtlas}, the background is filled and the text is
+ * copied directly into the raster, without creating a {@code Graphics2D}. With the {@link
+ * RenderBackend#BITMAP} backend, the text is drawn from a {@link BitmapFont} instead, without
+ * touching the Java2D font subsystem at all. Filters run through a
+ * {@link FilterPipeline}, in place on the rendered image. Drawing and every filter are timed and
+ * reported to the {@linkplain RenderConfig#getMetrics() metrics} of the configuration.
+ *
+ * <p>In {@linkplain RenderConfig#isCompactColor() compact color}, every backend draws the text
+ * coverage into one byte per pixel, and the filters receive a compact {@link PixelRaster} whose
+ * shades ramp from the background to the font color.
+ */
+public final class ImageRenderer {
+
+  private final RenderConfig config;
+  private final Font derivedFont;
+  private final Point startingPoint;
+  private final FilterPipeline filterPipeline;
+  private final BitmapFont bitmapFont;
+
+  /**
+   * Constructs an {@code ImageRenderer} for the given configuration.
+   *
+   * @param config the configuration to render with
+   */
+  public ImageRenderer(RenderConfig config) {
+    this.config = Objects.requireNonNull(config, "config");
+    this.derivedFont = deriveFont(config);
+    this.startingPoint = config.getStartingPoint();
+    this.filterPipeline =
+        new FilterPipeline(
+            config.getFilters(),
+            config.getFilterPool(),
+            config.getParallelThreshold(),
+            config.getMetrics());
+    this.bitmapFont =
+        config.getRenderBackend() != RenderBackend.BITMAP
+            ? null
+            : config.getBitmapFont() != null ? config.getBitmapFont() : BitmapFont.defaultFont();
+  }
+
+  /**
+   * Derives the font to draw with by applying all the configured font transformations.
+   *
+   * @param config the configuration holding the font and its transformations
+   * @return the derived font
+   */
+  private static Font deriveFont(RenderConfig config) {
+    Font font = config.getFont();
+    if (config.getFontTransformations().isEmpty()) {
+      return font;
+    }
+    Font derived = font.deriveFont(font.getAttributes());
+    for (AffineTransform transform : config.getFontTransformations()) {
+      derived = derived.deriveFont(transform);
+    }
+    return derived;
+  }
+
+  /**
+   * Returns the configuration used by this renderer.
+   *
+   * @return the configuration
+   */
+  public RenderConfig getConfig() {
+    return config;
+  }
+
+  /**
+   * Renders the given string on a new image with the specified width and height.
+   *
+   * @param string the string to be drawn on the image
+   * @param width the width of the image
+   * @param height the height of the image
+   * @return the generated image as a {@code BufferedImage}
+   */
+  public BufferedImage render(String string, int width, int height) {
+    return render(string, width, height, derivedFont, null);
+  }
+
+  /**
+   * Renders the given string on a new image with the specified width and height, with the font
+   * further transformed by the given transformation. Only the font is derived again; everything
+   * else the renderer prepared is reused, so this is the cheap way to vary the text per image.
+   *
+   * @param string the string to be drawn on the image
+   * @param width the width of the image
+   * @param height the height of the image
+   * @param transform the transformation applied after the configured font transformations
+   * @return the generated image as a {@code BufferedImage}
+   */
+  public BufferedImage render(String string, int width, int height, AffineTransform transform) {
+    return render(string, width, height, derivedFont.deriveFont(transform), null);
+  }
+
+  /**
+   * Renders the given string on a new image, as {@link #render(String, int, int,
+   * AffineTransform)} does, drawing every random choice of the filters from the given generator.
+   * A seeded generator makes the image reproducible.
+   *
+   * @param string the string to be drawn on the image
+   * @param width the width of the image
+   * @param height the height of the image
+   * @param transform the transformation applied after the configured font transformations, or
+   *     {@code null} for none
+   * @param random the generator the filters draw from
+   * @return the generated image as a {@code BufferedImage}
+   */
+  public BufferedImage render(
+      String string, int width, int height, AffineTransform transform, RandomGenerator random) {
+    Font font = transform == null ? derivedFont : derivedFont.deriveFont(transform);
+    return render(string, width, height, font, Objects.requireNonNull(random, "random"));
+  }
+
+  private BufferedImage render(
+      String string, int width, int height, Font font, RandomGenerator random) {
+    StageTimer timer = StageTimer.start();
+    if (config.isCompactColor()) {
+      byte[] shades = drawShades(string, width, height, font);
+      config.getMetrics().onRender(width, height, timer.stop(CaptchaStage.RENDER, null, 0));
+      Color background = config.getBackgroundColor();
+      int backgroundRgb = opaqueBackground(background);
+      return filterPipeline.apply(
+          PixelRaster.ofShades(
+              shades,
+              width,
+              height,
+              backgroundRgb,
+              blend(backgroundRgb, config.getFontColor())),
+          random);
+    }
+    BufferedImage bufferedImage = draw(string, width, height, font);
+    config.getMetrics().onRender(width, height, timer.stop(CaptchaStage.RENDER, null, 0));
+    return filterPipeline.apply(bufferedImage, random);
+  }
+
+  private BufferedImage draw(String string, int width, int height, Font font) {
+    BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    if (bitmapFont != null) {
+      int[] pixels = ((DataBufferInt) bufferedImage.getRaster().getDataBuffer()).getData();
+      Arrays.fill(pixels, opaqueBackground(config.getBackgroundColor()));
+      bitmapFont.drawString(
+          pixels, width, height, string, bitmapTransform(font), config.getFontColor().getRGB());
+      return bufferedImage;
+    }
+    GlyphAtlas atlas = config.getGlyphAtlas();
+    if (atlas != null && GlyphAtlas.supports(font)) {
+      int[] pixels = ((DataBufferInt) bufferedImage.getRaster().getDataBuffer()).getData();
+      Arrays.fill(pixels, opaqueBackground(config.getBackgroundColor()));
+      atlas.drawString(
+          bufferedImage,
+          string,
+          font,
+          config.getFontColor(),
+          startingPoint.x,
+          startingPoint.y);
+      return bufferedImage;
+    }
+    Graphics2D g2 = bufferedImage.createGraphics();
+    try {
+      g2.setColor(config.getBackgroundColor());
+      g2.fillRect(0, 0, width, height);
+      g2.setColor(config.getFontColor());
+      g2.setFont(font);
+      g2.drawString(string, startingPoint.x, startingPoint.y);
+    } finally {
+      g2.dispose();
+    }
+    return bufferedImage;
+  }
+
+  /**
+   * Draws the coverage of the text, one byte per pixel, with the backend {@link #draw} uses.
+   *
+   * @return the coverage values, row by row
+   */
+  private byte[] drawShades(String string, int width, int height, Font font) {
+    if (bitmapFont != null) {
+      byte[] shades = new byte[width * height];
+      bitmapFont.drawCoverage(shades, width, height, string, bitmapTransform(font));
+      return shades;
+    }
+    GlyphAtlas atlas = config.getGlyphAtlas();
+    if (atlas != null && GlyphAtlas.supports(font)) {
+      byte[] shades = new byte[width * height];
+      atlas.drawCoverage(shades, width, height, string, font, startingPoint.x, startingPoint.y);
+      return shades;
+    }
+    BufferedImage coverage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+    Graphics2D g2 = coverage.createGraphics();
+    try {
+      g2.setColor(Color.WHITE);
+      g2.setFont(font);
+      g2.drawString(string, startingPoint.x, startingPoint.y);
+    } finally {
+      g2.dispose();
+    }
+    return ((DataBufferByte) coverage.getRaster().getDataBuffer()).getData();
+  }
+
+  private AffineTransform bitmapTransform(Font font) {
+    AffineTransform transform =
+        AffineTransform.getTranslateInstance(startingPoint.x, startingPoint.y);
+    transform.concatenate(font.getTransform());
+    double scale = font.getSize2D() / bitmapFont.getPixelSize();
+    transform.scale(scale, scale);
+    return transform;
+  }
+
+  /**
+   * Returns the opaque pixel value of the given color painted over the given pixel.
+   *
+   * @param background the opaque pixel painted over
+   * @param color the painted color
+   * @return the opaque pixel value
+   */
+  private static int blend(int background, Color color) {
+    int alpha = color.getAlpha();
+    int inverse = 255 - alpha;
+    int r = (color.getRed() * alpha + ((background >> 16) & 0xff) * inverse + 127) / 255;
+    int g = (color.getGreen() * alpha + ((background >> 8) & 0xff) * inverse + 127) / 255;
+    int b = (color.getBlue() * alpha + (background & 0xff) * inverse + 127) / 255;
+    return 0xff000000 | (r << 16) | (g << 8) | b;
+  }
+
+  /**
+   * Returns the pixel value {@code fillRect} produces when the given color is painted over the
+   * black pixels of a new image.
+   *
+   * @param color the background color
+   * @return the opaque pixel value
+   */
+  private static int opaqueBackground(Color color) {
+    int alpha = color.getAlpha();
+    int r = (color.getRed() * alpha + 127) / 255;
+    int g = (color.getGreen() * alpha + 127) / 255;
+    int b = (color.getBlue() * alpha + 127) / 255;
+    return 0xff000000 | (r << 16) | (g << 8) | b;
+  }
+}
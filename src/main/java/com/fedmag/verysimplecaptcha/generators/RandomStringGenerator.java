@@ -1,19 +1,46 @@
 package com.fedmag.verysimplecaptcha.generators;
 
-import java.util.Random;
+import java.security.SecureRandom;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 
 /**
  * The {@code RandomStringGenerator} class provides methods to generate random strings. The class
  * includes static methods to generate alphanumeric strings of a specified length or using a custom
  * set of characters.
  *
+ * <p>Random bits come from a per-thread buffer refilled in bulk, either from {@code
+ * ThreadLocalRandom} ({@link Source#FAST}) or from a shared {@code SecureRandom} ({@link
+ * Source#SECURE}). Characters are picked by rejection sampling on the smallest power of two
+ * covering the character set, so every character is equally likely. {@link #fill(char[], int, int,
+ * String, Source)} writes many tokens into a caller-supplied array without allocating. The
+ * overloads taking a {@code RandomGenerator} draw every character from it instead, so a seeded
+ * generator always produces the same string.
+ *
  * <p>This class cannot be instantiated.
  */
 public final class RandomStringGenerator {
 
+  /** The source of randomness used to pick characters. */
+  public enum Source {
+    /** {@code ThreadLocalRandom}: fast, but predictable to an attacker who observes its output. */
+    FAST,
+    /** {@code SecureRandom}: suitable for tokens that must not be guessed. */
+    SECURE
+  }
+
   // Default set of alphanumeric characters
   private static final String ALPHANUMERIC_CHARACTERS =
       "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789abcdefghijklmnopqrstuvz";
+  // Character sets up to this size are sampled one byte at a time
+  private static final int MAX_BYTE_SAMPLED = 256;
+  private static final int BUFFER_SIZE = 256;
+  private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+  private static final ThreadLocal<RandomBuffer> FAST_BUFFER =
+      ThreadLocal.withInitial(() -> new RandomBuffer(Source.FAST));
+  private static final ThreadLocal<RandomBuffer> SECURE_BUFFER =
+      ThreadLocal.withInitial(() -> new RandomBuffer(Source.SECURE));
 
   /** Private constructor to prevent instantiation. */
   private RandomStringGenerator() {}
@@ -26,19 +53,7 @@ public final class RandomStringGenerator {
    * @throws IllegalArgumentException if the length is less than 1
    */
   public static String generate(int length) {
-    if (length < 1) {
-      throw new IllegalArgumentException(
-          "The length of the generated string cannot be smaller than 1.");
-    }
-    StringBuilder randomString = new StringBuilder(length);
-    Random random = new Random();
-
-    for (int i = 0; i < length; i++) {
-      int randomIndex = random.nextInt(ALPHANUMERIC_CHARACTERS.length());
-      char randomChar = ALPHANUMERIC_CHARACTERS.charAt(randomIndex);
-      randomString.append(randomChar);
-    }
-    return randomString.toString();
+    return generate(length, ALPHANUMERIC_CHARACTERS, Source.FAST);
   }
 
   /**
@@ -50,19 +65,145 @@ public final class RandomStringGenerator {
    * @throws IllegalArgumentException if the length is less than 1
    */
   public static String generate(int length, String charsToUse) {
+    return generate(length, charsToUse, Source.FAST);
+  }
+
+  /**
+   * Generates a random alphanumeric string of the specified length from the given source.
+   *
+   * @param length the length of the random string to generate
+   * @param source the source of randomness
+   * @return a random alphanumeric string of the specified length
+   * @throws IllegalArgumentException if the length is less than 1
+   */
+  public static String generate(int length, Source source) {
+    return generate(length, ALPHANUMERIC_CHARACTERS, source);
+  }
+
+  /**
+   * Generates a random string of the specified length using the given set of characters and source
+   * of randomness.
+   *
+   * @param length the length of the random string to generate
+   * @param charsToUse the set of characters to use for generating the string
+   * @param source the source of randomness
+   * @return a random string of the specified length using the specified set of characters
+   * @throws IllegalArgumentException if the length is less than 1 or the set of characters is
+   *     empty
+   */
+  public static String generate(int length, String charsToUse, Source source) {
     if (length < 1) {
       throw new IllegalArgumentException(
           "The length of the generated string cannot be smaller than 1.");
     }
-    StringBuilder randomString = new StringBuilder(length);
-    Random random = new Random();
+    char[] chars = new char[length];
+    fill(chars, 0, length, charsToUse, source);
+    return new String(chars);
+  }
+
+  /**
+   * Generates an alphanumeric string of the specified length, drawing every character from the
+   * given generator.
+   *
+   * @param length the length of the string to generate
+   * @param random the generator the characters are drawn from
+   * @return an alphanumeric string of the specified length
+   * @throws IllegalArgumentException if the length is less than 1
+   */
+  public static String generate(int length, RandomGenerator random) {
+    return generate(length, ALPHANUMERIC_CHARACTERS, random);
+  }
 
+  /**
+   * Generates a string of the specified length using the given set of characters, drawing every
+   * character from the given generator.
+   *
+   * @param length the length of the string to generate
+   * @param charsToUse the set of characters to use for generating the string
+   * @param random the generator the characters are drawn from
+   * @return a string of the specified length using the specified set of characters
+   * @throws IllegalArgumentException if the length is less than 1 or the set of characters is
+   *     empty
+   */
+  public static String generate(int length, String charsToUse, RandomGenerator random) {
+    if (length < 1) {
+      throw new IllegalArgumentException(
+          "The length of the generated string cannot be smaller than 1.");
+    }
+    int size = charsToUse.length();
+    if (size == 0) {
+      throw new IllegalArgumentException("The set of characters cannot be empty.");
+    }
+    char[] chars = new char[length];
     for (int i = 0; i < length; i++) {
-      int randomIndex = random.nextInt(charsToUse.length());
-      char randomChar = charsToUse.charAt(randomIndex);
-      randomString.append(randomChar);
+      chars[i] = charsToUse.charAt(random.nextInt(size));
     }
+    return new String(chars);
+  }
 
-    return randomString.toString();
+  /**
+   * Fills part of the given array with random characters from the given set. Many tokens can be
+   * generated at once by filling one array and slicing it.
+   *
+   * @param destination the array to fill
+   * @param offset the index of the first character to write
+   * @param length the number of characters to write
+   * @param charsToUse the set of characters to pick from
+   * @param source the source of randomness
+   * @throws IllegalArgumentException if the set of characters is empty
+   * @throws IndexOutOfBoundsException if the range is outside the array
+   */
+  public static void fill(
+      char[] destination, int offset, int length, String charsToUse, Source source) {
+    Objects.checkFromIndexSize(offset, length, destination.length);
+    int size = charsToUse.length();
+    if (size == 0) {
+      throw new IllegalArgumentException("The set of characters cannot be empty.");
+    }
+    RandomBuffer buffer = (source == Source.SECURE ? SECURE_BUFFER : FAST_BUFFER).get();
+    if (size > MAX_BYTE_SAMPLED) {
+      for (int i = offset; i < offset + length; i++) {
+        destination[i] = charsToUse.charAt(buffer.nextInt(size));
+      }
+      return;
+    }
+    int mask = size == 1 ? 0 : -1 >>> Integer.numberOfLeadingZeros(size - 1);
+    for (int i = offset; i < offset + length; i++) {
+      int index;
+      do {
+        index = buffer.nextByte() & mask;
+      } while (index >= size);
+      destination[i] = charsToUse.charAt(index);
+    }
+  }
+
+  /** A per-thread buffer of random bytes, refilled in bulk. */
+  private static final class RandomBuffer {
+
+    private final Source source;
+    private final byte[] bytes = new byte[BUFFER_SIZE];
+    private int position = BUFFER_SIZE;
+
+    private RandomBuffer(Source source) {
+      this.source = source;
+    }
+
+    private int nextByte() {
+      if (position == BUFFER_SIZE) {
+        if (source == Source.SECURE) {
+          SECURE_RANDOM.nextBytes(bytes);
+        } else {
+          ThreadLocalRandom.current().nextBytes(bytes);
+        }
+        position = 0;
+      }
+      return bytes[position++] & 0xff;
+    }
+
+    private int nextInt(int bound) {
+      return source == Source.SECURE
+          ? SECURE_RANDOM.nextInt(bound)
+          : ThreadLocalRandom.current().nextInt(bound);
+    }
   }
 }
@@ -0,0 +1,16 @@
+package com.fedmag.verysimplecaptcha.generators;
+
+/** The {@code RenderBackend} enum lists the ways an {@link ImageRenderer} can draw text. */
+public enum RenderBackend {
+  /**
+   * Draws with Java2D, or from a {@link GlyphAtlas} if one is configured. Needs the configured font
+   * to be installed on the system.
+   */
+  JAVA2D,
+  /**
+   * Draws from a {@link BitmapFont} bundled in the jar, in plain Java. Needs no system font and
+   * gives the same pixels on every JVM. The size and transformations of the configured font are
+   * applied; its family and style are not.
+   */
+  BITMAP
+}
@@ -0,0 +1,392 @@
+package com.fedmag.verysimplecaptcha.generators;
+
+import com.fedmag.verysimplecaptcha.generators.filters.FilterPipeline;
+import com.fedmag.verysimplecaptcha.generators.filters.ImageFilter;
+import com.fedmag.verysimplecaptcha.metrics.CaptchaMetrics;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Point;
+import java.awt.geom.AffineTransform;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The {@code RenderConfig} class holds every setting needed to render a single image: font, font
+ * transformations, colors, starting point and image filters.
+ *
+ * <p>Instances are immutable and can be shared freely between threads. Mutable inputs such as
+ * {@code Point} and {@code AffineTransform} are copied on the way in and on the way out.
+ */
+public final class RenderConfig {
+
+  /** The configuration used when no customization is specified. */
+  public static final RenderConfig DEFAULT = new Builder().build();
+
+  private final Font font;
+  private final Point startingPoint;
+  private final Color backgroundColor;
+  private final Color fontColor;
+  private final List<AffineTransform> fontTransformations;
+  private final List<ImageFilter> filters;
+  private final GlyphAtlas glyphAtlas;
+  private final ForkJoinPool filterPool;
+  private final int parallelThreshold;
+  private final CaptchaMetrics metrics;
+  private final RenderBackend renderBackend;
+  private final BitmapFont bitmapFont;
+  private final boolean compactColor;
+
+  private RenderConfig(Builder builder) {
+    this.font = builder.font;
+    this.startingPoint = new Point(builder.startingPoint);
+    this.backgroundColor = builder.backgroundColor;
+    this.fontColor = builder.fontColor;
+    this.fontTransformations = copyTransformations(builder.fontTransformations);
+    this.filters = Collections.unmodifiableList(new ArrayList<>(builder.filters));
+    this.glyphAtlas = builder.glyphAtlas;
+    this.filterPool = builder.filterPool;
+    this.parallelThreshold = builder.parallelThreshold;
+    this.metrics = builder.metrics;
+    this.renderBackend = builder.renderBackend;
+    this.bitmapFont = builder.bitmapFont;
+    this.compactColor = builder.compactColor;
+  }
+
+  private static List<AffineTransform> copyTransformations(List<AffineTransform> transforms) {
+    List<AffineTransform> copy = new ArrayList<>(transforms.size());
+    for (AffineTransform transform : transforms) {
+      copy.add(new AffineTransform(transform));
+    }
+    return Collections.unmodifiableList(copy);
+  }
+
+  /**
+   * Returns the font used to draw the text.
+   *
+   * @return the font
+   */
+  public Font getFont() {
+    return font;
+  }
+
+  /**
+   * Returns a copy of the point where the text baseline starts.
+   *
+   * @return the starting point
+   */
+  public Point getStartingPoint() {
+    return new Point(startingPoint);
+  }
+
+  /**
+   * Returns the background color of the image.
+   *
+   * @return the background color
+   */
+  public Color getBackgroundColor() {
+    return backgroundColor;
+  }
+
+  /**
+   * Returns the color used to draw the text.
+   *
+   * @return the font color
+   */
+  public Color getFontColor() {
+    return fontColor;
+  }
+
+  /**
+   * Returns copies of the transformations applied to the font, in insertion order.
+   *
+   * @return the font transformations
+   */
+  public List<AffineTransform> getFontTransformations() {
+    return copyTransformations(fontTransformations);
+  }
+
+  /**
+   * Returns the image filters applied after the text is drawn, in insertion order.
+   *
+   * @return an unmodifiable list of image filters
+   */
+  public List<ImageFilter> getFilters() {
+    return filters;
+  }
+
+  /**
+   * Returns the atlas the text is drawn from, if any.
+   *
+   * @return the glyph atlas, or {@code null} if text is drawn with Java2D
+   */
+  public GlyphAtlas getGlyphAtlas() {
+    return glyphAtlas;
+  }
+
+  /**
+   * Returns the pool filters run on for large images, if any.
+   *
+   * @return the filter pool, or {@code null} if filters always run on the rendering thread
+   */
+  public ForkJoinPool getFilterPool() {
+    return filterPool;
+  }
+
+  /**
+   * Returns the number of pixels from which filters run in parallel on the filter pool.
+   *
+   * @return the parallel threshold
+   */
+  public int getParallelThreshold() {
+    return parallelThreshold;
+  }
+
+  /**
+   * Returns the listener receiving the render and filter times.
+   *
+   * @return the metrics listener
+   */
+  public CaptchaMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Returns the backend drawing the text.
+   *
+   * @return the render backend
+   */
+  public RenderBackend getRenderBackend() {
+    return renderBackend;
+  }
+
+  /**
+   * Returns the font the {@link RenderBackend#BITMAP} backend draws with.
+   *
+   * @return the bitmap font, or {@code null} for the {@linkplain BitmapFont#defaultFont() default}
+   */
+  public BitmapFont getBitmapFont() {
+    return bitmapFont;
+  }
+
+  /**
+   * Returns whether images are rendered as one shade per pixel between the background and the
+   * font color.
+   *
+   * @return {@code true} if images are rendered in compact color
+   * @see com.fedmag.verysimplecaptcha.generators.filters.PixelRaster#ofShades
+   */
+  public boolean isCompactColor() {
+    return compactColor;
+  }
+
+  /**
+   * Returns a builder initialized with the settings of this configuration.
+   *
+   * @return a new builder
+   */
+  public Builder toBuilder() {
+    Builder builder =
+        new Builder()
+            .font(font)
+            .startingPoint(startingPoint)
+            .backgroundColor(backgroundColor)
+            .fontColor(fontColor)
+            .glyphAtlas(glyphAtlas)
+            .parallelFilters(filterPool)
+            .parallelThreshold(parallelThreshold)
+            .metrics(metrics)
+            .renderBackend(renderBackend)
+            .bitmapFont(bitmapFont)
+            .compactColor(compactColor);
+    fontTransformations.forEach(builder::addFontTransformation);
+    filters.forEach(builder::addImageFilter);
+    return builder;
+  }
+
+  /** The {@code Builder} class is used to build immutable {@code RenderConfig} instances. */
+  public static final class Builder {
+
+    private final ArrayList<AffineTransform> fontTransformations = new ArrayList<>();
+    private final ArrayList<ImageFilter> filters = new ArrayList<>();
+    private Font font = new Font("Verdana", Font.BOLD, 28);
+    private Point startingPoint = new Point(10, 100);
+    private Color backgroundColor = new Color(29, 28, 26);
+    private Color fontColor = new Color(236, 239, 244);
+    private GlyphAtlas glyphAtlas;
+    private ForkJoinPool filterPool;
+    private int parallelThreshold = FilterPipeline.DEFAULT_PARALLEL_THRESHOLD;
+    private CaptchaMetrics metrics = CaptchaMetrics.NOOP;
+    private RenderBackend renderBackend = RenderBackend.JAVA2D;
+    private BitmapFont bitmapFont;
+    private boolean compactColor;
+
+    /**
+     * Builds and returns an immutable {@code RenderConfig}.
+     *
+     * @return a new {@code RenderConfig}
+     */
+    public RenderConfig build() {
+      return new RenderConfig(this);
+    }
+
+    /**
+     * Sets the font for the text.
+     *
+     * @param font the font
+     * @return the builder instance
+     */
+    public Builder font(Font font) {
+      this.font = Objects.requireNonNull(font, "font");
+      return this;
+    }
+
+    /**
+     * Sets the starting point for drawing the text.
+     *
+     * @param point the starting point
+     * @return the builder instance
+     */
+    public Builder startingPoint(Point point) {
+      this.startingPoint = new Point(Objects.requireNonNull(point, "point"));
+      return this;
+    }
+
+    /**
+     * Sets the background color of the image.
+     *
+     * @param color the background color
+     * @return the builder instance
+     */
+    public Builder backgroundColor(Color color) {
+      this.backgroundColor = Objects.requireNonNull(color, "color");
+      return this;
+    }
+
+    /**
+     * Sets the font color of the text.
+     *
+     * @param color the font color
+     * @return the builder instance
+     */
+    public Builder fontColor(Color color) {
+      this.fontColor = Objects.requireNonNull(color, "color");
+      return this;
+    }
+
+    /**
+     * Adds a font transformation to be applied to the text.
+     *
+     * @param transform the affine transform to be added
+     * @return the builder instance
+     */
+    public Builder addFontTransformation(AffineTransform transform) {
+      this.fontTransformations.add(new AffineTransform(transform));
+      return this;
+    }
+
+    /**
+     * Adds an image filter to be applied to the generated image.
+     *
+     * @param filter the image filter to be added
+     * @return the builder instance
+     */
+    public Builder addImageFilter(ImageFilter filter) {
+      this.filters.add(Objects.requireNonNull(filter, "filter"));
+      return this;
+    }
+
+    /**
+     * Sets the atlas the text is drawn from. When {@code null}, the default, text is drawn with
+     * Java2D. Fonts transformed by anything other than a rotation are always drawn with Java2D.
+     *
+     * @param glyphAtlas the glyph atlas, or {@code null}
+     * @return the builder instance
+     */
+    public Builder glyphAtlas(GlyphAtlas glyphAtlas) {
+      this.glyphAtlas = glyphAtlas;
+      return this;
+    }
+
+    /**
+     * Sets the pool image filters run on for large images. When {@code null}, the default,
+     * filters always run on the rendering thread.
+     *
+     * @param pool the filter pool, or {@code null}
+     * @return the builder instance
+     * @see FilterPipeline
+     */
+    public Builder parallelFilters(ForkJoinPool pool) {
+      this.filterPool = pool;
+      return this;
+    }
+
+    /**
+     * Sets the number of pixels from which filters run in parallel on the filter pool.
+     *
+     * @param pixels the parallel threshold
+     * @return the builder instance
+     * @throws IllegalArgumentException if the threshold is smaller than 1
+     */
+    public Builder parallelThreshold(int pixels) {
+      if (pixels < 1) {
+        throw new IllegalArgumentException("The parallel threshold cannot be smaller than 1.");
+      }
+      this.parallelThreshold = pixels;
+      return this;
+    }
+
+    /**
+     * Sets the listener receiving the render and filter times. Defaults to {@link
+     * CaptchaMetrics#NOOP}.
+     *
+     * @param metrics the metrics listener
+     * @return the builder instance
+     */
+    public Builder metrics(CaptchaMetrics metrics) {
+      this.metrics = Objects.requireNonNull(metrics, "metrics");
+      return this;
+    }
+
+    /**
+     * Sets the backend drawing the text. Defaults to {@link RenderBackend#JAVA2D}. The {@link
+     * RenderBackend#BITMAP} backend ignores the glyph atlas.
+     *
+     * @param renderBackend the render backend
+     * @return the builder instance
+     */
+    public Builder renderBackend(RenderBackend renderBackend) {
+      this.renderBackend = Objects.requireNonNull(renderBackend, "renderBackend");
+      return this;
+    }
+
+    /**
+     * Sets the font the {@link RenderBackend#BITMAP} backend draws with. When {@code null}, the
+     * default, the font bundled with the library is used.
+     *
+     * @param bitmapFont the bitmap font, or {@code null}
+     * @return the builder instance
+     */
+    public Builder bitmapFont(BitmapFont bitmapFont) {
+      this.bitmapFont = bitmapFont;
+      return this;
+    }
+
+    /**
+     * Sets whether images are rendered in compact color: one byte per pixel, a shade between the
+     * background and the font color, instead of a packed RGB pixel. Frames then take a quarter of
+     * the memory and become {@code TYPE_BYTE_INDEXED} images that palette encoders write without
+     * quantizing. Filters that cannot work on shades expand the image back to RGB before they
+     * run. Defaults to {@code false}.
+     *
+     * @param compactColor whether to render in compact color
+     * @return the builder instance
+     */
+    public Builder compactColor(boolean compactColor) {
+      this.compactColor = compactColor;
+      return this;
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package com.fedmag.verysimplecaptcha.generators.filters;
+
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * The {@code ColorJitterFilter} class adds random noise of up to the given amount to the red,
+ * green and blue channels of every pixel, so that the text and the background are no longer two
+ * flat colors a bot can separate with a palette lookup.
+ *
+ * <p>Drawing three random numbers per pixel would cost more than the rest of the pipeline, so the
+ * noise is read from a table of {@value #TABLE_SIZE} precomputed triples, starting at a random
+ * offset on every row. The rows are then jittered by the {@linkplain RasterKernels raster kernels},
+ * several pixels at a time where the platform allows it. The alpha channel is kept.
+ *
+ * <p>Jittered pixels no longer lie on the two-colour ramp of a {@linkplain PixelRaster#isCompact()
+ * compact} raster, so a {@link FilterPipeline} expands compact rasters to packed pixels before
+ * this filter.
+ */
+public class ColorJitterFilter implements RasterFilter {
+
+  private static final int TABLE_SIZE = 4096;
+
+  // Noise triples of 10 bits per channel, biased by the amount so that they are not negative
+  private final int[] noise = new int[TABLE_SIZE];
+  private final int bias;
+
+  /**
+   * Constructs a {@code ColorJitterFilter}.
+   *
+   * @param amount the largest change of a channel, between 1 and 255
+   * @throws IllegalArgumentException if the amount is not between 1 and 255
+   */
+  public ColorJitterFilter(int amount) {
+    if (amount < 1 || amount > 255) {
+      throw new IllegalArgumentException("The amount must be between 1 and 255.");
+    }
+    this.bias = 256 - amount;
+    SplittableRandom random = new SplittableRandom(amount);
+    for (int i = 0; i < TABLE_SIZE; i++) {
+      int red = random.nextInt(2 * amount + 1);
+      int green = random.nextInt(2 * amount + 1);
+      int blue = random.nextInt(2 * amount + 1);
+      noise[i] = (red << 20) | (green << 10) | blue;
+    }
+  }
+
+  /** Constructs a {@code ColorJitterFilter} changing every channel by up to 24. */
+  public ColorJitterFilter() {
+    this(24);
+  }
+
+  /**
+   * Adds the noise to the given raster in place.
+   *
+   * @param raster the raster to jitter
+   */
+  @Override
+  public void apply(PixelRaster raster) {
+    int width = raster.getWidth();
+    int height = raster.getHeight();
+    int[] pixels = raster.getPixels();
+    RandomGenerator random = raster.random();
+    PixelKernels kernels = RasterKernels.get();
+    for (int y = 0; y < height; y++) {
+      kernels.jitter(pixels, y * width, width, noise, random.nextInt(TABLE_SIZE), bias);
+    }
+  }
+}
@@ -0,0 +1,477 @@
+package com.fedmag.verysimplecaptcha.generators.filters;
+
+import com.fedmag.verysimplecaptcha.metrics.CaptchaMetrics;
+import com.fedmag.verysimplecaptcha.metrics.CaptchaStage;
+import com.fedmag.verysimplecaptcha.metrics.StageTimer;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.random.RandomGenerator;
+
+/**
+ * The {@code FilterPipeline} class applies a chain of image filters to one shared raster.
+ *
+ * <p>{@link RasterFilter} implementations work in place on the pixels of the image and share a
+ * single scratch buffer, and consecutive {@link PointFilter} implementations are fused into one
+ * pass over the pixels. Other {@link ImageFilter} implementations are adapted: they receive the
+ * current image and their result is copied back into the raster, or into a new raster if its
+ * size differs.
+ *
+ * <p>A pipeline can optionally run on a {@code ForkJoinPool}. Images with at least a threshold
+ * number of pixels are then split into horizontal bands, one per worker, and each raster stage
+ * whose filters declare a {@linkplain RasterFilter#getHalo() halo} filters the bands in parallel.
+ * Every band is extended by the halo, so the result is the same as filtering the whole image.
+ * Smaller images, and filters that are not tileable, stay on the calling thread.
+ *
+ * <p>A {@linkplain PixelRaster#isCompact() compact} raster stays compact as long as its filters
+ * {@linkplain RasterFilter#supportsShades() support shades}; it is expanded to packed pixels
+ * before the first filter that does not, and is always filtered on the calling thread.
+ *
+ * <p>Every stage is timed and reported to the {@link CaptchaMetrics} of the pipeline.
+ *
+ * <p>A pipeline is immutable and can be shared between threads; each call to {@link
+ * #apply(BufferedImage)} uses its own scratch buffer.
+ */
+public final class FilterPipeline {
+
+  /** Default number of pixels from which a parallel pipeline splits an image into bands. */
+  public static final int DEFAULT_PARALLEL_THRESHOLD = 100_000;
+
+  private final List<ImageFilter> filters;
+  private final List<Stage> stages;
+  private final ForkJoinPool pool;
+  private final int parallelThreshold;
+  private final CaptchaMetrics metrics;
+
+  /**
+   * Constructs a {@code FilterPipeline} for the given filters, applied in list order on the
+   * calling thread.
+   *
+   * @param filters the filters
+   */
+  public FilterPipeline(List<? extends ImageFilter> filters) {
+    this(filters, null, DEFAULT_PARALLEL_THRESHOLD);
+  }
+
+  /**
+   * Constructs a {@code FilterPipeline} for the given filters, applied in list order, that filters
+   * large images in parallel on the given pool.
+   *
+   * @param filters the filters
+   * @param pool the pool running the bands, or {@code null} to always run on the calling thread
+   * @param parallelThreshold the number of pixels from which images are split into bands
+   * @throws IllegalArgumentException if the threshold is smaller than 1
+   */
+  public FilterPipeline(
+      List<? extends ImageFilter> filters, ForkJoinPool pool, int parallelThreshold) {
+    this(filters, pool, parallelThreshold, CaptchaMetrics.NOOP);
+  }
+
+  /**
+   * Constructs a {@code FilterPipeline} for the given filters, applied in list order, that filters
+   * large images in parallel on the given pool and reports the time of every filter.
+   *
+   * @param filters the filters
+   * @param pool the pool running the bands, or {@code null} to always run on the calling thread
+   * @param parallelThreshold the number of pixels from which images are split into bands
+   * @param metrics the listener receiving the filter times
+   * @throws IllegalArgumentException if the threshold is smaller than 1
+   */
+  public FilterPipeline(
+      List<? extends ImageFilter> filters,
+      ForkJoinPool pool,
+      int parallelThreshold,
+      CaptchaMetrics metrics) {
+    if (parallelThreshold < 1) {
+      throw new IllegalArgumentException("The parallel threshold cannot be smaller than 1.");
+    }
+    this.filters = Collections.unmodifiableList(new ArrayList<>(filters));
+    this.stages = compile(this.filters);
+    this.pool = pool;
+    this.parallelThreshold = parallelThreshold;
+    this.metrics = Objects.requireNonNull(metrics, "metrics");
+  }
+
+  private static List<Stage> compile(List<ImageFilter> filters) {
+    List<Stage> stages = new ArrayList<>();
+    List<PointFilter> pointFilters = new ArrayList<>();
+    for (ImageFilter filter : filters) {
+      if (filter instanceof PointFilter) {
+        pointFilters.add((PointFilter) filter);
+        continue;
+      }
+      if (!pointFilters.isEmpty()) {
+        stages.add(fuse(pointFilters));
+        pointFilters.clear();
+      }
+      if (filter instanceof RasterFilter) {
+        stages.add(new RasterStage((RasterFilter) filter));
+      } else {
+        stages.add(new ImageStage(filter));
+      }
+    }
+    if (!pointFilters.isEmpty()) {
+      stages.add(fuse(pointFilters));
+    }
+    return Collections.unmodifiableList(stages);
+  }
+
+  private static Stage fuse(List<PointFilter> pointFilters) {
+    if (pointFilters.size() == 1) {
+      return new RasterStage(pointFilters.get(0));
+    }
+    return new FusedPointStage(pointFilters.toArray(new PointFilter[0]));
+  }
+
+  /**
+   * Returns the filters of this pipeline, in the order they are applied.
+   *
+   * @return an unmodifiable list of filters
+   */
+  public List<ImageFilter> getFilters() {
+    return filters;
+  }
+
+  /**
+   * Returns whether the pipeline has no filters.
+   *
+   * @return {@code true} if applying the pipeline leaves images unchanged
+   */
+  public boolean isEmpty() {
+    return stages.isEmpty();
+  }
+
+  /**
+   * Applies the filters to the given image. When the image is {@linkplain
+   * PixelRaster#isWrappable(BufferedImage) wrappable} it is filtered in place and returned;
+   * otherwise it is copied first.
+   *
+   * @param image the image to filter
+   * @return the filtered image
+   */
+  public BufferedImage apply(BufferedImage image) {
+    return apply(image, null);
+  }
+
+  /**
+   * Applies the filters to the given image, as {@link #apply(BufferedImage)} does, drawing every
+   * random choice of the filters from the given generator.
+   *
+   * @param image the image to filter
+   * @param random the generator, or {@code null} for {@code ThreadLocalRandom}
+   * @return the filtered image
+   */
+  public BufferedImage apply(BufferedImage image, RandomGenerator random) {
+    if (stages.isEmpty()) {
+      return image;
+    }
+    return apply(
+        PixelRaster.isWrappable(image) ? PixelRaster.wrap(image) : PixelRaster.copyOf(image),
+        random);
+  }
+
+  /**
+   * Applies the filters to the given raster. A compact raster is expanded before the first filter
+   * that does not support shades, so the result is a {@code TYPE_BYTE_INDEXED} image only if
+   * every filter supports them.
+   *
+   * @param raster the raster to filter
+   * @return the image of the filtered raster
+   */
+  public BufferedImage apply(PixelRaster raster) {
+    return apply(raster, null);
+  }
+
+  /**
+   * Applies the filters to the given raster, as {@link #apply(PixelRaster)} does, drawing every
+   * random choice of the filters from the given generator.
+   *
+   * @param raster the raster to filter
+   * @param random the generator, or {@code null} for {@code ThreadLocalRandom}
+   * @return the image of the filtered raster
+   */
+  public BufferedImage apply(PixelRaster raster, RandomGenerator random) {
+    raster.setRandom(random);
+    for (Stage stage : stages) {
+      StageTimer timer = StageTimer.start();
+      if (raster.isCompact() && !stage.supportsShades(raster)) {
+        raster = raster.expand();
+      }
+      if (!raster.isCompact()
+          && isParallel(raster)
+          && stage.getHalo() != RasterFilter.NOT_TILEABLE) {
+        applyInBands(stage, raster);
+      } else {
+        raster = stage.apply(raster);
+      }
+      stage.report(metrics, timer.stop(CaptchaStage.FILTER, stage.getName(), 0));
+    }
+    return raster.toImage();
+  }
+
+  private boolean isParallel(PixelRaster raster) {
+    return pool != null
+        && pool.getParallelism() > 1
+        && (long) raster.getWidth() * raster.getHeight() >= parallelThreshold;
+  }
+
+  /**
+   * Filters the raster as horizontal bands, in parallel. Every band is copied together with its
+   * halo rows before any band is written back, so no band reads rows already filtered by another.
+   *
+   * @param stage the tileable stage
+   * @param raster the raster to filter
+   */
+  private void applyInBands(Stage stage, PixelRaster raster) {
+    int width = raster.getWidth();
+    int height = raster.getHeight();
+    int halo = stage.getHalo();
+    int bandCount = Math.min(pool.getParallelism(), height);
+    int rowsPerBand = (height + bandCount - 1) / bandCount;
+    int[] pixels = raster.getPixels();
+
+    List<Band> bands = new ArrayList<>(bandCount);
+    for (int top = 0; top < height; top += rowsPerBand) {
+      bands.add(new Band(top, Math.min(height, top + rowsPerBand), halo, height));
+    }
+    if (halo == 0) {
+      // Bands without a halo read no rows of other bands, so each is written back right away
+      runAll(bands, band -> band.filterAndWriteBack(stage, pixels, width));
+      return;
+    }
+    runAll(bands, band -> band.filterCopy(stage, pixels, width));
+    runAll(bands, band -> band.writeBack(pixels, width));
+  }
+
+  private void runAll(List<Band> bands, Consumer<Band> action) {
+    List<ForkJoinTask<?>> tasks = new ArrayList<>(bands.size());
+    for (Band band : bands) {
+      tasks.add(ForkJoinTask.adapt(() -> action.accept(band)));
+    }
+    pool.invoke(
+        new RecursiveAction() {
+          @Override
+          protected void compute() {
+            invokeAll(tasks);
+          }
+        });
+  }
+
+  /** A horizontal band of the image, extended by the halo rows of the stage filtering it. */
+  private static final class Band {
+
+    private final int top;
+    private final int bottom;
+    private final int haloTop;
+    private final int haloBottom;
+    private int[] filtered;
+
+    private Band(int top, int bottom, int halo, int height) {
+      this.top = top;
+      this.bottom = bottom;
+      this.haloTop = Math.max(0, top - halo);
+      this.haloBottom = Math.min(height, bottom + halo);
+    }
+
+    private void filterAndWriteBack(Stage stage, int[] pixels, int width) {
+      filterCopy(stage, pixels, width);
+      writeBack(pixels, width);
+    }
+
+    private void filterCopy(Stage stage, int[] pixels, int width) {
+      int rows = haloBottom - haloTop;
+      filtered = new int[width * rows];
+      System.arraycopy(pixels, haloTop * width, filtered, 0, filtered.length);
+      stage.apply(new PixelRaster(filtered, width, rows));
+    }
+
+    private void writeBack(int[] pixels, int width) {
+      System.arraycopy(
+          filtered, (top - haloTop) * width, pixels, top * width, (bottom - top) * width);
+      filtered = null;
+    }
+  }
+
+  /** One step of the pipeline. */
+  private interface Stage {
+
+    /**
+     * Applies the step to the raster.
+     *
+     * @param raster the current raster
+     * @return the raster holding the result, usually the same instance
+     */
+    PixelRaster apply(PixelRaster raster);
+
+    /**
+     * Returns the halo of the step, as defined by {@link RasterFilter#getHalo()}.
+     *
+     * @return the halo in rows, or {@link RasterFilter#NOT_TILEABLE}
+     */
+    int getHalo();
+
+    /**
+     * Returns whether the step accepts the given compact raster.
+     *
+     * @param raster the compact raster
+     * @return {@code true} if the step works on its shades
+     */
+    boolean supportsShades(PixelRaster raster);
+
+    /**
+     * Returns a name for the step, used in JFR events. The name is computed once, when the step is
+     * created, so asking for it costs nothing when JFR is off.
+     *
+     * @return the simple class names of the filters of the step
+     */
+    String getName();
+
+    /**
+     * Reports the time of the step to the given listener.
+     *
+     * @param metrics the listener
+     * @param nanos the elapsed time in nanoseconds
+     */
+    void report(CaptchaMetrics metrics, long nanos);
+  }
+
+  /** Applies a raster filter in place. */
+  private static final class RasterStage implements Stage {
+
+    private final RasterFilter filter;
+    private final String name;
+
+    private RasterStage(RasterFilter filter) {
+      this.filter = filter;
+      this.name = filter.getClass().getSimpleName();
+    }
+
+    @Override
+    public PixelRaster apply(PixelRaster raster) {
+      filter.apply(raster);
+      return raster;
+    }
+
+    @Override
+    public int getHalo() {
+      return filter.getHalo();
+    }
+
+    @Override
+    public boolean supportsShades(PixelRaster raster) {
+      return filter.supportsShades(raster);
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public void report(CaptchaMetrics metrics, long nanos) {
+      metrics.onFilter(filter, nanos);
+    }
+  }
+
+  /** Applies several point filters in a single pass. */
+  private static final class FusedPointStage implements Stage {
+
+    private final PointFilter[] filters;
+    private final String name;
+
+    private FusedPointStage(PointFilter[] filters) {
+      this.filters = filters;
+      StringBuilder name = new StringBuilder();
+      for (PointFilter filter : filters) {
+        name.append(name.length() == 0 ? "" : "+").append(filter.getClass().getSimpleName());
+      }
+      this.name = name.toString();
+    }
+
+    @Override
+    public PixelRaster apply(PixelRaster raster) {
+      int[] pixels = raster.getPixels();
+      int length = raster.getWidth() * raster.getHeight();
+      for (int i = 0; i < length; i++) {
+        int pixel = pixels[i];
+        for (PointFilter filter : filters) {
+          pixel = filter.filter(pixel);
+        }
+        pixels[i] = pixel;
+      }
+      return raster;
+    }
+
+    @Override
+    public int getHalo() {
+      return 0;
+    }
+
+    @Override
+    public boolean supportsShades(PixelRaster raster) {
+      return false;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public void report(CaptchaMetrics metrics, long nanos) {
+      for (PointFilter filter : filters) {
+        metrics.onFilter(filter, nanos / filters.length);
+      }
+    }
+  }
+
+  /** Adapts a filter that only works on whole images. */
+  private static final class ImageStage implements Stage {
+
+    private final ImageFilter filter;
+    private final String name;
+
+    private ImageStage(ImageFilter filter) {
+      this.filter = filter;
+      this.name = filter.getClass().getSimpleName();
+    }
+
+    @Override
+    public PixelRaster apply(PixelRaster raster) {
+      BufferedImage result = filter.apply(raster.toImage());
+      if (result.getWidth() != raster.getWidth() || result.getHeight() != raster.getHeight()) {
+        PixelRaster resized = PixelRaster.copyOf(result);
+        resized.setRandom(raster.random());
+        return resized;
+      }
+      raster.copyFrom(result);
+      return raster;
+    }
+
+    @Override
+    public int getHalo() {
+      return RasterFilter.NOT_TILEABLE;
+    }
+
+    @Override
+    public boolean supportsShades(PixelRaster raster) {
+      return false;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public void report(CaptchaMetrics metrics, long nanos) {
+      metrics.onFilter(filter, nanos);
+    }
+  }
+}
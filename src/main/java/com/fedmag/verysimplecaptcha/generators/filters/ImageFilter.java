@@ -2,8 +2,21 @@ package com.fedmag.verysimplecaptcha.generators.filters;
 
 import java.awt.image.BufferedImage;
 
+/**
+ * The {@code ImageFilter} interface is implemented by filters applied to a CAPTCHA image after the
+ * text is drawn.
+ *
+ * <p>Filters that can work on the packed pixels directly should implement {@link RasterFilter}
+ * instead, which lets a {@link FilterPipeline} apply them without allocating a new image.
+ */
 public interface ImageFilter {
 
+  /**
+   * Applies the filter to the given image.
+   *
+   * @param input the input image to which the filter will be applied
+   * @return the filtered image
+   */
   BufferedImage apply(BufferedImage input);
 
 }
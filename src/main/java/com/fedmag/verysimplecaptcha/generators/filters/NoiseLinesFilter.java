@@ -0,0 +1,117 @@
+package com.fedmag.verysimplecaptcha.generators.filters;
+
+import java.awt.Color;
+import java.util.Objects;
+import java.util.random.RandomGenerator;
+
+/**
+ * The {@code NoiseLinesFilter} class draws random lines and arcs across an image, so that the text
+ * cannot be isolated by keeping connected shapes or by erasing thin straight strokes.
+ *
+ * <p>Every curve crosses the whole width: it starts at a random height, climbs or falls by a random
+ * slope and bends along a random fraction of a sine wave, from almost straight to a full wave. The
+ * wave is read from a sine table in fixed point, and the curve is drawn as vertical spans straight
+ * into the pixels, so a curve costs a few operations per column. On a compact raster the curves
+ * are drawn in the shade of their color; a {@link FilterPipeline} expands a compact raster to RGB
+ * first when the color is not on its ramp.
+ */
+public class NoiseLinesFilter implements RasterFilter {
+
+  private final int count;
+  private final int thickness;
+  private final int argb;
+
+  /**
+   * Constructs a {@code NoiseLinesFilter}.
+   *
+   * @param count the number of curves drawn on each image
+   * @param thickness the vertical thickness of the curves, in pixels
+   * @param color the color of the curves
+   * @throws IllegalArgumentException if the count is negative or the thickness smaller than 1
+   */
+  public NoiseLinesFilter(int count, int thickness, Color color) {
+    if (count < 0 || thickness < 1) {
+      throw new IllegalArgumentException(
+          "The count cannot be negative and the thickness cannot be smaller than 1.");
+    }
+    this.count = count;
+    this.thickness = thickness;
+    this.argb = Objects.requireNonNull(color, "color").getRGB();
+  }
+
+  /** Constructs a {@code NoiseLinesFilter} drawing 3 curves, 2 pixels thick, in the text color. */
+  public NoiseLinesFilter() {
+    this(3, 2, new Color(236, 239, 244));
+  }
+
+  /**
+   * Draws the curves into the given raster.
+   *
+   * @param raster the raster to draw into
+   */
+  @Override
+  public void apply(PixelRaster raster) {
+    int width = raster.getWidth();
+    int height = raster.getHeight();
+    byte[] shades = raster.isCompact() ? raster.getShades() : null;
+    int[] pixels = shades == null ? raster.getPixels() : null;
+    byte shade = shades == null ? 0 : (byte) raster.shadeOf(argb);
+    RandomGenerator random = raster.random();
+    // Angles advance in 1/256 of a sine table step, between half a wave and two waves per width
+    int minStep = (SineTable.PERIOD << 8) / (2 * width);
+    for (int i = 0; i < count; i++) {
+      int y = random.nextInt(height) << 16;
+      int slope = (int) (((long) random.nextInt(-height / 2, height / 2 + 1) << 16) / width);
+      int amplitude = random.nextInt(height / 4 + 1);
+      int step = random.nextInt(minStep, 4 * minStep + 1);
+      int angle = random.nextInt(SineTable.PERIOD) << 8;
+      int previous = 0;
+      for (int x = 0; x < width; x++) {
+        int current = (y + amplitude * SineTable.sin(angle >> 8)) >> 16;
+        int from = x == 0 ? current : previous;
+        if (shades != null) {
+          drawSpan(shades, shade, width, height, x, from, current);
+        } else {
+          drawSpan(pixels, width, height, x, from, current);
+        }
+        previous = current;
+        y += slope;
+        angle += step;
+      }
+    }
+  }
+
+  /** Fills the column between two heights, extended downwards by the thickness. */
+  private void drawSpan(int[] pixels, int width, int height, int x, int from, int to) {
+    int top = Math.max(0, Math.min(from, to));
+    int bottom = Math.min(height - 1, Math.max(from, to) + thickness - 1);
+    for (int y = top; y <= bottom; y++) {
+      pixels[y * width + x] = argb;
+    }
+  }
+
+  /** Fills the column between two heights with a shade, extended downwards by the thickness. */
+  private void drawSpan(byte[] shades, byte shade, int width, int height, int x, int from, int to) {
+    int top = Math.max(0, Math.min(from, to));
+    int bottom = Math.min(height - 1, Math.max(from, to) + thickness - 1);
+    for (int y = top; y <= bottom; y++) {
+      shades[y * width + x] = shade;
+    }
+  }
+
+  @Override
+  public boolean supportsShades() {
+    return true;
+  }
+
+  /**
+   * Returns whether the color of this filter is one of the shades of the given raster.
+   *
+   * @param raster the compact raster about to be filtered
+   * @return {@code true} if the color is on the ramp of the raster
+   */
+  @Override
+  public boolean supportsShades(PixelRaster raster) {
+    return raster.hasShade(argb);
+  }
+}
@@ -0,0 +1,59 @@
+package com.fedmag.verysimplecaptcha.generators.filters;
+
+/**
+ * The {@code PixelKernels} interface holds the per-pixel loops of the built-in filters that can be
+ * run several pixels at a time. Every implementation produces exactly the same pixels; they only
+ * differ in speed.
+ *
+ * @see RasterKernels
+ */
+interface PixelKernels {
+
+  /**
+   * Returns the name of the implementation.
+   *
+   * @return {@code "vector"} or {@code "scalar"}
+   */
+  String getName();
+
+  /**
+   * Interpolates every pixel with its right neighbour in 8-bit fixed point: {@code target[to + i]}
+   * becomes the blend of {@code source[from + i]} and {@code source[from + i + 1]}.
+   *
+   * @param source the packed ARGB source pixels
+   * @param from the index of the first source pixel
+   * @param target the packed ARGB target pixels
+   * @param to the index of the first target pixel
+   * @param length the number of pixels to write
+   * @param fraction the weight of the right neighbour, from 0 to 255
+   */
+  void lerpRow(int[] source, int from, int[] target, int to, int length, int fraction);
+
+  /**
+   * Runs the vertical pass of a box blur: every pixel farther than {@code before} from the top,
+   * bottom, left and right borders becomes the floor of the average of the {@code size} pixels of
+   * its column around it, channel by channel. Other pixels are left unchanged.
+   *
+   * @param source the packed ARGB source pixels
+   * @param target the packed ARGB target pixels
+   * @param width the image width
+   * @param height the image height
+   * @param before the pixels of the window above the center
+   * @param after the pixels of the window below the center
+   */
+  void boxBlurColumns(int[] source, int[] target, int width, int height, int before, int after);
+
+  /**
+   * Adds noise to the red, green and blue channels of a run of pixels, clamping every channel.
+   * The noise of pixel {@code i} is {@code noise[(noiseOffset + i) & (noise.length - 1)]}, which
+   * packs three 10-bit values biased so that they are not negative.
+   *
+   * @param pixels the packed ARGB pixels, changed in place
+   * @param offset the index of the first pixel
+   * @param length the number of pixels
+   * @param noise the noise table, whose length is a power of two
+   * @param noiseOffset the index of the noise of the first pixel
+   * @param bias the value added to every noise value, that is {@code 256} minus the noise bias
+   */
+  void jitter(int[] pixels, int offset, int length, int[] noise, int noiseOffset, int bias);
+}
@@ -0,0 +1,390 @@
+package com.fedmag.verysimplecaptcha.generators.filters;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * The {@code PixelRaster} class exposes the packed ARGB pixels of an image to {@link RasterFilter}
+ * implementations, row by row without padding.
+ *
+ * <p>A raster also hands out a scratch buffer of the same size. The buffer is allocated on first
+ * use and shared by every filter applied to the raster, so filters that need a second buffer do
+ * not allocate one each.
+ *
+ * <p>A raster can also be <em>compact</em>: it then holds one byte per pixel, an index into a
+ * 256-entry ramp from a background colour to a foreground colour, which is all a two-colour
+ * CAPTCHA needs. Filters that {@linkplain RasterFilter#supportsShades() support shades} work on
+ * the bytes directly through {@link #getShades()} and {@link #shadeScratch()}; a {@link
+ * FilterPipeline} expands the raster to packed pixels before any other filter. A compact raster
+ * uses a quarter of the memory and becomes a {@code TYPE_BYTE_INDEXED} image that palette
+ * encoders write without quantizing.
+ *
+ * <p>Filters draw their random choices from {@link #random()}, so that a pipeline applied with
+ * a seeded generator produces the same image every time.
+ *
+ * <p>Instances are not thread-safe.
+ */
+public final class PixelRaster {
+
+  private static final int[] RGB_MASKS = {0xff0000, 0xff00, 0xff};
+  private static final DirectColorModel RGB_COLOR_MODEL =
+      new DirectColorModel(24, RGB_MASKS[0], RGB_MASKS[1], RGB_MASKS[2]);
+
+  private static final int SHADES = 256;
+
+  private final int[] pixels;
+  private final byte[] shades;
+  private final int[] palette;
+  private final int width;
+  private final int height;
+  private final BufferedImage image;
+  private int[] scratch;
+  private byte[] shadeScratch;
+  private RandomGenerator random;
+
+  /**
+   * Constructs a {@code PixelRaster} over the given pixels.
+   *
+   * @param pixels the packed ARGB pixels, row by row
+   * @param width the image width
+   * @param height the image height
+   * @throws IllegalArgumentException if the array is smaller than {@code width * height}
+   */
+  public PixelRaster(int[] pixels, int width, int height) {
+    this(pixels, width, height, null);
+  }
+
+  private PixelRaster(int[] pixels, int width, int height, BufferedImage image) {
+    if (pixels.length < width * height) {
+      throw new IllegalArgumentException("The pixel array is smaller than width * height.");
+    }
+    this.pixels = pixels;
+    this.shades = null;
+    this.palette = null;
+    this.width = width;
+    this.height = height;
+    this.image = image;
+  }
+
+  private PixelRaster(byte[] shades, int[] palette, int width, int height) {
+    if (shades.length < width * height) {
+      throw new IllegalArgumentException("The shade array is smaller than width * height.");
+    }
+    this.pixels = null;
+    this.shades = shades;
+    this.palette = palette;
+    this.width = width;
+    this.height = height;
+    this.image = null;
+  }
+
+  /**
+   * Creates a compact raster over the given shades. Shade {@code 0} is the background colour,
+   * shade {@code 255} the foreground colour, and the shades in between blend the two linearly.
+   *
+   * @param shades the shades, one byte per pixel, row by row
+   * @param width the image width
+   * @param height the image height
+   * @param background the background colour, in packed RGB
+   * @param foreground the foreground colour, in packed RGB
+   * @return a compact raster sharing the shades
+   * @throws IllegalArgumentException if the array is smaller than {@code width * height}
+   */
+  public static PixelRaster ofShades(
+      byte[] shades, int width, int height, int background, int foreground) {
+    int[] palette = new int[SHADES];
+    for (int i = 0; i < SHADES; i++) {
+      palette[i] =
+          0xff000000
+              | blend(background >>> 16 & 0xff, foreground >>> 16 & 0xff, i) << 16
+              | blend(background >>> 8 & 0xff, foreground >>> 8 & 0xff, i) << 8
+              | blend(background & 0xff, foreground & 0xff, i);
+    }
+    return new PixelRaster(shades, palette, width, height);
+  }
+
+  private static int blend(int from, int to, int weight) {
+    return (from * (SHADES - 1 - weight) + to * weight + 127) / (SHADES - 1);
+  }
+
+  /**
+   * Returns whether the pixels of the given image can be accessed in place.
+   *
+   * @param image the image
+   * @return {@code true} if the image is a {@code TYPE_INT_RGB} or {@code TYPE_INT_ARGB} image
+   *     whose rows are stored without padding
+   */
+  public static boolean isWrappable(BufferedImage image) {
+    if (image.getType() != BufferedImage.TYPE_INT_RGB
+        && image.getType() != BufferedImage.TYPE_INT_ARGB) {
+      return false;
+    }
+    WritableRaster raster = image.getRaster();
+    return raster.getSampleModel() instanceof SinglePixelPackedSampleModel
+        && ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride()
+            == image.getWidth()
+        && raster.getDataBuffer().getOffset() == 0
+        && raster.getSampleModelTranslateX() == 0
+        && raster.getSampleModelTranslateY() == 0;
+  }
+
+  /**
+   * Wraps the pixels of the given image, so that changes to the raster are visible in the image.
+   *
+   * @param image the image, which must be {@linkplain #isWrappable(BufferedImage) wrappable}
+   * @return a raster sharing the pixels of the image
+   * @throws IllegalArgumentException if the image cannot be wrapped
+   */
+  public static PixelRaster wrap(BufferedImage image) {
+    if (!isWrappable(image)) {
+      throw new IllegalArgumentException(
+          "Only unpadded TYPE_INT_RGB or TYPE_INT_ARGB images can be wrapped.");
+    }
+    int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    return new PixelRaster(pixels, image.getWidth(), image.getHeight(), image);
+  }
+
+  /**
+   * Copies the given image into a new {@code TYPE_INT_RGB} image, or {@code TYPE_INT_ARGB} if the
+   * image has an alpha channel, and wraps it.
+   *
+   * @param image the image to copy
+   * @return a raster over the copy
+   */
+  public static PixelRaster copyOf(BufferedImage image) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int type =
+        image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+    PixelRaster copy = wrap(new BufferedImage(width, height, type));
+    if (image.getType() == type && isWrappable(image)) {
+      int[] source = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+      System.arraycopy(source, 0, copy.pixels, 0, width * height);
+    } else {
+      image.getRGB(0, 0, width, height, copy.pixels, 0, width);
+    }
+    return copy;
+  }
+
+  /**
+   * Returns the packed ARGB pixels, row by row.
+   *
+   * @return the pixels
+   * @throws IllegalStateException if the raster is {@linkplain #isCompact() compact}
+   */
+  public int[] getPixels() {
+    if (pixels == null) {
+      throw new IllegalStateException("A compact raster has no packed pixels.");
+    }
+    return pixels;
+  }
+
+  /**
+   * Returns whether the raster holds one shade per pixel instead of packed pixels.
+   *
+   * @return {@code true} if the raster was created by {@link #ofShades}
+   */
+  public boolean isCompact() {
+    return shades != null;
+  }
+
+  /**
+   * Returns the shades of a compact raster, one byte per pixel, row by row.
+   *
+   * @return the shades
+   * @throws IllegalStateException if the raster is not {@linkplain #isCompact() compact}
+   */
+  public byte[] getShades() {
+    if (shades == null) {
+      throw new IllegalStateException("Only a compact raster has shades.");
+    }
+    return shades;
+  }
+
+  /**
+   * Returns whether the given colour is one of the shades of a compact raster, up to one level of
+   * rounding in each channel. Other colours can only be approximated by {@link #shadeOf(int)}.
+   *
+   * @param rgb the colour, in packed RGB; the alpha channel is ignored
+   * @return {@code true} if the colour lies on the ramp from the background to the foreground
+   * @throws IllegalStateException if the raster is not {@linkplain #isCompact() compact}
+   */
+  public boolean hasShade(int rgb) {
+    int shade = palette[shadeOf(rgb)];
+    return Math.abs((shade >>> 16 & 0xff) - (rgb >>> 16 & 0xff)) <= 1
+        && Math.abs((shade >>> 8 & 0xff) - (rgb >>> 8 & 0xff)) <= 1
+        && Math.abs((shade & 0xff) - (rgb & 0xff)) <= 1;
+  }
+
+  /**
+   * Returns the shade of a compact raster closest to the given colour, by projecting the colour
+   * onto the line from the background to the foreground colour.
+   *
+   * @param rgb the colour, in packed RGB; the alpha channel is ignored
+   * @return the shade, from {@code 0} for the background to {@code 255} for the foreground
+   * @throws IllegalStateException if the raster is not {@linkplain #isCompact() compact}
+   */
+  public int shadeOf(int rgb) {
+    if (palette == null) {
+      throw new IllegalStateException("Only a compact raster has shades.");
+    }
+    int from = palette[0];
+    int to = palette[SHADES - 1];
+    int dr = (to >>> 16 & 0xff) - (from >>> 16 & 0xff);
+    int dg = (to >>> 8 & 0xff) - (from >>> 8 & 0xff);
+    int db = (to & 0xff) - (from & 0xff);
+    long length = (long) dr * dr + (long) dg * dg + (long) db * db;
+    if (length == 0) {
+      return 0;
+    }
+    long projection =
+        (long) ((rgb >>> 16 & 0xff) - (from >>> 16 & 0xff)) * dr
+            + (long) ((rgb >>> 8 & 0xff) - (from >>> 8 & 0xff)) * dg
+            + (long) ((rgb & 0xff) - (from & 0xff)) * db;
+    long shade = (projection * (SHADES - 1) + length / 2) / length;
+    return (int) Math.max(0, Math.min(SHADES - 1, shade));
+  }
+
+  /**
+   * Returns the image width.
+   *
+   * @return the width
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * Returns the image height.
+   *
+   * @return the height
+   */
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Returns the scratch buffer, allocating it on first use. Its content is undefined between
+   * filters.
+   *
+   * @return a buffer of at least {@code width * height} pixels
+   */
+  public int[] scratch() {
+    if (scratch == null) {
+      scratch = new int[width * height];
+    }
+    return scratch;
+  }
+
+  /**
+   * Returns the scratch buffer of a compact raster, allocating it on first use. Its content is
+   * undefined between filters.
+   *
+   * @return a buffer of at least {@code width * height} shades
+   * @throws IllegalStateException if the raster is not {@linkplain #isCompact() compact}
+   */
+  public byte[] shadeScratch() {
+    if (shades == null) {
+      throw new IllegalStateException("Only a compact raster has shades.");
+    }
+    if (shadeScratch == null) {
+      shadeScratch = new byte[width * height];
+    }
+    return shadeScratch;
+  }
+
+  /**
+   * Returns the generator filters draw their random choices from: the one the raster is filtered
+   * with, or {@code ThreadLocalRandom} if none was given.
+   *
+   * @return the random generator
+   */
+  public RandomGenerator random() {
+    return random != null ? random : ThreadLocalRandom.current();
+  }
+
+  /**
+   * Sets the generator returned by {@link #random()}.
+   *
+   * @param random the generator, or {@code null} for {@code ThreadLocalRandom}
+   */
+  void setRandom(RandomGenerator random) {
+    this.random = random;
+  }
+
+  /**
+   * Returns the image sharing these pixels, creating a {@code TYPE_INT_RGB} image over them if the
+   * raster was not created from an image. A compact raster returns a {@code TYPE_BYTE_INDEXED}
+   * image over its shades, whose palette is the ramp from the background to the foreground colour.
+   *
+   * @return the image
+   */
+  public BufferedImage toImage() {
+    if (image != null) {
+      return image;
+    }
+    if (shades != null) {
+      IndexColorModel colorModel =
+          new IndexColorModel(8, SHADES, palette, 0, false, -1, DataBuffer.TYPE_BYTE);
+      WritableRaster raster =
+          Raster.createInterleavedRaster(
+              new DataBufferByte(shades, width * height),
+              width,
+              height,
+              width,
+              1,
+              new int[] {0},
+              null);
+      return new BufferedImage(colorModel, raster, false, null);
+    }
+    DataBufferInt buffer = new DataBufferInt(pixels, width * height);
+    WritableRaster raster =
+        Raster.createPackedRaster(buffer, width, height, width, RGB_MASKS, null);
+    return new BufferedImage(RGB_COLOR_MODEL, raster, false, null);
+  }
+
+  /**
+   * Copies the pixels of the given image, which must have the same size, into this raster.
+   *
+   * @param source the image to copy from
+   */
+  void copyFrom(BufferedImage source) {
+    if (shades != null) {
+      throw new IllegalStateException("A compact raster cannot copy packed pixels.");
+    }
+    Objects.requireNonNull(source, "source");
+    if (source == image) {
+      return;
+    }
+    source.getRGB(0, 0, width, height, pixels, 0, width);
+  }
+
+  /**
+   * Returns a raster of packed pixels with the same content, looking every shade up in the
+   * palette. A raster that is not compact is returned as is.
+   *
+   * @return a raster that is not compact
+   */
+  PixelRaster expand() {
+    if (shades == null) {
+      return this;
+    }
+    int[] expanded = new int[width * height];
+    for (int i = 0; i < expanded.length; i++) {
+      expanded[i] = palette[shades[i] & 0xff] & 0xffffff;
+    }
+    PixelRaster raster = new PixelRaster(expanded, width, height);
+    raster.random = random;
+    return raster;
+  }
+}
@@ -0,0 +1,42 @@
+package com.fedmag.verysimplecaptcha.generators.filters;
+
+/**
+ * The {@code PointFilter} interface is implemented by filters whose output pixel depends only on
+ * the input pixel at the same position, such as color adjustments.
+ *
+ * <p>A {@link FilterPipeline} fuses consecutive point filters into a single pass over the pixels.
+ */
+public interface PointFilter extends RasterFilter {
+
+  /**
+   * Filters a single pixel.
+   *
+   * @param argb the packed ARGB pixel
+   * @return the filtered packed ARGB pixel
+   */
+  int filter(int argb);
+
+  /**
+   * Applies the filter in place to every pixel of the given raster.
+   *
+   * @param raster the raster to filter
+   */
+  @Override
+  default void apply(PixelRaster raster) {
+    int[] pixels = raster.getPixels();
+    int length = raster.getWidth() * raster.getHeight();
+    for (int i = 0; i < length; i++) {
+      pixels[i] = filter(pixels[i]);
+    }
+  }
+
+  /**
+   * Returns 0: a point filter reads no pixels outside the band it filters.
+   *
+   * @return 0
+   */
+  @Override
+  default int getHalo() {
+    return 0;
+  }
+}
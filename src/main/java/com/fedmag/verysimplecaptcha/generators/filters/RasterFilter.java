@@ -0,0 +1,77 @@
+package com.fedmag.verysimplecaptcha.generators.filters;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * The {@code RasterFilter} interface is implemented by filters that modify the packed pixels of
+ * an image in place. A filter that needs a second buffer uses {@link PixelRaster#scratch()} rather
+ * than allocating its own.
+ *
+ * <p>Raster filters still work wherever an {@link ImageFilter} is expected: {@link
+ * #apply(BufferedImage)} copies the input and filters the copy.
+ */
+public interface RasterFilter extends ImageFilter {
+
+  /** Halo returned by filters that cannot be applied to horizontal bands of an image. */
+  int NOT_TILEABLE = -1;
+
+  /**
+   * Applies the filter in place to the given raster.
+   *
+   * @param raster the raster to filter
+   */
+  void apply(PixelRaster raster);
+
+  /**
+   * Returns how many rows above and below a band of the image the filter reads to compute the
+   * band. A {@link FilterPipeline} running in parallel splits large images into bands extended by
+   * this halo and filters them independently.
+   *
+   * <p>The default is {@link #NOT_TILEABLE}, which keeps the filter on the whole image.
+   *
+   * @return the halo in rows, or {@link #NOT_TILEABLE}
+   */
+  default int getHalo() {
+    return NOT_TILEABLE;
+  }
+
+  /**
+   * Returns whether the filter can work on the shades of a {@linkplain PixelRaster#isCompact()
+   * compact} raster. A {@link FilterPipeline} expands a compact raster to packed pixels before
+   * the first filter that does not.
+   *
+   * <p>The default is {@code false}.
+   *
+   * @return {@code true} if {@link #apply(PixelRaster)} accepts compact rasters
+   */
+  default boolean supportsShades() {
+    return false;
+  }
+
+  /**
+   * Returns whether the filter can work on the shades of the given compact raster. Filters that
+   * draw a colour of their own override this to refuse rasters whose ramp does not hold it, so that
+   * a {@link FilterPipeline} expands the raster rather than turning the colour into a grey shade.
+   *
+   * <p>The default returns {@link #supportsShades()}.
+   *
+   * @param raster the compact raster about to be filtered
+   * @return {@code true} if {@link #apply(PixelRaster)} can filter the raster as it is
+   */
+  default boolean supportsShades(PixelRaster raster) {
+    return supportsShades();
+  }
+
+  /**
+   * Applies the filter to a copy of the given image. The input image is not modified.
+   *
+   * @param input the input image to which the filter will be applied
+   * @return a new {@code BufferedImage} with the filter applied
+   */
+  @Override
+  default BufferedImage apply(BufferedImage input) {
+    PixelRaster raster = PixelRaster.copyOf(input);
+    apply(raster);
+    return raster.toImage();
+  }
+}
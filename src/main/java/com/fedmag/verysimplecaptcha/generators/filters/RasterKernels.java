@@ -0,0 +1,72 @@
+package com.fedmag.verysimplecaptcha.generators.filters;
+
+/**
+ * The {@code RasterKernels} class selects the implementation of the per-pixel loops shared by the
+ * built-in filters: the blur, the wave and the color jitter.
+ *
+ * <p>When the incubating {@code jdk.incubator.vector} module is present, that is when the JVM was
+ * started with {@code --add-modules jdk.incubator.vector}, and the platform has vectors of at least
+ * four pixels, the loops process a whole vector of pixels per instruction. Otherwise a scalar
+ * implementation producing the same pixels is used. The choice is made once, on first use, and
+ * can be forced to the scalar implementation by setting the {@value #PROPERTY} system property to
+ * {@code scalar}.
+ *
+ * <p>This class cannot be instantiated.
+ */
+public final class RasterKernels {
+
+  /** The system property that forces the scalar implementation when set to {@code scalar}. */
+  public static final String PROPERTY = "verysimplecaptcha.kernels";
+
+  private static final String VECTOR_MODULE = "jdk.incubator.vector";
+  private static final String VECTOR_KERNELS =
+      "com.fedmag.verysimplecaptcha.generators.filters.VectorPixelKernels";
+
+  /** Private constructor to prevent instantiation. */
+  private RasterKernels() {}
+
+  /**
+   * Returns the name of the implementation in use.
+   *
+   * @return {@code "vector"} or {@code "scalar"}
+   */
+  public static String getBackend() {
+    return get().getName();
+  }
+
+  /**
+   * Returns the implementation in use.
+   *
+   * @return the kernels
+   */
+  static PixelKernels get() {
+    return Selected.KERNELS;
+  }
+
+  /**
+   * Returns the vector implementation if it can be loaded and is worth using, or the scalar one.
+   *
+   * @param requested the value of the {@value #PROPERTY} property, or {@code null}
+   * @return the kernels
+   */
+  static PixelKernels select(String requested) {
+    if ("scalar".equals(requested) || ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+      return ScalarPixelKernels.INSTANCE;
+    }
+    try {
+      Class<?> type = Class.forName(VECTOR_KERNELS);
+      if ((boolean) type.getDeclaredMethod("isUseful").invoke(null)) {
+        return (PixelKernels) type.getDeclaredConstructor().newInstance();
+      }
+    } catch (ReflectiveOperationException | LinkageError e) {
+      // The module is present but unusable; the scalar kernels produce the same pixels
+    }
+    return ScalarPixelKernels.INSTANCE;
+  }
+
+  /** Holds the implementation, selected on first use. */
+  private static final class Selected {
+
+    private static final PixelKernels KERNELS = select(System.getProperty(PROPERTY));
+  }
+}
@@ -0,0 +1,98 @@
+package com.fedmag.verysimplecaptcha.generators.filters;
+
+/**
+ * The {@code RippleFilter} class warps an image with concentric ripples around its center, moving
+ * every pixel towards or away from the center by up to the amplitude.
+ *
+ * <p>The source of every pixel is computed once per image size and kept in a displacement map, so
+ * applying the filter is one gather per pixel. The filter is deterministic; combine it with a
+ * {@link WaveFilter} to vary the distortion between images. Compact rasters are {@linkplain
+ * #supportsShades() supported}.
+ */
+public class RippleFilter implements RasterFilter {
+
+  private final double amplitude;
+  private final double wavelength;
+  private final SizeCache<int[]> maps = new SizeCache<>(this::createMap);
+
+  /**
+   * Constructs a {@code RippleFilter}.
+   *
+   * @param amplitude the largest radial displacement, in pixels
+   * @param wavelength the distance between two ripples, in pixels
+   * @throws IllegalArgumentException if the amplitude is negative or the wavelength is smaller
+   *     than 2
+   */
+  public RippleFilter(double amplitude, double wavelength) {
+    if (!(amplitude >= 0) || !(wavelength >= 2)) {
+      throw new IllegalArgumentException(
+          "The amplitude cannot be negative and the wavelength cannot be smaller than 2.");
+    }
+    this.amplitude = amplitude;
+    this.wavelength = wavelength;
+  }
+
+  /** Constructs a {@code RippleFilter} with an amplitude of 2 and a wavelength of 16 pixels. */
+  public RippleFilter() {
+    this(2, 16);
+  }
+
+  /**
+   * Warps the given raster in place, using its scratch buffer.
+   *
+   * @param raster the raster to warp
+   */
+  @Override
+  public void apply(PixelRaster raster) {
+    int length = raster.getWidth() * raster.getHeight();
+    int[] map = maps.get(raster.getWidth(), raster.getHeight());
+    if (raster.isCompact()) {
+      byte[] shades = raster.getShades();
+      byte[] scratch = raster.shadeScratch();
+      System.arraycopy(shades, 0, scratch, 0, length);
+      for (int i = 0; i < length; i++) {
+        shades[i] = scratch[map[i]];
+      }
+      return;
+    }
+    int[] pixels = raster.getPixels();
+    int[] scratch = raster.scratch();
+    System.arraycopy(pixels, 0, scratch, 0, length);
+    for (int i = 0; i < length; i++) {
+      pixels[i] = scratch[map[i]];
+    }
+  }
+
+  @Override
+  public boolean supportsShades() {
+    return true;
+  }
+
+  /** Computes the index of the source pixel of every pixel. */
+  private int[] createMap(int width, int height) {
+    int[] map = new int[width * height];
+    double centerX = (width - 1) / 2.0;
+    double centerY = (height - 1) / 2.0;
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        double dx = x - centerX;
+        double dy = y - centerY;
+        double radius = Math.sqrt(dx * dx + dy * dy);
+        int sourceX = x;
+        int sourceY = y;
+        if (radius > 0) {
+          int angle = (int) Math.round(radius * SineTable.PERIOD / wavelength);
+          double scale = amplitude * SineTable.sin(angle) / SineTable.ONE / radius;
+          sourceX = clamp((int) Math.round(x + dx * scale), width - 1);
+          sourceY = clamp((int) Math.round(y + dy * scale), height - 1);
+        }
+        map[y * width + x] = sourceY * width + sourceX;
+      }
+    }
+    return map;
+  }
+
+  private static int clamp(int value, int max) {
+    return Math.max(0, Math.min(max, value));
+  }
+}
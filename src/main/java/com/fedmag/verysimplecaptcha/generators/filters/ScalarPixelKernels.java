@@ -0,0 +1,100 @@
+package com.fedmag.verysimplecaptcha.generators.filters;
+
+/**
+ * The {@code ScalarPixelKernels} class implements the {@link PixelKernels} one pixel at a time, in
+ * plain Java. It is used whenever the vector implementation is not available.
+ */
+final class ScalarPixelKernels implements PixelKernels {
+
+  /** The shared instance; the kernels hold no state. */
+  static final ScalarPixelKernels INSTANCE = new ScalarPixelKernels();
+
+  // CLAMP[v + 256] is v clamped to 0..255, for v between -256 and 511
+  private static final int[] CLAMP = new int[768];
+
+  static {
+    for (int i = 0; i < CLAMP.length; i++) {
+      CLAMP[i] = Math.max(0, Math.min(255, i - 256));
+    }
+  }
+
+  private ScalarPixelKernels() {}
+
+  @Override
+  public String getName() {
+    return "scalar";
+  }
+
+  @Override
+  public void lerpRow(int[] source, int from, int[] target, int to, int length, int fraction) {
+    for (int i = 0; i < length; i++) {
+      target[to + i] = lerp(source[from + i], source[from + i + 1], fraction);
+    }
+  }
+
+  /** Interpolates two packed pixels, two channels per multiplication. */
+  static int lerp(int a, int b, int fraction) {
+    int inverse = 256 - fraction;
+    int redBlue = (((a & 0xff00ff) * inverse + (b & 0xff00ff) * fraction) >>> 8) & 0xff00ff;
+    int alphaGreen =
+        (((a >>> 8) & 0xff00ff) * inverse + ((b >>> 8) & 0xff00ff) * fraction) & 0xff00ff00;
+    return alphaGreen | redBlue;
+  }
+
+  @Override
+  public void boxBlurColumns(
+      int[] source, int[] target, int width, int height, int before, int after) {
+    // Exact floor division by the window size for sums up to 255 * size
+    long reciprocal = (1L << 32) / (before + after + 1) + 1;
+    // Column sums for the four channels
+    int[] sums = new int[width * 4];
+    for (int y = 0; y < before + after; y++) {
+      addRow(source, sums, y * width, width, 1);
+    }
+    for (int y = before; y < height - before; y++) {
+      addRow(source, sums, (y + after) * width, width, 1);
+      int row = y * width;
+      for (int x = before; x < width - before; x++) {
+        int c = x * 4;
+        target[row + x] = pack(sums[c], sums[c + 1], sums[c + 2], sums[c + 3], reciprocal);
+      }
+      addRow(source, sums, (y - before) * width, width, -1);
+    }
+  }
+
+  private static void addRow(int[] source, int[] sums, int row, int width, int sign) {
+    for (int x = 0; x < width; x++) {
+      int pixel = source[row + x];
+      int c = x * 4;
+      sums[c] += sign * (pixel >>> 24);
+      sums[c + 1] += sign * ((pixel >> 16) & 0xff);
+      sums[c + 2] += sign * ((pixel >> 8) & 0xff);
+      sums[c + 3] += sign * (pixel & 0xff);
+    }
+  }
+
+  /** Packs the floor of the averages of the four channel sums. */
+  static int pack(int a, int r, int g, int b, long reciprocal) {
+    return (average(a, reciprocal) << 24)
+        | (average(r, reciprocal) << 16)
+        | (average(g, reciprocal) << 8)
+        | average(b, reciprocal);
+  }
+
+  private static int average(int sum, long reciprocal) {
+    return (int) ((sum * reciprocal) >>> 32);
+  }
+
+  @Override
+  public void jitter(int[] pixels, int offset, int length, int[] noise, int noiseOffset, int bias) {
+    int mask = noise.length - 1;
+    for (int i = offset; i < offset + length; i++) {
+      int pixel = pixels[i];
+      int n = noise[(noiseOffset + i - offset) & mask];
+      int red = CLAMP[((pixel >> 16) & 0xff) + (n >>> 20) + bias];
+      int green = CLAMP[((pixel >> 8) & 0xff) + ((n >>> 10) & 0x3ff) + bias];
+      int blue = CLAMP[(pixel & 0xff) + (n & 0x3ff) + bias];
+      pixels[i] = (pixel & 0xff000000) | (red << 16) | (green << 8) | blue;
+    }
+  }
+}
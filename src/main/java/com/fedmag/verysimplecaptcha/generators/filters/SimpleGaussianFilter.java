@@ -1,46 +1,205 @@
 package com.fedmag.verysimplecaptcha.generators.filters;
 
-import java.awt.image.BufferedImage;
-import java.awt.image.BufferedImageOp;
-import java.awt.image.ConvolveOp;
-import java.awt.image.Kernel;
-import java.util.Arrays;
-
 /**
  * The {@code SimpleGaussianFilter} class provides a simple implementation of a Gaussian filter to
- * apply a blurring effect to an image. This filter uses a convolution operation with a square
- * matrix.
+ * apply a blurring effect to an image. Each pass averages the pixels of a square window, which
+ * gives the same result as convolving the image with a uniform square matrix.
+ *
+ * <p>The average is computed separably, with a horizontal and a vertical running sum over the
+ * packed pixel data, so the cost per pixel does not depend on the matrix size. As with a {@code
+ * ConvolveOp} using {@code EDGE_NO_OP}, pixels closer to the border than the window reaches are
+ * left unchanged. The vertical pass runs on the {@linkplain RasterKernels raster kernels}, several
+ * columns at a time where the platform allows it.
+ *
+ * <p>The filter {@linkplain #supportsShades() supports} compact rasters, on which it averages the
+ * shades of a single channel instead of four.
+ *
+ * <p>Running several passes approximates a true Gaussian blur: three passes of size {@code k} are
+ * close to a Gaussian with a standard deviation of {@code sqrt(3 * (k * k - 1) / 12)}.
  */
-public class SimpleGaussianFilter implements ImageFilter {
+public class SimpleGaussianFilter implements RasterFilter {
 
   private int matrixSize = 7;
+  private int passes = 1;
 
   /**
    * Constructs a {@code SimpleGaussianFilter} with the specified matrix size.
    *
    * @param matrixSize the size of the convolution matrix
+   * @throws IllegalArgumentException if the matrix size is smaller than 1
    */
   public SimpleGaussianFilter(int matrixSize) {
+    this(matrixSize, 1);
+  }
+
+  /**
+   * Constructs a {@code SimpleGaussianFilter} with the specified matrix size and number of passes.
+   *
+   * @param matrixSize the size of the convolution matrix
+   * @param passes the number of blur passes
+   * @throws IllegalArgumentException if the matrix size or the number of passes is smaller than 1
+   */
+  public SimpleGaussianFilter(int matrixSize, int passes) {
+    if (matrixSize < 1 || passes < 1) {
+      throw new IllegalArgumentException(
+          "The matrix size and the number of passes cannot be smaller than 1.");
+    }
     this.matrixSize = matrixSize;
+    this.passes = passes;
   }
 
   /** Constructs a {@code SimpleGaussianFilter} with the default matrix size of 7. */
   public SimpleGaussianFilter() {}
 
   /**
-   * Applies the Gaussian filter to the given image.
+   * Applies the Gaussian filter in place to the given raster, using its scratch buffer.
    *
-   * @param input the input image to which the filter will be applied
-   * @return a new {@code BufferedImage} with the filter applied
+   * @param raster the raster to which the filter will be applied
    */
   @Override
-  public BufferedImage apply(BufferedImage input) {
-    int numberOfCells = matrixSize * matrixSize;
-    float[] matrix = new float[numberOfCells];
-
-    Arrays.fill(matrix, 1.0f / (float) numberOfCells);
-    BufferedImageOp op =
-        new ConvolveOp(new Kernel(matrixSize, matrixSize, matrix), ConvolveOp.EDGE_NO_OP, null);
-    return op.filter(input, null);
+  public void apply(PixelRaster raster) {
+    int width = raster.getWidth();
+    int height = raster.getHeight();
+    if (raster.isCompact()) {
+      for (int pass = 0; pass < passes; pass++) {
+        blur(raster.getShades(), raster.shadeScratch(), width, height, matrixSize);
+      }
+      return;
+    }
+    for (int pass = 0; pass < passes; pass++) {
+      blur(raster.getPixels(), raster.scratch(), width, height, matrixSize);
+    }
+  }
+
+  @Override
+  public boolean supportsShades() {
+    return true;
+  }
+
+  /**
+   * Returns the rows the blur reads beyond a band: half the matrix size for each pass.
+   *
+   * @return the halo in rows
+   */
+  @Override
+  public int getHalo() {
+    return (matrixSize / 2) * passes;
+  }
+
+  /**
+   * Runs one box blur pass in place over packed ARGB pixels.
+   *
+   * @param pixels the pixels, blurred in place
+   * @param scratch a buffer at least as large as {@code pixels}
+   * @param width the image width
+   * @param height the image height
+   * @param size the window size
+   */
+  private static void blur(int[] pixels, int[] scratch, int width, int height, int size) {
+    if (size == 1 || width < size || height < size) {
+      return;
+    }
+    // As with ConvolveOp, the untouched border is size / 2 pixels wide on every side, even when
+    // an even window extends less than that after the pixel
+    int before = size / 2;
+    int after = size - 1 - before;
+    // Exact floor division by size for sums up to 255 * size
+    long reciprocal = (1L << 32) / size + 1;
+    horizontalPass(pixels, scratch, width, height, before, after, reciprocal);
+    RasterKernels.get().boxBlurColumns(scratch, pixels, width, height, before, after);
+  }
+
+  private static void horizontalPass(
+      int[] source, int[] target, int width, int height, int before, int after, long reciprocal) {
+    for (int y = 0; y < height; y++) {
+      int row = y * width;
+      int a = 0;
+      int r = 0;
+      int g = 0;
+      int b = 0;
+      for (int x = 0; x < before + after; x++) {
+        int pixel = source[row + x];
+        a += pixel >>> 24;
+        r += (pixel >> 16) & 0xff;
+        g += (pixel >> 8) & 0xff;
+        b += pixel & 0xff;
+      }
+      System.arraycopy(source, row, target, row, before);
+      for (int x = before; x < width - before; x++) {
+        int entering = source[row + x + after];
+        a += entering >>> 24;
+        r += (entering >> 16) & 0xff;
+        g += (entering >> 8) & 0xff;
+        b += entering & 0xff;
+        target[row + x] = pack(a, r, g, b, reciprocal);
+        int leaving = source[row + x - before];
+        a -= leaving >>> 24;
+        r -= (leaving >> 16) & 0xff;
+        g -= (leaving >> 8) & 0xff;
+        b -= leaving & 0xff;
+      }
+      System.arraycopy(source, row + width - before, target, row + width - before, before);
+    }
+  }
+
+  private static int pack(int a, int r, int g, int b, long reciprocal) {
+    return (average(a, reciprocal) << 24)
+        | (average(r, reciprocal) << 16)
+        | (average(g, reciprocal) << 8)
+        | average(b, reciprocal);
+  }
+
+  private static int average(int sum, long reciprocal) {
+    return (int) ((sum * reciprocal) >>> 32);
+  }
+
+  /**
+   * Runs one box blur pass in place over shades, with the same borders as the packed pass.
+   *
+   * @param shades the shades, blurred in place
+   * @param scratch a buffer at least as large as {@code shades}
+   * @param width the image width
+   * @param height the image height
+   * @param size the window size
+   */
+  private static void blur(byte[] shades, byte[] scratch, int width, int height, int size) {
+    if (size == 1 || width < size || height < size) {
+      return;
+    }
+    int before = size / 2;
+    int after = size - 1 - before;
+    long reciprocal = (1L << 32) / size + 1;
+    for (int y = 0; y < height; y++) {
+      int row = y * width;
+      int sum = 0;
+      for (int x = 0; x < before + after; x++) {
+        sum += shades[row + x] & 0xff;
+      }
+      System.arraycopy(shades, row, scratch, row, before);
+      for (int x = before; x < width - before; x++) {
+        sum += shades[row + x + after] & 0xff;
+        scratch[row + x] = (byte) average(sum, reciprocal);
+        sum -= shades[row + x - before] & 0xff;
+      }
+      System.arraycopy(shades, row + width - before, scratch, row + width - before, before);
+    }
+    int[] sums = new int[width];
+    for (int y = 0; y < before + after; y++) {
+      addRow(scratch, sums, y * width, width, 1);
+    }
+    for (int y = before; y < height - before; y++) {
+      addRow(scratch, sums, (y + after) * width, width, 1);
+      int row = y * width;
+      for (int x = before; x < width - before; x++) {
+        shades[row + x] = (byte) average(sums[x], reciprocal);
+      }
+      addRow(scratch, sums, (y - before) * width, width, -1);
+    }
+  }
+
+  private static void addRow(byte[] source, int[] sums, int row, int width, int sign) {
+    for (int x = 0; x < width; x++) {
+      sums[x] += sign * (source[row + x] & 0xff);
+    }
   }
 }
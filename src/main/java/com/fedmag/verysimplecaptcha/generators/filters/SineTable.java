@@ -0,0 +1,38 @@
+package com.fedmag.verysimplecaptcha.generators.filters;
+
+/**
+ * The {@code SineTable} class holds one period of the sine function in fixed point, so that the
+ * distortion filters can evaluate waves with a table lookup instead of {@code Math.sin}.
+ *
+ * <p>This class cannot be instantiated.
+ */
+final class SineTable {
+
+  /** Number of steps in one period. Angles are expressed in these steps. */
+  static final int PERIOD = 4096;
+  /** Scale of the fixed-point values: {@code sin(x)} is stored as {@code sin(x) * ONE}. */
+  static final int ONE = 1 << 16;
+
+  private static final int MASK = PERIOD - 1;
+  private static final int[] VALUES = new int[PERIOD];
+
+  static {
+    for (int i = 0; i < PERIOD; i++) {
+      VALUES[i] = (int) Math.round(Math.sin(2 * Math.PI * i / PERIOD) * ONE);
+    }
+  }
+
+  /** Private constructor to prevent instantiation. */
+  private SineTable() {}
+
+  /**
+   * Returns the sine of the given angle.
+   *
+   * @param angle the angle in steps of {@code 2 * PI / PERIOD}; any value is reduced modulo the
+   *     period
+   * @return the sine, scaled by {@link #ONE}
+   */
+  static int sin(int angle) {
+    return VALUES[angle & MASK];
+  }
+}
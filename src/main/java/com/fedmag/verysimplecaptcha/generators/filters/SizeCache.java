@@ -0,0 +1,78 @@
+package com.fedmag.verysimplecaptcha.generators.filters;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@code SizeCache} class keeps the lookup tables a filter computes for an image size, so that
+ * they are computed once per size rather than once per image.
+ *
+ * <p>CAPTCHAs of one deployment come in very few sizes. Should a filter see many, the cache is
+ * cleared once it holds {@value #MAX_SIZES} of them rather than growing without bound.
+ *
+ * <p>This class is thread-safe. Two threads may compute the table of the same size concurrently;
+ * either result is kept.
+ *
+ * @param <T> the type of the cached tables
+ */
+final class SizeCache<T> {
+
+  private static final int MAX_SIZES = 16;
+
+  /** Computes the table for an image size. */
+  @FunctionalInterface
+  interface Factory<T> {
+    T create(int width, int height);
+  }
+
+  private final ConcurrentHashMap<Long, T> tables = new ConcurrentHashMap<>();
+  private final Factory<T> factory;
+  // The table used last, checked first so that the common case neither boxes a key nor hashes
+  private volatile Entry<T> last;
+
+  /**
+   * Constructs a {@code SizeCache}.
+   *
+   * @param factory computes the table of a size on a miss
+   */
+  SizeCache(Factory<T> factory) {
+    this.factory = factory;
+  }
+
+  /**
+   * Returns the table for the given image size, computing it on first use.
+   *
+   * @param width the image width
+   * @param height the image height
+   * @return the table
+   */
+  T get(int width, int height) {
+    Entry<T> entry = last;
+    if (entry != null && entry.width == width && entry.height == height) {
+      return entry.table;
+    }
+    Long key = ((long) width << 32) | height;
+    T table = tables.get(key);
+    if (table == null) {
+      if (tables.size() >= MAX_SIZES) {
+        tables.clear();
+      }
+      table = factory.create(width, height);
+      tables.put(key, table);
+    }
+    last = new Entry<>(width, height, table);
+    return table;
+  }
+
+  private static final class Entry<T> {
+
+    private final int width;
+    private final int height;
+    private final T table;
+
+    private Entry(int width, int height, T table) {
+      this.width = width;
+      this.height = height;
+      this.table = table;
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package com.fedmag.verysimplecaptcha.generators.filters;
+
+import java.awt.Color;
+import java.util.Objects;
+import java.util.random.RandomGenerator;
+
+/**
+ * The {@code SpeckleFilter} class sets a random fraction of the pixels of an image to a color, the
+ * salt-and-pepper noise that defeats thresholding with a single cut-off.
+ *
+ * <p>Only the speckled pixels are touched, so the cost grows with the density rather than with the
+ * image size. On a compact raster the speckles take the shade of their color; a {@link
+ * FilterPipeline} expands a compact raster to RGB first when the color is not on its ramp.
+ */
+public class SpeckleFilter implements RasterFilter {
+
+  private final double density;
+  private final int argb;
+
+  /**
+   * Constructs a {@code SpeckleFilter}.
+   *
+   * @param density the fraction of pixels to speckle, between 0 and 1
+   * @param color the color of the speckles
+   * @throws IllegalArgumentException if the density is not between 0 and 1
+   */
+  public SpeckleFilter(double density, Color color) {
+    if (!(density >= 0 && density <= 1)) {
+      throw new IllegalArgumentException("The density must be between 0 and 1.");
+    }
+    this.density = density;
+    this.argb = Objects.requireNonNull(color, "color").getRGB();
+  }
+
+  /** Constructs a {@code SpeckleFilter} speckling 2% of the pixels in the text color. */
+  public SpeckleFilter() {
+    this(0.02, new Color(236, 239, 244));
+  }
+
+  /**
+   * Speckles the given raster in place.
+   *
+   * @param raster the raster to speckle
+   */
+  @Override
+  public void apply(PixelRaster raster) {
+    int length = raster.getWidth() * raster.getHeight();
+    RandomGenerator random = raster.random();
+    int speckles = (int) Math.round(length * density);
+    if (raster.isCompact()) {
+      byte[] shades = raster.getShades();
+      byte shade = (byte) raster.shadeOf(argb);
+      for (int i = 0; i < speckles; i++) {
+        shades[random.nextInt(length)] = shade;
+      }
+      return;
+    }
+    int[] pixels = raster.getPixels();
+    for (int i = 0; i < speckles; i++) {
+      pixels[random.nextInt(length)] = argb;
+    }
+  }
+
+  @Override
+  public boolean supportsShades() {
+    return true;
+  }
+
+  /**
+   * Returns whether the color of this filter is one of the shades of the given raster.
+   *
+   * @param raster the compact raster about to be filtered
+   * @return {@code true} if the color is on the ramp of the raster
+   */
+  @Override
+  public boolean supportsShades(PixelRaster raster) {
+    return raster.hasShade(argb);
+  }
+}
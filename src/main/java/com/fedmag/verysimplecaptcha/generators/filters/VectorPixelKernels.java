@@ -0,0 +1,205 @@
+package com.fedmag.verysimplecaptcha.generators.filters;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The {@code VectorPixelKernels} class implements the {@link PixelKernels} with the incubating
+ * Vector API, processing as many pixels per instruction as the preferred vector size of the
+ * platform holds. Pixels left over at the end of a run go through the scalar kernels.
+ *
+ * <p>This class is only loaded by {@link RasterKernels}, after checking that the {@code
+ * jdk.incubator.vector} module is present, so the library runs without it.
+ */
+final class VectorPixelKernels implements PixelKernels {
+
+  private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+  private static final int LANES = SPECIES.length();
+  // Averages are computed as (sum * multiplier) >>> SHIFT in 32 bits, which is exact for windows
+  // smaller than 256 pixels
+  private static final int SHIFT = 24;
+  private static final int MAX_EXACT_WINDOW = 255;
+
+  /** Constructs the kernels. Called reflectively by {@link RasterKernels}. */
+  VectorPixelKernels() {}
+
+  /**
+   * Returns whether the platform processes enough pixels per vector for these kernels to be
+   * faster than the scalar ones.
+   *
+   * @return {@code true} if a preferred vector holds at least four pixels
+   */
+  static boolean isUseful() {
+    return LANES >= 4;
+  }
+
+  @Override
+  public String getName() {
+    return "vector";
+  }
+
+  @Override
+  public void lerpRow(int[] source, int from, int[] target, int to, int length, int fraction) {
+    int inverse = 256 - fraction;
+    int bound = SPECIES.loopBound(length);
+    int i = 0;
+    for (; i < bound; i += LANES) {
+      IntVector a = IntVector.fromArray(SPECIES, source, from + i);
+      IntVector b = IntVector.fromArray(SPECIES, source, from + i + 1);
+      IntVector redBlue =
+          a.lanewise(VectorOperators.AND, 0xff00ff)
+              .mul(inverse)
+              .add(b.lanewise(VectorOperators.AND, 0xff00ff).mul(fraction))
+              .lanewise(VectorOperators.LSHR, 8)
+              .lanewise(VectorOperators.AND, 0xff00ff);
+      IntVector alphaGreen =
+          a.lanewise(VectorOperators.LSHR, 8)
+              .lanewise(VectorOperators.AND, 0xff00ff)
+              .mul(inverse)
+              .add(
+                  b.lanewise(VectorOperators.LSHR, 8)
+                      .lanewise(VectorOperators.AND, 0xff00ff)
+                      .mul(fraction))
+              .lanewise(VectorOperators.AND, 0xff00ff00);
+      alphaGreen.or(redBlue).intoArray(target, to + i);
+    }
+    ScalarPixelKernels.INSTANCE.lerpRow(source, from + i, target, to + i, length - i, fraction);
+  }
+
+  @Override
+  public void boxBlurColumns(
+      int[] source, int[] target, int width, int height, int before, int after) {
+    int size = before + after + 1;
+    if (size > MAX_EXACT_WINDOW) {
+      ScalarPixelKernels.INSTANCE.boxBlurColumns(source, target, width, height, before, after);
+      return;
+    }
+    int multiplier = ((1 << SHIFT) + size - 1) / size;
+    long reciprocal = (1L << 32) / size + 1;
+    // Column sums, one array per channel, so that a vector holds the sums of adjacent columns
+    int[] alpha = new int[width];
+    int[] red = new int[width];
+    int[] green = new int[width];
+    int[] blue = new int[width];
+    for (int y = 0; y < before + after; y++) {
+      addRow(source, y * width, width, alpha, red, green, blue, false);
+    }
+    int bound = before + SPECIES.loopBound(width - 2 * before);
+    for (int y = before; y < height - before; y++) {
+      addRow(source, (y + after) * width, width, alpha, red, green, blue, false);
+      int row = y * width;
+      int x = before;
+      for (; x < bound; x += LANES) {
+        average(alpha, x, multiplier)
+            .lanewise(VectorOperators.LSHL, 24)
+            .or(average(red, x, multiplier).lanewise(VectorOperators.LSHL, 16))
+            .or(average(green, x, multiplier).lanewise(VectorOperators.LSHL, 8))
+            .or(average(blue, x, multiplier))
+            .intoArray(target, row + x);
+      }
+      for (; x < width - before; x++) {
+        target[row + x] = ScalarPixelKernels.pack(alpha[x], red[x], green[x], blue[x], reciprocal);
+      }
+      addRow(source, (y - before) * width, width, alpha, red, green, blue, true);
+    }
+  }
+
+  private static IntVector average(int[] sums, int x, int multiplier) {
+    return IntVector.fromArray(SPECIES, sums, x)
+        .mul(multiplier)
+        .lanewise(VectorOperators.LSHR, SHIFT);
+  }
+
+  private static void addRow(
+      int[] source,
+      int row,
+      int width,
+      int[] alpha,
+      int[] red,
+      int[] green,
+      int[] blue,
+      boolean subtract) {
+    int bound = SPECIES.loopBound(width);
+    int x = 0;
+    for (; x < bound; x += LANES) {
+      IntVector pixel = IntVector.fromArray(SPECIES, source, row + x);
+      accumulate(alpha, x, pixel.lanewise(VectorOperators.LSHR, 24), subtract);
+      accumulate(
+          red,
+          x,
+          pixel.lanewise(VectorOperators.LSHR, 16).lanewise(VectorOperators.AND, 0xff),
+          subtract);
+      accumulate(
+          green,
+          x,
+          pixel.lanewise(VectorOperators.LSHR, 8).lanewise(VectorOperators.AND, 0xff),
+          subtract);
+      accumulate(blue, x, pixel.lanewise(VectorOperators.AND, 0xff), subtract);
+    }
+    int sign = subtract ? -1 : 1;
+    for (; x < width; x++) {
+      int pixel = source[row + x];
+      alpha[x] += sign * (pixel >>> 24);
+      red[x] += sign * ((pixel >> 16) & 0xff);
+      green[x] += sign * ((pixel >> 8) & 0xff);
+      blue[x] += sign * (pixel & 0xff);
+    }
+  }
+
+  private static void accumulate(int[] sums, int x, IntVector channel, boolean subtract) {
+    IntVector current = IntVector.fromArray(SPECIES, sums, x);
+    (subtract ? current.sub(channel) : current.add(channel)).intoArray(sums, x);
+  }
+
+  @Override
+  public void jitter(int[] pixels, int offset, int length, int[] noise, int noiseOffset, int bias) {
+    int mask = noise.length - 1;
+    int shift = bias - 256;
+    int i = 0;
+    while (i < length) {
+      // Noise is contiguous up to the end of the table
+      int start = (noiseOffset + i) & mask;
+      int run = Math.min(length - i, noise.length - start);
+      int bound = SPECIES.loopBound(run);
+      int j = 0;
+      for (; j < bound; j += LANES) {
+        IntVector pixel = IntVector.fromArray(SPECIES, pixels, offset + i + j);
+        IntVector n = IntVector.fromArray(SPECIES, noise, start + j);
+        IntVector r =
+            clamp(
+                pixel
+                    .lanewise(VectorOperators.LSHR, 16)
+                    .lanewise(VectorOperators.AND, 0xff)
+                    .add(n.lanewise(VectorOperators.LSHR, 20))
+                    .add(shift));
+        IntVector g =
+            clamp(
+                pixel
+                    .lanewise(VectorOperators.LSHR, 8)
+                    .lanewise(VectorOperators.AND, 0xff)
+                    .add(n.lanewise(VectorOperators.LSHR, 10).lanewise(VectorOperators.AND, 0x3ff))
+                    .add(shift));
+        IntVector b =
+            clamp(
+                pixel
+                    .lanewise(VectorOperators.AND, 0xff)
+                    .add(n.lanewise(VectorOperators.AND, 0x3ff))
+                    .add(shift));
+        pixel
+            .lanewise(VectorOperators.AND, 0xff000000)
+            .or(r.lanewise(VectorOperators.LSHL, 16))
+            .or(g.lanewise(VectorOperators.LSHL, 8))
+            .or(b)
+            .intoArray(pixels, offset + i + j);
+      }
+      ScalarPixelKernels.INSTANCE.jitter(
+          pixels, offset + i + j, run - j, noise, start + j, bias);
+      i += run;
+    }
+  }
+
+  private static IntVector clamp(IntVector channel) {
+    return channel.max(0).min(255);
+  }
+}
@@ -0,0 +1,216 @@
+package com.fedmag.verysimplecaptcha.generators.filters;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * The {@code WaveFilter} class warps an image along two sine waves: every row is shifted
+ * horizontally and every column vertically, by up to the amplitude. Each image gets a random phase,
+ * so the same text never bends the same way twice.
+ *
+ * <p>The displacements are read from tables computed once per image size, and samples are
+ * interpolated linearly in 8-bit fixed point, whole runs of a row at a time on the {@linkplain
+ * RasterKernels raster kernels}. The filter allocates nothing per image: the
+ * horizontal pass writes into the {@linkplain PixelRaster#scratch() scratch buffer} and the
+ * vertical pass writes back. Compact rasters are {@linkplain #supportsShades() supported} and
+ * interpolate single shades.
+ */
+public class WaveFilter implements RasterFilter {
+
+  private final double amplitude;
+  private final double wavelength;
+  private final int period;
+  private final SizeCache<Tables> tables = new SizeCache<>(this::createTables);
+
+  /**
+   * Constructs a {@code WaveFilter}.
+   *
+   * @param amplitude the largest displacement, in pixels
+   * @param wavelength the length of one wave, in pixels
+   * @throws IllegalArgumentException if the amplitude is negative or the wavelength is smaller
+   *     than 2
+   */
+  public WaveFilter(double amplitude, double wavelength) {
+    if (!(amplitude >= 0) || !(wavelength >= 2)) {
+      throw new IllegalArgumentException(
+          "The amplitude cannot be negative and the wavelength cannot be smaller than 2.");
+    }
+    this.amplitude = amplitude;
+    this.wavelength = wavelength;
+    this.period = (int) Math.ceil(wavelength);
+  }
+
+  /** Constructs a {@code WaveFilter} with an amplitude of 3 and a wavelength of 40 pixels. */
+  public WaveFilter() {
+    this(3, 40);
+  }
+
+  /**
+   * Warps the given raster in place, using its scratch buffer.
+   *
+   * @param raster the raster to warp
+   */
+  @Override
+  public void apply(PixelRaster raster) {
+    int width = raster.getWidth();
+    int height = raster.getHeight();
+    Tables shifts = tables.get(width, height);
+    RandomGenerator random = raster.random();
+    if (raster.isCompact()) {
+      byte[] shades = raster.getShades();
+      byte[] scratch = raster.shadeScratch();
+      shiftRows(shades, scratch, width, height, shifts.rows, random.nextInt(period));
+      shiftColumns(scratch, shades, width, height, shifts.columns, random.nextInt(period));
+      return;
+    }
+    int[] pixels = raster.getPixels();
+    int[] scratch = raster.scratch();
+    shiftRows(pixels, scratch, width, height, shifts.rows, random.nextInt(period));
+    shiftColumns(scratch, pixels, width, height, shifts.columns, random.nextInt(period));
+  }
+
+  @Override
+  public boolean supportsShades() {
+    return true;
+  }
+
+  private Tables createTables(int width, int height) {
+    return new Tables(shifts(height + period), shifts(width + period));
+  }
+
+  /** Computes the displacements, in 1/256 pixel, along one wave. */
+  private int[] shifts(int length) {
+    int[] shifts = new int[length];
+    for (int i = 0; i < length; i++) {
+      int angle = (int) Math.round(i * SineTable.PERIOD / wavelength);
+      shifts[i] = (int) Math.round(amplitude * 256 * SineTable.sin(angle) / SineTable.ONE);
+    }
+    return shifts;
+  }
+
+  private static void shiftRows(
+      int[] source, int[] target, int width, int height, int[] shifts, int phase) {
+    int last = width - 1;
+    for (int y = 0; y < height; y++) {
+      int shift = shifts[y + phase];
+      int offset = shift >> 8;
+      int fraction = shift & 0xff;
+      int row = y * width;
+      // Between start and end both samples are inside the row and need no clamping
+      int start = Math.max(0, Math.min(width, -offset));
+      int end = Math.max(start, Math.min(width, last - offset));
+      for (int x = 0; x < start; x++) {
+        target[row + x] = clampedLerp(source, row, x + offset, last, 1, fraction);
+      }
+      RasterKernels.get()
+          .lerpRow(source, row + start + offset, target, row + start, end - start, fraction);
+      for (int x = end; x < width; x++) {
+        target[row + x] = clampedLerp(source, row, x + offset, last, 1, fraction);
+      }
+    }
+  }
+
+  private void shiftColumns(
+      int[] source, int[] target, int width, int height, int[] shifts, int phase) {
+    int last = height - 1;
+    // Rows this far from the top and bottom only sample rows inside the image
+    int margin = (int) Math.ceil(amplitude) + 1;
+    for (int y = 0; y < height; y++) {
+      int row = y * width;
+      if (y >= margin && y < height - margin) {
+        for (int x = 0; x < width; x++) {
+          int shift = shifts[x + phase];
+          int from = row + (shift >> 8) * width + x;
+          target[row + x] =
+              ScalarPixelKernels.lerp(source[from], source[from + width], shift & 0xff);
+        }
+      } else {
+        for (int x = 0; x < width; x++) {
+          int shift = shifts[x + phase];
+          target[row + x] =
+              clampedLerp(source, x, y + (shift >> 8), last, width, shift & 0xff);
+        }
+      }
+    }
+  }
+
+  private static void shiftRows(
+      byte[] source, byte[] target, int width, int height, int[] shifts, int phase) {
+    int last = width - 1;
+    for (int y = 0; y < height; y++) {
+      int shift = shifts[y + phase];
+      int offset = shift >> 8;
+      int fraction = shift & 0xff;
+      int row = y * width;
+      int start = Math.max(0, Math.min(width, -offset));
+      int end = Math.max(start, Math.min(width, last - offset));
+      for (int x = 0; x < start; x++) {
+        target[row + x] = clampedLerp(source, row, x + offset, last, 1, fraction);
+      }
+      for (int x = start; x < end; x++) {
+        int from = row + x + offset;
+        target[row + x] = lerp(source[from], source[from + 1], fraction);
+      }
+      for (int x = end; x < width; x++) {
+        target[row + x] = clampedLerp(source, row, x + offset, last, 1, fraction);
+      }
+    }
+  }
+
+  private void shiftColumns(
+      byte[] source, byte[] target, int width, int height, int[] shifts, int phase) {
+    int last = height - 1;
+    int margin = (int) Math.ceil(amplitude) + 1;
+    for (int y = 0; y < height; y++) {
+      int row = y * width;
+      if (y >= margin && y < height - margin) {
+        for (int x = 0; x < width; x++) {
+          int shift = shifts[x + phase];
+          int from = row + (shift >> 8) * width + x;
+          target[row + x] = lerp(source[from], source[from + width], shift & 0xff);
+        }
+      } else {
+        for (int x = 0; x < width; x++) {
+          int shift = shifts[x + phase];
+          target[row + x] =
+              clampedLerp(source, x, y + (shift >> 8), last, width, shift & 0xff);
+        }
+      }
+    }
+  }
+
+  /** Interpolates the shades {@code from} and {@code from + 1}, clamping both to the image. */
+  private static byte clampedLerp(
+      byte[] source, int base, int from, int last, int stride, int fraction) {
+    byte a = source[base + Math.max(0, Math.min(last, from)) * stride];
+    byte b = source[base + Math.max(0, Math.min(last, from + 1)) * stride];
+    return lerp(a, b, fraction);
+  }
+
+  /** Interpolates two shades. */
+  private static byte lerp(byte a, byte b, int fraction) {
+    return (byte) (((a & 0xff) * (256 - fraction) + (b & 0xff) * fraction) >>> 8);
+  }
+
+  /**
+   * Interpolates the samples {@code from} and {@code from + 1} along a row or a column, clamping
+   * both to the image.
+   */
+  private static int clampedLerp(
+      int[] source, int base, int from, int last, int stride, int fraction) {
+    int a = source[base + Math.max(0, Math.min(last, from)) * stride];
+    int b = source[base + Math.max(0, Math.min(last, from + 1)) * stride];
+    return ScalarPixelKernels.lerp(a, b, fraction);
+  }
+
+  /** The displacements of the rows and the columns of one image size, one period longer. */
+  private static final class Tables {
+
+    private final int[] rows;
+    private final int[] columns;
+
+    private Tables(int[] rows, int[] columns) {
+      this.rows = rows;
+      this.columns = columns;
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package com.fedmag.verysimplecaptcha.metrics;
+
+import com.fedmag.verysimplecaptcha.generators.filters.ImageFilter;
+
+/**
+ * The {@code CaptchaMetrics} interface receives the duration of every stage of CAPTCHA generation.
+ *
+ * <p>Implementations are called synchronously on the thread doing the work, possibly from many
+ * threads at once, so they must be thread-safe and should return quickly. Every method does nothing
+ * by default, so implementations only override the stages they care about. {@link
+ * HistogramMetrics} is a ready-made implementation.
+ *
+ * <p>Independently of any listener, every stage is also recorded as a {@code
+ * com.fedmag.verysimplecaptcha.Stage} JFR event, visible in any recording that enables it.
+ */
+public interface CaptchaMetrics {
+
+  /** Listener that ignores every measurement. */
+  CaptchaMetrics NOOP = new CaptchaMetrics() {};
+
+  /**
+   * Called after the token of a CAPTCHA has been generated.
+   *
+   * @param length the number of characters
+   * @param nanos the elapsed time in nanoseconds
+   */
+  default void onToken(int length, long nanos) {}
+
+  /**
+   * Called after the background and text of an image have been drawn, before any filter runs.
+   *
+   * @param width the image width
+   * @param height the image height
+   * @param nanos the elapsed time in nanoseconds
+   */
+  default void onRender(int width, int height, long nanos) {}
+
+  /**
+   * Called after a filter has been applied. Point filters fused into a single pass share the time
+   * of that pass equally.
+   *
+   * @param filter the filter
+   * @param nanos the elapsed time in nanoseconds
+   */
+  default void onFilter(ImageFilter filter, long nanos) {}
+
+  /**
+   * Called after an image has been encoded.
+   *
+   * @param encoder the name of the encoder
+   * @param bytes the number of encoded bytes, before any Base64 encoding
+   * @param nanos the elapsed time in nanoseconds
+   */
+  default void onEncode(String encoder, long bytes, long nanos) {}
+}
@@ -0,0 +1,13 @@
+package com.fedmag.verysimplecaptcha.metrics;
+
+/** The {@code CaptchaStage} enum lists the measured stages of CAPTCHA generation. */
+public enum CaptchaStage {
+  /** Generating the random token. */
+  TOKEN,
+  /** Drawing the background and the text. */
+  RENDER,
+  /** Applying one filter, or one fused pass of point filters. */
+  FILTER,
+  /** Encoding the image. */
+  ENCODE
+}
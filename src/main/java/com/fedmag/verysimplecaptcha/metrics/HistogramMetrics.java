@@ -0,0 +1,120 @@
+package com.fedmag.verysimplecaptcha.metrics;
+
+import com.fedmag.verysimplecaptcha.generators.filters.ImageFilter;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@code HistogramMetrics} class collects every stage into a {@link LatencyHistogram}, plus
+ * one histogram per filter class and per encoder.
+ *
+ * <p>This class is thread-safe, and recording allocates nothing once every filter class and encoder
+ * has been seen.
+ */
+public final class HistogramMetrics implements CaptchaMetrics {
+
+  private final LatencyHistogram tokenNanos = new LatencyHistogram();
+  private final LatencyHistogram renderNanos = new LatencyHistogram();
+  private final LatencyHistogram filterNanos = new LatencyHistogram();
+  private final LatencyHistogram encodeNanos = new LatencyHistogram();
+  private final LatencyHistogram encodedBytes = new LatencyHistogram();
+  private final ConcurrentHashMap<String, LatencyHistogram> filterNanosByClass =
+      new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, LatencyHistogram> encodeNanosByEncoder =
+      new ConcurrentHashMap<>();
+
+  @Override
+  public void onToken(int length, long nanos) {
+    tokenNanos.record(nanos);
+  }
+
+  @Override
+  public void onRender(int width, int height, long nanos) {
+    renderNanos.record(nanos);
+  }
+
+  @Override
+  public void onFilter(ImageFilter filter, long nanos) {
+    filterNanos.record(nanos);
+    histogram(filterNanosByClass, filter.getClass().getName()).record(nanos);
+  }
+
+  @Override
+  public void onEncode(String encoder, long bytes, long nanos) {
+    encodeNanos.record(nanos);
+    encodedBytes.record(bytes);
+    histogram(encodeNanosByEncoder, encoder).record(nanos);
+  }
+
+  private static LatencyHistogram histogram(
+      ConcurrentHashMap<String, LatencyHistogram> histograms, String key) {
+    LatencyHistogram histogram = histograms.get(key);
+    return histogram != null
+        ? histogram
+        : histograms.computeIfAbsent(key, ignored -> new LatencyHistogram());
+  }
+
+  /**
+   * Returns the token generation times, in nanoseconds.
+   *
+   * @return the histogram
+   */
+  public LatencyHistogram getTokenNanos() {
+    return tokenNanos;
+  }
+
+  /**
+   * Returns the drawing times, in nanoseconds.
+   *
+   * @return the histogram
+   */
+  public LatencyHistogram getRenderNanos() {
+    return renderNanos;
+  }
+
+  /**
+   * Returns the times of every filter, in nanoseconds.
+   *
+   * @return the histogram
+   */
+  public LatencyHistogram getFilterNanos() {
+    return filterNanos;
+  }
+
+  /**
+   * Returns the filter times by filter class name, in nanoseconds.
+   *
+   * @return an unmodifiable view of the histograms
+   */
+  public Map<String, LatencyHistogram> getFilterNanosByClass() {
+    return Collections.unmodifiableMap(filterNanosByClass);
+  }
+
+  /**
+   * Returns the encoding times, in nanoseconds.
+   *
+   * @return the histogram
+   */
+  public LatencyHistogram getEncodeNanos() {
+    return encodeNanos;
+  }
+
+  /**
+   * Returns the encoding times by encoder name, in nanoseconds.
+   *
+   * @return an unmodifiable view of the histograms
+   */
+  public Map<String, LatencyHistogram> getEncodeNanosByEncoder() {
+    return Collections.unmodifiableMap(encodeNanosByEncoder);
+  }
+
+  /**
+   * Returns the encoded sizes, in bytes.
+   *
+   * @return the histogram
+   */
+  public LatencyHistogram getEncodedBytes() {
+    return encodedBytes;
+  }
+}
@@ -0,0 +1,29 @@
+package com.fedmag.verysimplecaptcha.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** JFR event recording one stage of CAPTCHA generation. */
+@Name("com.fedmag.verysimplecaptcha.Stage")
+@Label("Captcha Stage")
+@Category("VerySimpleCaptcha")
+@Description("One stage of CAPTCHA generation: token, render, filter or encode")
+@StackTrace(false)
+final class StageEvent extends Event {
+
+  @Label("Stage")
+  String stage;
+
+  @Label("Detail")
+  @Description("The filter or encoder of the stage, if any")
+  String detail;
+
+  @Label("Bytes")
+  @DataAmount
+  long bytes;
+}
@@ -0,0 +1,49 @@
+package com.fedmag.verysimplecaptcha.metrics;
+
+/**
+ * The {@code StageTimer} class measures one stage of CAPTCHA generation and records it as a JFR
+ * event.
+ *
+ * <p>Starting a timer costs one {@code System.nanoTime()} call. The JFR event is only committed
+ * while a recording enables it, so timers are cheap enough to leave on in production.
+ */
+public final class StageTimer {
+
+  private final StageEvent event;
+  private final long start;
+
+  private StageTimer() {
+    this.event = new StageEvent();
+    event.begin();
+    this.start = System.nanoTime();
+  }
+
+  /**
+   * Starts timing a stage.
+   *
+   * @return a running timer
+   */
+  public static StageTimer start() {
+    return new StageTimer();
+  }
+
+  /**
+   * Stops the timer and commits its JFR event.
+   *
+   * @param stage the stage that was timed
+   * @param detail the filter or encoder of the stage, or {@code null}
+   * @param bytes the number of bytes produced, or 0
+   * @return the elapsed time in nanoseconds
+   */
+  public long stop(CaptchaStage stage, String detail, long bytes) {
+    long elapsed = System.nanoTime() - start;
+    event.end();
+    if (event.shouldCommit()) {
+      event.stage = stage.name();
+      event.detail = detail;
+      event.bytes = bytes;
+      event.commit();
+    }
+    return elapsed;
+  }
+}
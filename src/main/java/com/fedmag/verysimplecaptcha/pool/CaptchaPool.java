@@ -0,0 +1,445 @@
+package com.fedmag.verysimplecaptcha.pool;
+
+import com.fedmag.verysimplecaptcha.Captcha;
+import com.fedmag.verysimplecaptcha.CaptchaProfile;
+import com.fedmag.verysimplecaptcha.adaptive.LoadSheddingController;
+import com.fedmag.verysimplecaptcha.concurrent.VirtualThreads;
+import com.fedmag.verysimplecaptcha.encoding.CaptchaEncoder;
+import com.fedmag.verysimplecaptcha.encoding.CaptchaEncoders;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code CaptchaPool} class keeps a bounded number of ready-made CAPTCHAs for one {@link
+ * CaptchaProfile}, so that requests can be served without rendering or encoding on the calling
+ * thread.
+ *
+ * <p>When the number of ready CAPTCHAs drops to the low watermark, a refill task is submitted to
+ * the executor and generates CAPTCHAs until the high watermark is reached again. At most one refill
+ * task runs at a time.
+ *
+ * <p>A pool built for a {@link LoadSheddingController} generates from the current tier of the
+ * controller and reports the time every CAPTCHA took to generate and encode to it, so the
+ * controller can move to a cheaper tier when generation gets slow.
+ */
+public final class CaptchaPool implements AutoCloseable {
+
+  private final CaptchaProfile profile;
+  private final LoadSheddingController controller;
+  private final CaptchaEncoder encoder;
+  private final int lowWatermark;
+  private final int highWatermark;
+  private final Executor executor;
+  private final ExecutorService ownedExecutor;
+
+  private final ConcurrentLinkedQueue<PooledCaptcha> ready = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger size = new AtomicInteger();
+  private final AtomicBoolean refilling = new AtomicBoolean();
+  private final AtomicBoolean closed = new AtomicBoolean();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder generated = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+  private final AtomicLong lastRefillLagNanos = new AtomicLong();
+  private final AtomicLong maxRefillLagNanos = new AtomicLong();
+
+  private CaptchaPool(Builder builder) {
+    this.profile = builder.profile;
+    this.controller = builder.controller;
+    this.encoder = builder.encoder;
+    this.lowWatermark = builder.lowWatermark;
+    this.highWatermark = builder.highWatermark;
+    if (builder.executor != null) {
+      this.executor = builder.executor;
+      this.ownedExecutor = null;
+    } else {
+      this.ownedExecutor =
+          builder.virtualThreads
+              ? VirtualThreads.newThreadPerTaskExecutor("captcha-pool")
+              : Executors.newSingleThreadExecutor(
+                  VirtualThreads.daemonThreadFactory("captcha-pool"));
+      this.executor = ownedExecutor;
+    }
+  }
+
+  /**
+   * Takes a ready-made CAPTCHA from the pool without blocking.
+   *
+   * @return a CAPTCHA, or {@code null} if the pool is currently empty
+   */
+  public PooledCaptcha poll() {
+    PooledCaptcha captcha = ready.poll();
+    if (captcha == null) {
+      misses.increment();
+    } else {
+      hits.increment();
+      size.decrementAndGet();
+    }
+    maybeRefill();
+    return captcha;
+  }
+
+  /**
+   * Takes a ready-made CAPTCHA from the pool, generating one on the calling thread if the pool is
+   * empty.
+   *
+   * @return a CAPTCHA
+   * @throws IOException if the CAPTCHA has to be generated and encoding fails
+   */
+  public PooledCaptcha take() throws IOException {
+    PooledCaptcha captcha = poll();
+    return captcha != null ? captcha : generate();
+  }
+
+  /**
+   * Fills the pool up to the high watermark on the calling thread. Concurrent fills share the
+   * slots left, so together they never generate past the high watermark.
+   */
+  public void prefill() {
+    fill();
+  }
+
+  /**
+   * Returns the number of CAPTCHAs ready to be served, counting those a refill is generating.
+   *
+   * @return the number of ready CAPTCHAs
+   */
+  public int size() {
+    return size.get();
+  }
+
+  /**
+   * Returns a snapshot of the pool statistics.
+   *
+   * @return the pool statistics
+   */
+  public Stats getStats() {
+    return new Stats(
+        hits.sum(),
+        misses.sum(),
+        generated.sum(),
+        failures.sum(),
+        size.get(),
+        lastRefillLagNanos.get(),
+        maxRefillLagNanos.get());
+  }
+
+  /** Stops refilling. The executor is shut down only if it was created by the pool. */
+  @Override
+  public void close() {
+    if (closed.compareAndSet(false, true) && ownedExecutor != null) {
+      ownedExecutor.shutdownNow();
+    }
+  }
+
+  private void maybeRefill() {
+    if (size.get() > lowWatermark || closed.get() || !refilling.compareAndSet(false, true)) {
+      return;
+    }
+    long requestedAt = System.nanoTime();
+    try {
+      executor.execute(
+          () -> {
+            try {
+              fill();
+              recordRefillLag(System.nanoTime() - requestedAt);
+            } finally {
+              refilling.set(false);
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      refilling.set(false);
+    }
+  }
+
+  private void fill() {
+    while (!closed.get() && reserve()) {
+      try {
+        ready.offer(generate());
+      } catch (IOException | UncheckedIOException e) {
+        size.decrementAndGet();
+        failures.increment();
+        return;
+      }
+    }
+  }
+
+  // Claims a slot before generating, so concurrent fills never go past the high watermark
+  private boolean reserve() {
+    int current;
+    do {
+      current = size.get();
+      if (current >= highWatermark) {
+        return false;
+      }
+    } while (!size.compareAndSet(current, current + 1));
+    return true;
+  }
+
+  private PooledCaptcha generate() throws IOException {
+    long start = System.nanoTime();
+    Captcha captcha = controller != null ? controller.getProfile().next() : profile.next();
+    PooledCaptcha pooled =
+        new PooledCaptcha(
+            captcha.getToken(), captcha.getImageAsBytes(encoder), encoder.getMimeType());
+    generated.increment();
+    if (controller != null) {
+      controller.recordGeneration(System.nanoTime() - start);
+    }
+    return pooled;
+  }
+
+  private void recordRefillLag(long lagNanos) {
+    lastRefillLagNanos.set(lagNanos);
+    maxRefillLagNanos.accumulateAndGet(lagNanos, Math::max);
+  }
+
+  /** The {@code Stats} class is an immutable snapshot of the pool statistics. */
+  public static final class Stats {
+
+    private final long hits;
+    private final long misses;
+    private final long generated;
+    private final long failures;
+    private final int size;
+    private final long lastRefillLagNanos;
+    private final long maxRefillLagNanos;
+
+    private Stats(
+        long hits,
+        long misses,
+        long generated,
+        long failures,
+        int size,
+        long lastRefillLagNanos,
+        long maxRefillLagNanos) {
+      this.hits = hits;
+      this.misses = misses;
+      this.generated = generated;
+      this.failures = failures;
+      this.size = size;
+      this.lastRefillLagNanos = lastRefillLagNanos;
+      this.maxRefillLagNanos = maxRefillLagNanos;
+    }
+
+    /**
+     * Returns the number of requests served from the pool.
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+      return hits;
+    }
+
+    /**
+     * Returns the number of requests that found the pool empty.
+     *
+     * @return the number of misses
+     */
+    public long getMisses() {
+      return misses;
+    }
+
+    /**
+     * Returns the fraction of requests served from the pool.
+     *
+     * @return the hit rate between 0 and 1, or 0 if there were no requests
+     */
+    public double getHitRate() {
+      long total = hits + misses;
+      return total == 0 ? 0d : (double) hits / total;
+    }
+
+    /**
+     * Returns the number of CAPTCHAs generated by the pool, including those generated on a miss.
+     *
+     * @return the number of generated CAPTCHAs
+     */
+    public long getGenerated() {
+      return generated;
+    }
+
+    /**
+     * Returns the number of CAPTCHAs that could not be generated.
+     *
+     * @return the number of failures
+     */
+    public long getFailures() {
+      return failures;
+    }
+
+    /**
+     * Returns the number of CAPTCHAs ready or being generated when the snapshot was taken.
+     *
+     * @return the number of ready CAPTCHAs
+     */
+    public int getSize() {
+      return size;
+    }
+
+    /**
+     * Returns the time between the last refill request and the pool reaching its high watermark.
+     *
+     * @return the last refill lag in nanoseconds
+     */
+    public long getLastRefillLagNanos() {
+      return lastRefillLagNanos;
+    }
+
+    /**
+     * Returns the longest refill lag observed so far.
+     *
+     * @return the maximum refill lag in nanoseconds
+     */
+    public long getMaxRefillLagNanos() {
+      return maxRefillLagNanos;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "Stats{hits=%d, misses=%d, hitRate=%.3f, generated=%d, failures=%d, size=%d,"
+              + " lastRefillLagNanos=%d, maxRefillLagNanos=%d}",
+          hits,
+          misses,
+          getHitRate(),
+          generated,
+          failures,
+          size,
+          lastRefillLagNanos,
+          maxRefillLagNanos);
+    }
+  }
+
+  /** The {@code Builder} class is used to build {@code CaptchaPool} instances. */
+  public static final class Builder {
+
+    private final CaptchaProfile profile;
+    private final LoadSheddingController controller;
+    private CaptchaEncoder encoder = CaptchaEncoders.jpeg();
+    private int lowWatermark = 16;
+    private int highWatermark = 64;
+    private Executor executor;
+    private boolean virtualThreads = false;
+
+    /**
+     * Constructs a pool builder for the given CAPTCHA builder, compiled right away. Later changes
+     * to the CAPTCHA builder do not affect the pool.
+     *
+     * @param profile the builder used to generate the pooled CAPTCHAs
+     */
+    public Builder(Captcha.Builder profile) {
+      this(profile.compile());
+    }
+
+    /**
+     * Constructs a pool builder for the given CAPTCHA profile.
+     *
+     * @param profile the profile used to generate the pooled CAPTCHAs
+     */
+    public Builder(CaptchaProfile profile) {
+      this.profile = Objects.requireNonNull(profile, "profile");
+      this.controller = null;
+    }
+
+    /**
+     * Constructs a pool builder generating from the current tier of the given controller.
+     *
+     * @param controller the controller choosing the profile of every pooled CAPTCHA
+     */
+    public Builder(LoadSheddingController controller) {
+      this.profile = null;
+      this.controller = Objects.requireNonNull(controller, "controller");
+    }
+
+    /**
+     * Builds and returns a {@code CaptchaPool}. The pool starts empty; call {@link
+     * CaptchaPool#prefill()} to fill it before serving traffic.
+     *
+     * @return a new {@code CaptchaPool}
+     * @throws IllegalArgumentException if the low watermark is not smaller than the high watermark
+     */
+    public CaptchaPool build() {
+      if (lowWatermark >= highWatermark) {
+        throw new IllegalArgumentException(
+            "The low watermark must be smaller than the high watermark.");
+      }
+      return new CaptchaPool(this);
+    }
+
+    /**
+     * Sets the number of ready CAPTCHAs at or below which a refill starts.
+     *
+     * @param lowWatermark the low watermark
+     * @return the builder instance
+     * @throws IllegalArgumentException if the low watermark is negative
+     */
+    public Builder lowWatermark(int lowWatermark) {
+      if (lowWatermark < 0) {
+        throw new IllegalArgumentException("The low watermark cannot be negative.");
+      }
+      this.lowWatermark = lowWatermark;
+      return this;
+    }
+
+    /**
+     * Sets the number of ready CAPTCHAs a refill stops at. This is also the pool capacity.
+     *
+     * @param highWatermark the high watermark
+     * @return the builder instance
+     * @throws IllegalArgumentException if the high watermark is smaller than 1
+     */
+    public Builder highWatermark(int highWatermark) {
+      if (highWatermark < 1) {
+        throw new IllegalArgumentException("The high watermark cannot be smaller than 1.");
+      }
+      this.highWatermark = highWatermark;
+      return this;
+    }
+
+    /**
+     * Sets the encoder of the pooled images. Defaults to JPEG.
+     *
+     * @param encoder the image encoder
+     * @return the builder instance
+     */
+    public Builder encoder(CaptchaEncoder encoder) {
+      this.encoder = Objects.requireNonNull(encoder, "encoder");
+      return this;
+    }
+
+    /**
+     * Sets the executor running the refill tasks. The pool never shuts down an executor supplied
+     * here.
+     *
+     * @param executor the refill executor
+     * @return the builder instance
+     */
+    public Builder executor(Executor executor) {
+      this.executor = Objects.requireNonNull(executor, "executor");
+      return this;
+    }
+
+    /**
+     * Runs refill tasks on virtual threads when no executor is supplied and the JVM supports them.
+     *
+     * @param virtualThreads whether to use virtual threads
+     * @return the builder instance
+     */
+    public Builder virtualThreads(boolean virtualThreads) {
+      this.virtualThreads = virtualThreads;
+      return this;
+    }
+  }
+}
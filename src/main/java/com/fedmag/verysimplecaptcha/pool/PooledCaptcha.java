@@ -0,0 +1,75 @@
+package com.fedmag.verysimplecaptcha.pool;
+
+import java.util.Base64;
+
+/**
+ * The {@code PooledCaptcha} class holds a ready-made CAPTCHA: its token and the encoded image.
+ *
+ * <p>Instances are immutable. The encoded bytes are shared rather than copied, so callers must not
+ * modify the array returned by {@link #getImageBytes()}.
+ */
+public final class PooledCaptcha {
+
+  private final String token;
+  private final byte[] imageBytes;
+  private final String mimeType;
+
+  /**
+   * Constructs a {@code PooledCaptcha} holding a JPEG image.
+   *
+   * @param token the CAPTCHA token
+   * @param imageBytes the encoded CAPTCHA image
+   */
+  public PooledCaptcha(String token, byte[] imageBytes) {
+    this(token, imageBytes, "image/jpeg");
+  }
+
+  /**
+   * Constructs a {@code PooledCaptcha}.
+   *
+   * @param token the CAPTCHA token
+   * @param imageBytes the encoded CAPTCHA image
+   * @param mimeType the MIME type of the encoded image
+   */
+  public PooledCaptcha(String token, byte[] imageBytes, String mimeType) {
+    this.token = token;
+    this.imageBytes = imageBytes;
+    this.mimeType = mimeType;
+  }
+
+  /**
+   * Returns the CAPTCHA token (the true value).
+   *
+   * @return the CAPTCHA token
+   */
+  public String getToken() {
+    return token;
+  }
+
+  /**
+   * Returns the encoded CAPTCHA image. The returned array must not be modified.
+   *
+   * @return the encoded CAPTCHA image
+   */
+  public byte[] getImageBytes() {
+    return imageBytes;
+  }
+
+  /**
+   * Returns the MIME type of the encoded image.
+   *
+   * @return the MIME type
+   */
+  public String getMimeType() {
+    return mimeType;
+  }
+
+  /**
+   * Returns the encoded CAPTCHA image as a Base64 encoded string.
+   *
+   * @return the CAPTCHA image as a Base64 encoded string
+   */
+  public String getImageAsBase64EncodedString() {
+    return Base64.getEncoder().encodeToString(imageBytes);
+  }
+}
@@ -0,0 +1,445 @@
+package com.fedmag.verysimplecaptcha.server;
+
+import com.fedmag.verysimplecaptcha.Captcha;
+import com.fedmag.verysimplecaptcha.CaptchaProfile;
+import com.fedmag.verysimplecaptcha.adaptive.LoadSheddingController;
+import com.fedmag.verysimplecaptcha.concurrent.VirtualThreads;
+import com.fedmag.verysimplecaptcha.encoding.CaptchaEncoder;
+import com.fedmag.verysimplecaptcha.encoding.CaptchaEncoders;
+import com.fedmag.verysimplecaptcha.pool.CaptchaPool;
+import com.fedmag.verysimplecaptcha.pool.PooledCaptcha;
+import com.fedmag.verysimplecaptcha.verification.CaptchaSigner;
+import com.fedmag.verysimplecaptcha.verification.CaptchaStore;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * The {@code CaptchaServer} class serves CAPTCHAs over HTTP with the JDK's built-in {@code
+ * com.sun.net.httpserver} server, so the library can run as a sidecar without a web framework.
+ *
+ * <p>Two endpoints are exposed:
+ *
+ * <ul>
+ *   <li>{@code GET /captcha} returns an encoded image, with its identifier in the {@code
+ *       X-Captcha-Id} header and headers forbidding any cache to keep it.
+ *   <li>{@code POST /verify} takes the form fields {@code id} and {@code answer}, in the body or
+ *       the query string, and returns {@code {"valid":true}} or {@code {"valid":false}}.
+ * </ul>
+ *
+ * <p>Images come from a {@link CaptchaPool}, so a request only costs a queue poll and a write.
+ * Answers are kept in a {@link CaptchaStore}, or signed into the identifier by a {@link
+ * CaptchaSigner} when several nodes must verify each other's CAPTCHAs; either way an identifier
+ * is checked once, and a wrong answer uses it up. Requests run on virtual
+ * threads when the JVM has them; requests beyond the concurrency limit are answered with {@code
+ * 503} instead of queueing.
+ *
+ * <p>A server built for a {@link LoadSheddingController} reports the number of requests in progress
+ * to it as the queue depth, and the pool generates from the controller's current tier. In the
+ * pool-only tier, {@code GET /captcha} answers {@code 503} when the pool is empty rather than
+ * generating on the request thread.
+ */
+public final class CaptchaServer implements AutoCloseable {
+
+  /** Header carrying the identifier of an issued CAPTCHA. */
+  public static final String ID_HEADER = "X-Captcha-Id";
+
+  private static final int MAX_BODY_LENGTH = 4096;
+  private static final byte[] VALID = "{\"valid\":true}".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] INVALID = "{\"valid\":false}".getBytes(StandardCharsets.US_ASCII);
+
+  private final CaptchaPool pool;
+  private final LoadSheddingController controller;
+  private final Function<String, String> issuer;
+  private final BiPredicate<String, String> verifier;
+  private final Semaphore permits;
+  private final int maxConcurrentRequests;
+  private final ExecutorService executor;
+  private final HttpServer server;
+
+  private CaptchaServer(Builder builder) throws IOException {
+    // Bind first, so that a port in use fails before any pool or executor thread is started
+    InetSocketAddress address =
+        builder.host == null
+            ? new InetSocketAddress(builder.port)
+            : new InetSocketAddress(builder.host, builder.port);
+    this.server = HttpServer.create(address, builder.backlog);
+    this.controller = builder.controller;
+    CaptchaPool.Builder poolBuilder =
+        controller != null
+            ? new CaptchaPool.Builder(controller)
+            : new CaptchaPool.Builder(builder.profile);
+    this.pool =
+        poolBuilder
+            .encoder(builder.encoder)
+            .lowWatermark(builder.poolSize / 4)
+            .highWatermark(builder.poolSize)
+            .virtualThreads(true)
+            .build();
+    if (builder.signer != null) {
+      this.issuer = builder.signer::sign;
+      this.verifier = builder.signer::verify;
+    } else {
+      CaptchaStore store =
+          builder.store != null ? builder.store : new CaptchaStore.Builder().build();
+      this.issuer = store::issue;
+      this.verifier = store::verify;
+    }
+    this.permits = new Semaphore(builder.maxConcurrentRequests);
+    this.maxConcurrentRequests = builder.maxConcurrentRequests;
+    this.executor = VirtualThreads.newThreadPerTaskExecutor("captcha-server");
+    server.createContext("/captcha", limited("/captcha", this::issue));
+    server.createContext("/verify", limited("/verify", this::verify));
+    server.setExecutor(executor);
+  }
+
+  /**
+   * Fills the CAPTCHA pool and starts accepting requests.
+   *
+   * @return this server
+   */
+  public CaptchaServer start() {
+    pool.prefill();
+    server.start();
+    return this;
+  }
+
+  /**
+   * Returns the port the server listens on, which is useful when it was bound to port 0.
+   *
+   * @return the local port
+   */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * Returns the pool the images are served from, e.g. to read its statistics.
+   *
+   * @return the CAPTCHA pool
+   */
+  public CaptchaPool getPool() {
+    return pool;
+  }
+
+  /** Stops the server, letting exchanges in progress finish for up to one second. */
+  @Override
+  public void close() {
+    server.stop(1);
+    executor.shutdownNow();
+    pool.close();
+  }
+
+  private HttpHandler limited(String path, HttpHandler handler) {
+    return exchange -> {
+      try {
+        if (!path.equals(exchange.getRequestURI().getPath())) {
+          send(exchange, 404, null, null);
+        } else if (!permits.tryAcquire()) {
+          exchange.getResponseHeaders().set("Retry-After", "1");
+          send(exchange, 503, null, null);
+        } else {
+          try {
+            if (controller != null) {
+              controller.recordQueueDepth(maxConcurrentRequests - permits.availablePermits());
+            }
+            handler.handle(exchange);
+          } finally {
+            permits.release();
+          }
+        }
+      } finally {
+        exchange.close();
+      }
+    };
+  }
+
+  private void issue(HttpExchange exchange) throws IOException {
+    if (!"GET".equals(exchange.getRequestMethod())) {
+      exchange.getResponseHeaders().set("Allow", "GET");
+      send(exchange, 405, null, null);
+      return;
+    }
+    PooledCaptcha captcha;
+    try {
+      captcha = controller != null && controller.isPoolOnly() ? pool.poll() : pool.take();
+    } catch (IOException | UncheckedIOException | IllegalStateException e) {
+      send(exchange, 503, null, null);
+      return;
+    }
+    if (captcha == null) {
+      // shedding load: the pool is empty and nothing is generated on request threads
+      exchange.getResponseHeaders().set("Retry-After", "1");
+      send(exchange, 503, null, null);
+      return;
+    }
+    String id;
+    try {
+      id = issuer.apply(captcha.getToken());
+    } catch (IllegalStateException e) {
+      // the store is full
+      exchange.getResponseHeaders().set("Retry-After", "1");
+      send(exchange, 503, null, null);
+      return;
+    }
+    exchange.getResponseHeaders().set(ID_HEADER, id);
+    send(exchange, 200, captcha.getMimeType(), captcha.getImageBytes());
+  }
+
+  private void verify(HttpExchange exchange) throws IOException {
+    if (!"POST".equals(exchange.getRequestMethod())) {
+      exchange.getResponseHeaders().set("Allow", "POST");
+      send(exchange, 405, null, null);
+      return;
+    }
+    byte[] body;
+    try (InputStream in = exchange.getRequestBody()) {
+      body = in.readNBytes(MAX_BODY_LENGTH + 1);
+    }
+    if (body.length > MAX_BODY_LENGTH) {
+      send(exchange, 413, null, null);
+      return;
+    }
+    Map<String, String> fields = new HashMap<>();
+    parseForm(exchange.getRequestURI().getRawQuery(), fields);
+    parseForm(new String(body, StandardCharsets.UTF_8), fields);
+    String id = fields.get("id");
+    String answer = fields.get("answer");
+    if (id == null || answer == null) {
+      send(exchange, 400, null, null);
+      return;
+    }
+    boolean valid;
+    try {
+      valid = verifier.test(id, answer);
+    } catch (IllegalArgumentException e) {
+      // a malformed identifier cannot be valid
+      valid = false;
+    }
+    send(exchange, 200, "application/json", valid ? VALID : INVALID);
+  }
+
+  /** Parses URL-encoded form fields. Later values replace earlier ones. */
+  static void parseForm(String form, Map<String, String> fields) {
+    if (form == null || form.isEmpty()) {
+      return;
+    }
+    for (String pair : form.split("&")) {
+      int separator = pair.indexOf('=');
+      if (separator > 0) {
+        try {
+          fields.put(
+              URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+              URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+          // skip malformed escapes
+        }
+      }
+    }
+  }
+
+  private static void send(HttpExchange exchange, int status, String contentType, byte[] body)
+      throws IOException {
+    Headers headers = exchange.getResponseHeaders();
+    headers.set("Cache-Control", "no-store, no-cache, must-revalidate, max-age=0");
+    headers.set("Pragma", "no-cache");
+    headers.set("Expires", "0");
+    headers.set("X-Content-Type-Options", "nosniff");
+    if (contentType != null) {
+      headers.set("Content-Type", contentType);
+    }
+    if (body == null) {
+      exchange.sendResponseHeaders(status, -1);
+      return;
+    }
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  /** The {@code Builder} class is used to build {@code CaptchaServer} instances. */
+  public static final class Builder {
+
+    private final CaptchaProfile profile;
+    private final LoadSheddingController controller;
+    private String host;
+    private int port = 8080;
+    private int backlog = 1024;
+    private int maxConcurrentRequests = 1024;
+    private int poolSize = 256;
+    private CaptchaEncoder encoder = CaptchaEncoders.jpeg();
+    private CaptchaStore store;
+    private CaptchaSigner signer;
+
+    /**
+     * Constructs a server builder for the given CAPTCHA builder, compiled right away.
+     *
+     * @param profile the builder used to generate the served CAPTCHAs
+     */
+    public Builder(Captcha.Builder profile) {
+      this(profile.compile());
+    }
+
+    /**
+     * Constructs a server builder for the given CAPTCHA profile.
+     *
+     * @param profile the profile used to generate the served CAPTCHAs
+     */
+    public Builder(CaptchaProfile profile) {
+      this.profile = Objects.requireNonNull(profile, "profile");
+      this.controller = null;
+    }
+
+    /**
+     * Constructs a server builder generating from the current tier of the given controller.
+     *
+     * @param controller the controller choosing the profile of the served CAPTCHAs
+     */
+    public Builder(LoadSheddingController controller) {
+      this.profile = null;
+      this.controller = Objects.requireNonNull(controller, "controller");
+    }
+
+    /**
+     * Builds and returns a {@code CaptchaServer}, bound but not yet started.
+     *
+     * @return a new {@code CaptchaServer}
+     * @throws IOException if the server cannot be bound
+     * @throws IllegalArgumentException if both a store and a signer are set
+     */
+    public CaptchaServer build() throws IOException {
+      if (store != null && signer != null) {
+        throw new IllegalArgumentException("A store and a signer cannot be used together.");
+      }
+      return new CaptchaServer(this);
+    }
+
+    /**
+     * Sets the address to listen on. Defaults to all interfaces.
+     *
+     * @param host the host name or address
+     * @return the builder instance
+     */
+    public Builder host(String host) {
+      this.host = Objects.requireNonNull(host, "host");
+      return this;
+    }
+
+    /**
+     * Sets the port to listen on, or 0 for an ephemeral port. Defaults to 8080.
+     *
+     * @param port the port
+     * @return the builder instance
+     * @throws IllegalArgumentException if the port is outside 0 to 65535
+     */
+    public Builder port(int port) {
+      if (port < 0 || port > 65535) {
+        throw new IllegalArgumentException("The port must be between 0 and 65535.");
+      }
+      this.port = port;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of connections waiting to be accepted.
+     *
+     * @param backlog the socket backlog
+     * @return the builder instance
+     * @throws IllegalArgumentException if the backlog is smaller than 1
+     */
+    public Builder backlog(int backlog) {
+      if (backlog < 1) {
+        throw new IllegalArgumentException("The backlog cannot be smaller than 1.");
+      }
+      this.backlog = backlog;
+      return this;
+    }
+
+    /**
+     * Sets the number of requests handled at once. Further requests are answered with {@code 503}
+     * and a {@code Retry-After} header.
+     *
+     * @param maxConcurrentRequests the concurrency limit
+     * @return the builder instance
+     * @throws IllegalArgumentException if the limit is smaller than 1
+     */
+    public Builder maxConcurrentRequests(int maxConcurrentRequests) {
+      if (maxConcurrentRequests < 1) {
+        throw new IllegalArgumentException(
+            "The number of concurrent requests cannot be smaller than 1.");
+      }
+      this.maxConcurrentRequests = maxConcurrentRequests;
+      return this;
+    }
+
+    /**
+     * Sets the number of ready-made CAPTCHAs kept in the pool. A refill starts when a quarter of
+     * them is left.
+     *
+     * @param poolSize the pool size
+     * @return the builder instance
+     * @throws IllegalArgumentException if the pool size is smaller than 1
+     */
+    public Builder poolSize(int poolSize) {
+      if (poolSize < 1) {
+        throw new IllegalArgumentException("The pool size cannot be smaller than 1.");
+      }
+      this.poolSize = poolSize;
+      return this;
+    }
+
+    /**
+     * Sets the encoder of the served images. Defaults to JPEG.
+     *
+     * @param encoder the image encoder
+     * @return the builder instance
+     */
+    public Builder encoder(CaptchaEncoder encoder) {
+      this.encoder = Objects.requireNonNull(encoder, "encoder");
+      return this;
+    }
+
+    /**
+     * Keeps the answers in the given store. By default a store with default settings is created.
+     *
+     * @param store the store
+     * @return the builder instance
+     */
+    public Builder store(CaptchaStore store) {
+      this.store = Objects.requireNonNull(store, "store");
+      return this;
+    }
+
+    /**
+     * Signs the answers into the CAPTCHA identifiers instead of keeping them in a store. The signer
+     * needs a replay filter, so that signed identifiers can be tried once, like stored ones.
+     *
+     * @param signer the signer
+     * @return the builder instance
+     * @throws IllegalArgumentException if the signer has no replay filter
+     */
+    public Builder signer(CaptchaSigner signer) {
+      if (!signer.isSingleUse()) {
+        throw new IllegalArgumentException("The signer needs a replay filter.");
+      }
+      this.signer = signer;
+      return this;
+    }
+  }
+}
@@ -0,0 +1,270 @@
+package com.fedmag.verysimplecaptcha.verification;
+
+import com.fedmag.verysimplecaptcha.Captcha;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.function.LongSupplier;
+import javax.crypto.Mac;
+
+/**
+ * The {@code CaptchaSigner} class issues stateless, signed envelopes for CAPTCHA answers.
+ *
+ * <p>An envelope carries a version, the ID of the signing key, an expiry time and a random nonce,
+ * followed by two HMAC-SHA256 tags truncated to 128 bits: one over those fields alone, which
+ * authenticates the envelope, and one over those fields and the answer. The answer itself is not in
+ * the envelope, and without the secret the tags reveal nothing about it. Any node holding the same
+ * {@link KeyRing} can therefore verify a response without a shared store. The envelope is 54
+ * bytes, or 72 URL-safe Base64 characters.
+ *
+ * <p>With a {@linkplain Builder#replayFilter(int) replay filter}, every authentic envelope is used
+ * up by its first verification on a node, whether the response is right or wrong, just as an ID of
+ * a {@link CaptchaStore}; envelopes replayed against another node are only stopped by the expiry.
+ * <strong>Without a replay filter an envelope verifies as often as it is presented until it
+ * expires</strong>, so a client can keep guessing the answer of one envelope and can replay a
+ * solved one; only go without a filter when the caller tracks used envelopes itself.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class CaptchaSigner {
+
+  private static final byte VERSION = 2;
+  private static final int NONCE_LENGTH = 12;
+  private static final int TAG_LENGTH = 16;
+  private static final int HEADER_LENGTH = 2 + Long.BYTES + NONCE_LENGTH;
+  private static final int ENVELOPE_LENGTH = HEADER_LENGTH + 2 * TAG_LENGTH;
+  // Domain separation between the two tags computed with the same key
+  private static final byte HEADER_TAG = 1;
+  private static final byte ANSWER_TAG = 2;
+  private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+  private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+  private final KeyRing keyRing;
+  private final long ttlSeconds;
+  private final long clockSkewSeconds;
+  private final LongSupplier clock;
+  private final ReplayFilter replayFilter;
+  private final SecureRandom random = new SecureRandom();
+
+  private CaptchaSigner(Builder builder) {
+    this.keyRing = builder.keyRing;
+    this.ttlSeconds = Math.max(1, builder.ttl.getSeconds());
+    this.clockSkewSeconds = builder.clockSkew.getSeconds();
+    this.clock = builder.clock;
+    this.replayFilter =
+        builder.replayFilterSize > 0
+            ? new ReplayFilter(
+                (int) (ttlSeconds + clockSkewSeconds), builder.replayFilterSize, nowSeconds())
+            : null;
+  }
+
+  /**
+   * Signs the token of the given CAPTCHA.
+   *
+   * @param captcha the CAPTCHA
+   * @return the envelope, as URL-safe Base64 without padding
+   */
+  public String sign(Captcha captcha) {
+    return sign(captcha.getToken());
+  }
+
+  /**
+   * Signs the given answer.
+   *
+   * @param answer the expected answer
+   * @return the envelope, as URL-safe Base64 without padding
+   */
+  public String sign(String answer) {
+    Objects.requireNonNull(answer, "answer");
+    KeyRing.Key key = keyRing.current();
+    byte[] envelope = new byte[ENVELOPE_LENGTH];
+    byte[] nonce = new byte[NONCE_LENGTH];
+    random.nextBytes(nonce);
+    ByteBuffer.wrap(envelope)
+        .put(VERSION)
+        .put((byte) key.id())
+        .putLong(nowSeconds() + ttlSeconds)
+        .put(nonce);
+    System.arraycopy(headerTag(key, envelope), 0, envelope, HEADER_LENGTH, TAG_LENGTH);
+    System.arraycopy(
+        answerTag(key, envelope, answer), 0, envelope, HEADER_LENGTH + TAG_LENGTH, TAG_LENGTH);
+    return ENCODER.encodeToString(envelope);
+  }
+
+  /**
+   * Verifies a response against an envelope.
+   *
+   * @param envelope the envelope returned by {@link #sign(String)}
+   * @param response the response to check
+   * @return {@code true} if the envelope is authentic, not expired, not used before on this node
+   *     and the response matches the signed answer
+   */
+  public boolean verify(String envelope, String response) {
+    if (envelope == null || response == null) {
+      return false;
+    }
+    byte[] bytes;
+    try {
+      bytes = DECODER.decode(envelope);
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+    if (bytes.length != ENVELOPE_LENGTH || bytes[0] != VERSION) {
+      return false;
+    }
+    KeyRing.Key key = keyRing.find(bytes[1] & 0xff);
+    if (key == null) {
+      return false;
+    }
+    long expiresAt = ByteBuffer.wrap(bytes, 2, Long.BYTES).getLong();
+    long now = nowSeconds();
+    if (expiresAt <= now || expiresAt > now + ttlSeconds + clockSkewSeconds) {
+      return false;
+    }
+    byte[] headerTag = Arrays.copyOfRange(bytes, HEADER_LENGTH, HEADER_LENGTH + TAG_LENGTH);
+    if (!MessageDigest.isEqual(headerTag(key, bytes), headerTag)) {
+      return false;
+    }
+    // The envelope is authentic: it is used up before the answer is compared, right or wrong
+    if (replayFilter != null
+        && !replayFilter.firstUse(
+            ENCODER.encodeToString(Arrays.copyOfRange(bytes, 2 + Long.BYTES, HEADER_LENGTH)),
+            expiresAt,
+            now)) {
+      return false;
+    }
+    return MessageDigest.isEqual(
+        answerTag(key, bytes, response),
+        Arrays.copyOfRange(bytes, HEADER_LENGTH + TAG_LENGTH, ENVELOPE_LENGTH));
+  }
+
+  /**
+   * Returns whether this signer has a replay filter, so that each envelope is checked once on this
+   * node.
+   *
+   * @return {@code true} if envelopes are used up by their first verification
+   */
+  public boolean isSingleUse() {
+    return replayFilter != null;
+  }
+
+  /**
+   * Returns the key ring signing the envelopes.
+   *
+   * @return the key ring
+   */
+  public KeyRing getKeyRing() {
+    return keyRing;
+  }
+
+  private static byte[] headerTag(KeyRing.Key key, byte[] envelope) {
+    Mac mac = key.mac();
+    mac.update(HEADER_TAG);
+    mac.update(envelope, 0, HEADER_LENGTH);
+    return Arrays.copyOf(mac.doFinal(), TAG_LENGTH);
+  }
+
+  private static byte[] answerTag(KeyRing.Key key, byte[] envelope, String answer) {
+    Mac mac = key.mac();
+    mac.update(ANSWER_TAG);
+    mac.update(envelope, 0, HEADER_LENGTH);
+    mac.update(answer.getBytes(StandardCharsets.UTF_8));
+    return Arrays.copyOf(mac.doFinal(), TAG_LENGTH);
+  }
+
+  private long nowSeconds() {
+    return Math.floorDiv(clock.getAsLong(), 1000L);
+  }
+
+  /** The {@code Builder} class is used to build {@code CaptchaSigner} instances. */
+  public static final class Builder {
+
+    private final KeyRing keyRing;
+    private Duration ttl = Duration.ofMinutes(5);
+    private Duration clockSkew = Duration.ofSeconds(30);
+    private int replayFilterSize;
+    private LongSupplier clock = System::currentTimeMillis;
+
+    /**
+     * Constructs a {@code Builder} signing with the given key ring.
+     *
+     * @param keyRing the key ring
+     */
+    public Builder(KeyRing keyRing) {
+      this.keyRing = Objects.requireNonNull(keyRing, "keyRing");
+    }
+
+    /**
+     * Builds and returns a {@code CaptchaSigner}.
+     *
+     * @return a new {@code CaptchaSigner}
+     */
+    public CaptchaSigner build() {
+      return new CaptchaSigner(this);
+    }
+
+    /**
+     * Sets how long an envelope stays valid. The expiry has a resolution of one second.
+     *
+     * @param ttl the time-to-live
+     * @return the builder instance
+     * @throws IllegalArgumentException if the time-to-live is shorter than one second
+     */
+    public Builder ttl(Duration ttl) {
+      if (ttl.getSeconds() < 1) {
+        throw new IllegalArgumentException("The time-to-live cannot be shorter than 1 second.");
+      }
+      this.ttl = ttl;
+      return this;
+    }
+
+    /**
+     * Sets how far ahead the clocks of other nodes may run. Envelopes expiring later than the
+     * time-to-live plus this skew are rejected.
+     *
+     * @param clockSkew the tolerated clock skew
+     * @return the builder instance
+     * @throws IllegalArgumentException if the skew is negative
+     */
+    public Builder clockSkew(Duration clockSkew) {
+      if (clockSkew.isNegative()) {
+        throw new IllegalArgumentException("The clock skew cannot be negative.");
+      }
+      this.clockSkew = clockSkew;
+      return this;
+    }
+
+    /**
+     * Enables a local replay filter remembering up to the given number of used envelopes. Each
+     * authentic envelope then verifies once on this node, and a wrong response uses it up too.
+     * Without a filter an envelope can be tried any number of times until it expires.
+     *
+     * @param maximumSize the maximum number of remembered envelopes, or 0 to disable the filter
+     * @return the builder instance
+     * @throws IllegalArgumentException if the size is negative
+     */
+    public Builder replayFilter(int maximumSize) {
+      if (maximumSize < 0) {
+        throw new IllegalArgumentException("The replay filter size cannot be negative.");
+      }
+      this.replayFilterSize = maximumSize;
+      return this;
+    }
+
+    /**
+     * Sets the clock, in epoch milliseconds, used for expiry. Meant for tests.
+     *
+     * @param clock the clock
+     * @return the builder instance
+     */
+    public Builder clock(LongSupplier clock) {
+      this.clock = Objects.requireNonNull(clock, "clock");
+      return this;
+    }
+  }
+}
@@ -0,0 +1,249 @@
+package com.fedmag.verysimplecaptcha.verification;
+
+import com.fedmag.verysimplecaptcha.Captcha;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * The {@code CaptchaStore} class keeps the answers of issued CAPTCHAs until they are verified or
+ * expire.
+ *
+ * <p>{@link #issue(String)} stores an answer under a random, URL-safe ID; {@link #verify(String,
+ * String)} checks a response against it exactly once, comparing in constant time. Every answer
+ * lives for the same time-to-live, and expiry is driven by a {@link TimingWheel} advanced by the
+ * store operations themselves, so no background thread is needed and expiring an entry is O(1). A
+ * verified entry also leaves the wheel at once, so the wheel never holds more IDs than the store.
+ *
+ * <p>The store only locks where its {@code ConcurrentHashMap} locks a single bin to update it, or
+ * where the wheel locks the bucket of one tick, and it never holds more than the configured maximum
+ * number of entries. An entry costs roughly 200 bytes of heap for a 5 to 10 character answer, so
+ * one million outstanding CAPTCHAs fit in about 200 MB.
+ */
+public final class CaptchaStore {
+
+  private static final int ID_BYTES = 16;
+  private static final Base64.Encoder ID_ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+  private final ConcurrentHashMap<String, Entry> entries;
+  private final TimingWheel<String> wheel;
+  private final AtomicInteger size = new AtomicInteger();
+  private final SecureRandom random = new SecureRandom();
+  private final LongSupplier clock;
+  private final long tickNanos;
+  private final long ttlTicks;
+  private final int maximumSize;
+
+  private CaptchaStore(Builder builder) {
+    this.clock = builder.clock;
+    this.tickNanos = builder.tick.toNanos();
+    this.ttlTicks = Math.max(1, ceilDiv(builder.ttl.toNanos(), tickNanos));
+    this.maximumSize = builder.maximumSize;
+    this.entries = new ConcurrentHashMap<>(Math.min(maximumSize, 1 << 16));
+    this.wheel = new TimingWheel<>((int) ttlTicks, currentTick());
+  }
+
+  private static long ceilDiv(long dividend, long divisor) {
+    return -Math.floorDiv(-dividend, divisor);
+  }
+
+  /**
+   * Stores the token of the given CAPTCHA.
+   *
+   * @param captcha the CAPTCHA
+   * @return the ID to verify the response with
+   * @throws IllegalStateException if the store is full
+   */
+  public String issue(Captcha captcha) {
+    return issue(captcha.getToken());
+  }
+
+  /**
+   * Stores the given answer.
+   *
+   * @param answer the expected answer
+   * @return the ID to verify the response with
+   * @throws IllegalStateException if the store is full
+   */
+  public String issue(String answer) {
+    Objects.requireNonNull(answer, "answer");
+    long now = currentTick();
+    expire(now);
+    if (size.incrementAndGet() > maximumSize) {
+      size.decrementAndGet();
+      throw new IllegalStateException("The captcha store is full.");
+    }
+    Entry entry = new Entry(answer.getBytes(StandardCharsets.UTF_8), now + ttlTicks);
+    String id;
+    do {
+      id = newId();
+    } while (entries.putIfAbsent(id, entry) != null);
+    entry.timeout = wheel.schedule(id, entry.expiresAt);
+    return id;
+  }
+
+  /**
+   * Verifies a response. The entry is removed whatever the outcome, so every ID can be verified
+   * only once.
+   *
+   * @param id the ID returned by {@link #issue(String)}
+   * @param response the response to check
+   * @return {@code true} if the ID is known, not expired and the response matches the answer
+   */
+  public boolean verify(String id, String response) {
+    if (id == null || response == null) {
+      return false;
+    }
+    long now = currentTick();
+    expire(now);
+    Entry entry = entries.remove(id);
+    if (entry == null) {
+      return false;
+    }
+    size.decrementAndGet();
+    TimingWheel.Timeout<String> timeout = entry.timeout;
+    if (timeout != null) {
+      wheel.cancel(timeout);
+    }
+    return entry.expiresAt > now
+        && MessageDigest.isEqual(entry.answer, response.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Returns the number of entries currently held, including expired entries not yet removed.
+   *
+   * @return the number of entries
+   */
+  public int size() {
+    return size.get();
+  }
+
+  /** Returns the number of IDs waiting in the expiry wheel, which verified IDs leave at once. */
+  int scheduledCount() {
+    return wheel.size();
+  }
+
+  /** Removes every expired entry. Store operations already do this as they go. */
+  public void cleanUp() {
+    expire(currentTick());
+  }
+
+  private void expire(long now) {
+    wheel.advance(
+        now,
+        id -> {
+          Entry entry = entries.get(id);
+          if (entry != null && entry.expiresAt <= now && entries.remove(id, entry)) {
+            size.decrementAndGet();
+            return true;
+          }
+          return false;
+        });
+  }
+
+  private long currentTick() {
+    return Math.floorDiv(clock.getAsLong(), tickNanos);
+  }
+
+  private String newId() {
+    byte[] bytes = new byte[ID_BYTES];
+    random.nextBytes(bytes);
+    return ID_ENCODER.encodeToString(bytes);
+  }
+
+  /** An expected answer, the tick it expires at and its place in the expiry wheel. */
+  private static final class Entry {
+
+    private final byte[] answer;
+    private final long expiresAt;
+    private volatile TimingWheel.Timeout<String> timeout;
+
+    private Entry(byte[] answer, long expiresAt) {
+      this.answer = answer;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  /** The {@code Builder} class is used to build {@code CaptchaStore} instances. */
+  public static final class Builder {
+
+    private Duration ttl = Duration.ofMinutes(5);
+    private Duration tick = Duration.ofSeconds(1);
+    private int maximumSize = 1_000_000;
+    private LongSupplier clock = System::nanoTime;
+
+    /**
+     * Builds and returns a {@code CaptchaStore}.
+     *
+     * @return a new {@code CaptchaStore}
+     * @throws IllegalArgumentException if the time-to-live is shorter than the tick
+     */
+    public CaptchaStore build() {
+      if (ttl.compareTo(tick) < 0) {
+        throw new IllegalArgumentException("The time-to-live cannot be shorter than the tick.");
+      }
+      return new CaptchaStore(this);
+    }
+
+    /**
+     * Sets how long an issued answer can be verified.
+     *
+     * @param ttl the time-to-live
+     * @return the builder instance
+     */
+    public Builder ttl(Duration ttl) {
+      this.ttl = requirePositive(ttl, "time-to-live");
+      return this;
+    }
+
+    /**
+     * Sets the expiry resolution. Entries expire up to one tick late.
+     *
+     * @param tick the tick duration
+     * @return the builder instance
+     */
+    public Builder tick(Duration tick) {
+      this.tick = requirePositive(tick, "tick");
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of outstanding answers.
+     *
+     * @param maximumSize the maximum size
+     * @return the builder instance
+     * @throws IllegalArgumentException if the maximum size is smaller than 1
+     */
+    public Builder maximumSize(int maximumSize) {
+      if (maximumSize < 1) {
+        throw new IllegalArgumentException("The maximum size cannot be smaller than 1.");
+      }
+      this.maximumSize = maximumSize;
+      return this;
+    }
+
+    /**
+     * Sets the clock, in nanoseconds, used to expire entries. Meant for tests.
+     *
+     * @param clock the clock
+     * @return the builder instance
+     */
+    public Builder clock(LongSupplier clock) {
+      this.clock = Objects.requireNonNull(clock, "clock");
+      return this;
+    }
+
+    private static Duration requirePositive(Duration duration, String name) {
+      if (duration.isZero() || duration.isNegative()) {
+        throw new IllegalArgumentException("The " + name + " must be positive.");
+      }
+      return duration;
+    }
+  }
+}
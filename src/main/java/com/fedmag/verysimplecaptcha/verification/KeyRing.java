@@ -0,0 +1,140 @@
+package com.fedmag.verysimplecaptcha.verification;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The {@code KeyRing} class holds the rotating HMAC secrets used by a {@link CaptchaSigner}.
+ *
+ * <p>New envelopes are always signed with the current key, and envelopes signed with any of the
+ * retained previous keys still verify, so rotating a key does not invalidate the CAPTCHAs already
+ * handed out. Every key has a one-byte ID carried in the envelope. Nodes sharing a deployment must
+ * add the same secrets in the same order so their IDs agree.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class KeyRing {
+
+  /** The HMAC algorithm used to sign envelopes. */
+  static final String ALGORITHM = "HmacSHA256";
+
+  private static final int MINIMUM_SECRET_LENGTH = 16;
+  private static final int GENERATED_SECRET_LENGTH = 32;
+
+  private final int retained;
+  private volatile Key[] keys;
+
+  /**
+   * Constructs a {@code KeyRing} with the given initial secret.
+   *
+   * @param secret the secret, at least 16 bytes long
+   * @param retained the number of previous keys that still verify after a rotation
+   * @throws IllegalArgumentException if the secret is too short or {@code retained} is negative
+   */
+  public KeyRing(byte[] secret, int retained) {
+    if (retained < 0) {
+      throw new IllegalArgumentException("The number of retained keys cannot be negative.");
+    }
+    this.retained = retained;
+    this.keys = new Key[] {new Key(0, secret)};
+  }
+
+  /**
+   * Constructs a {@code KeyRing} with a random secret, suitable for a single node, that retains
+   * one previous key.
+   *
+   * @return a new {@code KeyRing}
+   */
+  public static KeyRing random() {
+    byte[] secret = new byte[GENERATED_SECRET_LENGTH];
+    new SecureRandom().nextBytes(secret);
+    return new KeyRing(secret, 1);
+  }
+
+  /**
+   * Makes the given secret the current key. The oldest key is dropped once more than the retained
+   * number of previous keys are held.
+   *
+   * @param secret the new secret, at least 16 bytes long
+   * @return the ID of the new key
+   * @throws IllegalArgumentException if the secret is too short
+   */
+  public synchronized int rotate(byte[] secret) {
+    Key[] current = keys;
+    int id = (current[0].id + 1) & 0xff;
+    Key[] next = new Key[Math.min(current.length + 1, retained + 1)];
+    next[0] = new Key(id, secret);
+    System.arraycopy(current, 0, next, 1, next.length - 1);
+    keys = next;
+    return id;
+  }
+
+  /**
+   * Returns the ID of the current key.
+   *
+   * @return the key ID, between 0 and 255
+   */
+  public int currentKeyId() {
+    return keys[0].id;
+  }
+
+  /** Returns the key used to sign new envelopes. */
+  Key current() {
+    return keys[0];
+  }
+
+  /** Returns the key with the given ID, or {@code null} if it is unknown or was dropped. */
+  Key find(int id) {
+    for (Key key : keys) {
+      if (key.id == id) {
+        return key;
+      }
+    }
+    return null;
+  }
+
+  /** A secret and its ID, with one initialized {@code Mac} per thread. */
+  static final class Key {
+
+    private final int id;
+    private final ThreadLocal<Mac> mac;
+
+    private Key(int id, byte[] secret) {
+      if (secret.length < MINIMUM_SECRET_LENGTH) {
+        throw new IllegalArgumentException(
+            "The secret must be at least " + MINIMUM_SECRET_LENGTH + " bytes long.");
+      }
+      SecretKeySpec spec = new SecretKeySpec(Arrays.copyOf(secret, secret.length), ALGORITHM);
+      this.id = id;
+      this.mac = ThreadLocal.withInitial(() -> newMac(spec));
+      newMac(spec);
+    }
+
+    private static Mac newMac(SecretKeySpec spec) {
+      try {
+        Mac mac = Mac.getInstance(ALGORITHM);
+        mac.init(spec);
+        return mac;
+      } catch (InvalidKeyException e) {
+        throw new IllegalArgumentException("Invalid secret.", e);
+      } catch (GeneralSecurityException e) {
+        throw new IllegalStateException(ALGORITHM + " is not available.", e);
+      }
+    }
+
+    int id() {
+      return id;
+    }
+
+    /** Returns this thread's {@code Mac}, reset and ready for new input. */
+    Mac mac() {
+      Mac instance = mac.get();
+      instance.reset();
+      return instance;
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package com.fedmag.verysimplecaptcha.verification;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code ReplayFilter} class remembers the nonces of used envelopes until they expire, so that
+ * an envelope is checked at most once on this node.
+ *
+ * <p>Nonces are expired by a {@link TimingWheel} with a one-second tick. When the filter is full it
+ * refuses new nonces, so a flood of valid envelopes makes verification fail rather than letting
+ * replays through.
+ */
+final class ReplayFilter {
+
+  private final ConcurrentHashMap<String, Long> nonces = new ConcurrentHashMap<>();
+  private final TimingWheel<String> wheel;
+  private final AtomicInteger size = new AtomicInteger();
+  private final int span;
+  private final int maximumSize;
+
+  /**
+   * Constructs a {@code ReplayFilter}.
+   *
+   * @param span the longest time a nonce is remembered, in seconds
+   * @param maximumSize the maximum number of nonces remembered
+   * @param now the current time, in epoch seconds
+   */
+  ReplayFilter(int span, int maximumSize, long now) {
+    this.span = span;
+    this.maximumSize = maximumSize;
+    this.wheel = new TimingWheel<>(span, now);
+  }
+
+  /**
+   * Records a nonce.
+   *
+   * @param nonce the nonce
+   * @param expiresAt when the envelope carrying it expires, in epoch seconds
+   * @param now the current time, in epoch seconds
+   * @return {@code true} if the nonce was not seen before and could be recorded
+   */
+  boolean firstUse(String nonce, long expiresAt, long now) {
+    wheel.advance(
+        now,
+        key -> {
+          Long expiry = nonces.get(key);
+          if (expiry != null && expiry <= now && nonces.remove(key, expiry)) {
+            size.decrementAndGet();
+            return true;
+          }
+          return false;
+        });
+    if (size.incrementAndGet() > maximumSize) {
+      size.decrementAndGet();
+      return false;
+    }
+    // Envelopes from nodes with a clock ahead of ours may expire beyond the span of the wheel
+    Long expiry = Math.max(now + 1, Math.min(expiresAt, now + span));
+    if (nonces.putIfAbsent(nonce, expiry) != null) {
+      size.decrementAndGet();
+      return false;
+    }
+    wheel.schedule(nonce, expiry);
+    return true;
+  }
+
+  int size() {
+    return size.get();
+  }
+}
@@ -0,0 +1,211 @@
+package com.fedmag.verysimplecaptcha.verification;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * The {@code TimingWheel} class schedules keys for expiry in one bucket per tick, so that
+ * scheduling a key, cancelling it and expiring it all cost O(1).
+ *
+ * <p>Each bucket is a doubly-linked list guarded by its own lock, so a key removed before it
+ * expires is unlinked at once with {@link #cancel(Timeout)} instead of lingering until its tick.
+ * The wheel does not own a thread: callers move it forward with {@link #advance(long, Predicate)}.
+ * Each elapsed tick is claimed by exactly one caller through a compare-and-set, so concurrent
+ * callers never drain the same bucket twice.
+ *
+ * @param <K> the key type
+ */
+final class TimingWheel<K> {
+
+  private final Bucket<K>[] buckets;
+  private final AtomicLong cursor;
+  private final AtomicInteger size = new AtomicInteger();
+
+  /**
+   * Constructs a {@code TimingWheel} able to hold keys up to {@code span} ticks in the future.
+   *
+   * @param span the maximum distance in ticks between the current tick and an expiry
+   * @param startTick the current tick
+   */
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  TimingWheel(int span, long startTick) {
+    this.buckets = new Bucket[span + 1];
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new Bucket<>();
+    }
+    this.cursor = new AtomicLong(startTick);
+  }
+
+  /**
+   * Schedules a key to expire at the given tick.
+   *
+   * @param key the key
+   * @param tick the expiry tick
+   * @return the handle cancelling the expiry
+   */
+  Timeout<K> schedule(K key, long tick) {
+    Timeout<K> timeout = new Timeout<>(key, tick);
+    size.incrementAndGet();
+    if (!buckets[bucketOf(tick)].add(timeout)) {
+      size.decrementAndGet();
+    }
+    return timeout;
+  }
+
+  /**
+   * Removes a scheduled key from the wheel, so that it is never handed to {@code expire}.
+   * Cancelling a key that already expired or was cancelled does nothing.
+   *
+   * @param timeout the handle returned by {@link #schedule(Object, long)}
+   */
+  void cancel(Timeout<K> timeout) {
+    if (buckets[bucketOf(timeout.tick)].remove(timeout)) {
+      size.decrementAndGet();
+    }
+  }
+
+  /**
+   * Returns the number of keys scheduled and neither expired nor cancelled.
+   *
+   * @return the number of scheduled keys
+   */
+  int size() {
+    return size.get();
+  }
+
+  /**
+   * Moves the wheel forward to the given tick and hands every key expired by then to {@code
+   * expire}. Keys whose expiry lies further ahead, because they were scheduled while another
+   * caller was catching up, are put back.
+   *
+   * @param now the current tick
+   * @param expire receives the expired keys; returns whether the key was still live
+   * @return the number of keys for which {@code expire} returned {@code true}
+   */
+  int advance(long now, Predicate<K> expire) {
+    int expired = 0;
+    long current = cursor.get();
+    while (current < now) {
+      long next = now - current > buckets.length ? now : current + 1;
+      if (!cursor.compareAndSet(current, next)) {
+        current = cursor.get();
+        continue;
+      }
+      if (next == now && now - current > buckets.length) {
+        // Idle for longer than a full turn: every bucket is due
+        for (Bucket<K> bucket : buckets) {
+          expired += drain(bucket, now, expire);
+        }
+      } else {
+        expired += drain(buckets[bucketOf(next)], next, expire);
+      }
+      current = next;
+    }
+    return expired;
+  }
+
+  private int drain(Bucket<K> bucket, long tick, Predicate<K> expire) {
+    int expired = 0;
+    Timeout<K> later = null;
+    Timeout<K> timeout;
+    while ((timeout = bucket.poll()) != null) {
+      if (timeout.tick > tick) {
+        // Put back once the bucket is drained, or it would be polled again
+        timeout.next = later;
+        later = timeout;
+      } else {
+        size.decrementAndGet();
+        if (expire.test(timeout.key)) {
+          expired++;
+        }
+      }
+    }
+    while (later != null) {
+      Timeout<K> next = later.next;
+      if (!bucket.add(later)) {
+        size.decrementAndGet();
+      }
+      later = next;
+    }
+    return expired;
+  }
+
+  private int bucketOf(long tick) {
+    return (int) Math.floorMod(tick, (long) buckets.length);
+  }
+
+  /** A scheduled key, linked into the bucket of its tick. */
+  static final class Timeout<K> {
+
+    private final K key;
+    private final long tick;
+    // Guarded by the lock of the bucket of the tick
+    private Timeout<K> previous;
+    private Timeout<K> next;
+    private boolean linked;
+    private boolean cancelled;
+
+    private Timeout(K key, long tick) {
+      this.key = key;
+      this.tick = tick;
+    }
+  }
+
+  /** A doubly-linked list of timeouts with its own lock. */
+  private static final class Bucket<K> {
+
+    private Timeout<K> head;
+
+    /** Links a timeout, unless it was cancelled while out of the bucket. */
+    private synchronized boolean add(Timeout<K> timeout) {
+      if (timeout.cancelled) {
+        return false;
+      }
+      timeout.previous = null;
+      timeout.next = head;
+      if (head != null) {
+        head.previous = timeout;
+      }
+      head = timeout;
+      timeout.linked = true;
+      return true;
+    }
+
+    /** Cancels a timeout, returning whether it was in the bucket. */
+    private synchronized boolean remove(Timeout<K> timeout) {
+      timeout.cancelled = true;
+      if (!timeout.linked) {
+        return false;
+      }
+      if (timeout.previous == null) {
+        head = timeout.next;
+      } else {
+        timeout.previous.next = timeout.next;
+      }
+      if (timeout.next != null) {
+        timeout.next.previous = timeout.previous;
+      }
+      unlink(timeout);
+      return true;
+    }
+
+    private synchronized Timeout<K> poll() {
+      Timeout<K> timeout = head;
+      if (timeout != null) {
+        head = timeout.next;
+        if (head != null) {
+          head.previous = null;
+        }
+        unlink(timeout);
+      }
+      return timeout;
+    }
+
+    private static <K> void unlink(Timeout<K> timeout) {
+      timeout.previous = null;
+      timeout.next = null;
+      timeout.linked = false;
+    }
+  }
+}
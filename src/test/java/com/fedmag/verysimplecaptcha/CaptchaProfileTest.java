@@ -0,0 +1,137 @@
+package com.fedmag.verysimplecaptcha;
+
+import com.fedmag.verysimplecaptcha.encoding.CaptchaEncoders;
+import com.fedmag.verysimplecaptcha.generators.filters.ColorJitterFilter;
+import com.fedmag.verysimplecaptcha.generators.filters.NoiseLinesFilter;
+import com.fedmag.verysimplecaptcha.generators.filters.SimpleGaussianFilter;
+import com.fedmag.verysimplecaptcha.generators.filters.SpeckleFilter;
+import com.fedmag.verysimplecaptcha.generators.filters.WaveFilter;
+import com.fedmag.verysimplecaptcha.pool.CaptchaPool;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class CaptchaProfileTest {
+
+  @Test
+  void profileIgnoresLaterBuilderChanges() {
+    // when
+    Captcha.Builder builder = new Captcha.Builder().numberOfChars(6).width(150).height(60);
+    CaptchaProfile profile = builder.compile();
+    // then
+    builder.numberOfChars(9).width(300);
+    Captcha captcha = profile.next();
+    // do
+    Assertions.assertEquals(6, captcha.getToken().length());
+    Assertions.assertEquals(150, captcha.getImage().getWidth());
+    Assertions.assertEquals(60, profile.getHeight());
+  }
+
+  @Test
+  void profileIsSharedAcrossThreads() {
+    // when
+    CaptchaProfile profile =
+        new Captcha.Builder()
+            .numberOfChars(8)
+            .rotate(true)
+            .addImageFilter(new SimpleGaussianFilter())
+            .compile();
+    Set<String> tokens = ConcurrentHashMap.newKeySet();
+    // then
+    IntStream.range(0, 64).parallel().forEach(i -> tokens.add(profile.next().getToken()));
+    // do
+    Assertions.assertEquals(64, tokens.size());
+    Assertions.assertEquals(1, profile.getRenderConfig().getFilters().size());
+  }
+
+  @Test
+  void poolGeneratesFromProfile() {
+    // when
+    CaptchaProfile profile = new Captcha.Builder().excludeLetters().compile();
+    try (CaptchaPool pool =
+        new CaptchaPool.Builder(profile).lowWatermark(0).highWatermark(3).build()) {
+      // then
+      pool.prefill();
+      // do
+      Assertions.assertEquals(3, pool.size());
+      Assertions.assertTrue(pool.poll().getToken().chars().allMatch(Character::isDigit));
+    }
+  }
+
+  @Test
+  void nextBatchKeepsRequestedSize() {
+    // when
+    CaptchaProfile profile = new Captcha.Builder().compile();
+    // then
+    List<Captcha> batch = profile.nextBatch(7, Runnable::run);
+    // do
+    Assertions.assertEquals(7, batch.size());
+  }
+
+  @Test
+  void sameSeedRebuildsTheSameCaptcha() {
+    // when
+    CaptchaProfile profile =
+        new Captcha.Builder()
+            .rotate(true)
+            .addImageFilter(new WaveFilter())
+            .addImageFilter(new NoiseLinesFilter())
+            .addImageFilter(new SpeckleFilter())
+            .addImageFilter(new ColorJitterFilter())
+            .compile();
+    CaptchaSeed seed = CaptchaSeed.of(0x0123456789abcdefL, 0xfedcba9876543210L);
+    // then
+    Captcha first = profile.next(seed);
+    Captcha second = profile.next(CaptchaSeed.parse(seed.toString()));
+    Captcha other = profile.next(CaptchaSeed.of(1, 2));
+    // do
+    Assertions.assertEquals(first.getToken(), second.getToken());
+    Assertions.assertEquals(
+        first.getCacheKey(CaptchaEncoders.png()), second.getCacheKey(CaptchaEncoders.png()));
+    Assertions.assertNotEquals(
+        first.getCacheKey(CaptchaEncoders.png()), other.getCacheKey(CaptchaEncoders.png()));
+    Assertions.assertTrue(samePixels(first.getImage(), second.getImage()));
+    Assertions.assertFalse(samePixels(first.getImage(), other.getImage()));
+  }
+
+  @Test
+  void cacheKeyDoesNotRevealTheSeed() {
+    // when
+    CaptchaSeed seed = CaptchaSeed.of(0x0123456789abcdefL, 0xfedcba9876543210L);
+    // then
+    String key = new Captcha.Builder().compile().next(seed).getCacheKey(CaptchaEncoders.png());
+    // do
+    Assertions.assertEquals(2 * CaptchaSeed.BYTES + ".png".length(), key.length());
+    Assertions.assertTrue(key.endsWith(".png"));
+    Assertions.assertFalse(key.contains(seed.toString().substring(0, 8)));
+  }
+
+  @Test
+  void reRenderedImageMatchesTheFirstRender() throws IOException {
+    // when
+    Captcha captcha =
+        new Captcha.Builder().rotate(true).addImageFilter(new SpeckleFilter()).build();
+    BufferedImage first = captcha.getImage();
+    // then
+    captcha.writeTo(OutputStream.nullOutputStream(), CaptchaEncoders.png());
+    BufferedImage second = captcha.getImage();
+    // do
+    Assertions.assertNotSame(first, second);
+    Assertions.assertTrue(samePixels(first, second));
+  }
+
+  private static boolean samePixels(BufferedImage a, BufferedImage b) {
+    int width = a.getWidth();
+    int height = a.getHeight();
+    return Arrays.equals(
+        a.getRGB(0, 0, width, height, null, 0, width),
+        b.getRGB(0, 0, width, height, null, 0, width));
+  }
+}
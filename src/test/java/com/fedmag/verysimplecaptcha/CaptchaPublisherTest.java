@@ -0,0 +1,134 @@
+package com.fedmag.verysimplecaptcha;
+
+import com.fedmag.verysimplecaptcha.encoding.CaptchaEncoders;
+import com.fedmag.verysimplecaptcha.metrics.CaptchaMetrics;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class CaptchaPublisherTest {
+
+  @Test
+  void generatesOnlyWhatIsRequested() throws InterruptedException {
+    // when
+    AtomicInteger tokens = new AtomicInteger();
+    CaptchaPublisher publisher =
+        new CaptchaPublisher.Builder(new Captcha.Builder().metrics(countingTokens(tokens)))
+            .encoder(CaptchaEncoders.png())
+            .build();
+    RecordingSubscriber subscriber = new RecordingSubscriber(3);
+    // then
+    publisher.subscribe(subscriber);
+    subscriber.subscription.request(3);
+    Assertions.assertTrue(subscriber.received.await(10, TimeUnit.SECONDS));
+    Thread.sleep(100);
+    // do
+    Assertions.assertEquals(3, subscriber.items.size());
+    Assertions.assertEquals(3, tokens.get());
+    Assertions.assertTrue(subscriber.errors.isEmpty());
+  }
+
+  @Test
+  void cancellationStopsTheStream() throws InterruptedException {
+    // when
+    CaptchaPublisher publisher =
+        new CaptchaPublisher.Builder(new Captcha.Builder()).parallelism(2).build();
+    RecordingSubscriber subscriber = new RecordingSubscriber(5);
+    // then
+    publisher.subscribe(subscriber);
+    subscriber.subscription.request(Long.MAX_VALUE);
+    Assertions.assertTrue(subscriber.received.await(10, TimeUnit.SECONDS));
+    Thread.sleep(100);
+    // do
+    Assertions.assertEquals(5, subscriber.items.size());
+    Assertions.assertTrue(subscriber.errors.isEmpty());
+  }
+
+  @Test
+  void missedDeadlineEndsTheStream() throws InterruptedException {
+    // when
+    List<Runnable> neverRun = new CopyOnWriteArrayList<>();
+    CaptchaPublisher publisher =
+        new CaptchaPublisher.Builder(new Captcha.Builder())
+            .executor(neverRun::add)
+            .deadline(Duration.ofMillis(20))
+            .build();
+    RecordingSubscriber subscriber = new RecordingSubscriber(1);
+    // then
+    publisher.subscribe(subscriber);
+    subscriber.subscription.request(1);
+    Assertions.assertTrue(subscriber.failed.await(10, TimeUnit.SECONDS));
+    neverRun.forEach(Runnable::run);
+    // do
+    Assertions.assertInstanceOf(TimeoutException.class, subscriber.errors.get(0));
+    Assertions.assertTrue(subscriber.items.isEmpty());
+  }
+
+  @Test
+  void nonPositiveRequestIsAnError() throws InterruptedException {
+    // when
+    CaptchaPublisher publisher = new CaptchaPublisher.Builder(new Captcha.Builder()).build();
+    RecordingSubscriber subscriber = new RecordingSubscriber(1);
+    // then
+    publisher.subscribe(subscriber);
+    subscriber.subscription.request(0);
+    // do
+    Assertions.assertTrue(subscriber.failed.await(10, TimeUnit.SECONDS));
+    Assertions.assertInstanceOf(IllegalArgumentException.class, subscriber.errors.get(0));
+  }
+
+  private static CaptchaMetrics countingTokens(AtomicInteger tokens) {
+    return new CaptchaMetrics() {
+      @Override
+      public void onToken(int length, long nanos) {
+        tokens.incrementAndGet();
+      }
+    };
+  }
+
+  /** Records every signal, and cancels once the expected number of items has arrived. */
+  private static final class RecordingSubscriber implements Flow.Subscriber<Captcha> {
+
+    private final List<Captcha> items = new CopyOnWriteArrayList<>();
+    private final List<Throwable> errors = new CopyOnWriteArrayList<>();
+    private final CountDownLatch received;
+    private final CountDownLatch failed = new CountDownLatch(1);
+    private Flow.Subscription subscription;
+
+    private RecordingSubscriber(int expected) {
+      this.received = new CountDownLatch(expected);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public void onNext(Captcha item) {
+      items.add(item);
+      received.countDown();
+      if (received.getCount() == 0) {
+        subscription.cancel();
+      }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      errors.add(throwable);
+      failed.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+      Assertions.fail("The stream never completes.");
+    }
+  }
+}
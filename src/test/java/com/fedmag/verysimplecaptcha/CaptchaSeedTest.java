@@ -0,0 +1,45 @@
+package com.fedmag.verysimplecaptcha;
+
+import com.fedmag.verysimplecaptcha.generators.RandomStringGenerator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class CaptchaSeedTest {
+
+  @Test
+  void seedRoundTripsThroughBytesAndHex() {
+    // when
+    CaptchaSeed seed = CaptchaSeed.random(RandomStringGenerator.Source.SECURE);
+    // then
+    byte[] bytes = seed.toBytes();
+    String hex = seed.toString();
+    // do
+    Assertions.assertEquals(CaptchaSeed.BYTES, bytes.length);
+    Assertions.assertEquals(32, hex.length());
+    Assertions.assertEquals(seed, CaptchaSeed.fromBytes(bytes));
+    Assertions.assertEquals(seed, CaptchaSeed.parse(hex));
+    Assertions.assertEquals(
+        "00000000000000ff8000000000000001", CaptchaSeed.of(0xff, Long.MIN_VALUE + 1).toString());
+  }
+
+  @Test
+  void streamsAreReproducibleAndIndependent() {
+    // when
+    CaptchaSeed seed = CaptchaSeed.of(7, 42);
+    // then
+    long token = seed.generator(CaptchaSeed.TOKEN_STREAM).nextLong();
+    // do
+    Assertions.assertEquals(token, seed.generator(CaptchaSeed.TOKEN_STREAM).nextLong());
+    Assertions.assertNotEquals(token, seed.generator(CaptchaSeed.FILTER_STREAM).nextLong());
+    Assertions.assertNotEquals(token, CaptchaSeed.of(7, 43).generator(0).nextLong());
+  }
+
+  @Test
+  void malformedSeedsAreRejected() {
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> CaptchaSeed.fromBytes(new byte[8]));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> CaptchaSeed.parse("abc"));
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> CaptchaSeed.parse("x".repeat(32)));
+  }
+}
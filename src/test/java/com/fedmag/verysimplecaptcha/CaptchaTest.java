@@ -0,0 +1,234 @@
+package com.fedmag.verysimplecaptcha;
+
+import com.fedmag.verysimplecaptcha.encoding.CaptchaEncoders;
+import com.fedmag.verysimplecaptcha.encoding.JpegEncoder;
+import com.fedmag.verysimplecaptcha.generators.filters.NoiseLinesFilter;
+import com.fedmag.verysimplecaptcha.generators.filters.SpeckleFilter;
+import com.fedmag.verysimplecaptcha.metrics.CaptchaMetrics;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class CaptchaTest {
+
+  @Test
+  void writeToStreamsDecodableImage() throws IOException {
+    // when
+    Captcha captcha = new Captcha.Builder().build();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    // then
+    captcha.writeTo(out, ImageFormat.PNG);
+    // do
+    Assertions.assertEquals(
+        200, ImageIO.read(new ByteArrayInputStream(out.toByteArray())).getWidth());
+  }
+
+  @Test
+  void getImageAsBytesMatchesWriteTo() throws IOException {
+    // when
+    Captcha captcha = new Captcha.Builder().build();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    // then
+    captcha.writeTo(out, CaptchaEncoders.png());
+    byte[] bytes = captcha.getImageAsBytes(CaptchaEncoders.png());
+    // do
+    Assertions.assertArrayEquals(out.toByteArray(), bytes);
+    bytes[0] = 0;
+    Assertions.assertNotEquals(0, captcha.getImageAsBytes(CaptchaEncoders.png())[0]);
+  }
+
+  @Test
+  void writeBase64ToMatchesEncodedBytes() throws IOException {
+    // when
+    Captcha captcha = new Captcha.Builder().build();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StringWriter writer = new StringWriter();
+    // then
+    captcha.writeBase64To(out);
+    captcha.writeBase64To(writer);
+    // do
+    String expected = Base64.getEncoder().encodeToString(captcha.getImageAsBytes());
+    Assertions.assertEquals(expected, out.toString());
+    Assertions.assertEquals(expected, writer.toString());
+    Assertions.assertEquals(expected, captcha.getImageAsBase64EncododedString());
+  }
+
+  @Test
+  void writeBase64ToLeavesStreamOpen() throws IOException {
+    // when
+    Captcha captcha = new Captcha.Builder().build();
+    StringWriter writer = new StringWriter();
+    // then
+    captcha.writeBase64To(writer);
+    writer.write("-");
+    // do
+    Assertions.assertTrue(writer.toString().endsWith("-"));
+  }
+
+  @Test
+  void buildBatchReturnsIndependentCaptchas() {
+    // when
+    Captcha.Builder builder = new Captcha.Builder().numberOfChars(8).rotate(true);
+    // then
+    List<Captcha> batch = builder.buildBatch(20);
+    // do
+    Assertions.assertEquals(20, batch.size());
+    Assertions.assertEquals(20, batch.stream().map(Captcha::getToken).distinct().count());
+    Assertions.assertEquals(20, batch.stream().map(Captcha::getImage).distinct().count());
+    Assertions.assertTrue(builder.buildBatch(0).isEmpty());
+  }
+
+  @Test
+  void buildBatchOnExecutor() {
+    // when
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      // then
+      List<Captcha> batch = new Captcha.Builder().buildBatch(25, executor);
+      // do
+      Assertions.assertEquals(25, batch.size());
+      batch.forEach(captcha -> Assertions.assertEquals(5, captcha.getToken().length()));
+    } finally {
+      executor.shutdown();
+    }
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> new Captcha.Builder().buildBatch(-1));
+  }
+
+  @Test
+  void imageIsRenderedOnFirstUse() throws IOException {
+    // when
+    AtomicInteger renders = new AtomicInteger();
+    AtomicInteger encodes = new AtomicInteger();
+    CaptchaMetrics metrics =
+        new CaptchaMetrics() {
+          @Override
+          public void onRender(int width, int height, long nanos) {
+            renders.incrementAndGet();
+          }
+
+          @Override
+          public void onEncode(String encoder, long bytes, long nanos) {
+            encodes.incrementAndGet();
+          }
+        };
+    Captcha captcha = new Captcha.Builder().metrics(metrics).build();
+    Assertions.assertEquals(0, renders.get());
+    // then
+    byte[] first = captcha.getImageAsBytes();
+    byte[] second = captcha.getImageAsBytes();
+    captcha.getImageAsBase64EncododedString();
+    // do
+    Assertions.assertArrayEquals(first, second);
+    Assertions.assertEquals(1, renders.get());
+    Assertions.assertEquals(1, encodes.get());
+    Assertions.assertEquals(200, captcha.getImage().getWidth());
+    Assertions.assertEquals(2, renders.get());
+  }
+
+  @Test
+  void imageAfterWriteToMatchesTheEncodedPixels() throws IOException {
+    // when
+    Captcha captcha =
+        new Captcha.Builder()
+            .rotate(true)
+            .addImageFilter(new SpeckleFilter())
+            .addImageFilter(new NoiseLinesFilter())
+            .build();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    // then
+    captcha.writeTo(out, CaptchaEncoders.png());
+    BufferedImage image = captcha.getImage();
+    // do
+    BufferedImage encoded = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+    int width = image.getWidth();
+    int height = image.getHeight();
+    Assertions.assertArrayEquals(
+        encoded.getRGB(0, 0, width, height, null, 0, width),
+        image.getRGB(0, 0, width, height, null, 0, width));
+  }
+
+  @Test
+  void buildAsyncCompletesWithRenderedCaptcha() throws Exception {
+    // when
+    CompletableFuture<Captcha> future = new Captcha.Builder().buildAsync();
+    // then
+    Captcha captcha = future.get(10, TimeUnit.SECONDS);
+    // do
+    Assertions.assertEquals(200, captcha.getImage().getWidth());
+  }
+
+  @Test
+  void cancelledBuildAsyncSkipsGeneration() {
+    // when
+    AtomicInteger tokens = new AtomicInteger();
+    CaptchaMetrics metrics =
+        new CaptchaMetrics() {
+          @Override
+          public void onToken(int length, long nanos) {
+            tokens.incrementAndGet();
+          }
+        };
+    List<Runnable> queued = new ArrayList<>();
+    // then
+    CompletableFuture<Captcha> future =
+        new Captcha.Builder().metrics(metrics).buildAsync(queued::add, null);
+    future.cancel(false);
+    queued.forEach(Runnable::run);
+    CompletableFuture<Captcha> rejected =
+        new Captcha.Builder()
+            .buildAsync(
+                task -> {
+                  throw new RejectedExecutionException();
+                },
+                Duration.ofSeconds(1));
+    // do
+    Assertions.assertEquals(0, tokens.get());
+    Assertions.assertTrue(rejected.isCompletedExceptionally());
+  }
+
+  @Test
+  void compactColorCaptchaIsIndexed() throws IOException {
+    // when
+    Captcha captcha = new Captcha.Builder().compactColor(true).build();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    // then
+    captcha.writeTo(out, CaptchaEncoders.palettePng());
+    // do
+    Assertions.assertEquals(BufferedImage.TYPE_BYTE_INDEXED, captcha.getImage().getType());
+    Assertions.assertEquals(
+        200, ImageIO.read(new ByteArrayInputStream(out.toByteArray())).getWidth());
+  }
+
+  @Test
+  void encodingsWithOtherParametersAreNotShared() throws IOException {
+    // when
+    Captcha captcha = new Captcha.Builder().build();
+    byte[] defaultQuality = captcha.getImageAsBytes();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    // then
+    captcha.writeTo(out, new JpegEncoder(0.95f));
+    // do
+    Assertions.assertEquals("jpeg-q95", new JpegEncoder(0.95f).getName());
+    Assertions.assertEquals("jpeg", new JpegEncoder().getName());
+    Assertions.assertFalse(Arrays.equals(defaultQuality, out.toByteArray()));
+    Assertions.assertNotEquals(
+        captcha.getCacheKey(CaptchaEncoders.jpeg()), captcha.getCacheKey(new JpegEncoder(0.95f)));
+  }
+}
@@ -0,0 +1,103 @@
+package com.fedmag.verysimplecaptcha.adaptive;
+
+import com.fedmag.verysimplecaptcha.Captcha;
+import com.fedmag.verysimplecaptcha.generators.filters.SimpleGaussianFilter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class LoadSheddingControllerTest {
+
+  private static final long SECOND = 1_000_000_000L;
+
+  private final AtomicLong clock = new AtomicLong();
+  private final List<String> changes = new ArrayList<>();
+
+  @Test
+  void slowGenerationStepsDownToPoolOnly() {
+    // when
+    LoadSheddingController controller = controller();
+    // then
+    int[] tiers = new int[3];
+    for (int i = 0; i < tiers.length; i++) {
+      controller.recordGeneration(50_000_000L);
+      clock.addAndGet(SECOND);
+      controller.recordGeneration(50_000_000L);
+      tiers[i] = controller.getTier();
+    }
+    // do
+    Assertions.assertArrayEquals(new int[] {1, 2, 2}, tiers);
+    Assertions.assertTrue(controller.isPoolOnly());
+    Assertions.assertEquals(List.of("0->1", "1->2"), changes);
+    Assertions.assertEquals(2, controller.getTierChangeCount());
+    Assertions.assertEquals(1, controller.getTierEntryCount(2));
+    Assertions.assertEquals(50_000_000L, controller.getLastMeanGenerationNanos());
+    Assertions.assertTrue(controller.getProfile().getRenderConfig().getFilters().isEmpty());
+  }
+
+  @Test
+  void calmWindowsStepBackUp() {
+    // when
+    LoadSheddingController controller = controller();
+    controller.recordQueueDepth(100);
+    controller.evaluate();
+    Assertions.assertEquals(1, controller.getTier());
+    // then
+    controller.recordGeneration(1_000_000L);
+    controller.evaluate();
+    int afterOneCalmWindow = controller.getTier();
+    controller.recordGeneration(7_000_000L);
+    controller.evaluate();
+    int afterBusyWindow = controller.getTier();
+    controller.evaluate();
+    controller.evaluate();
+    // do
+    Assertions.assertEquals(1, afterOneCalmWindow);
+    Assertions.assertEquals(1, afterBusyWindow);
+    Assertions.assertEquals(0, controller.getTier());
+    Assertions.assertEquals(List.of("0->1", "1->0"), changes);
+  }
+
+  @Test
+  void nextRecordsGenerationTime() {
+    // when
+    LoadSheddingController controller =
+        new LoadSheddingController.Builder().tier(new Captcha.Builder()).build();
+    // then
+    Captcha captcha = controller.next();
+    controller.evaluate();
+    // do
+    Assertions.assertEquals(200, captcha.getImage().getWidth());
+    Assertions.assertTrue(controller.getLastMeanGenerationNanos() > 0);
+    Assertions.assertFalse(controller.isPoolOnly());
+  }
+
+  @Test
+  void builderRejectsInvalidSettings() {
+    // when
+    LoadSheddingController.Builder builder = new LoadSheddingController.Builder();
+    // then
+    // do
+    Assertions.assertThrows(IllegalArgumentException.class, builder::build);
+    Assertions.assertThrows(IllegalArgumentException.class, () -> builder.recoveryRatio(0));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> builder.queueDepthBudget(0));
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> builder.latencyBudget(Duration.ZERO));
+  }
+
+  private LoadSheddingController controller() {
+    return new LoadSheddingController.Builder()
+        .tier(new Captcha.Builder().addImageFilter(new SimpleGaussianFilter(5, 2)))
+        .tier(new Captcha.Builder())
+        .poolOnly(true)
+        .latencyBudget(Duration.ofMillis(10))
+        .queueDepthBudget(10)
+        .recoveryWindows(2)
+        .clock(clock::get)
+        .listener((previous, tier, mean, depth) -> changes.add(previous + "->" + tier))
+        .build();
+  }
+}
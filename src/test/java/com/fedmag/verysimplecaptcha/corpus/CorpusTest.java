@@ -0,0 +1,132 @@
+package com.fedmag.verysimplecaptcha.corpus;
+
+import com.fedmag.verysimplecaptcha.Captcha;
+import com.fedmag.verysimplecaptcha.encoding.CaptchaEncoders;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CorpusTest {
+
+  @TempDir Path directory;
+
+  @Test
+  void everyEntryIsServedOnce() throws IOException {
+    // when
+    Path base = directory.resolve("corpus");
+    new CorpusWriter.Builder(new Captcha.Builder()).threads(3).build().write(base, 150);
+    try (CorpusReader reader = CorpusReader.open(base)) {
+      // then
+      Set<Integer> entries = new HashSet<>();
+      int entry;
+      while ((entry = reader.next()) >= 0) {
+        Assertions.assertTrue(entries.add(entry));
+        ByteBuffer image = reader.image(entry);
+        byte[] bytes = new byte[image.remaining()];
+        image.get(bytes);
+        Assertions.assertNotNull(ImageIO.read(new ByteArrayInputStream(bytes)));
+      }
+      // do
+      Assertions.assertEquals(150, reader.size());
+      Assertions.assertEquals(150, entries.size());
+      Assertions.assertEquals(150, reader.getServedCount());
+      Assertions.assertEquals("image/jpeg", reader.getMimeType());
+    }
+  }
+
+  @Test
+  void answersVerifyOnce() throws IOException {
+    // when
+    Path base = directory.resolve("digits");
+    Captcha.Builder digits = new Captcha.Builder().numberOfChars(1).excludeLetters();
+    new CorpusWriter.Builder(digits).build().write(base, 5);
+    try (CorpusReader reader = CorpusReader.open(base)) {
+      int entry = reader.next();
+      String answer = null;
+      for (char digit = '0'; digit <= '9'; digit++) {
+        if (reader.matches(entry, String.valueOf(digit))) {
+          answer = String.valueOf(digit);
+        }
+      }
+      Assertions.assertNotNull(answer);
+      int unserved = (entry + 1) % reader.size();
+      // then
+      boolean first = reader.verify(entry, answer);
+      boolean second = reader.verify(entry, answer);
+      // do
+      Assertions.assertTrue(first);
+      Assertions.assertFalse(second);
+      Assertions.assertTrue(reader.isUsed(entry));
+      Assertions.assertEquals(1, reader.getUsedCount());
+      Assertions.assertFalse(reader.verify(unserved, answer));
+    }
+  }
+
+  @Test
+  void corpusCanBeAppendedTo() throws IOException {
+    // when
+    Path base = directory.resolve("grown");
+    CorpusWriter writer = new CorpusWriter.Builder(new Captcha.Builder()).build();
+    writer.write(base, 10);
+    // then
+    long entries = writer.write(base, 20);
+    // do
+    Assertions.assertEquals(30, entries);
+    try (CorpusReader reader = CorpusReader.open(base);
+        FileChannel copy =
+            FileChannel.open(
+                directory.resolve("copy.jpg"),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+      Assertions.assertEquals(30, reader.size());
+      long length = reader.transferTo(29, copy);
+      Assertions.assertEquals(reader.length(29), length);
+      Assertions.assertNotNull(ImageIO.read(directory.resolve("copy.jpg").toFile()));
+    }
+    Assertions.assertThrows(
+        IOException.class,
+        () ->
+            new CorpusWriter.Builder(new Captcha.Builder())
+                .encoder(CaptchaEncoders.png())
+                .build()
+                .write(base, 1));
+  }
+
+  @Test
+  void otherFilesAreRejected() throws IOException {
+    // when
+    Path base = directory.resolve("garbage");
+    Files.write(directory.resolve("garbage.data"), new byte[64]);
+    Files.write(directory.resolve("garbage.idx"), new byte[64]);
+    // then
+    // do
+    Assertions.assertThrows(IOException.class, () -> CorpusReader.open(base));
+  }
+
+  @Test
+  void entryPermutationCoversEverySize() {
+    for (int size : new int[] {1, 2, 3, 150, 1000, 4096, 4097}) {
+      // when
+      EntryPermutation permutation = new EntryPermutation(size, new SplittableRandom(size));
+      boolean[] seen = new boolean[size];
+      // then
+      for (int i = 0; i < size; i++) {
+        int entry = permutation.apply(i);
+        // do
+        Assertions.assertFalse(seen[entry], "size " + size);
+        seen[entry] = true;
+      }
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package com.fedmag.verysimplecaptcha.encoding;
+
+import com.fedmag.verysimplecaptcha.generators.ImageRenderer;
+import com.fedmag.verysimplecaptcha.generators.RenderConfig;
+import com.fedmag.verysimplecaptcha.generators.filters.SimpleGaussianFilter;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class CaptchaEncoderTest {
+
+  private static final BufferedImage TWO_COLORS =
+      new ImageRenderer(RenderConfig.DEFAULT).render("Abc123", 200, 100);
+  private static final BufferedImage BLURRED =
+      new ImageRenderer(
+              new RenderConfig.Builder().addImageFilter(new SimpleGaussianFilter()).build())
+          .render("Abc123", 200, 100);
+
+  @Test
+  void everyEncoderProducesADecodableImage() throws IOException {
+    for (CaptchaEncoder encoder : CaptchaEncoders.all().values()) {
+      // when
+      byte[] bytes = encode(encoder, BLURRED);
+      // then
+      BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(bytes));
+      // do
+      Assertions.assertEquals(200, decoded.getWidth(), encoder.getName());
+      Assertions.assertEquals(100, decoded.getHeight(), encoder.getName());
+    }
+  }
+
+  @Test
+  void palettePngKeepsExactColors() throws IOException {
+    // when
+    byte[] bytes = encode(CaptchaEncoders.palettePng(), TWO_COLORS);
+    // then
+    BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(bytes));
+    // do
+    for (int y = 0; y < 100; y++) {
+      for (int x = 0; x < 200; x++) {
+        Assertions.assertEquals(TWO_COLORS.getRGB(x, y), decoded.getRGB(x, y));
+      }
+    }
+  }
+
+  @Test
+  void palettePngIsSmallerThanJpeg() throws IOException {
+    Assertions.assertTrue(
+        encode(CaptchaEncoders.palettePng(), TWO_COLORS).length
+            < encode(CaptchaEncoders.jpeg(), TWO_COLORS).length);
+    Assertions.assertTrue(
+        encode(CaptchaEncoders.palettePng(), BLURRED).length
+            < encode(CaptchaEncoders.png(), BLURRED).length);
+  }
+
+  @Test
+  void unknownEncoderName() {
+    Assertions.assertThrows(IllegalArgumentException.class, () -> CaptchaEncoders.byName("bmp"));
+  }
+
+  private static byte[] encode(CaptchaEncoder encoder, BufferedImage image) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    encoder.encode(image, out);
+    return out.toByteArray();
+  }
+
+  @Test
+  void compactImagesKeepTheirColorsInEveryFormat() throws IOException {
+    // when
+    BufferedImage compact =
+        new ImageRenderer(new RenderConfig.Builder().compactColor(true).build())
+            .render("Abc123", 200, 100);
+    int background = compact.getRGB(0, 0);
+    for (CaptchaEncoder encoder : CaptchaEncoders.all().values()) {
+      // then
+      BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(encode(encoder, compact)));
+      // do
+      int rgb = decoded.getRGB(0, 0);
+      for (int shift = 0; shift < 24; shift += 8) {
+        Assertions.assertTrue(
+            Math.abs((rgb >> shift & 0xff) - (background >> shift & 0xff)) <= 8,
+            encoder.getName());
+      }
+    }
+  }
+
+  @Test
+  void encodersCanBeSharedByManyThreads() throws Exception {
+    // when
+    CaptchaEncoder encoder = new PngEncoder();
+    byte[] expected = encode(encoder, BLURRED);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      // then
+      List<Future<byte[]>> results = new ArrayList<>();
+      for (int i = 0; i < 32; i++) {
+        results.add(executor.submit(() -> encode(encoder, BLURRED)));
+      }
+      // do
+      for (Future<byte[]> result : results) {
+        Assertions.assertArrayEquals(expected, result.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
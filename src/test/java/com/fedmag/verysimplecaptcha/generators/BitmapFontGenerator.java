@@ -0,0 +1,114 @@
+package com.fedmag.verysimplecaptcha.generators;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontFormatException;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The {@code BitmapFontGenerator} class rasterizes a TrueType font with Java2D into the binary
+ * format read by {@link BitmapFont}. It is a build tool, kept with the tests because it needs the
+ * font subsystem the bitmap backend avoids at runtime.
+ *
+ * <p>The bundled font was generated with:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes \
+ *     com.fedmag.verysimplecaptcha.generators.BitmapFontGenerator \
+ *     /usr/share/fonts/truetype/dejavu/DejaVuSans-Bold.ttf 40 \
+ *     src/main/resources/com/fedmag/verysimplecaptcha/fonts/dejavu-sans-bold.vscf
+ * </pre>
+ */
+public final class BitmapFontGenerator {
+
+  private static final char FIRST = 32;
+  private static final char LAST = 126;
+
+  /** Private constructor to prevent instantiation. */
+  private BitmapFontGenerator() {}
+
+  /**
+   * Generates a bitmap font.
+   *
+   * @param args the TrueType file, the pixel size and the output file
+   * @throws IOException if a file cannot be read or written
+   * @throws FontFormatException if the font cannot be parsed
+   */
+  public static void main(String[] args) throws IOException, FontFormatException {
+    if (args.length != 3) {
+      System.err.println("Usage: BitmapFontGenerator <font.ttf> <pixel size> <output>");
+      System.exit(2);
+    }
+    int pixelSize = Integer.parseInt(args[1]);
+    Font font =
+        Font.createFont(Font.TRUETYPE_FONT, new File(args[0])).deriveFont((float) pixelSize);
+    BitmapFont bitmapFont = rasterize(font, pixelSize);
+    Path output = Path.of(args[2]);
+    Files.createDirectories(output.toAbsolutePath().getParent());
+    try (OutputStream out = Files.newOutputStream(output)) {
+      bitmapFont.write(out);
+    }
+    System.out.println(output + ": " + Files.size(output) + " bytes");
+  }
+
+  static BitmapFont rasterize(Font font, int pixelSize) {
+    int canvas = pixelSize * 3;
+    int originX = pixelSize;
+    int baseline = pixelSize * 2;
+    BufferedImage image = new BufferedImage(canvas, canvas, BufferedImage.TYPE_BYTE_GRAY);
+    byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+    Graphics2D g = image.createGraphics();
+    g.setRenderingHint(
+        RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+    g.setRenderingHint(
+        RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_OFF);
+    g.setFont(font);
+    FontMetrics metrics = g.getFontMetrics();
+
+    BitmapFont.Glyph[] glyphs = new BitmapFont.Glyph[LAST + 1];
+    for (char c = FIRST; c <= LAST; c++) {
+      g.setColor(Color.BLACK);
+      g.fillRect(0, 0, canvas, canvas);
+      g.setColor(Color.WHITE);
+      g.drawString(String.valueOf(c), originX, baseline);
+      int minX = canvas;
+      int minY = canvas;
+      int maxX = -1;
+      int maxY = -1;
+      for (int y = 0; y < canvas; y++) {
+        for (int x = 0; x < canvas; x++) {
+          if (pixels[y * canvas + x] != 0) {
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+          }
+        }
+      }
+      int advance = metrics.charWidth(c);
+      if (maxX < 0) {
+        glyphs[c] = new BitmapFont.Glyph(advance, 0, 0, 0, 0, new byte[0]);
+        continue;
+      }
+      int width = maxX - minX + 1;
+      int height = maxY - minY + 1;
+      byte[] coverage = new byte[width * height];
+      for (int y = 0; y < height; y++) {
+        System.arraycopy(pixels, (minY + y) * canvas + minX, coverage, y * width, width);
+      }
+      glyphs[c] =
+          new BitmapFont.Glyph(advance, minX - originX, baseline - minY, width, height, coverage);
+    }
+    g.dispose();
+    return new BitmapFont(pixelSize, metrics.getAscent(), metrics.getDescent(), glyphs);
+  }
+}
@@ -0,0 +1,100 @@
+package com.fedmag.verysimplecaptcha.generators;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class BitmapFontTest {
+
+  private static final RenderConfig BITMAP =
+      new RenderConfig.Builder().renderBackend(RenderBackend.BITMAP).build();
+
+  @Test
+  void defaultFontCoversPrintableAscii() {
+    // when
+    BitmapFont font = BitmapFont.defaultFont();
+    // do
+    for (char c = 32; c < 127; c++) {
+      Assertions.assertTrue(font.canDisplay(c), "char " + (int) c);
+    }
+    Assertions.assertFalse(font.canDisplay('é'));
+    Assertions.assertEquals(font.advance("?"), font.advance("é"));
+  }
+
+  @Test
+  void bitmapBackendMatchesJava2dLayout() {
+    // when
+    BufferedImage bitmap = new ImageRenderer(BITMAP).render("AbC12", 200, 100);
+    BufferedImage java2d = new ImageRenderer(RenderConfig.DEFAULT).render("AbC12", 200, 100);
+    // then
+    Rectangle bitmapInk = ink(bitmap);
+    Rectangle java2dInk = ink(java2d);
+    // do
+    Assertions.assertEquals(java2dInk.x, bitmapInk.x, 3);
+    Assertions.assertEquals(java2dInk.y + java2dInk.height, bitmapInk.y + bitmapInk.height, 3);
+    Assertions.assertEquals(java2dInk.height, bitmapInk.height, 6);
+  }
+
+  @Test
+  void renderingIsDeterministic() {
+    // when
+    AffineTransform rotation = AffineTransform.getRotateInstance(Math.toRadians(-17));
+    // then
+    BufferedImage first = new ImageRenderer(BITMAP).render("Xy7Qa", 200, 100, rotation);
+    BufferedImage second = new ImageRenderer(BITMAP).render("Xy7Qa", 200, 100, rotation);
+    // do
+    Assertions.assertArrayEquals(
+        first.getRGB(0, 0, 200, 100, null, 0, 200), second.getRGB(0, 0, 200, 100, null, 0, 200));
+  }
+
+  @Test
+  void drawCoverageIntoByteRaster() {
+    // when
+    byte[] coverage = new byte[100 * 50];
+    AffineTransform transform = AffineTransform.getTranslateInstance(5, 40);
+    // then
+    BitmapFont.defaultFont().drawCoverage(coverage, 100, 50, "W", transform);
+    // do
+    int covered = 0;
+    for (byte value : coverage) {
+      covered += value != 0 ? 1 : 0;
+    }
+    Assertions.assertTrue(covered > 200);
+  }
+
+  @Test
+  void writeAndReadRoundTrip() throws IOException {
+    // when
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BitmapFont.defaultFont().write(out);
+    // then
+    BitmapFont copy = BitmapFont.read(new ByteArrayInputStream(out.toByteArray()));
+    // do
+    Assertions.assertEquals(BitmapFont.defaultFont().getPixelSize(), copy.getPixelSize());
+    Assertions.assertEquals(BitmapFont.defaultFont().advance("AbC12"), copy.advance("AbC12"));
+    byte[] notAFont = Arrays.copyOf(out.toByteArray(), 8);
+    notAFont[0] = 'X';
+    Assertions.assertThrows(
+        IOException.class, () -> BitmapFont.read(new ByteArrayInputStream(notAFont)));
+  }
+
+  private static Rectangle ink(BufferedImage image) {
+    int background = image.getRGB(0, 0);
+    Rectangle ink = null;
+    for (int y = 0; y < image.getHeight(); y++) {
+      for (int x = 0; x < image.getWidth(); x++) {
+        if (image.getRGB(x, y) != background) {
+          Rectangle pixel = new Rectangle(x, y, 1, 1);
+          ink = ink == null ? pixel : ink.union(pixel);
+        }
+      }
+    }
+    return ink;
+  }
+}
@@ -0,0 +1,76 @@
+package com.fedmag.verysimplecaptcha.generators;
+
+import java.awt.Font;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class GlyphAtlasTest {
+
+  @Test
+  void atlasMatchesJava2dRendering() {
+    // when
+    RenderConfig java2d = new RenderConfig.Builder().build();
+    RenderConfig atlas = java2d.toBuilder().glyphAtlas(new GlyphAtlas(1 << 20, 1d)).build();
+    // then
+    BufferedImage expected = new ImageRenderer(java2d).render("Abc123xyz", 200, 200);
+    BufferedImage actual = new ImageRenderer(atlas).render("Abc123xyz", 200, 200);
+    // do
+    Assertions.assertTrue(differentPixelRatio(expected, actual) < 0.005d);
+  }
+
+  @Test
+  void atlasMatchesRotatedJava2dRendering() {
+    // when
+    RenderConfig java2d =
+        new RenderConfig.Builder()
+            .addFontTransformation(AffineTransform.getRotateInstance(Math.toRadians(20)))
+            .build();
+    RenderConfig atlas = java2d.toBuilder().glyphAtlas(new GlyphAtlas(1 << 20, 1d)).build();
+    // then
+    BufferedImage expected = new ImageRenderer(java2d).render("Abc123", 200, 200);
+    BufferedImage actual = new ImageRenderer(atlas).render("Abc123", 200, 200);
+    // do
+    Assertions.assertTrue(differentPixelRatio(expected, actual) < 0.005d);
+  }
+
+  @Test
+  void glyphsAreCachedOnce() {
+    // when
+    GlyphAtlas atlas = new GlyphAtlas(1 << 20, 1d);
+    BufferedImage image = new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB);
+    Font font = RenderConfig.DEFAULT.getFont();
+    // then
+    atlas.drawString(image, "aaab", font, RenderConfig.DEFAULT.getFontColor(), 10, 50);
+    atlas.drawString(image, "ba", font, RenderConfig.DEFAULT.getFontColor(), 10, 50);
+    // do
+    Assertions.assertEquals(2, atlas.size());
+  }
+
+  @Test
+  void leastRecentlyUsedGlyphsAreEvicted() {
+    // when
+    GlyphAtlas atlas = new GlyphAtlas(4096, 1d);
+    BufferedImage image = new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB);
+    Font font = RenderConfig.DEFAULT.getFont();
+    // then
+    atlas.drawString(
+        image, "ABCDEFGHIJKLMNOPQRSTUVWXYZ", font, RenderConfig.DEFAULT.getFontColor(), 10, 50);
+    // do
+    Assertions.assertTrue(atlas.usedBytes() <= 4096);
+    Assertions.assertTrue(atlas.size() < 26);
+  }
+
+  private static double differentPixelRatio(BufferedImage expected, BufferedImage actual) {
+    int different = 0;
+    for (int y = 0; y < expected.getHeight(); y++) {
+      for (int x = 0; x < expected.getWidth(); x++) {
+        if (expected.getRGB(x, y) != actual.getRGB(x, y)) {
+          different++;
+        }
+      }
+    }
+    return (double) different / (expected.getWidth() * expected.getHeight());
+  }
+}
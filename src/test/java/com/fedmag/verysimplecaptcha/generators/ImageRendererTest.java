@@ -0,0 +1,112 @@
+package com.fedmag.verysimplecaptcha.generators;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ImageRendererTest {
+
+  @Test
+  void renderUsesConfiguredSize() {
+    // when
+    ImageRenderer renderer = new ImageRenderer(RenderConfig.DEFAULT);
+    // then
+    BufferedImage image = renderer.render("Test", 300, 120);
+    // do
+    Assertions.assertEquals(300, image.getWidth());
+    Assertions.assertEquals(120, image.getHeight());
+  }
+
+  @Test
+  void configIsNotAffectedByLaterChangesToInputs() {
+    // when
+    Point point = new Point(5, 50);
+    RenderConfig config = new RenderConfig.Builder().startingPoint(point).build();
+    point.move(80, 80);
+    // do
+    Assertions.assertEquals(new Point(5, 50), config.getStartingPoint());
+  }
+
+  @Test
+  void concurrentRenderersDoNotShareSettings() throws Exception {
+    // when
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<Boolean>> results = new ArrayList<>();
+    for (int i = 0; i < 64; i++) {
+      Color background = new Color(i * 4, 255 - i * 4, i);
+      RenderConfig config = new RenderConfig.Builder().backgroundColor(background).build();
+      results.add(
+          executor.submit(
+              () -> {
+                BufferedImage image = new ImageRenderer(config).render("Test", 100, 100);
+                return image.getRGB(0, 0) == background.getRGB();
+              }));
+    }
+    // do
+    try {
+      for (Future<Boolean> result : results) {
+        Assertions.assertTrue(result.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void compactColorRendersOneBytePerPixel() {
+    // when
+    RenderConfig config =
+        new RenderConfig.Builder()
+            .renderBackend(RenderBackend.BITMAP)
+            .startingPoint(new Point(10, 60))
+            .compactColor(true)
+            .build();
+    // then
+    BufferedImage image = new ImageRenderer(config).render("Test", 200, 100);
+    // do
+    Assertions.assertEquals(BufferedImage.TYPE_BYTE_INDEXED, image.getType());
+    Assertions.assertEquals(200 * 100, image.getRaster().getDataBuffer().getSize());
+  }
+
+  @Test
+  void compactColorMatchesFullColor() {
+    for (RenderBackend backend : RenderBackend.values()) {
+      for (GlyphAtlas atlas : new GlyphAtlas[] {null, GlyphAtlas.shared()}) {
+        // when
+        RenderConfig config =
+            new RenderConfig.Builder()
+                .renderBackend(backend)
+                .glyphAtlas(atlas)
+                .startingPoint(new Point(10, 60))
+                .build();
+        BufferedImage full = new ImageRenderer(config).render("Ab3x", 200, 100);
+        // then
+        BufferedImage compact =
+            new ImageRenderer(config.toBuilder().compactColor(true).build())
+                .render("Ab3x", 200, 100);
+        // do
+        int differing = 0;
+        for (int y = 0; y < 100; y++) {
+          for (int x = 0; x < 200; x++) {
+            int a = full.getRGB(x, y);
+            int b = compact.getRGB(x, y);
+            for (int shift = 0; shift < 24; shift += 8) {
+              if (Math.abs((a >> shift & 0xff) - (b >> shift & 0xff)) > 2) {
+                differing++;
+                break;
+              }
+            }
+          }
+        }
+        Assertions.assertTrue(differing < 200, backend + " " + atlas + ": " + differing);
+      }
+    }
+  }
+}
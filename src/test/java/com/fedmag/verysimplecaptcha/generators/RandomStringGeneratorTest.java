@@ -1,5 +1,6 @@
 package com.fedmag.verysimplecaptcha.generators;
 
+import com.fedmag.verysimplecaptcha.generators.RandomStringGenerator.Source;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -51,4 +52,51 @@ class RandomStringGeneratorTest {
     Assertions.assertTrue(StringUtils.isAllLowerCase(generated));
 
   }
-}
\ No newline at end of file
+
+  @Test
+  void everyCharacterIsEquallyLikely() {
+    // when
+    String charsToUse = "ABCDEFGHIJ";
+    int[] counts = new int[charsToUse.length()];
+    char[] chars = new char[100_000];
+    // then
+    RandomStringGenerator.fill(chars, 0, chars.length, charsToUse, Source.SECURE);
+    for (char c : chars) {
+      counts[charsToUse.indexOf(c)]++;
+    }
+    // do
+    for (int count : counts) {
+      Assertions.assertEquals(10_000, count, 500);
+    }
+  }
+
+  @Test
+  void fillWritesOnlyTheRange() {
+    // when
+    char[] chars = new char[12];
+    // then
+    RandomStringGenerator.fill(chars, 2, 8, "x", Source.FAST);
+    // do
+    Assertions.assertEquals("\0\0xxxxxxxx\0\0", new String(chars));
+    Assertions.assertThrows(
+        IndexOutOfBoundsException.class,
+        () -> RandomStringGenerator.fill(chars, 8, 8, "x", Source.FAST));
+    Assertions.assertThrows(
+        IllegalArgumentException.class,
+        () -> RandomStringGenerator.fill(chars, 0, 1, "", Source.FAST));
+  }
+
+  @Test
+  void largeCharacterSets() {
+    // when
+    StringBuilder charsToUse = new StringBuilder();
+    for (char c = 0x4e00; c < 0x4e00 + 1000; c++) {
+      charsToUse.append(c);
+    }
+    // then
+    String generated = RandomStringGenerator.generate(50, charsToUse.toString(), Source.SECURE);
+    // do
+    Assertions.assertEquals(50, generated.length());
+    Assertions.assertTrue(generated.chars().allMatch(c -> c >= 0x4e00 && c < 0x4e00 + 1000));
+  }
+}
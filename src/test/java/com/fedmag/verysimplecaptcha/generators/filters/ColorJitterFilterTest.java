@@ -0,0 +1,43 @@
+package com.fedmag.verysimplecaptcha.generators.filters;
+
+import java.awt.image.BufferedImage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ColorJitterFilterTest {
+
+  @Test
+  void channelsMoveByAtMostTheAmount() {
+    // when
+    BufferedImage image = new BufferedImage(100, 50, BufferedImage.TYPE_INT_ARGB);
+    for (int y = 0; y < 50; y++) {
+      for (int x = 0; x < 100; x++) {
+        image.setRGB(x, y, x % 2 == 0 ? 0x80000000 | (5 * x) << 8 : 0xfffafafa);
+      }
+    }
+    BufferedImage input = PixelRaster.copyOf(image).toImage();
+    // then
+    new ColorJitterFilter(10).apply(PixelRaster.wrap(image));
+    // do
+    int changed = 0;
+    for (int y = 0; y < 50; y++) {
+      for (int x = 0; x < 100; x++) {
+        int before = input.getRGB(x, y);
+        int after = image.getRGB(x, y);
+        Assertions.assertEquals(before >>> 24, after >>> 24);
+        for (int shift = 0; shift < 24; shift += 8) {
+          int b = (before >> shift) & 0xff;
+          int a = (after >> shift) & 0xff;
+          Assertions.assertTrue(Math.abs(a - b) <= 10);
+        }
+        changed += before != after ? 1 : 0;
+      }
+    }
+    Assertions.assertTrue(changed > 100 * 50 / 2);
+  }
+
+  @Test
+  void invalidAmount() {
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new ColorJitterFilter(0));
+  }
+}
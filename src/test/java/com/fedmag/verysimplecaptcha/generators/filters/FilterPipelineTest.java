@@ -0,0 +1,150 @@
+package com.fedmag.verysimplecaptcha.generators.filters;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class FilterPipelineTest {
+
+  private static final PointFilter INVERT = argb -> (argb & 0xff000000) | (~argb & 0xffffff);
+  private static final PointFilter DROP_BLUE = argb -> argb & 0xffffff00;
+
+  @Test
+  void rasterFiltersRunInPlace() {
+    // when
+    BufferedImage image = new BufferedImage(50, 50, BufferedImage.TYPE_INT_RGB);
+    FilterPipeline pipeline = new FilterPipeline(List.of(new SimpleGaussianFilter(), INVERT));
+    // then
+    BufferedImage result = pipeline.apply(image);
+    // do
+    Assertions.assertSame(image, result);
+    Assertions.assertEquals(0xffffffff, result.getRGB(25, 25));
+  }
+
+  @Test
+  void pointFiltersAreAppliedInOrder() {
+    // when
+    BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB);
+    // then
+    BufferedImage invertedFirst = new FilterPipeline(List.of(INVERT, DROP_BLUE)).apply(image);
+    // do
+    Assertions.assertEquals(0xffffff00, invertedFirst.getRGB(5, 5));
+
+    // then
+    image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB);
+    BufferedImage droppedFirst = new FilterPipeline(List.of(DROP_BLUE, INVERT)).apply(image);
+    // do
+    Assertions.assertEquals(0xffffffff, droppedFirst.getRGB(5, 5));
+  }
+
+  @Test
+  void imageFiltersAreAdapted() {
+    // when
+    BufferedImage white = new BufferedImage(20, 20, BufferedImage.TYPE_INT_RGB);
+    white.getGraphics().fillRect(0, 0, 20, 20);
+    ImageFilter filter = Mockito.mock(ImageFilter.class);
+    Mockito.when(filter.apply(Mockito.any(BufferedImage.class))).thenReturn(white);
+    BufferedImage image = new BufferedImage(20, 20, BufferedImage.TYPE_INT_RGB);
+    // then
+    BufferedImage result = new FilterPipeline(List.of(filter, INVERT)).apply(image);
+    // do
+    Mockito.verify(filter, Mockito.times(1)).apply(Mockito.any(BufferedImage.class));
+    Assertions.assertSame(image, result);
+    Assertions.assertEquals(0xff000000, result.getRGB(10, 10));
+    Assertions.assertEquals(0xffffffff, white.getRGB(10, 10));
+  }
+
+  @Test
+  void unwrappableImagesAreCopied() {
+    // when
+    BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_3BYTE_BGR);
+    // then
+    BufferedImage result = new FilterPipeline(List.of(INVERT)).apply(image);
+    // do
+    Assertions.assertNotSame(image, result);
+    Assertions.assertEquals(0xff000000, image.getRGB(5, 5));
+    Assertions.assertEquals(0xffffffff, result.getRGB(5, 5));
+  }
+
+  @Test
+  void parallelBandsMatchSequentialResult() {
+    // when
+    List<ImageFilter> filters = List.of(new SimpleGaussianFilter(7, 3), INVERT, DROP_BLUE);
+    ForkJoinPool pool = new ForkJoinPool(4);
+    BufferedImage sequential = noise(800, 400);
+    BufferedImage parallel = noise(800, 400);
+    // then
+    new FilterPipeline(filters).apply(sequential);
+    new FilterPipeline(filters, pool, 1).apply(parallel);
+    pool.shutdown();
+    // do
+    for (int y = 0; y < 400; y++) {
+      for (int x = 0; x < 800; x++) {
+        Assertions.assertEquals(sequential.getRGB(x, y), parallel.getRGB(x, y));
+      }
+    }
+  }
+
+  private static BufferedImage noise(int width, int height) {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Random random = new Random(7);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        image.setRGB(x, y, random.nextInt(0xffffff));
+      }
+    }
+    return image;
+  }
+
+  @Test
+  void compactRasterStaysIndexedThroughShadeFilters() {
+    // when
+    byte[] shades = new byte[40 * 40];
+    shades[20 * 40 + 20] = (byte) 255;
+    PixelRaster raster = PixelRaster.ofShades(shades, 40, 40, 0x000000, 0xffffff);
+    FilterPipeline pipeline =
+        new FilterPipeline(List.of(new SimpleGaussianFilter(3), new SpeckleFilter(0, Color.WHITE)));
+    // then
+    BufferedImage result = pipeline.apply(raster);
+    // do
+    Assertions.assertEquals(BufferedImage.TYPE_BYTE_INDEXED, result.getType());
+    Assertions.assertEquals(40 * 40, result.getRaster().getDataBuffer().getSize());
+    Assertions.assertEquals(0xff1c1c1c, result.getRGB(20, 20));
+    Assertions.assertEquals(0xff1c1c1c, result.getRGB(21, 21));
+  }
+
+  @Test
+  void compactRasterIsExpandedBeforeOtherFilters() {
+    // when
+    byte[] shades = new byte[10 * 10];
+    shades[0] = (byte) 255;
+    PixelRaster raster = PixelRaster.ofShades(shades, 10, 10, 0x102030, 0xf0e0d0);
+    // then
+    BufferedImage result = new FilterPipeline(List.of(DROP_BLUE)).apply(raster);
+    // do
+    Assertions.assertEquals(BufferedImage.TYPE_INT_RGB, result.getType());
+    Assertions.assertEquals(0xfff0e000, result.getRGB(0, 0));
+    Assertions.assertEquals(0xff102000, result.getRGB(5, 5));
+  }
+
+  @Test
+  void compactRasterIsExpandedBeforeColorsOffTheRamp() {
+    // when
+    PixelRaster raster = PixelRaster.ofShades(new byte[10 * 10], 10, 10, 0x000000, 0xffffff);
+    // then
+    FilterPipeline pipeline = new FilterPipeline(List.of(new SpeckleFilter(1, Color.RED)));
+    BufferedImage result = pipeline.apply(raster);
+    // do
+    Assertions.assertEquals(BufferedImage.TYPE_INT_RGB, result.getType());
+    int[] pixels = result.getRGB(0, 0, 10, 10, null, 0, 10);
+    Assertions.assertTrue(Arrays.stream(pixels).anyMatch(pixel -> pixel == 0xffff0000));
+    Assertions.assertTrue(
+        Arrays.stream(pixels).allMatch(pixel -> pixel == 0xff000000 || pixel == 0xffff0000));
+  }
+}
@@ -0,0 +1,40 @@
+package com.fedmag.verysimplecaptcha.generators.filters;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class NoiseLinesFilterTest {
+
+  @Test
+  void curvesAreDrawnAcrossTheImage() {
+    // when
+    BufferedImage image = new BufferedImage(200, 100, BufferedImage.TYPE_INT_RGB);
+    // then
+    new NoiseLinesFilter(3, 2, Color.WHITE).apply(PixelRaster.wrap(image));
+    // do
+    int columns = 0;
+    for (int x = 0; x < 200; x++) {
+      boolean drawn = false;
+      for (int y = 0; y < 100; y++) {
+        int pixel = image.getRGB(x, y);
+        Assertions.assertTrue(pixel == 0xff000000 || pixel == 0xffffffff);
+        drawn |= pixel == 0xffffffff;
+      }
+      columns += drawn ? 1 : 0;
+    }
+    // a curve may leave the image at the top or bottom, but not all three for most of the width
+    Assertions.assertTrue(columns > 100, "columns " + columns);
+  }
+
+  @Test
+  void zeroCurvesDrawNothing() {
+    // when
+    BufferedImage image = new BufferedImage(50, 50, BufferedImage.TYPE_INT_RGB);
+    // then
+    new NoiseLinesFilter(0, 2, Color.WHITE).apply(PixelRaster.wrap(image));
+    // do
+    Assertions.assertEquals(0xff000000, image.getRGB(25, 25));
+  }
+}
@@ -0,0 +1,88 @@
+package com.fedmag.verysimplecaptcha.generators.filters;
+
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+class RasterKernelsTest {
+
+  private static final int WIDTH = 203;
+  private static final int HEIGHT = 41;
+
+  private final SplittableRandom random = new SplittableRandom(7);
+
+  @Test
+  void scalarKernelsCanBeForced() {
+    Assertions.assertSame(ScalarPixelKernels.INSTANCE, RasterKernels.select("scalar"));
+  }
+
+  @Test
+  void vectorLerpMatchesScalar() {
+    // when
+    PixelKernels vector = vectorKernels();
+    int[] source = randomPixels();
+    int[] expected = new int[source.length];
+    int[] actual = new int[source.length];
+    // then
+    for (int fraction = 0; fraction < 256; fraction += 17) {
+      ScalarPixelKernels.INSTANCE.lerpRow(source, 3, expected, 5, WIDTH * 2, fraction);
+      vector.lerpRow(source, 3, actual, 5, WIDTH * 2, fraction);
+      // do
+      Assertions.assertArrayEquals(expected, actual, "fraction " + fraction);
+    }
+  }
+
+  @Test
+  void vectorBoxBlurMatchesScalar() {
+    // when
+    PixelKernels vector = vectorKernels();
+    int[] source = randomPixels();
+    for (int size : new int[] {2, 3, 7, 16, 31}) {
+      int before = size / 2;
+      int after = size - 1 - before;
+      int[] expected = new int[source.length];
+      int[] actual = new int[source.length];
+      // then
+      ScalarPixelKernels.INSTANCE.boxBlurColumns(source, expected, WIDTH, HEIGHT, before, after);
+      vector.boxBlurColumns(source, actual, WIDTH, HEIGHT, before, after);
+      // do
+      Assertions.assertArrayEquals(expected, actual, "size " + size);
+    }
+  }
+
+  @Test
+  void vectorJitterMatchesScalar() {
+    // when
+    PixelKernels vector = vectorKernels();
+    int[] noise = new int[64];
+    for (int i = 0; i < noise.length; i++) {
+      noise[i] = (random.nextInt(97) << 20) | (random.nextInt(97) << 10) | random.nextInt(97);
+    }
+    int[] expected = randomPixels();
+    int[] actual = expected.clone();
+    // then
+    for (int y = 0; y < HEIGHT; y++) {
+      int offset = random.nextInt(noise.length);
+      ScalarPixelKernels.INSTANCE.jitter(expected, y * WIDTH, WIDTH, noise, offset, 256 - 48);
+      vector.jitter(actual, y * WIDTH, WIDTH, noise, offset, 256 - 48);
+    }
+    // do
+    Assertions.assertArrayEquals(expected, actual);
+  }
+
+  private int[] randomPixels() {
+    int[] pixels = new int[WIDTH * HEIGHT];
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = random.nextInt();
+    }
+    return pixels;
+  }
+
+  private static PixelKernels vectorKernels() {
+    PixelKernels kernels = RasterKernels.select(null);
+    Assumptions.assumeTrue(
+        "vector".equals(kernels.getName()), "The Vector API is not available on this JVM.");
+    return kernels;
+  }
+}
@@ -0,0 +1,40 @@
+package com.fedmag.verysimplecaptcha.generators.filters;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class RippleFilterTest {
+
+  @Test
+  void isDeterministicAndKeepsTheCenter() {
+    // when
+    BufferedImage input = noise(101, 51);
+    RippleFilter filter = new RippleFilter(3, 12);
+    // then
+    BufferedImage first = filter.apply(input);
+    BufferedImage second = filter.apply(input);
+    // do
+    Assertions.assertEquals(input.getRGB(50, 25), first.getRGB(50, 25));
+    int changed = 0;
+    for (int y = 0; y < 51; y++) {
+      for (int x = 0; x < 101; x++) {
+        Assertions.assertEquals(first.getRGB(x, y), second.getRGB(x, y));
+        changed += first.getRGB(x, y) != input.getRGB(x, y) ? 1 : 0;
+      }
+    }
+    Assertions.assertTrue(changed > 101 * 51 / 2);
+  }
+
+  private static BufferedImage noise(int width, int height) {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Random random = new Random(3);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        image.setRGB(x, y, random.nextInt(0xffffff));
+      }
+    }
+    return image;
+  }
+}
@@ -0,0 +1,73 @@
+package com.fedmag.verysimplecaptcha.generators.filters;
+
+import com.fedmag.verysimplecaptcha.generators.ImageRenderer;
+import com.fedmag.verysimplecaptcha.generators.RenderConfig;
+import java.awt.image.BufferedImage;
+import java.awt.image.ConvolveOp;
+import java.awt.image.Kernel;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class SimpleGaussianFilterTest {
+
+  @Test
+  void matchesUniformConvolution() {
+    // when
+    BufferedImage input = noisyCaptcha();
+    for (int size : new int[] {1, 2, 3, 7, 8, 15}) {
+      // then
+      BufferedImage expected = convolve(input, size);
+      BufferedImage actual = new SimpleGaussianFilter(size).apply(input);
+      // do
+      Assertions.assertTrue(maxChannelDifference(expected, actual) <= 1, "size " + size);
+    }
+  }
+
+  @Test
+  void doesNotModifyInput() {
+    // when
+    BufferedImage input = noisyCaptcha();
+    int before = input.getRGB(50, 50);
+    // then
+    new SimpleGaussianFilter(5, 3).apply(input);
+    // do
+    Assertions.assertEquals(before, input.getRGB(50, 50));
+  }
+
+  @Test
+  void invalidMatrixSize() {
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new SimpleGaussianFilter(0));
+  }
+
+  private static BufferedImage noisyCaptcha() {
+    BufferedImage image = new ImageRenderer(RenderConfig.DEFAULT).render("Abc123xyz", 200, 120);
+    Random random = new Random(42);
+    for (int i = 0; i < 3000; i++) {
+      image.setRGB(random.nextInt(200), random.nextInt(120), random.nextInt(0xffffff));
+    }
+    return image;
+  }
+
+  private static BufferedImage convolve(BufferedImage input, int size) {
+    float[] matrix = new float[size * size];
+    Arrays.fill(matrix, 1.0f / (size * size));
+    return new ConvolveOp(new Kernel(size, size, matrix), ConvolveOp.EDGE_NO_OP, null)
+        .filter(input, null);
+  }
+
+  private static int maxChannelDifference(BufferedImage expected, BufferedImage actual) {
+    int max = 0;
+    for (int y = 0; y < expected.getHeight(); y++) {
+      for (int x = 0; x < expected.getWidth(); x++) {
+        int p = expected.getRGB(x, y);
+        int q = actual.getRGB(x, y);
+        for (int shift = 0; shift < 24; shift += 8) {
+          max = Math.max(max, Math.abs(((p >> shift) & 0xff) - ((q >> shift) & 0xff)));
+        }
+      }
+    }
+    return max;
+  }
+}
@@ -0,0 +1,32 @@
+package com.fedmag.verysimplecaptcha.generators.filters;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class SpeckleFilterTest {
+
+  @Test
+  void specklesRoughlyTheDensity() {
+    // when
+    BufferedImage image = new BufferedImage(200, 100, BufferedImage.TYPE_INT_RGB);
+    // then
+    new SpeckleFilter(0.1, Color.WHITE).apply(PixelRaster.wrap(image));
+    // do
+    int speckles = 0;
+    for (int y = 0; y < 100; y++) {
+      for (int x = 0; x < 200; x++) {
+        speckles += image.getRGB(x, y) == 0xffffffff ? 1 : 0;
+      }
+    }
+    // 2000 draws, some of which hit the same pixel
+    Assertions.assertTrue(speckles > 1800 && speckles <= 2000, "speckles " + speckles);
+  }
+
+  @Test
+  void invalidDensity() {
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> new SpeckleFilter(1.5, Color.WHITE));
+  }
+}
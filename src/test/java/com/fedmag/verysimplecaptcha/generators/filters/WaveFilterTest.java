@@ -0,0 +1,56 @@
+package com.fedmag.verysimplecaptcha.generators.filters;
+
+import java.awt.image.BufferedImage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class WaveFilterTest {
+
+  @Test
+  void zeroAmplitudeKeepsTheImage() {
+    // when
+    BufferedImage input = stripes(120, 60);
+    // then
+    BufferedImage output = new WaveFilter(0, 20).apply(input);
+    // do
+    for (int y = 0; y < 60; y++) {
+      for (int x = 0; x < 120; x++) {
+        Assertions.assertEquals(input.getRGB(x, y), output.getRGB(x, y));
+      }
+    }
+  }
+
+  @Test
+  void rowsAreShiftedByAtMostTheAmplitude() {
+    // when
+    BufferedImage input = stripes(120, 60);
+    // then
+    BufferedImage output = new WaveFilter(3, 20).apply(input);
+    // do
+    boolean moved = false;
+    for (int y = 0; y < 60; y++) {
+      for (int x = 4; x < 116; x++) {
+        int shade = output.getRGB(x, y) & 0xff;
+        // the stripes are a horizontal gradient of 2 per pixel
+        Assertions.assertTrue(Math.abs(shade - 2 * x) <= 2 * 3 + 1, "x " + x + " y " + y);
+        moved |= shade != 2 * x;
+      }
+    }
+    Assertions.assertTrue(moved);
+  }
+
+  @Test
+  void invalidWavelength() {
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new WaveFilter(2, 1));
+  }
+
+  private static BufferedImage stripes(int width, int height) {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        image.setRGB(x, y, 2 * x * 0x010101);
+      }
+    }
+    return image;
+  }
+}
@@ -0,0 +1,58 @@
+package com.fedmag.verysimplecaptcha.metrics;
+
+import com.fedmag.verysimplecaptcha.Captcha;
+import com.fedmag.verysimplecaptcha.ImageFormat;
+import com.fedmag.verysimplecaptcha.generators.filters.SimpleGaussianFilter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class CaptchaMetricsTest {
+
+  @Test
+  void everyStageIsReported() throws IOException {
+    // when
+    HistogramMetrics metrics = new HistogramMetrics();
+    Captcha captcha =
+        new Captcha.Builder().addImageFilter(new SimpleGaussianFilter()).metrics(metrics).build();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    // then
+    captcha.writeTo(out, ImageFormat.PNG);
+    // do
+    Assertions.assertEquals(1, metrics.getTokenNanos().getCount());
+    Assertions.assertEquals(1, metrics.getRenderNanos().getCount());
+    Assertions.assertEquals(
+        1, metrics.getFilterNanosByClass().get(SimpleGaussianFilter.class.getName()).getCount());
+    Assertions.assertEquals(1, metrics.getEncodeNanosByEncoder().get("png").getCount());
+    Assertions.assertEquals(out.size(), metrics.getEncodedBytes().getMax());
+  }
+
+  @Test
+  void stagesAreRecordedAsJfrEvents() throws IOException {
+    // when
+    Path file = Files.createTempFile("captcha", ".jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable("com.fedmag.verysimplecaptcha.Stage");
+      recording.start();
+      new Captcha.Builder().addImageFilter(new SimpleGaussianFilter()).build().getImageAsBytes();
+      recording.stop();
+      recording.dump(file);
+      // then
+      List<String> stages =
+          RecordingFile.readAllEvents(file).stream()
+              .map(event -> event.getString("stage"))
+              .collect(Collectors.toList());
+      // do
+      Assertions.assertEquals(List.of("TOKEN", "RENDER", "FILTER", "ENCODE"), stages);
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+}
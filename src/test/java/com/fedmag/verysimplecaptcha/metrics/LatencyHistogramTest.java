@@ -0,0 +1,59 @@
+package com.fedmag.verysimplecaptcha.metrics;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+  @Test
+  void bucketsCoverEveryValue() {
+    for (long value : new long[] {0, 1, 63, 64, 65, 127, 128, 1_000_000, Long.MAX_VALUE}) {
+      // when
+      int index = LatencyHistogram.indexOf(value);
+      // then
+      long highest = LatencyHistogram.highestValueOf(index);
+      // do
+      Assertions.assertTrue(highest >= value, "value " + value);
+      Assertions.assertTrue(highest - value <= value / 32, "value " + value);
+    }
+  }
+
+  @Test
+  void percentilesAreWithinThreePercent() {
+    // when
+    LatencyHistogram histogram = new LatencyHistogram();
+    long[] values = new Random(1).longs(10_000, 1_000, 10_000_000).sorted().toArray();
+    // then
+    for (long value : values) {
+      histogram.record(value);
+    }
+    // do
+    Assertions.assertEquals(10_000, histogram.getCount());
+    Assertions.assertEquals(values[values.length - 1], histogram.getMax());
+    for (double percentile : new double[] {50, 90, 99, 99.9}) {
+      long expected = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+      long actual = histogram.getValueAtPercentile(percentile);
+      Assertions.assertEquals(expected, actual, expected * 0.035, "p" + percentile);
+    }
+  }
+
+  @Test
+  void concurrentRecordingLosesNothing() {
+    // when
+    LatencyHistogram histogram = new LatencyHistogram();
+    // then
+    IntStream.range(0, 100_000).parallel().forEach(histogram::record);
+    // do
+    Assertions.assertEquals(100_000, histogram.getCount());
+    Assertions.assertEquals(99_999, histogram.getMax());
+    Assertions.assertEquals(49_999.5, histogram.getMean(), 0.001);
+  }
+
+  @Test
+  void invalidPercentile() {
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> new LatencyHistogram().getValueAtPercentile(101));
+  }
+}
@@ -0,0 +1,94 @@
+package com.fedmag.verysimplecaptcha.pool;
+
+import com.fedmag.verysimplecaptcha.Captcha;
+import java.io.IOException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class CaptchaPoolTest {
+
+  @Test
+  void prefillReachesHighWatermark() {
+    // when
+    try (CaptchaPool pool =
+        new CaptchaPool.Builder(new Captcha.Builder()).lowWatermark(1).highWatermark(4).build()) {
+      // then
+      pool.prefill();
+      // do
+      Assertions.assertEquals(4, pool.size());
+    }
+  }
+
+  @Test
+  void pollCountsHitsAndMisses() {
+    // when
+    try (CaptchaPool pool =
+        new CaptchaPool.Builder(new Captcha.Builder())
+            .lowWatermark(0)
+            .highWatermark(1)
+            .executor(Runnable::run)
+            .build()) {
+      pool.prefill();
+      // then
+      PooledCaptcha captcha = pool.poll();
+      // do
+      Assertions.assertNotNull(captcha);
+      Assertions.assertEquals(5, captcha.getToken().length());
+      Assertions.assertTrue(captcha.getImageBytes().length > 0);
+      Assertions.assertEquals(1, pool.getStats().getHits());
+      // the synchronous executor refilled the pool as soon as it hit the low watermark
+      Assertions.assertEquals(1, pool.size());
+    }
+  }
+
+  @Test
+  void takeGeneratesOnMiss() throws IOException {
+    // when
+    try (CaptchaPool pool =
+        new CaptchaPool.Builder(new Captcha.Builder())
+            .lowWatermark(0)
+            .highWatermark(2)
+            .executor(runnable -> {})
+            .build()) {
+      // then
+      PooledCaptcha captcha = pool.take();
+      // do
+      Assertions.assertNotNull(captcha);
+      Assertions.assertEquals(1, pool.getStats().getMisses());
+      Assertions.assertEquals(0d, pool.getStats().getHitRate());
+    }
+  }
+
+  @Test
+  void invalidWatermarks() {
+    Assertions.assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            new CaptchaPool.Builder(new Captcha.Builder())
+                .lowWatermark(8)
+                .highWatermark(8)
+                .build());
+  }
+
+  @Test
+  void concurrentPrefillsStopAtHighWatermark() throws InterruptedException {
+    // when
+    try (CaptchaPool pool =
+        new CaptchaPool.Builder(new Captcha.Builder()).lowWatermark(1).highWatermark(8).build()) {
+      Thread[] threads = new Thread[4];
+      for (int i = 0; i < threads.length; i++) {
+        threads[i] = new Thread(pool::prefill);
+      }
+      // then
+      for (Thread thread : threads) {
+        thread.start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      // do
+      Assertions.assertEquals(8, pool.size());
+      Assertions.assertEquals(8, pool.getStats().getGenerated());
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package com.fedmag.verysimplecaptcha.server;
+
+import com.fedmag.verysimplecaptcha.Captcha;
+import com.fedmag.verysimplecaptcha.verification.CaptchaSigner;
+import com.fedmag.verysimplecaptcha.verification.KeyRing;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class CaptchaServerTest {
+
+  private final HttpClient client = HttpClient.newHttpClient();
+
+  @Test
+  void issuedCaptchaIsNotCacheable() throws Exception {
+    // when
+    try (CaptchaServer server =
+        new CaptchaServer.Builder(new Captcha.Builder()).port(0).poolSize(2).build().start()) {
+      // then
+      HttpResponse<byte[]> response =
+          client.send(
+              HttpRequest.newBuilder(uri(server, "/captcha")).build(),
+              HttpResponse.BodyHandlers.ofByteArray());
+      // do
+      Assertions.assertEquals(200, response.statusCode());
+      Assertions.assertEquals("image/jpeg", response.headers().firstValue("Content-Type").get());
+      Assertions.assertTrue(
+          response.headers().firstValue("Cache-Control").get().contains("no-store"));
+      Assertions.assertTrue(response.headers().firstValue(CaptchaServer.ID_HEADER).isPresent());
+      Assertions.assertTrue(response.body().length > 0);
+    }
+  }
+
+  @Test
+  void wrongAnswerUsesUpSignedId() throws Exception {
+    // when
+    CaptchaSigner signer = new CaptchaSigner.Builder(KeyRing.random()).replayFilter(16).build();
+    CaptchaServer.Builder server =
+        new CaptchaServer.Builder(digits()).port(0).poolSize(1).signer(signer);
+    // then
+    int valid = validAnswersAfterAWrongOne(server);
+    // do
+    Assertions.assertEquals(0, valid);
+  }
+
+  @Test
+  void wrongAnswerUsesUpStoredId() throws Exception {
+    // when
+    CaptchaServer.Builder server = new CaptchaServer.Builder(digits()).port(0).poolSize(1);
+    // then
+    int valid = validAnswersAfterAWrongOne(server);
+    // do
+    Assertions.assertEquals(0, valid);
+  }
+
+  @Test
+  void signerWithoutReplayFilterIsRejected() {
+    // when
+    CaptchaSigner signer = new CaptchaSigner.Builder(KeyRing.random()).build();
+    CaptchaServer.Builder server = new CaptchaServer.Builder(digits());
+    // then // do
+    Assertions.assertThrows(IllegalArgumentException.class, () -> server.signer(signer));
+  }
+
+  @Test
+  void portInUseFailsToBuild() throws Exception {
+    // when
+    try (CaptchaServer server =
+        new CaptchaServer.Builder(digits()).port(0).poolSize(1).build().start()) {
+      CaptchaServer.Builder clash = new CaptchaServer.Builder(digits()).port(server.getPort());
+      // then // do
+      Assertions.assertThrows(IOException.class, clash::build);
+    }
+  }
+
+  @Test
+  void badRequestsAreRejected() throws Exception {
+    // when
+    try (CaptchaServer server =
+        new CaptchaServer.Builder(new Captcha.Builder()).port(0).poolSize(1).build().start()) {
+      // then
+      HttpResponse<String> missingAnswer = post(server, "id=abc");
+      HttpResponse<String> unknownId = post(server, "id=abc&answer=x");
+      HttpResponse<String> wrongMethod =
+          client.send(
+              HttpRequest.newBuilder(uri(server, "/verify")).build(),
+              HttpResponse.BodyHandlers.ofString());
+      HttpResponse<String> wrongPath =
+          client.send(
+              HttpRequest.newBuilder(uri(server, "/captcha/x")).build(),
+              HttpResponse.BodyHandlers.ofString());
+      // do
+      Assertions.assertEquals(400, missingAnswer.statusCode());
+      Assertions.assertEquals("{\"valid\":false}", unknownId.body());
+      Assertions.assertEquals(405, wrongMethod.statusCode());
+      Assertions.assertEquals(404, wrongPath.statusCode());
+    }
+  }
+
+  @Test
+  void formFieldsAreDecoded() {
+    // when
+    Map<String, String> fields = new HashMap<>();
+    // then
+    CaptchaServer.parseForm("id=a%2Bb&answer=x+y&broken&=v", fields);
+    // do
+    Assertions.assertEquals(Map.of("id", "a+b", "answer", "x y"), fields);
+  }
+
+  /** Answers a letter, which a digit CAPTCHA never matches, then every digit. */
+  private int validAnswersAfterAWrongOne(CaptchaServer.Builder builder) throws Exception {
+    try (CaptchaServer server = builder.build().start()) {
+      String id =
+          client
+              .send(
+                  HttpRequest.newBuilder(uri(server, "/captcha")).build(),
+                  HttpResponse.BodyHandlers.discarding())
+              .headers()
+              .firstValue(CaptchaServer.ID_HEADER)
+              .get();
+      Assertions.assertEquals("{\"valid\":false}", post(server, "id=" + id + "&answer=x").body());
+      int valid = 0;
+      for (char answer = '0'; answer <= '9'; answer++) {
+        HttpResponse<String> response = post(server, "id=" + id + "&answer=" + answer);
+        Assertions.assertEquals(200, response.statusCode());
+        valid += response.body().equals("{\"valid\":true}") ? 1 : 0;
+      }
+      return valid;
+    }
+  }
+
+  private static Captcha.Builder digits() {
+    return new Captcha.Builder().numberOfChars(1).excludeLetters();
+  }
+
+  private HttpResponse<String> post(CaptchaServer server, String form) throws Exception {
+    return client.send(
+        HttpRequest.newBuilder(uri(server, "/verify"))
+            .header("Content-Type", "application/x-www-form-urlencoded")
+            .POST(HttpRequest.BodyPublishers.ofString(form))
+            .build(),
+        HttpResponse.BodyHandlers.ofString());
+  }
+
+  private static URI uri(CaptchaServer server, String path) {
+    return URI.create("http://localhost:" + server.getPort() + path);
+  }
+}
@@ -0,0 +1,127 @@
+package com.fedmag.verysimplecaptcha.verification;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class CaptchaSignerTest {
+
+  private static final byte[] SECRET =
+      "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+  // A byte of the nonce
+  private static final int HEADER_BYTE = 15;
+
+  private final AtomicLong clock = new AtomicLong(1_700_000_000_000L);
+
+  private CaptchaSigner.Builder builder(KeyRing keyRing) {
+    return new CaptchaSigner.Builder(keyRing).ttl(Duration.ofMinutes(2)).clock(clock::get);
+  }
+
+  @Test
+  void anyNodeWithTheKeyVerifies() {
+    // when
+    CaptchaSigner issuer = builder(new KeyRing(SECRET, 1)).build();
+    CaptchaSigner verifier = builder(new KeyRing(SECRET, 1)).build();
+    // then
+    String envelope = issuer.sign("AbC12");
+    // do
+    Assertions.assertEquals(72, envelope.length());
+    Assertions.assertTrue(verifier.verify(envelope, "AbC12"));
+    Assertions.assertFalse(verifier.verify(envelope, "abc12"));
+  }
+
+  @Test
+  void tamperedOrForeignEnvelopesFail() {
+    // when
+    CaptchaSigner signer = builder(new KeyRing(SECRET, 1)).build();
+    CaptchaSigner other = builder(KeyRing.random()).build();
+    String envelope = signer.sign("AbC12");
+    byte[] bytes = Base64.getUrlDecoder().decode(envelope);
+    bytes[5] ^= 1;
+    // then
+    String tampered = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    // do
+    Assertions.assertFalse(signer.verify(tampered, "AbC12"));
+    Assertions.assertFalse(other.verify(envelope, "AbC12"));
+    Assertions.assertFalse(signer.verify("not an envelope", "AbC12"));
+    Assertions.assertFalse(signer.verify(null, "AbC12"));
+  }
+
+  @Test
+  void envelopesExpire() {
+    // when
+    CaptchaSigner signer = builder(new KeyRing(SECRET, 1)).build();
+    String envelope = signer.sign("AbC12");
+    // then
+    clock.addAndGet(Duration.ofMinutes(2).toMillis());
+    // do
+    Assertions.assertFalse(signer.verify(envelope, "AbC12"));
+  }
+
+  @Test
+  void rotatedKeysStillVerifyUntilDropped() {
+    // when
+    KeyRing keyRing = new KeyRing(SECRET, 1);
+    CaptchaSigner signer = builder(keyRing).build();
+    String envelope = signer.sign("AbC12");
+    // then
+    keyRing.rotate("fedcba9876543210fedcba9876543210".getBytes(StandardCharsets.US_ASCII));
+    String rotated = signer.sign("AbC12");
+    // do
+    Assertions.assertEquals(1, keyRing.currentKeyId());
+    Assertions.assertTrue(signer.verify(envelope, "AbC12"));
+    Assertions.assertTrue(signer.verify(rotated, "AbC12"));
+    keyRing.rotate("another secret of 32 bytes......".getBytes(StandardCharsets.US_ASCII));
+    Assertions.assertFalse(signer.verify(envelope, "AbC12"));
+    Assertions.assertTrue(signer.verify(rotated, "AbC12"));
+  }
+
+  @Test
+  void replayFilterRejectsReuse() {
+    // when
+    CaptchaSigner signer = builder(new KeyRing(SECRET, 1)).replayFilter(1000).build();
+    String envelope = signer.sign("AbC12");
+    // then
+    boolean first = signer.verify(envelope, "AbC12");
+    boolean second = signer.verify(envelope, "AbC12");
+    // do
+    Assertions.assertTrue(first);
+    Assertions.assertFalse(second);
+    Assertions.assertTrue(signer.verify(signer.sign("AbC12"), "AbC12"));
+  }
+
+  @Test
+  void wrongAnswerUsesUpTheEnvelope() {
+    // when
+    CaptchaSigner signer = builder(new KeyRing(SECRET, 1)).replayFilter(1000).build();
+    String envelope = signer.sign("AbC12");
+    // then
+    boolean wrong = signer.verify(envelope, "abc12");
+    boolean right = signer.verify(envelope, "AbC12");
+    // do
+    Assertions.assertFalse(wrong);
+    Assertions.assertFalse(right);
+  }
+
+  @Test
+  void forgedEnvelopesDoNotFillTheReplayFilter() {
+    // when
+    CaptchaSigner signer = builder(new KeyRing(SECRET, 1)).replayFilter(1).build();
+    byte[] bytes = Base64.getUrlDecoder().decode(signer.sign("AbC12"));
+    bytes[HEADER_BYTE] ^= 1;
+    // then
+    String forged = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    // do
+    Assertions.assertFalse(signer.verify(forged, "AbC12"));
+    Assertions.assertTrue(signer.verify(signer.sign("AbC12"), "AbC12"));
+  }
+
+  @Test
+  void shortSecretsAreRejected() {
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new KeyRing(new byte[8], 1));
+  }
+}
@@ -0,0 +1,114 @@
+package com.fedmag.verysimplecaptcha.verification;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class CaptchaStoreTest {
+
+  private final AtomicLong clock = new AtomicLong();
+
+  private CaptchaStore.Builder builder() {
+    return new CaptchaStore.Builder().ttl(Duration.ofSeconds(10)).clock(clock::get);
+  }
+
+  @Test
+  void answerIsVerifiedOnce() {
+    // when
+    CaptchaStore store = builder().build();
+    String id = store.issue("AbC12");
+    // then
+    boolean first = store.verify(id, "AbC12");
+    boolean second = store.verify(id, "AbC12");
+    // do
+    Assertions.assertTrue(first);
+    Assertions.assertFalse(second);
+    Assertions.assertEquals(0, store.size());
+  }
+
+  @Test
+  void wrongAnswerConsumesTheId() {
+    // when
+    CaptchaStore store = builder().build();
+    String id = store.issue("AbC12");
+    // then
+    boolean wrong = store.verify(id, "abc12");
+    boolean right = store.verify(id, "AbC12");
+    // do
+    Assertions.assertFalse(wrong);
+    Assertions.assertFalse(right);
+    Assertions.assertFalse(store.verify("unknown", "AbC12"));
+    Assertions.assertFalse(store.verify(null, null));
+  }
+
+  @Test
+  void answersExpire() {
+    // when
+    CaptchaStore store = builder().build();
+    String expired = store.issue("first");
+    clock.addAndGet(Duration.ofSeconds(6).toNanos());
+    String live = store.issue("second");
+    // then
+    clock.addAndGet(Duration.ofSeconds(5).toNanos());
+    store.cleanUp();
+    // do
+    Assertions.assertEquals(1, store.size());
+    Assertions.assertFalse(store.verify(expired, "first"));
+    Assertions.assertTrue(store.verify(live, "second"));
+  }
+
+  @Test
+  void expiresAfterLongIdlePeriod() {
+    // when
+    CaptchaStore store = builder().build();
+    for (int i = 0; i < 100; i++) {
+      store.issue("answer" + i);
+    }
+    // then
+    clock.addAndGet(Duration.ofHours(1).toNanos());
+    store.cleanUp();
+    // do
+    Assertions.assertEquals(0, store.size());
+  }
+
+  @Test
+  void fullStoreRejectsNewAnswers() {
+    // when
+    CaptchaStore store = builder().maximumSize(2).build();
+    store.issue("one");
+    store.issue("two");
+    // then
+    Assertions.assertThrows(IllegalStateException.class, () -> store.issue("three"));
+    clock.addAndGet(Duration.ofSeconds(11).toNanos());
+    // do
+    Assertions.assertNotNull(store.issue("three"));
+    Assertions.assertEquals(1, store.size());
+  }
+
+  @Test
+  void invalidConfiguration() {
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> new CaptchaStore.Builder().maximumSize(0));
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> new CaptchaStore.Builder().ttl(Duration.ZERO));
+    Assertions.assertThrows(
+        IllegalArgumentException.class,
+        () -> new CaptchaStore.Builder().ttl(Duration.ofMillis(10)).build());
+  }
+
+  @Test
+  void verifiedIdsLeaveTheExpiryWheel() {
+    // when
+    CaptchaStore store = builder().maximumSize(10).build();
+    // then
+    for (int i = 0; i < 1000; i++) {
+      String id = store.issue("AbC12");
+      Assertions.assertTrue(store.verify(id, "AbC12"));
+      Assertions.assertTrue(store.scheduledCount() <= 10);
+    }
+    // do
+    Assertions.assertEquals(0, store.size());
+    Assertions.assertEquals(0, store.scheduledCount());
+  }
+}
@@ -0,0 +1,44 @@
+package com.fedmag.verysimplecaptcha.bench;
+
+import java.io.IOException;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks on one thread and then on four, with the GC profiler, so that every score
+ * comes with its allocation rate and its contended counterpart. It takes the JMH command line:
+ * {@code -t} runs a single thread count and {@code -prof} replaces the GC profiler.
+ */
+public final class BenchmarkMain {
+
+  private static final int[] THREADS = {1, 4};
+
+  private BenchmarkMain() {}
+
+  public static void main(String[] args)
+      throws CommandLineOptionException, IOException, RunnerException {
+    CommandLineOptions options = new CommandLineOptions(args);
+    if (options.shouldHelp()
+        || options.shouldList()
+        || options.shouldListWithParams()
+        || options.shouldListProfilers()
+        || options.shouldListResultFormats()) {
+      org.openjdk.jmh.Main.main(args);
+      return;
+    }
+    int[] threads =
+        options.getThreads().hasValue() ? new int[] {options.getThreads().get()} : THREADS;
+    for (int count : threads) {
+      ChainedOptionsBuilder run = new OptionsBuilder().parent(options).threads(count);
+      if (options.getProfilers().isEmpty()) {
+        run.addProfiler(GCProfiler.class);
+      }
+      new Runner(run.build()).run();
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package com.fedmag.verysimplecaptcha.bench;
+
+import com.fedmag.verysimplecaptcha.Captcha;
+import com.fedmag.verysimplecaptcha.CaptchaProfile;
+import com.fedmag.verysimplecaptcha.CaptchaSeed;
+import com.fedmag.verysimplecaptcha.generators.filters.SimpleGaussianFilter;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a complete CAPTCHA, from the builder to the Base64 string served to a page. CAPTCHAs
+ * render lazily, so the benchmarks request the image to measure the rendering.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CaptchaBuildBenchmark {
+
+  @Param({"200x100", "400x200"})
+  private String size;
+
+  @Param({"false", "true"})
+  private boolean glyphAtlas;
+
+  private Captcha.Builder builder;
+  private CaptchaProfile profile;
+  private long seedIndex;
+
+  @Setup
+  public void setUp() {
+    String[] dimensions = size.split("x");
+    builder =
+        new Captcha.Builder()
+            .width(Integer.parseInt(dimensions[0]))
+            .height(Integer.parseInt(dimensions[1]))
+            .addImageFilter(new SimpleGaussianFilter())
+            .useGlyphAtlas(glyphAtlas);
+    profile = builder.compile();
+    seedIndex = 0;
+  }
+
+  @Benchmark
+  public BufferedImage build() {
+    return builder.build().getImage();
+  }
+
+  @Benchmark
+  public BufferedImage profileNext() {
+    return profile.next().getImage();
+  }
+
+  /**
+   * Renders the CAPTCHAs of a fixed sequence of seeds, so that every run measures the same tokens,
+   * rotations and filter noise.
+   */
+  @Benchmark
+  public BufferedImage profileNextSeeded() {
+    return profile.next(CaptchaSeed.of(0, seedIndex++)).getImage();
+  }
+
+  /** Issues a CAPTCHA whose image is never requested, which only draws the token. */
+  @Benchmark
+  public String profileNextTokenOnly() {
+    return profile.next().getToken();
+  }
+
+  /** Builds a batch of 16 CAPTCHAs sharing one prepared profile; the score is per batch. */
+  @Benchmark
+  public List<Captcha> buildBatch() {
+    List<Captcha> batch = builder.buildBatch(16);
+    batch.forEach(Captcha::getImage);
+    return batch;
+  }
+
+  @Benchmark
+  public String buildAndEncode() throws IOException {
+    return builder.build().getImageAsBase64EncododedString();
+  }
+}
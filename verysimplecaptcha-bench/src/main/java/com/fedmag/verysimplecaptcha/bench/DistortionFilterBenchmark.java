@@ -0,0 +1,75 @@
+package com.fedmag.verysimplecaptcha.bench;
+
+import com.fedmag.verysimplecaptcha.generators.ImageRenderer;
+import com.fedmag.verysimplecaptcha.generators.RenderConfig;
+import com.fedmag.verysimplecaptcha.generators.filters.ColorJitterFilter;
+import com.fedmag.verysimplecaptcha.generators.filters.NoiseLinesFilter;
+import com.fedmag.verysimplecaptcha.generators.filters.PixelRaster;
+import com.fedmag.verysimplecaptcha.generators.filters.RasterFilter;
+import com.fedmag.verysimplecaptcha.generators.filters.RippleFilter;
+import com.fedmag.verysimplecaptcha.generators.filters.SpeckleFilter;
+import com.fedmag.verysimplecaptcha.generators.filters.WaveFilter;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the distortion filters applied in place to a rendered CAPTCHA, one filter at a time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DistortionFilterBenchmark {
+
+  @Param({"200x100", "800x400"})
+  private String size;
+
+  @Param({"wave", "ripple", "lines", "speckle", "jitter"})
+  private String filterName;
+
+  private PixelRaster raster;
+  private RasterFilter filter;
+
+  @Setup
+  public void setUp() {
+    String[] dimensions = size.split("x");
+    int width = Integer.parseInt(dimensions[0]);
+    int height = Integer.parseInt(dimensions[1]);
+    raster =
+        PixelRaster.wrap(new ImageRenderer(RenderConfig.DEFAULT).render("AbC12", width, height));
+    switch (filterName) {
+      case "wave":
+        filter = new WaveFilter();
+        break;
+      case "ripple":
+        filter = new RippleFilter();
+        break;
+      case "lines":
+        filter = new NoiseLinesFilter();
+        break;
+      case "speckle":
+        filter = new SpeckleFilter();
+        break;
+      default:
+        filter = new ColorJitterFilter();
+    }
+  }
+
+  @Benchmark
+  public PixelRaster apply() {
+    filter.apply(raster);
+    return raster;
+  }
+}
@@ -0,0 +1,97 @@
+package com.fedmag.verysimplecaptcha.bench;
+
+import com.fedmag.verysimplecaptcha.encoding.CaptchaEncoder;
+import com.fedmag.verysimplecaptcha.encoding.CaptchaEncoders;
+import com.fedmag.verysimplecaptcha.generators.ImageRenderer;
+import com.fedmag.verysimplecaptcha.generators.RenderConfig;
+import com.fedmag.verysimplecaptcha.generators.filters.SimpleGaussianFilter;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * Measures the built-in {@link CaptchaEncoder} implementations, alone and followed by Base64, on a
+ * two-color and a blurred CAPTCHA. The encoded size is reported next to the timings as the {@code
+ * encodedBytes} counter.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EncodingBenchmark {
+
+  @Param({"jpeg", "png", "png-palette"})
+  private String encoderName;
+
+  @Param({"false", "true"})
+  private boolean blurred;
+
+  private CaptchaEncoder encoder;
+  private BufferedImage image;
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+
+  @Setup
+  public void setUp() throws IOException {
+    encoder = CaptchaEncoders.byName(encoderName);
+    RenderConfig.Builder config = RenderConfig.DEFAULT.toBuilder();
+    if (blurred) {
+      config.addImageFilter(new SimpleGaussianFilter());
+    }
+    image = new ImageRenderer(config.build()).render("AbC12", 200, 100);
+  }
+
+  @Benchmark
+  public int encode(EncodedSize size) throws IOException {
+    out.reset();
+    encoder.encode(image, out);
+    return size.record(out.size());
+  }
+
+  @Benchmark
+  public String encodeBase64(EncodedSize size) throws IOException {
+    out.reset();
+    encoder.encode(image, out);
+    size.record(out.size());
+    return Base64.getEncoder().encodeToString(out.toByteArray());
+  }
+
+  /** Reports the size of the encoded image, in bytes. */
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class EncodedSize {
+
+    public double encodedBytes;
+
+    private int threads;
+
+    @Setup(Level.Iteration)
+    public void setUp(BenchmarkParams params) {
+      threads = params.getThreads();
+      encodedBytes = 0;
+    }
+
+    int record(int bytes) {
+      // JMH sums event counters over the threads, so each thread reports its share of the size
+      encodedBytes = bytes / (double) threads;
+      return bytes;
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package com.fedmag.verysimplecaptcha.bench;
+
+import com.fedmag.verysimplecaptcha.generators.ImageRenderer;
+import com.fedmag.verysimplecaptcha.generators.RenderConfig;
+import com.fedmag.verysimplecaptcha.generators.filters.FilterPipeline;
+import com.fedmag.verysimplecaptcha.generators.filters.SimpleGaussianFilter;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link SimpleGaussianFilter}, as a standalone filter returning a copy and in place
+ * through a sequential and a parallel {@link FilterPipeline}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GaussianFilterBenchmark {
+
+  @Param({"200x100", "800x400"})
+  private String size;
+
+  @Param({"3", "7"})
+  private int matrixSize;
+
+  private BufferedImage source;
+  private BufferedImage target;
+  private SimpleGaussianFilter filter;
+  private FilterPipeline sequential;
+  private FilterPipeline parallel;
+
+  @Setup
+  public void setUp() {
+    String[] dimensions = size.split("x");
+    int width = Integer.parseInt(dimensions[0]);
+    int height = Integer.parseInt(dimensions[1]);
+    source = new ImageRenderer(RenderConfig.DEFAULT).render("AbC12", width, height);
+    target = new ImageRenderer(RenderConfig.DEFAULT).render("AbC12", width, height);
+    filter = new SimpleGaussianFilter(matrixSize);
+    sequential = new FilterPipeline(List.of(filter));
+    parallel = new FilterPipeline(List.of(filter), ForkJoinPool.commonPool(), 1);
+  }
+
+  @Benchmark
+  public BufferedImage copy() {
+    return filter.apply(source);
+  }
+
+  @Benchmark
+  public BufferedImage inPlace() {
+    return sequential.apply(target);
+  }
+
+  @Benchmark
+  public BufferedImage inPlaceParallel() {
+    return parallel.apply(target);
+  }
+}
@@ -0,0 +1,68 @@
+package com.fedmag.verysimplecaptcha.bench;
+
+import com.fedmag.verysimplecaptcha.generators.GlyphAtlas;
+import com.fedmag.verysimplecaptcha.generators.ImageGenerator;
+import com.fedmag.verysimplecaptcha.generators.ImageRenderer;
+import com.fedmag.verysimplecaptcha.generators.RenderBackend;
+import com.fedmag.verysimplecaptcha.generators.RenderConfig;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the rendering of a token through the static facade, the glyph atlas and the bitmap font
+ * backend.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImageGeneratorBenchmark {
+
+  @Param({"200x100", "400x200", "800x400"})
+  private String size;
+
+  private int width;
+  private int height;
+  private ImageRenderer atlasRenderer;
+  private ImageRenderer bitmapRenderer;
+
+  @Setup
+  public void setUp() {
+    String[] dimensions = size.split("x");
+    width = Integer.parseInt(dimensions[0]);
+    height = Integer.parseInt(dimensions[1]);
+    atlasRenderer =
+        new ImageRenderer(RenderConfig.DEFAULT.toBuilder().glyphAtlas(GlyphAtlas.shared()).build());
+    bitmapRenderer =
+        new ImageRenderer(
+            RenderConfig.DEFAULT.toBuilder().renderBackend(RenderBackend.BITMAP).build());
+  }
+
+  @Benchmark
+  public BufferedImage fromString() {
+    return ImageGenerator.fromString("AbC12", width, height);
+  }
+
+  @Benchmark
+  public BufferedImage glyphAtlas() {
+    return atlasRenderer.render("AbC12", width, height);
+  }
+
+  @Benchmark
+  public BufferedImage bitmapFont() {
+    return bitmapRenderer.render("AbC12", width, height);
+  }
+}
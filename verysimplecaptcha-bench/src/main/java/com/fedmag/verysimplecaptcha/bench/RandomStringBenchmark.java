@@ -0,0 +1,50 @@
+package com.fedmag.verysimplecaptcha.bench;
+
+import com.fedmag.verysimplecaptcha.generators.RandomStringGenerator;
+import com.fedmag.verysimplecaptcha.generators.RandomStringGenerator.Source;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures the generation of random tokens. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RandomStringBenchmark {
+
+  @Param({"5", "10", "32"})
+  private int length;
+
+  @Param({"FAST", "SECURE"})
+  private Source source;
+
+  private final char[] batch = new char[1024];
+
+  @Benchmark
+  public String alphanumeric() {
+    return RandomStringGenerator.generate(length, source);
+  }
+
+  @Benchmark
+  public String lettersOnly() {
+    return RandomStringGenerator.generate(length, "ABCDEFGHIJKLMNOPQRSTUVWXYZ", source);
+  }
+
+  /** Fills a batch of tokens without allocating; the score is per batch, not per token. */
+  @Benchmark
+  public char[] fillBatch() {
+    RandomStringGenerator.fill(batch, 0, batch.length / length * length, "0123456789", source);
+    return batch;
+  }
+}
@@ -0,0 +1,76 @@
+package com.fedmag.verysimplecaptcha.bench;
+
+import com.fedmag.verysimplecaptcha.generators.ImageRenderer;
+import com.fedmag.verysimplecaptcha.generators.RenderConfig;
+import com.fedmag.verysimplecaptcha.generators.filters.ColorJitterFilter;
+import com.fedmag.verysimplecaptcha.generators.filters.PixelRaster;
+import com.fedmag.verysimplecaptcha.generators.filters.RasterFilter;
+import com.fedmag.verysimplecaptcha.generators.filters.RasterKernels;
+import com.fedmag.verysimplecaptcha.generators.filters.SimpleGaussianFilter;
+import com.fedmag.verysimplecaptcha.generators.filters.WaveFilter;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the scalar and the Vector API {@link RasterKernels} on the filters built on them. The
+ * backend is chosen once per JVM, so every fork selects it before the first filter runs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Thread)
+public class RasterKernelBenchmark {
+
+  @Param({"200x100", "800x400"})
+  private String size;
+
+  @Param({"gaussian", "wave", "jitter"})
+  private String filterName;
+
+  @Param({"scalar", "vector"})
+  private String kernels;
+
+  private PixelRaster raster;
+  private RasterFilter filter;
+
+  @Setup
+  public void setUp() {
+    System.setProperty(RasterKernels.PROPERTY, kernels);
+    if (!kernels.equals(RasterKernels.getBackend())) {
+      throw new IllegalStateException("The " + kernels + " kernels are not available.");
+    }
+    String[] dimensions = size.split("x");
+    int width = Integer.parseInt(dimensions[0]);
+    int height = Integer.parseInt(dimensions[1]);
+    raster =
+        PixelRaster.wrap(new ImageRenderer(RenderConfig.DEFAULT).render("AbC12", width, height));
+    switch (filterName) {
+      case "gaussian":
+        filter = new SimpleGaussianFilter(7);
+        break;
+      case "wave":
+        filter = new WaveFilter();
+        break;
+      default:
+        filter = new ColorJitterFilter();
+    }
+  }
+
+  @Benchmark
+  public PixelRaster apply() {
+    filter.apply(raster);
+    return raster;
+  }
+}